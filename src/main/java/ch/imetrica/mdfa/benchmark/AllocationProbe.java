@@ -0,0 +1,146 @@
+package ch.imetrica.mdfa.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 
+ * Measures the wall time, the bytes allocated by the current thread, 
+ * and the number and time of garbage collections between a call to 
+ * start() and stop(). Used by the benchmarks to show the GC pressure 
+ * of a computation.
+ * 
+ * The allocated bytes are taken from the HotSpot 
+ * com.sun.management.ThreadMXBean. On JVMs without it, 
+ * the allocated bytes are reported as -1
+ */
+public class AllocationProbe {
+
+	private final String name;
+	
+	private long startTime;
+	private long startBytes;
+	private long startGcCount;
+	private long startGcTime;
+	
+	private long elapsedNanos;
+	private long allocatedBytes;
+	private long gcCount;
+	private long gcTime;
+	
+	public AllocationProbe(String name) {
+		this.name = name;
+	}
+	
+	public AllocationProbe start() {
+		
+		startGcCount = totalGcCount();
+		startGcTime = totalGcTime();
+		startBytes = threadAllocatedBytes();
+		startTime = System.nanoTime();
+		return this;
+	}
+	
+	public AllocationProbe stop() {
+		
+		elapsedNanos = System.nanoTime() - startTime;
+		long bytes = threadAllocatedBytes();
+		allocatedBytes = (bytes < 0 || startBytes < 0) ? -1 : bytes - startBytes;
+		gcCount = totalGcCount() - startGcCount;
+		gcTime = totalGcTime() - startGcTime;
+		return this;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	public long getGcTime() {
+		return gcTime;
+	}
+	
+	/**
+	 * Summary of the measurement normalized by the 
+	 * number of operations run between start and stop 
+	 * 
+	 * @param ops Number of operations
+	 * @return A one line report
+	 */
+	public String report(int ops) {
+		
+		return String.format("%-30s %12.3f ms/op %16d bytes/op %6d gcs %8d gc-ms", 
+				name, elapsedNanos/1.0e6/ops, 
+				allocatedBytes < 0 ? -1 : allocatedBytes/ops, 
+				gcCount, gcTime);
+	}
+	
+	
+	/**
+	 * The used heap after requesting garbage collections until it 
+	 * no longer shrinks. The difference of two calls approximates 
+	 * the memory retained by the objects created in between
+	 * 
+	 * @return Used heap in bytes
+	 */
+	public static long usedHeapAfterGc() {
+		
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for(int i = 0; i < 10; i++) {
+			
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if(now >= used) {
+				break;
+			}
+			used = now;
+		}
+		return used;
+	}
+	
+	
+	private static long threadAllocatedBytes() {
+		
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if(sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+	
+	private static long totalGcCount() {
+		
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+	
+	private static long totalGcTime() {
+		
+		long time = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+	
+}
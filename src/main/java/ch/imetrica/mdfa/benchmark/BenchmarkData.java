@@ -0,0 +1,57 @@
+package ch.imetrica.mdfa.benchmark;
+
+import java.util.Random;
+
+import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+import ch.imetrica.mdfa.spectraldensity.SpectralBase;
+
+/**
+ * 
+ * Synthetic data shared by the benchmarks
+ */
+public class BenchmarkData {
+
+	/**
+	 * A geometric random walk price series with daily 
+	 * time stamps starting at 2010-01-01
+	 * 
+	 * @param N Number of observations
+	 * @param rng Random number generator
+	 * @return The price series
+	 */
+	public static TimeSeries<Double> randomPrices(int N, Random rng) {
+		
+		TimeSeries<Double> series = new TimeSeries<Double>();
+		org.joda.time.DateTime date = new org.joda.time.DateTime(2010, 1, 1, 0, 0);
+		double price = 100;
+		for(int t = 0; t < N; t++) {
+			
+			price = price*Math.exp(.001*rng.nextGaussian());
+			series.add(new TimeSeriesEntry<Double>(date.toString("yyyy-MM-dd"), price));
+			date = date.plusDays(1);
+		}
+		return series;
+	}
+	
+	/**
+	 * A spectral base of nseries fractionally differenced 
+	 * random price series of length N
+	 * 
+	 * @param nseries Number of series
+	 * @param N In-sample length
+	 * @param seed Seed of the random number generator
+	 * @return The spectral base
+	 * @throws Exception
+	 */
+	public static SpectralBase randomSpectralBase(int nseries, int N, long seed) throws Exception {
+		
+		Random rng = new Random(seed);
+		SpectralBase base = new SpectralBase(N);
+		for(int i = 0; i < nseries; i++) {
+			base.addSeries(new TargetSeries(randomPrices(N, rng), .5, true));
+		}
+		return base;
+	}
+}
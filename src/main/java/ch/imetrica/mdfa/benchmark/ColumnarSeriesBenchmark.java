@@ -0,0 +1,89 @@
+package ch.imetrica.mdfa.benchmark;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import ch.imetrica.mdfa.series.ColumnarTimeSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ * 
+ * Compares the retained memory, the append throughput and the 
+ * sequential read throughput of a TimeSeries of double[] entries
+ * (transformed and raw value) with the two column ColumnarTimeSeries 
+ * that stores a TargetSeries. The observations are 1-minute 
+ * bars with "yyyy-MM-dd HH:mm:ss" time stamps.
+ * 
+ * Usage: ColumnarSeriesBenchmark [n] [reps]
+ * with defaults n = 1000000 observations and 5 read repetitions
+ */
+public class ColumnarSeriesBenchmark {
+
+	private static final String FORMAT = "yyyy-MM-dd HH:mm:ss";
+	
+	public static void main(String[] args) {
+		
+		int n    = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		DateTimeFormatter formatter = DateTimeFormat.forPattern(FORMAT);
+		long start = new DateTime(2017, 1, 2, 0, 0).getMillis();
+		
+		System.out.println("n = " + n);
+		
+		/* boxed entries */
+		long before = AllocationProbe.usedHeapAfterGc();
+		AllocationProbe probe = new AllocationProbe("TimeSeries append").start();
+		TimeSeries<double[]> boxed = new TimeSeries<double[]>();
+		for(int i = 0; i < n; i++) {
+			
+			double price = 1.1 + 1E-4*Math.sin(i);
+			boxed.add(new TimeSeriesEntry<double[]>(formatter.print(start + 60000L*i), new double[]{Math.log(price), price}));
+		}
+		report(probe.stop(), n);
+		long boxedBytes = AllocationProbe.usedHeapAfterGc() - before;
+		
+		probe = new AllocationProbe("TimeSeries read").start();
+		double sum = 0;
+		for(int r = 0; r < reps; r++) {
+			for(int i = 0; i < boxed.size(); i++) {
+				sum += boxed.get(i).getValue()[0];
+			}
+		}
+		report(probe.stop(), reps*n);
+		
+		/* columns */
+		before = AllocationProbe.usedHeapAfterGc();
+		probe = new AllocationProbe("Columnar append").start();
+		ColumnarTimeSeries columnar = new ColumnarTimeSeries(2, FORMAT);
+		for(int i = 0; i < n; i++) {
+			
+			double price = 1.1 + 1E-4*Math.sin(i);
+			columnar.add(start + 60000L*i, Math.log(price), price);
+		}
+		report(probe.stop(), n);
+		columnar.trimToSize();
+		long columnarBytes = AllocationProbe.usedHeapAfterGc() - before;
+		
+		probe = new AllocationProbe("Columnar read").start();
+		for(int r = 0; r < reps; r++) {
+			for(int i = 0; i < columnar.size(); i++) {
+				sum -= columnar.getValue(i, 0);
+			}
+		}
+		report(probe.stop(), reps*n);
+		
+		System.out.println(String.format("retained TimeSeries %10.1f MB  %6.1f bytes/obs", boxedBytes/1E6, boxedBytes/(double)n));
+		System.out.println(String.format("retained Columnar   %10.1f MB  %6.1f bytes/obs", columnarBytes/1E6, columnarBytes/(double)n));
+		System.out.println("checksum " + sum + " " + boxed.size() + " " + columnar.size());
+	}
+	
+	private static void report(AllocationProbe probe, long ops) {
+		
+		System.out.println(String.format("%-20s %10.2f ns/op %10.1f bytes/op %4d gcs %6d gc-ms", 
+				probe.getName(), probe.getElapsedNanos()/(double)ops, 
+				probe.getAllocatedBytes()/(double)ops, probe.getGcCount(), probe.getGcTime()));
+	}
+}
@@ -0,0 +1,131 @@
+package ch.imetrica.mdfa.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import ch.imetrica.mdfa.datafeeds.BinaryColumnarFile;
+import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.FastCsvReader;
+import ch.imetrica.mdfa.series.ColumnarTimeSeries;
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ *
+ * Compares the throughput of reading the bars of a csv file with the
+ * javacsv based {@link CsvFeed} (one getNextBar per record) and with the
+ * {@link FastCsvReader} into a {@link ColumnarTimeSeries}, in records
+ * and megabytes per second and in bytes allocated per record. Both read
+ * the date, parsed to epoch milliseconds, and four value columns. The
+ * same columns are then replayed from a memory mapped
+ * {@link BinaryColumnarFile} converted from the csv file, where the
+ * megabytes are the ones of the csv file.
+ *
+ * The file is the data file repeated copies times, so that it is
+ * large enough to measure.
+ *
+ * Usage: CsvIngestionBenchmark [copies] [dataFile]
+ * with defaults 20 copies of data/EURUSD.30min.csv
+ */
+public class CsvIngestionBenchmark {
+
+	private static final String FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+	public static void main(String[] args) throws Exception {
+
+		int copies      = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		String dataFile = args.length > 1 ? args[1] : "data/EURUSD.30min.csv";
+
+		File file = File.createTempFile("ingestion", ".csv");
+		file.deleteOnExit();
+		repeat(dataFile, file, copies);
+		double megabytes = file.length()/1E6;
+
+		System.out.println(String.format("%s x %d: %.1f MB", dataFile, copies, megabytes));
+
+		File binary = File.createTempFile("ingestion", BinaryColumnarFile.EXTENSION);
+		binary.deleteOnExit();
+		long start = System.nanoTime();
+		BinaryColumnarFile.convert(file.getPath(), binary.getPath(), "dateTime", FORMAT, "mid", "high", "low", "ask");
+		System.out.println(String.format("converted to %.1f MB in %.0f ms", binary.length()/1E6, (System.nanoTime() - start)/1E6));
+
+		for(int round = 0; round < 3; round++) {
+
+			AllocationProbe probe = new AllocationProbe("javacsv CsvFeed").start();
+			CsvFeed feed = new CsvFeed(file.getPath(), "dateTime", "mid", "high", "low", "ask").setDateFormat(FORMAT);
+			int rows = 0;
+			double sum = 0;
+			TimeSeriesEntry<double[]> bar;
+			while((bar = feed.getNextBar()) != null) {
+				sum += bar.getValue()[3];
+				rows++;
+			}
+			feed.close();
+			report(probe.stop(), rows, megabytes);
+
+			probe = new AllocationProbe("FastCsvReader").start();
+			FastCsvReader reader = new FastCsvReader(file.getPath(), "dateTime", FORMAT, "mid", "high", "low", "ask");
+			ColumnarTimeSeries series = reader.readAll();
+			reader.close();
+			for(int i = 0; i < series.size(); i++) {
+				sum -= series.getValue(i, 3);
+			}
+			report(probe.stop(), series.size(), megabytes);
+
+			probe = new AllocationProbe("BinaryColumnarFile").start();
+			BinaryColumnarFile columns = new BinaryColumnarFile(binary.getPath());
+			long last = Long.MIN_VALUE;
+			double replayed = 0;
+			for(int i = 0; i < columns.size(); i++) {
+				last = Math.max(last, columns.getTime(i));
+				for(int c = 0; c < columns.getColumnCount(); c++) {
+					replayed += columns.getValue(i, c);
+				}
+			}
+			columns.close();
+			report(probe.stop(), columns.size(), megabytes);
+
+			for(int i = 0; i < series.size(); i++) {
+				for(int c = 0; c < series.getColumnCount(); c++) {
+					replayed -= series.getValue(i, c);
+				}
+			}
+			if(series.size() != rows || columns.size() != rows || Math.abs(sum) > 1E-6*rows
+					|| Math.abs(replayed) > 1E-6*rows || last != series.getTime(series.size() - 1)) {
+				throw new IllegalStateException("The readers do not agree: " + rows + " " + series.size() + " " + sum);
+			}
+		}
+	}
+
+	private static void report(AllocationProbe probe, int rows, double megabytes) {
+
+		double seconds = probe.getElapsedNanos()/1E9;
+		System.out.println(String.format("%-20s %12.0f rows/s %10.1f MB/s %10d bytes/row %6d gcs",
+				probe.getName(), rows/seconds, megabytes/seconds,
+				probe.getAllocatedBytes() < 0 ? -1 : probe.getAllocatedBytes()/rows, probe.getGcCount()));
+	}
+
+	/**
+	 * Writes the header of dataFile and its records copies times
+	 */
+	private static void repeat(String dataFile, File file, int copies) throws IOException {
+
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		for(int c = 0; c < copies; c++) {
+
+			BufferedReader in = new BufferedReader(new FileReader(dataFile));
+			String line = in.readLine();
+			if(c == 0) {
+				out.println(line);
+			}
+			while((line = in.readLine()) != null) {
+				out.println(line);
+			}
+			in.close();
+		}
+		out.close();
+	}
+}
@@ -0,0 +1,129 @@
+package ch.imetrica.mdfa.benchmark;
+
+import java.util.Random;
+
+import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.VectorSignalSeries;
+import ch.imetrica.mdfa.util.FIRFilterEngine;
+
+/**
+ *
+ * Times recomputing the signals of M filters of length L over a
+ * history of N observations: the loop the signal series used before
+ * the FIRFilterEngine, with one getTargetValue call per multiplication,
+ * and each path of the engine. The series column recomputes an eager
+ * VectorSignalSeries with M filters after replacing one of them, the
+ * lazy column replaces it in a lazy VectorSignalSeries and reads the
+ * latest 300 signals.
+ *
+ * Usage: FIRFilterBenchmark [N] [M] [L] [reps]
+ * with defaults N = 2000 observations, M = 50 filters of L = 80
+ * coefficients and 20 repetitions
+ */
+public class FIRFilterBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int N    = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int M    = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int L    = args.length > 2 ? Integer.parseInt(args[2]) : 80;
+		int reps = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+		Random rng = new Random(1);
+		TargetSeries target = new TargetSeries(BenchmarkData.randomPrices(N, rng), .5, true);
+		double[][] filters = new double[M][L];
+		for(int m = 0; m < M; m++) {
+			for(int l = 0; l < L; l++) {
+				filters[m][l] = rng.nextGaussian()/L;
+			}
+		}
+
+		VectorSignalSeries signals = new VectorSignalSeries(target).setEagerSignal(true);
+		VectorSignalSeries lazy = new VectorSignalSeries(target);
+		for(int m = 0; m < M; m++) {
+			signals.addMDFAFilterCoefficients(filters[m]);
+			lazy.addMDFAFilterCoefficients(filters[m]);
+		}
+
+		FIRFilterEngine sequential = new FIRFilterEngine().setFFTThreshold(Integer.MAX_VALUE).setParallelThreshold(Long.MAX_VALUE);
+		FIRFilterEngine parallel = new FIRFilterEngine().setFFTThreshold(Integer.MAX_VALUE).setParallelThreshold(0);
+		FIRFilterEngine fft = new FIRFilterEngine().setFFTThreshold(0).setFFTCost(0);
+
+		double[][] expected = legacy(target, filters);
+		double[] x = target.getTargetValues();
+
+		System.out.println("N = " + N + ", M = " + M + ", L = " + L + ", reps = " + reps);
+		System.out.println(String.format("%12s %12s %12s %12s %12s %12s %12s",
+				"legacy ms", "direct ms", "parallel ms", "fft ms", "series ms", "lazy ms", "fft diff"));
+
+		for(int round = 0; round < 3; round++) {
+
+			long start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+				legacy(target, filters);
+			}
+			double legacyMs = (System.nanoTime() - start)/1E6/reps;
+
+			start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+				sequential.filter(target.getTargetValues(), N, filters);
+			}
+			double directMs = (System.nanoTime() - start)/1E6/reps;
+
+			start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+				parallel.filter(target.getTargetValues(), N, filters);
+			}
+			double parallelMs = (System.nanoTime() - start)/1E6/reps;
+
+			double[][] y = null;
+			start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+				y = fft.filter(x, N, filters);
+			}
+			double fftMs = (System.nanoTime() - start)/1E6/reps;
+
+			start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+				signals.setMDFAFilterCoefficients(M-1, filters[M-1]);
+			}
+			double seriesMs = (System.nanoTime() - start)/1E6/reps;
+
+			start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+
+				lazy.setMDFAFilterCoefficients(M-1, filters[M-1]);
+				for(int i = Math.max(0, N - 300); i < N; i++) {
+					lazy.getSignalValue(i);
+				}
+			}
+			double lazyMs = (System.nanoTime() - start)/1E6/reps;
+
+			double maxDiff = 0;
+			for(int m = 0; m < M; m++) {
+				for(int i = 0; i < N; i++) {
+					maxDiff = Math.max(maxDiff, Math.abs(expected[m][i] - y[m][i]));
+				}
+			}
+
+			System.out.println(String.format("%12.3f %12.3f %12.3f %12.3f %12.3f %12.3f %12.2e",
+					legacyMs, directMs, parallelMs, fftMs, seriesMs, lazyMs, maxDiff));
+		}
+	}
+
+	private static double[][] legacy(TargetSeries target, double[][] filters) {
+
+		int N = target.size();
+		double[][] y = new double[filters.length][N];
+		for(int i = 0; i < N; i++) {
+			for(int m = 0; m < filters.length; m++) {
+
+				int filter_length = Math.min(i+1, filters[m].length);
+				for (int l = 0; l < filter_length; l++) {
+					y[m][i] += filters[m][l]*target.getTargetValue(i - l);
+				}
+			}
+		}
+		return y;
+	}
+}
@@ -0,0 +1,73 @@
+package ch.imetrica.mdfa.benchmark;
+
+import java.util.Random;
+
+import ch.imetrica.mdfa.series.TimeSeries;
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+import ch.imetrica.mdfa.transform.Transform;
+
+/**
+ * 
+ * Compares the direct convolution with the FFT overlap-add convolution 
+ * for fractionally differencing a whole history with 
+ * Transform.adjustFractionalDifference, for increasing numbers of 
+ * weights W, to find where the FFT becomes faster. 
+ * 
+ * Usage: FractionalDifferenceBenchmark [N] [reps] [maxW]
+ * with defaults N = 100000 observations, 5 repetitions and W up to 4096
+ */
+public class FractionalDifferenceBenchmark {
+
+	public static void main(String[] args) {
+		
+		int N    = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int reps = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int maxW = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+		
+		TimeSeries<double[]> history = new TimeSeries<double[]>(N);
+		TimeSeries<Double> prices = BenchmarkData.randomPrices(N, new Random(1));
+		for(TimeSeriesEntry<Double> price : prices) {
+			history.add(price.withValue(new double[]{0, price.getValue()}));
+		}
+		
+		System.out.println("N = " + N + ", reps = " + reps);
+		System.out.println(String.format("%6s %12s %12s %8s %12s", "W", "direct ms", "fft ms", "speedup", "max diff"));
+		
+		for(int W = 8; W <= maxW; W *= 2) {
+			
+			Transform direct = new Transform(0.4, true).setFFTThreshold(Integer.MAX_VALUE);
+			Transform fft = new Transform(0.4, true).setFFTThreshold(0);
+			direct.weight_threshold = fft.weight_threshold = 1E-9;
+			direct.setMaxWeightLength(W);
+			fft.setMaxWeightLength(W);
+			
+			/* warm up */
+			direct.adjustFractionalDifference(history, 0.4);
+			fft.adjustFractionalDifference(history, 0.4);
+			
+			double[] expected = new double[N];
+			long start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+				direct.adjustFractionalDifference(history, 0.4);
+			}
+			double directMs = (System.nanoTime() - start)/1E6/reps;
+			for(int i = 0; i < N; i++) {
+				expected[i] = history.get(i).getValue()[0];
+			}
+			
+			start = System.nanoTime();
+			for(int r = 0; r < reps; r++) {
+				fft.adjustFractionalDifference(history, 0.4);
+			}
+			double fftMs = (System.nanoTime() - start)/1E6/reps;
+			
+			double maxDiff = 0;
+			for(int i = 0; i < N; i++) {
+				maxDiff = Math.max(maxDiff, Math.abs(expected[i] - history.get(i).getValue()[0]));
+			}
+			
+			System.out.println(String.format("%6d %12.2f %12.2f %8.2f %12.2e", 
+					direct.getWeightLength(), directMs, fftMs, directMs/fftMs, maxDiff));
+		}
+	}
+}
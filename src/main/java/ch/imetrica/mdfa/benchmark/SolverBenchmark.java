@@ -0,0 +1,72 @@
+package ch.imetrica.mdfa.benchmark;
+
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.mdfa.MDFAFactory;
+import ch.imetrica.mdfa.mdfa.MDFASolver;
+import ch.imetrica.mdfa.mdfa.SolverMode;
+import ch.imetrica.mdfa.spectraldensity.SpectralBase;
+
+/**
+ * 
+ * Measures the time and allocated bytes of repeated 
+ * MDFASolver.solver() calls at fixed dimensions for 
+ * each solver mode. 
+ * 
+ * Usage: SolverBenchmark [nseries] [L] [N] [reps] [dlambda]
+ * with defaults 10 series, L = 60, N = 2000, 10 repetitions and 
+ * dlambda = 0. If dlambda is not zero, lambda is increased by dlambda 
+ * before each solve, which includes the recomputation of the 
+ * customization in the measurement
+ */
+public class SolverBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		
+		int nseries = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int L       = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		int N       = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		int reps    = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		double dlambda = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+		
+		MDFABase anyMDFA = (new MDFABase())
+				.setSeriesLength(N)
+				.setNumberOfSeries(nseries)
+				.setFilterLength(L)
+				.setLag(-1.0)
+				.setLambda(2.0)
+				.setAlpha(5.0)
+				.setLowpassCutoff(Math.PI/6)
+				.setSmooth(.2)
+				.setDecayStart(.1)
+				.setDecayStrength(.1)
+				.setCrossCorr(.1);
+		
+		double lambda = anyMDFA.getLambda();
+		SpectralBase base = BenchmarkData.randomSpectralBase(nseries, N, 1);
+		
+		System.out.println("nseries = " + nseries + ", L = " + L + ", N = " + N + ", reps = " + reps);
+		
+		for(SolverMode mode : SolverMode.values()) {
+			
+			anyMDFA.setLambda(lambda);
+			MDFASolver solver = new MDFASolver(new MDFAFactory(anyMDFA)).setSolverMode(mode);
+			solver.updateSpectralBase(base);
+			
+			/* warm up, also allocates the workspace */
+			solver.solver();
+			solver.solver();
+			
+			int iterations = 0;
+			AllocationProbe probe = new AllocationProbe("solver " + mode).start();
+			for(int r = 0; r < reps; r++) {
+				
+				if(dlambda != 0) {
+					solver.getMDFAFactory().setLambda(lambda + (r+1)*dlambda);
+				}
+				solver.solver();
+				iterations += solver.getLastIterations();
+			}
+			System.out.println(probe.stop().report(reps) + (mode == SolverMode.ITERATIVE ? "  " + iterations/reps + " it/op" : ""));
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package ch.imetrica.mdfa.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.series.MultivariateFXSeries;
+import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
+
+/**
+ *
+ * Measures the tick-to-signal latency of a MultivariateFXSeries: the
+ * time of one addValue call, from the new observations of the M series
+ * to the latest aggregate signal, with a bounded history after the
+ * filter coefficients are computed. Reports the mean latency and the
+ * bytes allocated per tick with the {@link AllocationProbe}, and the
+ * median and 99th percentile latency of the single ticks.
+ *
+ * The bytes per tick are zero: the target and signal series store
+ * their observations in preallocated columns, so a tick does not
+ * allocate once the history is full.
+ *
+ * Usage: TickLatencyBenchmark [M] [ticks] [history] [threads]
+ * with defaults M = 3 series, 100000 ticks, a history of
+ * 600 observations and the serial update. With more than one thread
+ * the series are updated in parallel, see
+ * {@link MultivariateFXSeries#setParallelUpdate(int)}
+ */
+public class TickLatencyBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		int M       = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int ticks   = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int history = args.length > 2 ? Integer.parseInt(args[2]) : 600;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+		MDFABase[] anyMDFAs = new MDFABase[2];
+		anyMDFAs[0] = (new MDFABase()).setLowpassCutoff(Math.PI/20.0)
+				.setSeriesLength(400)
+				.setFilterLength(40);
+		anyMDFAs[1] = (new MDFABase()).setLowpassCutoff(Math.PI/10.0)
+				.setBandPassCutoff(Math.PI/15.0)
+				.setSeriesLength(400)
+				.setFilterLength(40);
+
+		MultivariateFXSeries fxSeries = new MultivariateFXSeries(anyMDFAs, "yyyy-MM-dd")
+				.setParallelUpdate(threads);
+
+		/* warm up, then measure the mean over ticks and single ticks over ticks more */
+		int N = history + 3*ticks;
+		Random rng = new Random(1);
+		ArrayList<TimeSeries<Double>> prices = newPrices(M, N, rng);
+		for(int m = 0; m < M; m++) {
+			fxSeries.addSeries(new TargetSeries(0.6, true, "S" + m));
+		}
+
+		double[] observation = new double[M];
+		for(int t = 0; t < history; t++) {
+			fxSeries.addValue(prices.get(0).get(t).getDateTime(), column(prices, t, observation));
+		}
+		fxSeries.computeAllFilterCoefficients();
+		fxSeries.setMaxHistory(history);
+
+		/* precomputed time stamps, so the loops only measure the series */
+		long[] times = new long[N];
+		DateTime date = new DateTime(2010, 1, 1, 0, 0);
+		for(int t = 0; t < N; t++) {
+
+			times[t] = date.getMillis();
+			date = date.plusDays(1);
+		}
+
+		System.out.println("M = " + M + ", ticks = " + ticks + ", history = " + history + ", threads = " + threads);
+
+		int t = history;
+		for(int i = 0; i < ticks; i++, t++) {
+			fxSeries.addValue(times[t], prices.get(0).get(t).getDateTime(), column(prices, t, observation));
+		}
+
+		AllocationProbe probe = new AllocationProbe("addValue").start();
+		for(int i = 0; i < ticks; i++, t++) {
+			fxSeries.addValue(times[t], prices.get(0).get(t).getDateTime(), column(prices, t, observation));
+		}
+		probe.stop();
+
+		long[] latency = new long[ticks];
+		for(int i = 0; i < ticks; i++, t++) {
+
+			String dateTime = prices.get(0).get(t).getDateTime();
+			column(prices, t, observation);
+			long start = System.nanoTime();
+			fxSeries.addValue(times[t], dateTime, observation);
+			latency[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(latency);
+
+		System.out.println(probe.report(ticks));
+		System.out.println(String.format("%-30s %12.3f us/tick %12.3f us p50 %12.3f us p99 %16d bytes/tick",
+				"tick latency", probe.getElapsedNanos()/1E3/ticks,
+				latency[ticks/2]/1E3, latency[(int)(ticks*.99)]/1E3,
+				probe.getAllocatedBytes() < 0 ? -1 : probe.getAllocatedBytes()/ticks));
+		System.out.println("latest signal " + Arrays.toString(fxSeries.getLatestSignalEntry().getValue()));
+		fxSeries.close();
+	}
+
+	private static ArrayList<TimeSeries<Double>> newPrices(int M, int N, Random rng) {
+
+		ArrayList<TimeSeries<Double>> prices = new ArrayList<TimeSeries<Double>>(M);
+		for(int m = 0; m < M; m++) {
+			prices.add(BenchmarkData.randomPrices(N, rng));
+		}
+		return prices;
+	}
+
+	private static double[] column(ArrayList<TimeSeries<Double>> prices, int t, double[] observation) {
+
+		for(int m = 0; m < prices.size(); m++) {
+			observation[m] = prices.get(m).get(t).getValue();
+		}
+		return observation;
+	}
+}
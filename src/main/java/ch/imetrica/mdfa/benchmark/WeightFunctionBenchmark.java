@@ -0,0 +1,65 @@
+package ch.imetrica.mdfa.benchmark;
+
+import ch.imetrica.mdfa.customization.Customization;
+import ch.imetrica.mdfa.customization.SmoothingWeight;
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.spectraldensity.SpectralBase;
+import ch.imetrica.mdfa.targetfilter.TargetFilter;
+
+/**
+ * 
+ * Compares the GC pressure and run time of the Complex reference 
+ * implementation of the customization weight function with the 
+ * primitive implementation. 
+ * 
+ * Usage: WeightFunctionBenchmark [nseries] [L] [N] [reps]
+ * with defaults 10 series, L = 60, N = 2000 and 20 repetitions
+ */
+public class WeightFunctionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		
+		int nseries = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int L       = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		int N       = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		int reps    = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		
+		MDFABase anyMDFA = (new MDFABase())
+				.setSeriesLength(N)
+				.setNumberOfSeries(nseries)
+				.setFilterLength(L)
+				.setLag(-2.0)
+				.setLambda(5.0)
+				.setAlpha(10.0)
+				.setLowpassCutoff(Math.PI/6)
+				.setSmooth(.3);
+		
+		SpectralBase base = BenchmarkData.randomSpectralBase(nseries, N, 1);
+		
+		Customization reference = new Customization(anyMDFA, new SmoothingWeight(anyMDFA), new TargetFilter(anyMDFA));
+		reference.setReferenceImplementation(true);
+		
+		Customization primitive = new Customization(anyMDFA, new SmoothingWeight(anyMDFA), new TargetFilter(anyMDFA));
+		
+		System.out.println("nseries = " + nseries + ", L = " + L + ", N = " + N + ", reps = " + reps);
+		
+		/* warm up */
+		for(int r = 0; r < 3; r++) {
+			reference.setSpectralBase(base);
+			primitive.setSpectralBase(base);
+		}
+		
+		AllocationProbe probe = new AllocationProbe("Complex reference").start();
+		for(int r = 0; r < reps; r++) {
+			reference.setSpectralBase(base);
+		}
+		System.out.println(probe.stop().report(reps));
+		
+		probe = new AllocationProbe("primitive").start();
+		for(int r = 0; r < reps; r++) {
+			primitive.setSpectralBase(base);
+		}
+		System.out.println(probe.stop().report(reps));
+	}
+	
+}
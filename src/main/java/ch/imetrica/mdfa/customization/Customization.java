@@ -48,6 +48,9 @@ public class Customization {
 	private MdfaMatrix hIMX;
 	private MdfaMatrix hgamma;
 	
+	/* Use the original Complex implementation of the weight function */
+	private boolean referenceImplementation = false;
+	
 	/**
 	 * Initiate customization with anyMDFA MDFABase object
 	 * 
@@ -171,11 +174,16 @@ public class Customization {
 		int K = (int)(N/2.0);
 		int K1 = K+1;
 		
-		REX = new MdfaMatrix(K1, nseries*L);
-		IMX = new MdfaMatrix(K1, nseries*L);
-		rh_gamma = new MdfaMatrix(K1, 1);
+		/* every entry is overwritten by the weight function, 
+		 * so matrices of the same dimensions are reused */
+		if(!hasDimensions(REX, K1, nseries*L)) {
+			
+			REX = new MdfaMatrix(K1, nseries*L);
+			IMX = new MdfaMatrix(K1, nseries*L);
+			rh_gamma = new MdfaMatrix(K1, 1);
+		}
 		
-		if(anyMDFA.getHybridForecast() > 0) {
+		if(anyMDFA.getHybridForecast() > 0 && !hasDimensions(hREX, K1, nseries*L)) {
 			
 			hREX = new MdfaMatrix(K1, nseries*L);
 			hIMX = new MdfaMatrix(K1, nseries*L);
@@ -184,6 +192,10 @@ public class Customization {
 		
 	}
 	
+	private static boolean hasDimensions(MdfaMatrix mat, int rows, int cols) {
+		return mat != null && mat.getMatrix().numRows() == rows && mat.getMatrix().numColumns() == cols;
+	}
+	
 	/**
 	 *  Compute the basic MDFA weight function which is the 
 	 *  dft or any other frequency information estimation 
@@ -202,6 +214,127 @@ public class Customization {
 			throw new Exception("Number of time series does not equal number of DFTs. Must have " + 
 		                         anyMDFA.getNSeries() + " instead of " + anySpectralDensity.size()); 
 		}
+		
+		if(referenceImplementation) {
+			computeWeightFunctionReference();
+		}
+		else {
+			computeWeightFunctionPrimitive();
+		}
+	}
+	
+	/**
+	 * Computes the weight function on primitive arrays and writes 
+	 * the entries of REX, IMX and the hybrid matrices directly into the 
+	 * column major data of the matrices. The phases of the basis functions
+	 * only depend on L, lag and K and are taken from the shared 
+	 * {@link FrequencyBasis}
+	 */
+	private void computeWeightFunctionPrimitive() {
+		
+		double lambda = anyMDFA.getLambda();
+		double lag    = anyMDFA.getLag();
+		double hybrid = anyMDFA.getHybridForecast();
+		int nseries   = anyMDFA.getNSeries();	
+		int N         = anyMDFA.getSeriesLength();
+		int L         = anyMDFA.getFilterLength();
+		
+		int K = (int)(N/2.0);
+		int K1 = K+1;
+		boolean hasHybrid = hybrid > 0;
+		
+		FrequencyBasis basis = FrequencyBasis.getBasis(L, lag, K);
+		double[] cosPhi = basis.getCos();
+		double[] sinPhi = basis.getSin();
+		
+		double[] cosHybrid = null;
+		double[] sinHybrid = null;
+		if(hasHybrid) {
+			
+			FrequencyBasis hybridBasis = FrequencyBasis.getBasis(L, -1.0, K);
+			cosHybrid = hybridBasis.getCos();
+			sinHybrid = hybridBasis.getSin();
+		}
+		
+		double[] rex = REX.getMatrix().getData();
+		double[] imx = IMX.getMatrix().getData();
+		double[] hrex = hasHybrid ? hREX.getMatrix().getData() : null;
+		double[] himx = hasHybrid ? hIMX.getMatrix().getData() : null;
+		
+		/* exp(-i*arg(target dft)) and the speed weight */
+		double[] argRe = new double[K1];
+		double[] argIm = new double[K1];
+		double[] lambdaWeight = new double[K1];
+		for(int k = 0; k < K1; k++) {
+			
+			Complex t = anySpectralDensity.getTargetSpectralDensity(k);
+			double abs = t.abs();
+			double arg = Math.atan2(t.getImaginary(), t.getReal());
+			
+			rh_gamma.mdfaMatrixSet(k, 0, anyTarget.getValue(k)*abs); 
+			argRe[k] = Math.cos(-arg);
+			argIm[k] = Math.sin(-arg);
+			lambdaWeight[k] = Math.sqrt(1.0 + anyTarget.getValue(k)*lambda);
+			
+			if(hasHybrid) {
+				hgamma.mdfaMatrixSet(k, 0, abs);
+			}
+		}
+		
+		double[] wRe = new double[K1];
+		double[] wIm = new double[K1];
+		double[] swRe = new double[K1];
+		double[] swIm = new double[K1];
+		
+		for(int i = 0; i < nseries; i++) {
+			
+			Complex[] dft = anySpectralDensity.getSpectralDensity(i);
+			for(int j = 0; j < K1; j++) {
+				
+				double dRe = dft[j].getReal();
+				double dIm = dft[j].getImaginary();
+				double smooth = anyWeight.getWeight(j);
+				
+				wRe[j] = dRe*argRe[j] - dIm*argIm[j];
+				wIm[j] = dRe*argIm[j] + dIm*argRe[j];
+				swRe[j] = wRe[j]*smooth;
+				swIm[j] = wIm[j]*smooth;
+			}
+			
+			for(int l = 0; l < L; l++) {
+				
+				int col = (L*i + l)*K1;
+				int tab = l*K1;
+				
+				for(int j = 0; j < K1; j++) {
+					
+					double c = cosPhi[tab + j];
+					double s = sinPhi[tab + j];
+					
+					rex[col + j] = c*swRe[j] - s*swIm[j];
+					imx[col + j] = lambdaWeight[j]*(s*swRe[j] + c*swIm[j]);
+				}
+				
+				if(hasHybrid) {
+					
+					for(int j = 0; j < K1; j++) {
+						
+						double c = cosHybrid[tab + j];
+						double s = sinHybrid[tab + j];
+						
+						hrex[col + j] = hybrid*(c*wRe[j] - s*wIm[j]);
+						himx[col + j] = hybrid*(s*wRe[j] + c*wIm[j]);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The original weight function computed with Complex
+	 * arithmetic. Kept as the reference implementation
+	 */
+	private void computeWeightFunctionReference() {
 	
 		double lambda = anyMDFA.getLambda();
 		double lag    = anyMDFA.getLag();
@@ -270,6 +403,21 @@ public class Customization {
 		}
 	}
 	
+	/**
+	 * Use the original Complex implementation of the weight function
+	 * instead of the primitive one. Mainly used for testing 
+	 * 
+	 * @param reference
+	 *    True for the reference implementation
+	 */
+	public void setReferenceImplementation(boolean reference) {
+		this.referenceImplementation = reference;
+	}
+	
+	public boolean isReferenceImplementation() {
+		return this.referenceImplementation;
+	}
+	
 	public SpectralBase getSpectralBase() {
 		return anySpectralDensity;
 	}
@@ -0,0 +1,88 @@
+package ch.imetrica.mdfa.customization;
+
+import ch.imetrica.mdfa.util.FrequencyBasisCache;
+
+/**
+ * 
+ * The trigonometric basis <code>exp(i*(l-1-lag)*pi*j/K)</code> of the 
+ * customization for l = 1,...,L and j = 0,...,K stored as cos/sin 
+ * tables at index (l-1)*(K+1) + j. 
+ * 
+ * A basis is immutable and only depends on (L, lag, K), so one copy
+ * is shared by all customizations with the same parameters through 
+ * the {@link FrequencyBasisCache}. The hybrid forecast basis 
+ * <code>exp(i*l*pi*j/K)</code> is the basis with lag = -1. 
+ */
+public final class FrequencyBasis {
+
+	private final int L;
+	private final int K;
+	private final double lag;
+	private final double[] cos;
+	private final double[] sin;
+	
+	private FrequencyBasis(int L, double lag, int K) {
+		
+		this.L = L;
+		this.K = K;
+		this.lag = lag;
+		
+		int K1 = K+1;
+		cos = new double[L*K1];
+		sin = new double[L*K1];
+		for(int l = 1; l <= L; l++) {
+			for(int j = 0; j < K1; j++) {
+				
+				double phi = (l-1.0-lag)*Math.PI*j/K;
+				cos[(l-1)*K1 + j] = Math.cos(phi);
+				sin[(l-1)*K1 + j] = Math.sin(phi);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the shared basis for the given parameters, computing 
+	 * it only if it is not in the cache
+	 * 
+	 * @param L Filter length
+	 * @param lag Lag of the filter
+	 * @param K Number of frequencies minus one
+	 * @return The frequency basis
+	 */
+	public static FrequencyBasis getBasis(int L, double lag, int K) {
+		
+		FrequencyBasis basis = FrequencyBasisCache.get(FrequencyBasis.class, "basis", L, lag, K);
+		if(basis == null) {
+			basis = FrequencyBasisCache.putIfAbsent(new FrequencyBasis(L, lag, K), "basis", L, lag, K);
+		}
+		return basis;
+	}
+	
+	/**
+	 * The cos table, must not be modified
+	 * @return cos of the phases
+	 */
+	public double[] getCos() {
+		return cos;
+	}
+	
+	/**
+	 * The sin table, must not be modified
+	 * @return sin of the phases
+	 */
+	public double[] getSin() {
+		return sin;
+	}
+	
+	public int getFilterLength() {
+		return L;
+	}
+	
+	public int getK() {
+		return K;
+	}
+	
+	public double getLag() {
+		return lag;
+	}
+}
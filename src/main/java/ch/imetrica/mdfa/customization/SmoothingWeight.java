@@ -1,6 +1,7 @@
 package ch.imetrica.mdfa.customization;
 
 import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.util.FrequencyBasisCache;
 
 public class SmoothingWeight {
 
@@ -24,9 +25,7 @@ public class SmoothingWeight {
 	public SmoothingWeight(MDFABase anyMDFA) {
 		 
 		int K = (int)(anyMDFA.getSeriesLength()/2);
-		this.smoothingWeight = new double[K+1];
-		
-		computeSmoothingWeight(anyMDFA);
+		this.smoothingWeight = getSmoothingWeight(K, anyMDFA.getLowPassCutoff(), anyMDFA.getAlpha());
 	}
 	
 	
@@ -34,43 +33,42 @@ public class SmoothingWeight {
 	public void computeSmoothingWeight(MDFABase anyMDFA) {
 		
 		int K = smoothingWeight.length-1;
-		double cutoff = anyMDFA.getLowPassCutoff();
-		double alpha = anyMDFA.getAlpha();
-		
-	    int omega_Gamma = (int)(cutoff*K/Math.PI);
-		
-		for(int i = 0; i <= K; i++) {
-			
-			if(i <= omega_Gamma) {
-				smoothingWeight[i] = 1.0;
-			}
-			else {
-				smoothingWeight[i] = Math.pow((i-omega_Gamma)*Math.PI/K + 1.0, alpha/10.0);
-			}
-		}
+		this.smoothingWeight = getSmoothingWeight(K, anyMDFA.getLowPassCutoff(), anyMDFA.getAlpha());
 	}
 	
 	public void updateSmoothingWeight(MDFABase anyMDFA) {
 		
 		int K = (int)(anyMDFA.getSeriesLength()/2);
-		this.smoothingWeight = new double[K+1];
-		double cutoff = anyMDFA.getLowPassCutoff();
-		double alpha = anyMDFA.getAlpha();
+		this.smoothingWeight = getSmoothingWeight(K, anyMDFA.getLowPassCutoff(), anyMDFA.getAlpha());
+	}
+
+	/**
+	 * Gets the smoothing weight from the shared cache of frequency 
+	 * domain objects or computes it if not yet cached. The returned 
+	 * array is shared and must not be modified
+	 */
+	private static double[] getSmoothingWeight(int K, double cutoff, double alpha) {
 		
+		double[] weight = FrequencyBasisCache.get(double[].class, "smooth", K, cutoff, alpha);
+		if(weight != null) {
+			return weight;
+		}
+		
+		weight = new double[K+1];
 	    int omega_Gamma = (int)(cutoff*K/Math.PI);
 		
 		for(int i = 0; i <= K; i++) {
 			
 			if(i <= omega_Gamma) {
-				smoothingWeight[i] = 1.0;
+				weight[i] = 1.0;
 			}
 			else {
-				smoothingWeight[i] = Math.pow((i-omega_Gamma)*Math.PI/K + 1.0, alpha/10.0);
+				weight[i] = Math.pow((i-omega_Gamma)*Math.PI/K + 1.0, alpha/10.0);
 			}
-		}		
+		}
+		return FrequencyBasisCache.putIfAbsent(weight, "smooth", K, cutoff, alpha);
 	}
 
-
 	public double getWeight(int k) {
 
 		return smoothingWeight[k];
@@ -0,0 +1,22 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.IOException;
+
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ *
+ * A stream of bars, read one after the other. Implemented by the 
+ * {@link CsvFeed} and the {@link BinaryFeed} created with the price, 
+ * high, low and close columns.
+ */
+public interface BarFeed {
+
+	/**
+	 * @return The next bar with the values {low, high, price, close},
+	 *         null once the data is exhausted
+	 */
+	TimeSeriesEntry<double[]> getNextBar() throws IOException;
+
+	void close();
+}
@@ -0,0 +1,570 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import com.csvreader.CsvReader;
+
+import ch.imetrica.mdfa.series.ColumnarTimeSeries;
+
+/**
+ *
+ * A compact binary file of market data in columns, read through
+ * memory mapped buffers so that replaying it does not copy or parse
+ * anything: the values are read straight from the page cache.
+ *
+ * The file has a header followed by the columns, each one stored
+ * contiguously in little endian order:
+ *
+ * - header: the magic number "MDFC", the format version, the number of
+ *   rows, the number of value columns, the Joda date format of the time
+ *   stamps and the names of the value columns, padded to 8 bytes
+ * - the time column: one long per row, the epoch milliseconds
+ * - the value columns: one double per row each
+ *
+ * Each column is mapped on its own with {@link FileChannel#map}, which
+ * limits a file to {@link #MAX_ROWS} rows. The mappings stay valid after
+ * {@link #close()} until they are garbage collected.
+ *
+ * Files are written from csv files with {@link #convert(String, String, String, String, String...)},
+ * which streams the records through a {@link FastCsvReader}, from csv
+ * files without header nor time stamps with {@link #convertHeaderless(String, String, DateTime)}
+ * or from a series with {@link #write(String, String[], ColumnarTimeSeries)}.
+ * The {@link BinaryFeed} replays them with the same observation and bar
+ * methods as the {@link CsvFeed}.
+ */
+public class BinaryColumnarFile implements Closeable {
+
+	/** "MDFC" */
+	public static final int MAGIC = 0x4D444643;
+	public static final int VERSION = 1;
+
+	/** The usual extension of the files */
+	public static final String EXTENSION = ".mdfc";
+
+	/** The maximum number of rows, a mapped column is at most 2GB */
+	public static final int MAX_ROWS = Integer.MAX_VALUE/8;
+
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int FIXED_HEADER_BYTES = 4 + 4 + 8 + 4;
+
+	private final RandomAccessFile file;
+	private final String dateFormat;
+	private final DateTimeFormatter formatter;
+	private final String[] names;
+	private final int nrows;
+	private final LongBuffer times;
+	private final DoubleBuffer[] columns;
+
+
+	/**
+	 * Opens a binary columnar file and maps its columns
+	 *
+	 * @param binaryFile
+	 *    The file name/location
+	 * @throws IOException
+	 *    if the file can not be read or is not a binary columnar file
+	 */
+	public BinaryColumnarFile(String binaryFile) throws IOException {
+
+		this.file = new RandomAccessFile(binaryFile, "r");
+
+		try {
+
+			FileChannel channel = file.getChannel();
+			ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_BYTES).order(ORDER);
+			readFully(channel, fixed, 0);
+
+			if(fixed.getInt() != MAGIC) {
+				throw new IOException(binaryFile + " is not a binary columnar file");
+			}
+			int version = fixed.getInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of " + binaryFile);
+			}
+			long rows = fixed.getLong();
+			int ncolumns = fixed.getInt();
+			if(rows < 0 || rows > MAX_ROWS || ncolumns < 1) {
+				throw new IOException("Corrupt header of " + binaryFile + ": " + rows + " rows, " + ncolumns + " columns");
+			}
+			this.nrows = (int)rows;
+
+			/* the date format and the names */
+			long position = FIXED_HEADER_BYTES;
+			String[] strings = new String[ncolumns + 1];
+			ByteBuffer length = ByteBuffer.allocate(2).order(ORDER);
+			for(int i = 0; i < strings.length; i++) {
+
+				length.clear();
+				readFully(channel, length, position);
+				ByteBuffer bytes = ByteBuffer.allocate(length.getShort(0) & 0xFFFF);
+				readFully(channel, bytes, position + 2);
+				strings[i] = new String(bytes.array(), UTF8);
+				position += 2 + bytes.capacity();
+			}
+			this.dateFormat = strings[0];
+			this.formatter = DateTimeFormat.forPattern(dateFormat);
+			this.names = Arrays.copyOfRange(strings, 1, strings.length);
+
+			long offset = align(position);
+			long columnBytes = 8L*nrows;
+			if(channel.size() < offset + (ncolumns + 1)*columnBytes) {
+				throw new IOException(binaryFile + " is truncated: " + channel.size() + " bytes for " + nrows + " rows");
+			}
+
+			this.times = channel.map(FileChannel.MapMode.READ_ONLY, offset, columnBytes).order(ORDER).asLongBuffer();
+			this.columns = new DoubleBuffer[ncolumns];
+			for(int c = 0; c < ncolumns; c++) {
+				offset += columnBytes;
+				columns[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset, columnBytes).order(ORDER).asDoubleBuffer();
+			}
+		}
+		catch(IOException e) {
+			file.close();
+			throw e;
+		}
+		catch(RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * @return True if the file starts with the magic number of a binary columnar file
+	 */
+	public static boolean isBinaryColumnarFile(String fileName) {
+
+		File f = new File(fileName);
+		if(!f.isFile() || f.length() < FIXED_HEADER_BYTES) {
+			return false;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(f));
+			try {
+				return Integer.reverseBytes(in.readInt()) == MAGIC;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Converts the date column and the given value columns of a csv file
+	 * with a header into a binary columnar file. The records are streamed
+	 * in batches, the csv file is read twice: once to count the records
+	 * and once to write them
+	 *
+	 * @param csvFile
+	 *    The csv data file name/location
+	 * @param binaryFile
+	 *    The binary file to write
+	 * @param dateName
+	 *    The column name of the date time stamps
+	 * @param dateFormat
+	 *    Joda format of the date column, for example "yyyy-MM-dd HH:mm:ss"
+	 * @param valueNames
+	 *    The column names of the values, all the other columns of the
+	 *    header if none are given
+	 * @return
+	 *    The number of rows written
+	 * @throws IOException
+	 */
+	public static int convert(String csvFile, String binaryFile, String dateName, String dateFormat, String... valueNames) throws IOException {
+
+		if(valueNames.length == 0) {
+
+			ArrayList<String> others = new ArrayList<String>();
+			CsvReader header = new CsvReader(csvFile);
+			try {
+				header.readHeaders();
+				for(String name : header.getHeaders()) {
+					if(!name.equals(dateName)) {
+						others.add(name);
+					}
+				}
+			}
+			finally {
+				header.close();
+			}
+			valueNames = others.toArray(new String[others.size()]);
+		}
+
+		long[] batchTimes = new long[FastCsvReader.DEFAULT_BATCH_SIZE];
+		double[][] batchValues = new double[valueNames.length][FastCsvReader.DEFAULT_BATCH_SIZE];
+
+		long rows = 0;
+		FastCsvReader reader = new FastCsvReader(csvFile, dateName, dateFormat, valueNames);
+		try {
+			int n;
+			while((n = reader.readBatch(batchTimes, batchValues)) > 0) {
+				rows += n;
+			}
+		}
+		finally {
+			reader.close();
+		}
+		checkRows(rows);
+
+		ColumnWriter writer = new ColumnWriter(binaryFile, (int)rows, dateFormat, valueNames);
+		reader = new FastCsvReader(csvFile, dateName, dateFormat, valueNames);
+		try {
+			int n;
+			while((n = reader.readBatch(batchTimes, batchValues)) > 0) {
+				writer.write(batchTimes, batchValues, n);
+			}
+			writer.finish();
+		}
+		finally {
+			reader.close();
+			writer.close();
+		}
+		return (int)rows;
+	}
+
+	/**
+	 * Converts a csv file without header nor time stamps, such as the
+	 * files read by {@link CsvFeed#CsvFeed(String, DateTime)}. The columns
+	 * are named DataColumn_0, DataColumn_1, ... and the rows get daily
+	 * time stamps from the start date in the format "yyyy-MM-dd". All the
+	 * rows are converted, the first one included
+	 *
+	 * @param csvFile
+	 *    The csv data file name/location
+	 * @param binaryFile
+	 *    The binary file to write
+	 * @param startDate
+	 *    The date of the first row
+	 * @return
+	 *    The number of rows written
+	 * @throws IOException
+	 */
+	public static int convertHeaderless(String csvFile, String binaryFile, DateTime startDate) throws IOException {
+
+		ColumnarTimeSeries series = null;
+		CsvReader reader = new CsvReader(csvFile);
+		int row = 0;
+		try {
+			DateTime dt = startDate;
+			double[] values = null;
+			while(reader.readRecord()) {
+
+				if(series == null) {
+					values = new double[reader.getColumnCount()];
+					series = new ColumnarTimeSeries(values.length, "yyyy-MM-dd");
+				}
+				row++;
+				for(int c = 0; c < values.length; c++) {
+					values[c] = Double.parseDouble(reader.get(c));
+				}
+				series.add(dt.getMillis(), values);
+				dt = dt.plusDays(1);
+			}
+		}
+		catch(NumberFormatException e) {
+			throw new NumberFormatException("Observation " + row + " of " + csvFile + ": " + e.getMessage());
+		}
+		finally {
+			reader.close();
+		}
+
+		if(series == null) {
+			throw new IOException("No data in " + csvFile);
+		}
+
+		String[] names = new String[series.getColumnCount()];
+		for(int c = 0; c < names.length; c++) {
+			names[c] = "DataColumn_" + c;
+		}
+		write(binaryFile, names, series);
+		return series.size();
+	}
+
+	/**
+	 * Writes a series to a binary columnar file with the date format of the series
+	 *
+	 * @param binaryFile
+	 *    The binary file to write
+	 * @param names
+	 *    The names of the columns of the series
+	 * @param series
+	 *    Any columnar series
+	 * @throws IOException
+	 */
+	public static void write(String binaryFile, String[] names, ColumnarTimeSeries series) throws IOException {
+
+		if(names.length != series.getColumnCount()) {
+			throw new IllegalArgumentException(names.length + " names for " + series.getColumnCount() + " columns");
+		}
+		checkRows(series.size());
+
+		int batch = FastCsvReader.DEFAULT_BATCH_SIZE;
+		long[] batchTimes = new long[batch];
+		double[][] batchValues = new double[names.length][batch];
+
+		ColumnWriter writer = new ColumnWriter(binaryFile, series.size(), series.getDatePattern(), names);
+		try {
+			for(int start = 0; start < series.size(); start += batch) {
+
+				int n = Math.min(batch, series.size() - start);
+				for(int i = 0; i < n; i++) {
+					batchTimes[i] = series.getTime(start + i);
+				}
+				for(int c = 0; c < names.length; c++) {
+					System.arraycopy(series.copyColumn(c, start, start + n), 0, batchValues[c], 0, n);
+				}
+				writer.write(batchTimes, batchValues, n);
+			}
+			writer.finish();
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+
+	public int size() {
+		return nrows;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public String[] getColumnNames() {
+		return names.clone();
+	}
+
+	/**
+	 * @return The Joda date format of the time stamps
+	 */
+	public String getDateFormat() {
+		return dateFormat;
+	}
+
+	/**
+	 * The index of the column with the given name
+	 *
+	 * @throws IOException
+	 *    if there is no such column
+	 */
+	public int getColumnIndex(String name) throws IOException {
+
+		for(int c = 0; c < names.length; c++) {
+			if(names[c].equals(name)) {
+				return c;
+			}
+		}
+		throw new IOException("Column " + name + " not found in " + Arrays.toString(names));
+	}
+
+	/**
+	 * Time stamp of row i in epoch milliseconds
+	 */
+	public long getTime(int i) {
+		return times.get(i);
+	}
+
+	/**
+	 * Time stamp of row i formatted with the date format of the file
+	 */
+	public String getDateTime(int i) {
+		return formatter.print(times.get(i));
+	}
+
+	public double getValue(int i, int column) {
+		return columns[column].get(i);
+	}
+
+	/**
+	 * @return A read only view of the mapped time column
+	 */
+	public LongBuffer getTimes() {
+		return times.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return A read only view of a mapped value column
+	 */
+	public DoubleBuffer getColumn(int column) {
+		return columns[column].asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies the given rows of all the columns into a new series
+	 *
+	 * @param from First row, inclusive
+	 * @param to Last row, exclusive
+	 * @return The series with the date format of the file
+	 */
+	public ColumnarTimeSeries toColumnarTimeSeries(int from, int to) {
+
+		if(from < 0 || to > nrows || from > to) {
+			throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of file of size " + nrows);
+		}
+		int n = to - from;
+		long[] t = new long[n];
+		double[][] values = new double[columns.length][n];
+
+		LongBuffer view = getTimes();
+		view.position(from);
+		view.get(t);
+		for(int c = 0; c < columns.length; c++) {
+
+			DoubleBuffer column = getColumn(c);
+			column.position(from);
+			column.get(values[c]);
+		}
+
+		ColumnarTimeSeries series = new ColumnarTimeSeries(columns.length, dateFormat, n);
+		series.addAll(t, values, n);
+		return series;
+	}
+
+	/**
+	 * Closes the file, the mapped columns stay readable
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+
+	private static void checkRows(long rows) throws IOException {
+
+		if(rows > MAX_ROWS) {
+			throw new IOException(rows + " rows do not fit in a binary columnar file, the maximum is " + MAX_ROWS);
+		}
+	}
+
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the binary columnar file");
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Writes the header and then the columns of a file with a known
+	 * number of rows, a batch of rows at a time at the position of
+	 * each column
+	 */
+	private static class ColumnWriter {
+
+		private final RandomAccessFile out;
+		private final FileChannel channel;
+		private final int nrows;
+		private final int ncolumns;
+		private final long dataOffset;
+		private ByteBuffer buffer;
+		private int written;
+
+		ColumnWriter(String binaryFile, int nrows, String dateFormat, String[] names) throws IOException {
+
+			this.nrows = nrows;
+			this.ncolumns = names.length;
+
+			byte[][] strings = new byte[names.length + 1][];
+			strings[0] = dateFormat.getBytes(UTF8);
+			for(int c = 0; c < names.length; c++) {
+				strings[c + 1] = names[c].getBytes(UTF8);
+			}
+
+			int headerBytes = FIXED_HEADER_BYTES;
+			for(byte[] s : strings) {
+				if(s.length > 0xFFFF) {
+					throw new IllegalArgumentException("Name too long: " + s.length + " bytes");
+				}
+				headerBytes += 2 + s.length;
+			}
+			this.dataOffset = align(headerBytes);
+
+			ByteBuffer header = ByteBuffer.allocate((int)dataOffset).order(ORDER);
+			header.putInt(MAGIC).putInt(VERSION).putLong(nrows).putInt(ncolumns);
+			for(byte[] s : strings) {
+				header.putShort((short)s.length).put(s);
+			}
+			header.clear();
+
+			File file = new File(binaryFile);
+			if(file.exists() && !file.delete()) {
+				throw new IOException("Can not overwrite " + binaryFile);
+			}
+			this.out = new RandomAccessFile(file, "rw");
+			this.channel = out.getChannel();
+			out.setLength(dataOffset + 8L*nrows*(ncolumns + 1));
+			writeFully(header, 0);
+		}
+
+		void write(long[] times, double[][] values, int n) throws IOException {
+
+			if(written + n > nrows) {
+				throw new IOException("More than the " + nrows + " rows of the header");
+			}
+			if(buffer == null || buffer.capacity() < 8*n) {
+				buffer = ByteBuffer.allocateDirect(8*Math.max(n, FastCsvReader.DEFAULT_BATCH_SIZE)).order(ORDER);
+			}
+
+			buffer.clear();
+			buffer.asLongBuffer().put(times, 0, n);
+			buffer.limit(8*n);
+			writeFully(buffer, dataOffset + 8L*written);
+
+			for(int c = 0; c < ncolumns; c++) {
+
+				buffer.clear();
+				buffer.asDoubleBuffer().put(values[c], 0, n);
+				buffer.limit(8*n);
+				writeFully(buffer, dataOffset + 8L*nrows*(c + 1) + 8L*written);
+			}
+			written += n;
+		}
+
+		void finish() throws IOException {
+
+			if(written != nrows) {
+				throw new IOException("Wrote " + written + " of the " + nrows + " rows of the header");
+			}
+			channel.force(false);
+		}
+
+		void close() throws IOException {
+			out.close();
+		}
+
+		private void writeFully(ByteBuffer data, long position) throws IOException {
+
+			while(data.hasRemaining()) {
+				position += channel.write(data, position);
+			}
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.IOException;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ *
+ * Replays the memory mapped columns of {@link BinaryColumnarFile}s with
+ * the observation and bar methods of the {@link CsvFeed}. The values are
+ * read from the mapped columns, nothing is parsed, and the entries carry
+ * the epoch time of the file with the time stamp formatted in the date
+ * format of the file, as the entries of a CsvFeed with a date format.
+ *
+ * The constructors follow the ones of the CsvFeed without the date
+ * column, which is the time column of the file.
+ */
+public class BinaryFeed implements ObservationFeed, BarFeed, InfoBarFeed, MultivariateFeed {
+
+	private BinaryColumnarFile[] marketDataFiles;
+	private BinaryColumnarFile marketDataFile;
+	private DateTimeFormatter dateFormat;
+	private String priceColumnName;
+	private String highColumnName;
+	private String lowColumnName;
+	private String closeColumnName;
+	private String noNewsName;
+	private String badNewsName;
+	private String goodNewsName;
+	private int[] columnIndex;
+	private int[] feedIndex;
+	private int row;
+
+
+	public BinaryFeed(String dataFile, String priceName) throws IOException {
+
+		this.marketDataFile = open(dataFile);
+		this.priceColumnName = priceName;
+	}
+
+	public BinaryFeed(String dataFile, String priceName,
+			String highName, String lowName, String closeName) throws IOException {
+
+		this(dataFile, priceName);
+		this.highColumnName = highName;
+		this.lowColumnName = lowName;
+		this.closeColumnName = closeName;
+	}
+
+	public BinaryFeed(String dataFile, String priceName, String highName, String lowName,
+			String closeName, String noNews, String badNews, String goodNews) throws IOException {
+
+		this(dataFile, priceName, highName, lowName, closeName);
+		this.noNewsName = noNews;
+		this.badNewsName = badNews;
+		this.goodNewsName = goodNews;
+	}
+
+	/**
+	 * A feed of the price column of several files, read in
+	 * lockstep by {@link #getNextMultivariateObservation()}
+	 */
+	public BinaryFeed(String[] dataFiles, String priceName) throws IOException {
+
+		this.marketDataFiles = new BinaryColumnarFile[dataFiles.length];
+		for(int i = 0; i < dataFiles.length; i++) {
+			this.marketDataFiles[i] = open(dataFiles[i]);
+		}
+		this.priceColumnName = priceName;
+	}
+
+	/**
+	 * A feed of all the columns of one file, such as the files converted
+	 * with {@link BinaryColumnarFile#convertHeaderless}, read by
+	 * {@link #getNextMultivariateObservation()}
+	 */
+	public BinaryFeed(String dataFile) throws IOException {
+		this.marketDataFile = open(dataFile);
+	}
+
+	private BinaryColumnarFile open(String dataFile) throws IOException {
+
+		BinaryColumnarFile file = new BinaryColumnarFile(dataFile);
+		this.dateFormat = DateTimeFormat.forPattern(file.getDateFormat());
+		return file;
+	}
+
+
+	@Override
+	public TimeSeriesEntry<Double> getNextObservation() throws IOException {
+
+		if(columnIndex == null) {
+			columnIndex = getColumnIndices(marketDataFile, priceColumnName);
+		}
+		if(row >= marketDataFile.size()) {
+			return null;
+		}
+
+		int i = row++;
+		long time = marketDataFile.getTime(i);
+		return new TimeSeriesEntry<Double>(time, dateFormat.print(time), marketDataFile.getValue(i, columnIndex[0]));
+	}
+
+	@Override
+	public TimeSeriesEntry<double[]> getNextBar() throws IOException {
+
+		if(columnIndex == null) {
+			columnIndex = getColumnIndices(marketDataFile, priceColumnName,
+					highColumnName, lowColumnName, closeColumnName);
+		}
+		if(row >= marketDataFile.size()) {
+			return null;
+		}
+
+		int i = row++;
+		double price = marketDataFile.getValue(i, columnIndex[0]);
+		double high = marketDataFile.getValue(i, columnIndex[1]);
+		double low = marketDataFile.getValue(i, columnIndex[2]);
+		double close = marketDataFile.getValue(i, columnIndex[3]);
+
+		long time = marketDataFile.getTime(i);
+		return new TimeSeriesEntry<double[]>(time, dateFormat.print(time), new double[] {low, high, price, close});
+	}
+
+	@Override
+	public TimeSeriesEntry<double[]> getNextInfoBar() throws IOException {
+
+		if(columnIndex == null) {
+			columnIndex = getColumnIndices(marketDataFile, priceColumnName, highColumnName,
+					lowColumnName, closeColumnName, noNewsName, badNewsName, goodNewsName);
+		}
+		if(row >= marketDataFile.size()) {
+			return null;
+		}
+
+		int i = row++;
+		double price = marketDataFile.getValue(i, columnIndex[0]);
+		double high = marketDataFile.getValue(i, columnIndex[1]);
+		double low = marketDataFile.getValue(i, columnIndex[2]);
+		double close = marketDataFile.getValue(i, columnIndex[3]);
+
+		double noNews = marketDataFile.getValue(i, columnIndex[4]);
+		double badNews = marketDataFile.getValue(i, columnIndex[5]);
+		double goodNews = marketDataFile.getValue(i, columnIndex[6]);
+
+		long time = marketDataFile.getTime(i);
+		return new TimeSeriesEntry<double[]>(time, dateFormat.print(time),
+				new double[] {low, high, price, close, noNews, goodNews, badNews});
+	}
+
+	/**
+	 * The next observation of all the columns of the file, or of the
+	 * price column of each file. As with the CsvFeed, the files are read
+	 * in lockstep and a price whose time differs from the time of the
+	 * first file is -1.0
+	 */
+	@Override
+	public TimeSeriesEntry<double[]> getNextMultivariateObservation() throws Exception {
+
+		if(marketDataFiles == null) {
+
+			if(row >= marketDataFile.size()) {
+				return null;
+			}
+
+			int i = row++;
+			double[] prices = new double[marketDataFile.getColumnCount()];
+			for(int c = 0; c < prices.length; c++) {
+				prices[c] = marketDataFile.getValue(i, c);
+			}
+			long time = marketDataFile.getTime(i);
+			return new TimeSeriesEntry<double[]>(time, dateFormat.print(time), prices);
+		}
+
+		if(feedIndex == null) {
+
+			feedIndex = new int[marketDataFiles.length];
+			for(int f = 0; f < marketDataFiles.length; f++) {
+				feedIndex[f] = marketDataFiles[f].getColumnIndex(priceColumnName);
+			}
+		}
+
+		for(int f = 0; f < marketDataFiles.length; f++) {
+			if(row >= marketDataFiles[f].size()) {
+				return null;
+			}
+		}
+
+		int i = row++;
+
+		long time = marketDataFiles[0].getTime(i);
+		double[] prices = new double[marketDataFiles.length];
+		for(int f = 0; f < marketDataFiles.length; f++) {
+
+			prices[f] = marketDataFiles[f].getValue(i, feedIndex[f]);
+			if(marketDataFiles[f].getTime(i) != time) {
+				prices[f] = -1.0;
+			}
+		}
+		return new TimeSeriesEntry<double[]>(time, dateFormat.print(time), prices);
+	}
+
+	/**
+	 * @return The number of observations left in the feed
+	 */
+	public int remaining() {
+
+		if(marketDataFiles == null) {
+			return Math.max(0, marketDataFile.size() - row);
+		}
+		int size = Integer.MAX_VALUE;
+		for(BinaryColumnarFile file : marketDataFiles) {
+			size = Math.min(size, file.size());
+		}
+		return Math.max(0, size - row);
+	}
+
+	/**
+	 * Starts the replay again from the first observation
+	 */
+	public void rewind() {
+		row = 0;
+	}
+
+	@Override
+	public void close() {
+
+		try {
+			if(marketDataFile != null) {
+				marketDataFile.close();
+			}
+			if(marketDataFiles != null) {
+				for(BinaryColumnarFile file : marketDataFiles) {
+					file.close();
+				}
+			}
+		}
+		catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static int[] getColumnIndices(BinaryColumnarFile file, String... names) throws IOException {
+
+		int[] indices = new int[names.length];
+		for(int i = 0; i < names.length; i++) {
+			indices[i] = file.getColumnIndex(names[i]);
+		}
+		return indices;
+	}
+}
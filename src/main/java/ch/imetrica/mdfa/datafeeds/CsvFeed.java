@@ -11,6 +11,7 @@ import org.joda.time.format.DateTimeFormatter;
 
 import com.csvreader.CsvReader;
 
+import ch.imetrica.mdfa.series.ColumnarTimeSeries;
 import ch.imetrica.mdfa.series.TimeSeries;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
 
@@ -23,11 +24,17 @@ import ch.imetrica.mdfa.series.TimeSeriesEntry;
  * The data file must be standard comma separated files with a datetime
  * stamp column and at least one "price" value column
  * 
+ * Large files can be converted once to a {@link BinaryColumnarFile}
+ * and replayed with the same methods by a {@link BinaryFeed}. Several 
+ * files are read in lockstep by getNextMultivariateObservation, files 
+ * with different calendars are merged on their time stamps by a 
+ * {@link MergedFeed}
+ * 
  * 
  * @author Christian D. Blakely (clisztian@gmail.com)
  *
  */
-public class CsvFeed {
+public class CsvFeed implements ObservationFeed, BarFeed, InfoBarFeed, MultivariateFeed {
 
 		
 	private CsvReader[] marketDataFeeds;
@@ -42,7 +49,10 @@ public class CsvFeed {
 	private String goodNewsName;
 	private DateTime dt;
 	private DateTimeFormatter dtfOut;
+	private DateTimeFormatter dateFormat;
 	private String[] headers;
+	private int[] columnIndex;
+	private int[][] feedIndex;
 	
 	
 	
@@ -187,9 +197,33 @@ public class CsvFeed {
 	 * @return
 	 */
 	public static TimeSeries<Double> getChunkOfData(int start, int MAX_OBS, String dataFile, String dateName, String priceName) {
+		return getChunkOfData(start, MAX_OBS, dataFile, dateName, priceName, null);
+	}
+	
+	/**
+	 * 
+	 * Gets a chunk of MAX_OBS time series data from a csv file from the given start,
+	 * with the time stamps parsed once to epoch milliseconds with the given date format
+	 * 
+	 * @param start
+	 *    The first observation in the csv file that will be used
+	 * @param MAX_OBS
+	 *    The total number of observations
+	 * @param dataFile
+	 *    The csv data file name/location
+	 * @param dateName
+	 *    The column name of the raw time series to extract    
+	 * @param priceName
+	 *    The column name of the raw time series to extract
+	 * @param dateFormat
+	 *    Joda format of the date column, or null to keep only the String dates
+	 * @return
+	 */
+	public static TimeSeries<Double> getChunkOfData(int start, int MAX_OBS, String dataFile, String dateName, String priceName, String dateFormat) {
 		
+		DateTimeFormatter formatter = (dateFormat == null) ? null : DateTimeFormat.forPattern(dateFormat);
 		TimeSeries<Double> rawSeries = new TimeSeries<Double>();
-		CsvReader marketDataFeed;
+		CsvReader marketDataFeed = null;
 		
 		int nObs = 0;
 		
@@ -198,22 +232,28 @@ public class CsvFeed {
 			 /* Read data market feed from CSV filer and it's headers*/	
 			 marketDataFeed = new CsvReader(dataFile);
 			 marketDataFeed.readHeaders();
+			 
+			 int priceIndex = getColumnIndex(marketDataFeed, priceName);
+			 int dateIndex = getColumnIndex(marketDataFeed, dateName);
 
-			 while (marketDataFeed.readRecord()) {
+			 while (nObs < MAX_OBS && marketDataFeed.readRecord()) {
 				 
-				double price = (new Double(marketDataFeed.get(priceName))).doubleValue();
-				String date_stamp = marketDataFeed.get(dateName);				
-				rawSeries.add(date_stamp, price);
+				double price = Double.parseDouble(marketDataFeed.get(priceIndex));
+				String date_stamp = marketDataFeed.get(dateIndex);				
+				rawSeries.add(newEntry(formatter, date_stamp, price));
 				
 				nObs++;
-				
-				if(nObs == MAX_OBS) break;
 			 }			 
 		}
-		catch (FileNotFoundException e) { e.printStackTrace(); throw new RuntimeException(e); } 
-		catch (IOException e) { e.printStackTrace(); throw new RuntimeException(e);} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		catch (FileNotFoundException e) { throw new RuntimeException(e); } 
+		catch (IOException e) { throw new RuntimeException(e); }
+		catch (NumberFormatException e) { 
+			throw new NumberFormatException("Observation " + (nObs + 1) + " of " + dataFile + ": " + e.getMessage());
+		}
+		finally {
+			if(marketDataFeed != null) {
+				marketDataFeed.close();
+			}
 		}
 		return rawSeries;		
 	}
@@ -237,10 +277,14 @@ public class CsvFeed {
 			return null;
 		}
 		
-		double price = (new Double(marketDataFeed.get(priceColumnName))).doubleValue();
-		String date_stamp = marketDataFeed.get(dateColumnName);		
+		if(columnIndex == null) {
+			columnIndex = getColumnIndices(marketDataFeed, dateColumnName, priceColumnName);
+		}
+		
+		double price = Double.parseDouble(marketDataFeed.get(columnIndex[1]));
+		String date_stamp = marketDataFeed.get(columnIndex[0]);		
 			
-		return (new TimeSeriesEntry<Double>(date_stamp, price));
+		return newEntry(dateFormat, date_stamp, price);
 	}
 	
 	
@@ -251,15 +295,20 @@ public class CsvFeed {
 			return null;
 		}
 		
-		double price = (new Double(marketDataFeed.get(priceColumnName))).doubleValue();
-		double high = (new Double(marketDataFeed.get(highColumnName))).doubleValue();
-		double low = (new Double(marketDataFeed.get(lowColumnName))).doubleValue();		
-		double close = (new Double(marketDataFeed.get(closeColumnName))).doubleValue();		
-		String date_stamp = marketDataFeed.get(dateColumnName);		
+		if(columnIndex == null) {
+			columnIndex = getColumnIndices(marketDataFeed, dateColumnName, priceColumnName, 
+					highColumnName, lowColumnName, closeColumnName);
+		}
+		
+		double price = Double.parseDouble(marketDataFeed.get(columnIndex[1]));
+		double high = Double.parseDouble(marketDataFeed.get(columnIndex[2]));
+		double low = Double.parseDouble(marketDataFeed.get(columnIndex[3]));		
+		double close = Double.parseDouble(marketDataFeed.get(columnIndex[4]));		
+		String date_stamp = marketDataFeed.get(columnIndex[0]);		
 		
 		double[] myBar = new double[] {low, high, price, close};
 		
-		return (new TimeSeriesEntry<double[]>(date_stamp, myBar));
+		return newEntry(dateFormat, date_stamp, myBar);
 	}
 	
 	public TimeSeriesEntry<double[]> getNextInfoBar() throws NumberFormatException, IOException {
@@ -269,20 +318,25 @@ public class CsvFeed {
 			return null;
 		}
 		
-		double price = (new Double(marketDataFeed.get(priceColumnName))).doubleValue();
-		double high = (new Double(marketDataFeed.get(highColumnName))).doubleValue();
-		double low = (new Double(marketDataFeed.get(lowColumnName))).doubleValue();		
-		double close = (new Double(marketDataFeed.get(closeColumnName))).doubleValue();		
+		if(columnIndex == null) {
+			columnIndex = getColumnIndices(marketDataFeed, dateColumnName, priceColumnName, 
+					highColumnName, lowColumnName, closeColumnName, noNewsName, badNewsName, goodNewsName);
+		}
+		
+		double price = Double.parseDouble(marketDataFeed.get(columnIndex[1]));
+		double high = Double.parseDouble(marketDataFeed.get(columnIndex[2]));
+		double low = Double.parseDouble(marketDataFeed.get(columnIndex[3]));		
+		double close = Double.parseDouble(marketDataFeed.get(columnIndex[4]));		
 		
-		double noNews = (new Double(marketDataFeed.get(noNewsName))).doubleValue();
-		double badNews = (new Double(marketDataFeed.get(badNewsName))).doubleValue();
-		double goodNews = (new Double(marketDataFeed.get(goodNewsName))).doubleValue();		
+		double noNews = Double.parseDouble(marketDataFeed.get(columnIndex[5]));
+		double badNews = Double.parseDouble(marketDataFeed.get(columnIndex[6]));
+		double goodNews = Double.parseDouble(marketDataFeed.get(columnIndex[7]));		
 		
-		String date_stamp = marketDataFeed.get(dateColumnName);		
+		String date_stamp = marketDataFeed.get(columnIndex[0]);		
 		
 		double[] myBar = new double[] {low, high, price, close, noNews, goodNews, badNews};
 		
-		return (new TimeSeriesEntry<double[]>(date_stamp, myBar));
+		return newEntry(dateFormat, date_stamp, myBar);
 	}
 	
 	
@@ -296,20 +350,22 @@ public class CsvFeed {
 			}
 			
 			String date_stamp;
+			long time;
 			double[] prices = new double[headers.length];
 			
 			if(marketDataFeed.readRecord()) {
 				
 				for(int i = 0; i < headers.length; i++) {					
-					prices[i] = (new Double(marketDataFeed.get(headers[i]))).doubleValue();
+					prices[i] = Double.parseDouble(marketDataFeed.get(i));
 				}
 				date_stamp = dt.toString(dtfOut);
+				time = dt.getMillis();
 				dt = dt.plusDays(1);
 			}
 			else {
 				return null;
 			}
-			return (new TimeSeriesEntry<double[]>(date_stamp, prices));
+			return (new TimeSeriesEntry<double[]>(time, date_stamp, prices));
 		}
 		else {
 		
@@ -320,15 +376,23 @@ public class CsvFeed {
 		 double price;
 		 String date_stamp;
 		 double[] prices = new double[marketDataFeeds.length];
-		 String[] timestamps = new String[marketDataFeeds.length];
+		 TimeSeriesEntry<double[]> observation;
+		
+		 if(feedIndex == null) {
+			 
+			 feedIndex = new int[marketDataFeeds.length][];
+			 for(int i = 0; i < marketDataFeeds.length; i++) {
+				 feedIndex[i] = getColumnIndices(marketDataFeeds[i], dateColumnName, priceColumnName);
+			 }
+		 }
 		
 		 if(marketDataFeeds[0].readRecord()) {
 		
-			price = (new Double(marketDataFeeds[0].get(priceColumnName))).doubleValue();
-			date_stamp = marketDataFeeds[0].get(dateColumnName);	
+			price = Double.parseDouble(marketDataFeeds[0].get(feedIndex[0][1]));
+			date_stamp = marketDataFeeds[0].get(feedIndex[0][0]);	
 			
 			prices[0] = price;
-			timestamps[0] = date_stamp;
+			observation = newEntry(dateFormat, date_stamp, prices);
 		 }
 		 else {
 			return null;
@@ -338,9 +402,9 @@ public class CsvFeed {
 			
 			if(marketDataFeeds[i].readRecord()) {
 				
-				price = (new Double(marketDataFeeds[i].get(priceColumnName))).doubleValue();
-				date_stamp = marketDataFeeds[i].get(dateColumnName);		
-				if(!timestamps[0].equals(date_stamp)) {
+				price = Double.parseDouble(marketDataFeeds[i].get(feedIndex[i][1]));
+				date_stamp = marketDataFeeds[i].get(feedIndex[i][0]);		
+				if(!isSameTime(observation, date_stamp)) {
 					price = -1.0;
 				}
 				prices[i] = price;
@@ -349,10 +413,97 @@ public class CsvFeed {
 				return null;
 			}		
 		 }		
-		 return (new TimeSeriesEntry<double[]>(timestamps[0], prices));
+		 return observation;
 		}
 	}
 	
+	/**
+	 * Sets the Joda format of the date column. With a date format,
+	 * the dates of the observations are parsed once here to epoch 
+	 * milliseconds and the returned entries carry both the epoch time 
+	 * and the String date, so that the series can be aligned 
+	 * without parsing or comparing Strings
+	 * 
+	 * @param format
+	 *    The format of the date column, for example "yyyy-MM-dd HH:mm:ss"
+	 * @return
+	 *    This CsvFeed
+	 */
+	public CsvFeed setDateFormat(String format) {
+		
+		this.dateFormat = DateTimeFormat.forPattern(format);
+		return this;
+	}
+	
+	/**
+	 * 
+	 * Reads the date column and the given value columns of a whole csv 
+	 * file into a columnar series with the {@link FastCsvReader}, which 
+	 * parses the records without creating an entry, a String date or a 
+	 * boxed value per record. This is the fast path for replaying large 
+	 * files of ticks or bars
+	 * 
+	 * @param dataFile
+	 *    The csv data file name/location
+	 * @param dateName
+	 *    The column name of the date time stamps
+	 * @param dateFormat
+	 *    Joda format of the date column
+	 * @param valueNames
+	 *    The column names of the values
+	 * @return
+	 *    The series with one column per value name
+	 * @throws IOException
+	 */
+	public static ColumnarTimeSeries getColumnarData(String dataFile, String dateName, String dateFormat, String... valueNames) throws IOException {
+		
+		FastCsvReader reader = new FastCsvReader(dataFile, dateName, dateFormat, valueNames);
+		try {
+			return reader.readAll();
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * The index of the column with the given name, looked up once
+	 * instead of for each field of each record 
+	 */
+	private static int getColumnIndex(CsvReader reader, String name) throws IOException {
+		
+		int index = reader.getIndex(name);
+		if(index < 0) {
+			throw new IOException("Column " + name + " not found in header " + Arrays.toString(reader.getHeaders()));
+		}
+		return index;
+	}
+	
+	private static int[] getColumnIndices(CsvReader reader, String... names) throws IOException {
+		
+		int[] indices = new int[names.length];
+		for(int i = 0; i < names.length; i++) {
+			indices[i] = getColumnIndex(reader, names[i]);
+		}
+		return indices;
+	}
+	
+	private static <V> TimeSeriesEntry<V> newEntry(DateTimeFormatter formatter, String date_stamp, V value) {
+		
+		if(formatter == null) {
+			return new TimeSeriesEntry<V>(date_stamp, value);
+		}
+		return new TimeSeriesEntry<V>(formatter.parseMillis(date_stamp), date_stamp, value);
+	}
+	
+	private boolean isSameTime(TimeSeriesEntry<?> observation, String date_stamp) {
+		
+		if(observation.hasTime()) {
+			return observation.getTime() == dateFormat.parseMillis(date_stamp);
+		}
+		return observation.getDateTime().equals(date_stamp);
+	}
+	
 	public CsvReader[] getMarketDataFeeds() {
 		return marketDataFeeds;
 	}
@@ -366,6 +517,14 @@ public class CsvFeed {
 	}
 
 	public void close() {
-		marketDataFeed.close();		
+		
+		if(marketDataFeed != null) {
+			marketDataFeed.close();
+		}
+		if(marketDataFeeds != null) {
+			for(CsvReader feed : marketDataFeeds) {
+				feed.close();
+			}
+		}
 	}
 }
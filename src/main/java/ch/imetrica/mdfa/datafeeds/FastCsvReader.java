@@ -0,0 +1,816 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import ch.imetrica.mdfa.series.ColumnarTimeSeries;
+
+/**
+ *
+ * A reader for large market data files in csv format that fills
+ * primitive columns in batches, for replaying years of ticks or bars.
+ * Compared to the {@link CsvFeed}, which builds an entry with a String
+ * date and boxed values for each record:
+ *
+ * - the date column and the value columns are looked up in the
+ *   header once, the other columns of a record are skipped
+ * - the records are parsed directly from a reused byte buffer, without
+ *   creating a String per field. Numbers with at most 18 significant
+ *   digits and a decimal exponent of at most 22, which covers the
+ *   17 digits printed for a double, are converted exactly (the result
+ *   is the same as Double.parseDouble), other numbers fall back to
+ *   Double.parseDouble
+ * - dates with a numeric pattern of fixed width (such as "yyyy-MM-dd"
+ *   or "yyyy-MM-dd HH:mm:ss") are converted to epoch milliseconds from
+ *   the digits with the chronology of the date format, other patterns
+ *   and dates that do not match it are parsed by the date format
+ * - the values are written to the arrays of a batch, or appended to a
+ *   {@link ColumnarTimeSeries} a batch at a time
+ *
+ * Fields may be enclosed in double quotes and surrounded by spaces.
+ * Quoted fields must not contain quotes. The file is read as ASCII.
+ */
+public class FastCsvReader implements Closeable {
+
+	/** Default number of records per batch */
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+	private static final int DATE_FIELD = -2;
+	private static final int SKIPPED_FIELD = -1;
+
+	private static final double[] POW10 = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private static final long[] POW5 = new long[23];
+	static {
+		POW5[0] = 1;
+		for(int i = 1; i < POW5.length; i++) {
+			POW5[i] = 5*POW5[i - 1];
+		}
+	}
+
+	/* date pattern tokens */
+	private static final int LITERAL = 0;
+	private static final int YEAR = 1;
+	private static final int MONTH = 2;
+	private static final int DAY = 3;
+	private static final int HOUR = 4;
+	private static final int MINUTE = 5;
+	private static final int SECOND = 6;
+	private static final int MILLIS = 7;
+
+	private final InputStream in;
+	private final String dateFormat;
+	private final DateTimeFormatter formatter;
+	private final Chronology chronology;
+	private final int[] tokenKind;
+	private final int[] tokenWidth;
+
+	private final String[] headers;
+	private final int[] fieldRole;
+	private final int ncolumns;
+	private final int nfields;
+
+	private byte[] buffer;
+	private int pos;
+	private int limit;
+	private boolean eof = false;
+
+	private long bytesRead;
+	private long rowsRead;
+
+	/** Low 64 bits of the last 128 bit product */
+	private long low;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private long[] batchTimes;
+	private double[][] batchValues;
+
+
+	/**
+	 * Opens a csv file with a header and resolves the columns
+	 *
+	 * @param dataFile
+	 *    The csv data file name/location
+	 * @param dateName
+	 *    The column name of the date time stamps
+	 * @param dateFormat
+	 *    Joda format of the date column, for example "yyyy-MM-dd HH:mm:ss"
+	 * @param valueNames
+	 *    The column names of the values to read, in the order of the columns
+	 * @throws IOException
+	 *    if the file can not be read or a column is not in the header
+	 */
+	public FastCsvReader(String dataFile, String dateName, String dateFormat, String... valueNames) throws IOException {
+		this(new FileInputStream(dataFile), DEFAULT_BUFFER_SIZE, dateName, dateFormat, valueNames);
+	}
+
+	/**
+	 * Reads csv data with a header from a stream, which is closed with the reader
+	 */
+	public FastCsvReader(InputStream in, String dateName, String dateFormat, String... valueNames) throws IOException {
+		this(in, DEFAULT_BUFFER_SIZE, dateName, dateFormat, valueNames);
+	}
+
+	FastCsvReader(InputStream in, int bufferSize, String dateName, String dateFormat, String... valueNames) throws IOException {
+
+		if(valueNames.length < 1) {
+			throw new IllegalArgumentException("At least one value column is needed");
+		}
+
+		this.in = in;
+		this.buffer = new byte[Math.max(16, bufferSize)];
+		this.dateFormat = dateFormat;
+		this.formatter = DateTimeFormat.forPattern(dateFormat);
+
+		Chronology chrono = DateTimeUtils.getChronology(formatter.getChronology());
+		if(formatter.getZone() != null) {
+			chrono = chrono.withZone(formatter.getZone());
+		}
+		this.chronology = chrono;
+
+		int[][] tokens = compileDatePattern(dateFormat);
+		this.tokenKind = (tokens == null) ? null : tokens[0];
+		this.tokenWidth = (tokens == null) ? null : tokens[1];
+
+		int end = nextLine();
+		if(end < 0) {
+			in.close();
+			throw new IOException("No header found");
+		}
+		this.headers = readHeader(end);
+		this.ncolumns = valueNames.length;
+
+		int dateIndex = indexOf(dateName);
+		int[] columnIndex = new int[ncolumns];
+		int last = dateIndex;
+		for(int c = 0; c < ncolumns; c++) {
+			columnIndex[c] = indexOf(valueNames[c]);
+			last = Math.max(last, columnIndex[c]);
+		}
+
+		this.fieldRole = new int[last + 1];
+		Arrays.fill(fieldRole, SKIPPED_FIELD);
+		fieldRole[dateIndex] = DATE_FIELD;
+		for(int c = 0; c < ncolumns; c++) {
+			fieldRole[columnIndex[c]] = c;
+		}
+		this.nfields = last + 1;
+	}
+
+
+	/**
+	 * Sets the number of records read into the internal
+	 * batch by {@link #readBatch(ColumnarTimeSeries)}
+	 *
+	 * @param n
+	 *    Number of records, at least 1
+	 * @return
+	 *    This reader
+	 */
+	public FastCsvReader setBatchSize(int n) {
+
+		if(n < 1) {
+			throw new IllegalArgumentException("The batch size must be positive: " + n);
+		}
+		this.batchSize = n;
+		this.batchTimes = null;
+		this.batchValues = null;
+		return this;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return The number of value columns read
+	 */
+	public int getColumnCount() {
+		return ncolumns;
+	}
+
+	/**
+	 * @return The column names of the header of the file
+	 */
+	public String[] getHeaders() {
+		return headers.clone();
+	}
+
+	public String getDateFormat() {
+		return dateFormat;
+	}
+
+	/**
+	 * @return The number of bytes read from the file, the header included
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return The number of records read
+	 */
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+
+	/**
+	 * Reads the next records into the given arrays, at most times.length
+	 *
+	 * @param times
+	 *    Receives the epoch milliseconds of the records
+	 * @param values
+	 *    One array per value column, at least as long as times
+	 * @return
+	 *    The number of records read, 0 at the end of the file
+	 * @throws IOException
+	 *    if the file can not be read or a record does not have all the columns
+	 */
+	public int readBatch(long[] times, double[][] values) throws IOException {
+
+		if(values.length < ncolumns) {
+			throw new IllegalArgumentException("Expected " + ncolumns + " columns, got " + values.length);
+		}
+
+		int n = 0;
+		while(n < times.length) {
+
+			int end = nextLine();
+			if(end < 0) {
+				break;
+			}
+			if(end > pos && readRecord(end, times, values, n)) {
+				n++;
+			}
+			pos = Math.min(end + 1, limit);
+		}
+		return n;
+	}
+
+	/**
+	 * Appends the next batch of records to the series
+	 *
+	 * @param series
+	 *    A series with {@link #getColumnCount()} columns
+	 * @return
+	 *    The number of records read, 0 at the end of the file
+	 * @throws IOException
+	 */
+	public int readBatch(ColumnarTimeSeries series) throws IOException {
+
+		if(batchTimes == null) {
+			batchTimes = new long[batchSize];
+			batchValues = new double[ncolumns][batchSize];
+		}
+		int n = readBatch(batchTimes, batchValues);
+		series.addAll(batchTimes, batchValues, n);
+		return n;
+	}
+
+	/**
+	 * Reads all the remaining records into a new series
+	 *
+	 * @return
+	 *    The series with the date format of this reader
+	 * @throws IOException
+	 */
+	public ColumnarTimeSeries readAll() throws IOException {
+
+		ColumnarTimeSeries series = new ColumnarTimeSeries(ncolumns, dateFormat, batchSize);
+		while(readBatch(series) > 0) {
+		}
+		series.trimToSize();
+		return series;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+
+	/**
+	 * Makes sure the buffer holds a whole line from pos on
+	 *
+	 * @return
+	 *    The index of the end of the line (the new line character or
+	 *    limit), -1 at the end of the file
+	 */
+	private int nextLine() throws IOException {
+
+		int from = pos;
+		while(true) {
+
+			for(int i = from; i < limit; i++) {
+				if(buffer[i] == '\n') {
+					return i;
+				}
+			}
+			if(eof) {
+				return (pos < limit) ? limit : -1;
+			}
+
+			/* move the start of the line to the front, or grow for a long line */
+			from = limit - pos;
+			if(pos == 0 && limit == buffer.length) {
+				buffer = Arrays.copyOf(buffer, 2*buffer.length);
+			}
+			else {
+				System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+				limit -= pos;
+				pos = 0;
+			}
+
+			int n = in.read(buffer, limit, buffer.length - limit);
+			if(n < 0) {
+				eof = true;
+			}
+			else {
+				limit += n;
+				bytesRead += n;
+			}
+		}
+	}
+
+	/**
+	 * Parses the fields of the line [pos, end) into row n of the batch
+	 *
+	 * @return False if the line is blank
+	 */
+	private boolean readRecord(int end, long[] times, double[][] values, int n) throws IOException {
+
+		if(end > pos && buffer[end - 1] == '\r') {
+			end--;
+		}
+		if(isBlank(pos, end)) {
+			return false;
+		}
+
+		int field = 0;
+		int i = pos;
+		while(field < nfields) {
+
+			if(i > end) {
+				throw new IOException("Record " + (rowsRead + 1) + " has only " + field + " columns");
+			}
+
+			/* bounds of the field without spaces and quotes */
+			int from = i;
+			while(from < end && buffer[from] == ' ') {
+				from++;
+			}
+			int to;
+			int next;
+			if(from < end && buffer[from] == '"') {
+
+				from++;
+				to = from;
+				while(to < end && buffer[to] != '"') {
+					to++;
+				}
+				next = to;
+				while(next < end && buffer[next] != ',') {
+					next++;
+				}
+			}
+			else {
+
+				next = from;
+				while(next < end && buffer[next] != ',') {
+					next++;
+				}
+				to = next;
+				while(to > from && buffer[to - 1] == ' ') {
+					to--;
+				}
+			}
+
+			int role = fieldRole[field];
+			if(role == DATE_FIELD) {
+				times[n] = parseTime(from, to);
+			}
+			else if(role >= 0) {
+				values[role][n] = parseDouble(from, to);
+			}
+
+			field++;
+			i = next + 1;
+		}
+
+		rowsRead++;
+		return true;
+	}
+
+	private boolean isBlank(int from, int to) {
+
+		for(int i = from; i < to; i++) {
+			if(buffer[i] != ' ' && buffer[i] != '\t') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Converts the number in [from, to) with a significand s of at most
+	 * 18 digits and a decimal exponent k with |k| <= 22. If s is below
+	 * 2^53, s and 10^k are exact doubles and one multiplication or division
+	 * rounds correctly. Otherwise the double computed that way is at most
+	 * one unit in the last place away, and it is corrected by comparing
+	 * s*10^k exactly with the midpoints to its neighbours
+	 */
+	private double parseDouble(int from, int to) {
+
+		int i = from;
+		boolean negative = false;
+		if(i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+
+		long significand = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+		boolean exact = true;
+
+		for(; i < to && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+
+			any = true;
+			if(digits < 18) {
+				significand = 10*significand + (buffer[i] - '0');
+				if(significand != 0) {
+					digits++;
+				}
+			}
+			else {
+				exact = false;
+			}
+		}
+		if(i < to && buffer[i] == '.') {
+
+			for(i++; i < to && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+
+				any = true;
+				if(digits < 18) {
+					significand = 10*significand + (buffer[i] - '0');
+					exponent--;
+					if(significand != 0) {
+						digits++;
+					}
+				}
+				else if(buffer[i] != '0') {
+					exact = false;
+				}
+			}
+		}
+		if(any && i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+
+			i++;
+			boolean negativeExponent = false;
+			if(i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+				negativeExponent = buffer[i] == '-';
+				i++;
+			}
+			int e = 0;
+			boolean expDigits = false;
+			for(; i < to && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+
+				expDigits = true;
+				if(e < 10000) {
+					e = 10*e + (buffer[i] - '0');
+				}
+			}
+			if(!expDigits) {
+				any = false;
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+
+		if(!any || i != to || !exact || exponent < -22 || exponent > 22) {
+			return parseDoubleSlow(from, to);
+		}
+
+		double value = (double) significand;
+		if(exponent > 0) {
+			value *= POW10[exponent];
+		}
+		else if(exponent < 0) {
+			value /= POW10[-exponent];
+		}
+		if(significand > (1L << 53)) {
+
+			value = roundCorrectly(significand, exponent, value);
+			if(Double.isNaN(value)) {
+				return parseDoubleSlow(from, to);
+			}
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Corrects the approximation d of s*10^k to the nearest double, ties
+	 * to even, by comparing s*10^k with the midpoints between d and its
+	 * neighbours
+	 *
+	 * @return The correctly rounded double, NaN if it can not be decided
+	 */
+	private double roundCorrectly(long s, int k, double d) {
+
+		for(int step = 0; step < 4; step++) {
+
+			long bits = Double.doubleToRawLongBits(d);
+			int biased = (int)(bits >>> 52);
+			if(biased == 0 || biased >= 0x7ff) {
+				return Double.NaN;
+			}
+			long m = (bits & 0xfffffffffffffL) | (1L << 52);
+			int e2 = biased - 1075;
+
+			/* the midpoint to the next double */
+			int upper = compare(s, k, 2*m + 1, e2 - 1);
+			if(upper == Integer.MIN_VALUE) {
+				return Double.NaN;
+			}
+			if(upper > 0) {
+				d = Math.nextUp(d);
+				continue;
+			}
+			if(upper == 0) {
+				return ((m & 1) == 0) ? d : Math.nextUp(d);
+			}
+
+			/* the midpoint to the previous double, closer below a power of two */
+			int lower = (m == (1L << 52) && biased > 1) ? compare(s, k, 4*m - 1, e2 - 2) : compare(s, k, 2*m - 1, e2 - 1);
+			if(lower == Integer.MIN_VALUE) {
+				return Double.NaN;
+			}
+			if(lower < 0) {
+				d = Math.nextDown(d);
+				continue;
+			}
+			if(lower == 0) {
+				return ((m & 1) == 0) ? d : Math.nextDown(d);
+			}
+			return d;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * The sign of s*10^k - c*2^q, computed exactly in 128 bits as
+	 * s*5^k*2^(k-q) against c or s against c*5^(-k)*2^(q-k)
+	 *
+	 * @return The sign, Integer.MIN_VALUE if it does not fit in 128 bits
+	 */
+	private int compare(long s, int k, long c, int q) {
+
+		long leftHigh = multiply(s, POW5[Math.max(k, 0)]);
+		long leftLow = low;
+		long rightHigh = multiply(c, POW5[Math.max(-k, 0)]);
+		long rightLow = low;
+
+		int shift = k - q;
+		if(shift > 0) {
+
+			if(shift >= 127 || (shift >= 64 ? (leftHigh != 0 || Long.numberOfLeadingZeros(leftLow) <= shift - 64)
+					: Long.numberOfLeadingZeros(leftHigh) <= shift)) {
+				return Integer.MIN_VALUE;
+			}
+			if(shift >= 64) {
+				leftHigh = leftLow << (shift - 64);
+				leftLow = 0;
+			}
+			else {
+				leftHigh = (leftHigh << shift) | (leftLow >>> (64 - shift));
+				leftLow <<= shift;
+			}
+		}
+		else if(shift < 0) {
+
+			shift = -shift;
+			if(shift >= 127 || (shift >= 64 ? (rightHigh != 0 || Long.numberOfLeadingZeros(rightLow) <= shift - 64)
+					: Long.numberOfLeadingZeros(rightHigh) <= shift)) {
+				return Integer.MIN_VALUE;
+			}
+			if(shift >= 64) {
+				rightHigh = rightLow << (shift - 64);
+				rightLow = 0;
+			}
+			else {
+				rightHigh = (rightHigh << shift) | (rightLow >>> (64 - shift));
+				rightLow <<= shift;
+			}
+		}
+
+		int high = Long.compareUnsigned(leftHigh, rightHigh);
+		return (high != 0) ? high : Long.compareUnsigned(leftLow, rightLow);
+	}
+
+	/**
+	 * The high 64 bits of the product of two non negative longs,
+	 * the low 64 bits are left in low
+	 */
+	private long multiply(long a, long b) {
+
+		long a0 = a & 0xffffffffL;
+		long a1 = a >>> 32;
+		long b0 = b & 0xffffffffL;
+		long b1 = b >>> 32;
+
+		long p00 = a0*b0;
+		long p10 = a1*b0;
+		long p01 = a0*b1;
+		long middle = (p00 >>> 32) + (p10 & 0xffffffffL) + p01;
+
+		low = a*b;
+		return a1*b1 + (p10 >>> 32) + (middle >>> 32);
+	}
+
+	private double parseDoubleSlow(int from, int to) {
+
+		String text = new String(buffer, from, to - from, StandardCharsets.ISO_8859_1);
+		try {
+			return Double.parseDouble(text);
+		}
+		catch(NumberFormatException e) {
+			throw new NumberFormatException("Record " + (rowsRead + 1) + ": not a number '" + text + "'");
+		}
+	}
+
+	/**
+	 * Converts the date in [from, to) to epoch milliseconds, from the
+	 * digits if the pattern is numeric, with the date format otherwise
+	 */
+	private long parseTime(int from, int to) {
+
+		if(tokenKind != null && to - from == patternLength()) {
+
+			int year = 1970, month = 1, day = 1, hour = 0, minute = 0, second = 0, millis = 0;
+			int i = from;
+			boolean matches = true;
+			for(int t = 0; t < tokenKind.length && matches; t++) {
+
+				if(tokenKind[t] == LITERAL) {
+					matches = buffer[i++] == tokenWidth[t];
+					continue;
+				}
+
+				int v = 0;
+				for(int w = 0; w < tokenWidth[t]; w++, i++) {
+
+					int d = buffer[i] - '0';
+					if(d < 0 || d > 9) {
+						matches = false;
+						break;
+					}
+					v = 10*v + d;
+				}
+				switch(tokenKind[t]) {
+					case YEAR:   year = v;   break;
+					case MONTH:  month = v;  break;
+					case DAY:    day = v;    break;
+					case HOUR:   hour = v;   break;
+					case MINUTE: minute = v; break;
+					case SECOND: second = v; break;
+					default:     millis = v; break;
+				}
+			}
+
+			if(matches) {
+				try {
+					return chronology.getDateTimeMillis(year, month, day, hour, minute, second, millis);
+				}
+				catch(IllegalArgumentException e) {
+					/* invalid or skipped by a daylight saving change, let the date format decide */
+				}
+			}
+		}
+		return formatter.parseMillis(new String(buffer, from, to - from, StandardCharsets.ISO_8859_1));
+	}
+
+	private int patternLength() {
+
+		int length = 0;
+		for(int t = 0; t < tokenKind.length; t++) {
+			length += (tokenKind[t] == LITERAL) ? 1 : tokenWidth[t];
+		}
+		return length;
+	}
+
+	private String[] readHeader(int end) {
+
+		if(end > pos && buffer[end - 1] == '\r') {
+			end--;
+		}
+		/* skip a UTF-8 byte order mark */
+		if(end - pos >= 3 && buffer[pos] == (byte)0xEF && buffer[pos + 1] == (byte)0xBB && buffer[pos + 2] == (byte)0xBF) {
+			pos += 3;
+		}
+		String line = new String(buffer, pos, end - pos, StandardCharsets.ISO_8859_1);
+		pos = Math.min(end + 1, limit);
+
+		String[] names = line.split(",", -1);
+		for(int i = 0; i < names.length; i++) {
+
+			String name = names[i].trim();
+			if(name.length() >= 2 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+				name = name.substring(1, name.length() - 1);
+			}
+			names[i] = name;
+		}
+		return names;
+	}
+
+	private int indexOf(String name) throws IOException {
+
+		for(int i = 0; i < headers.length; i++) {
+			if(headers[i].equals(name)) {
+				return i;
+			}
+		}
+		in.close();
+		throw new IOException("Column " + name + " not found in header " + Arrays.toString(headers));
+	}
+
+	/**
+	 * Splits a Joda pattern into fixed width numeric fields and one
+	 * character literals. The tokens are the kinds and the widths, the
+	 * width of a literal being its character
+	 *
+	 * @return The tokens, null if the pattern is not numeric of fixed width
+	 */
+	private static int[][] compileDatePattern(String pattern) {
+
+		int[] kinds = new int[pattern.length()];
+		int[] widths = new int[pattern.length()];
+		int ntokens = 0;
+
+		int i = 0;
+		while(i < pattern.length()) {
+
+			char c = pattern.charAt(i);
+			int j = i;
+			while(j < pattern.length() && pattern.charAt(j) == c) {
+				j++;
+			}
+			int count = j - i;
+
+			int kind;
+			switch(c) {
+				case 'y': kind = (count == 4) ? YEAR : -1;   break;
+				case 'M': kind = (count == 2) ? MONTH : -1;  break;
+				case 'd': kind = (count == 2) ? DAY : -1;    break;
+				case 'H': kind = (count == 2) ? HOUR : -1;   break;
+				case 'm': kind = (count == 2) ? MINUTE : -1; break;
+				case 's': kind = (count == 2) ? SECOND : -1; break;
+				case 'S': kind = (count == 3) ? MILLIS : -1; break;
+				case '\'': {
+
+					/* quoted literal text */
+					int close = pattern.indexOf('\'', i + 1);
+					if(close < 0 || close == i + 1) {
+						return null;
+					}
+					for(int k = i + 1; k < close; k++) {
+						kinds[ntokens] = LITERAL;
+						widths[ntokens++] = pattern.charAt(k);
+					}
+					i = close + 1;
+					continue;
+				}
+				default:
+					kind = (Character.isLetter(c) || c > 127) ? -1 : LITERAL;
+			}
+
+			if(kind < 0) {
+				return null;
+			}
+			if(kind == LITERAL) {
+				for(int k = 0; k < count; k++) {
+					kinds[ntokens] = LITERAL;
+					widths[ntokens++] = c;
+				}
+			}
+			else {
+				kinds[ntokens] = kind;
+				widths[ntokens++] = count;
+			}
+			i = j;
+		}
+		return new int[][] {Arrays.copyOf(kinds, ntokens), Arrays.copyOf(widths, ntokens)};
+	}
+}
@@ -0,0 +1,22 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.IOException;
+
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ *
+ * A stream of bars with news probabilities, read one after the other. 
+ * Implemented by the {@link CsvFeed} and the {@link BinaryFeed} created 
+ * with the price, high, low, close and the three news columns.
+ */
+public interface InfoBarFeed {
+
+	/**
+	 * @return The next bar with the values {low, high, price, close,
+	 *         noNews, goodNews, badNews}, null once the data is exhausted
+	 */
+	TimeSeriesEntry<double[]> getNextInfoBar() throws IOException;
+
+	void close();
+}
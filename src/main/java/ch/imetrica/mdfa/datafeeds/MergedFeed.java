@@ -0,0 +1,400 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ *
+ * Merges the price observations of several feeds on their time stamps,
+ * for instruments with different trading calendars. Where the
+ * {@link CsvFeed} reads its files in lockstep, this feed keeps the next
+ * observation of each source in a priority queue ordered by time and
+ * emits one multivariate observation per time stamp, in ascending order.
+ *
+ * A source without an observation at a time stamp is filled by the
+ * {@link FillPolicy}:
+ *
+ * - CARRY_FORWARD: the last value of the source, or the missing value
+ *   before its first observation
+ * - SKIP: the missing value, -1.0 by default as in the CsvFeed
+ * - COMPLETE: only the time stamps observed by all the sources are emitted
+ *
+ * {@link #isObserved(int)} tells which sources were observed at the time
+ * stamp of the last observation. The sources are read ahead of the merge
+ * by one daemon thread per source into a buffer of {@link #setPrefetch(int)}
+ * observations, or by the merge itself with a prefetch of 0. The reading
+ * starts with the first observation, after which the settings can not
+ * be changed.
+ *
+ * The observations of the sources must carry epoch times: the CsvFeeds
+ * need a date format, the {@link BinaryFeed}s always have one.
+ */
+public class MergedFeed implements MultivariateFeed {
+
+	public enum FillPolicy {
+		CARRY_FORWARD,
+		SKIP,
+		COMPLETE
+	}
+
+	public static final int DEFAULT_PREFETCH = 1024;
+
+	/** Marks the end of a source in its buffer */
+	private static final TimeSeriesEntry<Double> END = new TimeSeriesEntry<Double>("", Double.NaN);
+
+	private final Source[] sources;
+	private final PriorityQueue<Source> heads;
+	private final boolean[] observed;
+	private final double[] last;
+
+	private FillPolicy fillPolicy = FillPolicy.CARRY_FORWARD;
+	private double missingValue = -1.0;
+	private int prefetch = DEFAULT_PREFETCH;
+	private boolean started = false;
+	private int exhausted = 0;
+
+
+	/**
+	 * Merges the getNextObservation of each feed
+	 *
+	 * @param feeds
+	 *    The sources, in the order of the values of the observations
+	 */
+	public MergedFeed(ObservationFeed... feeds) {
+
+		if(feeds.length < 1) {
+			throw new IllegalArgumentException("At least one feed is needed");
+		}
+
+		this.sources = new Source[feeds.length];
+		for(int i = 0; i < feeds.length; i++) {
+			sources[i] = new Source(i, feeds[i]);
+		}
+		this.heads = new PriorityQueue<Source>(feeds.length, new Comparator<Source>() {
+			@Override
+			public int compare(Source a, Source b) {
+
+				int c = Long.compare(a.head.getTime(), b.head.getTime());
+				return (c != 0) ? c : Integer.compare(a.index, b.index);
+			}
+		});
+		this.observed = new boolean[feeds.length];
+		this.last = new double[feeds.length];
+	}
+
+	/**
+	 * Merges the price column of csv files, or of binary columnar
+	 * files converted from them
+	 *
+	 * @param dataFiles
+	 *    The csv or {@link BinaryColumnarFile} data files
+	 * @param dateName
+	 *    The column name of the date time stamps of the csv files
+	 * @param priceName
+	 *    The column name of the price
+	 * @param dateFormat
+	 *    Joda format of the date column of the csv files
+	 * @throws IOException
+	 */
+	public MergedFeed(String[] dataFiles, String dateName, String priceName, String dateFormat) throws IOException {
+		this(openFeeds(dataFiles, dateName, priceName, dateFormat));
+	}
+
+	private static ObservationFeed[] openFeeds(String[] dataFiles, String dateName, String priceName, String dateFormat) throws IOException {
+
+		ObservationFeed[] feeds = new ObservationFeed[dataFiles.length];
+		for(int i = 0; i < dataFiles.length; i++) {
+
+			if(BinaryColumnarFile.isBinaryColumnarFile(dataFiles[i])) {
+				feeds[i] = new BinaryFeed(dataFiles[i], priceName);
+			}
+			else {
+				feeds[i] = new CsvFeed(dataFiles[i], dateName, priceName).setDateFormat(dateFormat);
+			}
+		}
+		return feeds;
+	}
+
+
+	public MergedFeed setFillPolicy(FillPolicy fillPolicy) {
+
+		checkNotStarted();
+		this.fillPolicy = fillPolicy;
+		return this;
+	}
+
+	/**
+	 * Sets the value of the sources without an observation, when they
+	 * are not carried forward
+	 */
+	public MergedFeed setMissingValue(double missingValue) {
+
+		checkNotStarted();
+		this.missingValue = missingValue;
+		return this;
+	}
+
+	/**
+	 * Sets the number of observations read ahead of the merge per source
+	 *
+	 * @param n
+	 *    Size of the buffer of each source, 0 to read the sources
+	 *    in the calling thread
+	 * @return
+	 *    This feed
+	 */
+	public MergedFeed setPrefetch(int n) {
+
+		checkNotStarted();
+		if(n < 0) {
+			throw new IllegalArgumentException("The prefetch must not be negative: " + n);
+		}
+		this.prefetch = n;
+		return this;
+	}
+
+	public FillPolicy getFillPolicy() {
+		return fillPolicy;
+	}
+
+	public double getMissingValue() {
+		return missingValue;
+	}
+
+	public int getPrefetch() {
+		return prefetch;
+	}
+
+	public int getNumberSources() {
+		return sources.length;
+	}
+
+	/**
+	 * @return True if the source had an observation at the
+	 *         time stamp of the last merged observation
+	 */
+	public boolean isObserved(int source) {
+		return observed[source];
+	}
+
+
+	/**
+	 * The next time stamp of the merged sources
+	 *
+	 * @return The observation with one value per source, or null
+	 *         once all the sources are exhausted (for COMPLETE, once
+	 *         one of them is)
+	 * @throws IOException
+	 *    if a source can not be read or has no epoch times
+	 */
+	@Override
+	public TimeSeriesEntry<double[]> getNextMultivariateObservation() throws IOException {
+
+		if(!started) {
+			start();
+		}
+
+		while(!heads.isEmpty()) {
+
+			if(fillPolicy == FillPolicy.COMPLETE && exhausted > 0) {
+				return null;
+			}
+
+			Source first = heads.peek();
+			long time = first.head.getTime();
+			String date = first.head.getDateTime();
+
+			int count = 0;
+			for(int i = 0; i < sources.length; i++) {
+				observed[i] = false;
+			}
+			while(!heads.isEmpty() && heads.peek().head.getTime() == time) {
+
+				Source source = heads.poll();
+				if(!observed[source.index]) {
+					count++;
+				}
+				observed[source.index] = true;
+				last[source.index] = source.head.getValue();
+				advance(source);
+			}
+
+			if(fillPolicy == FillPolicy.COMPLETE && count < sources.length) {
+				continue;
+			}
+
+			double[] prices = new double[sources.length];
+			for(int i = 0; i < sources.length; i++) {
+
+				if(observed[i] || (fillPolicy == FillPolicy.CARRY_FORWARD && sources[i].seen)) {
+					prices[i] = last[i];
+				}
+				else {
+					prices[i] = missingValue;
+				}
+				sources[i].seen |= observed[i];
+			}
+			return new TimeSeriesEntry<double[]>(time, date, prices);
+		}
+		return null;
+	}
+
+	/**
+	 * Stops the prefetching and closes the sources
+	 */
+	@Override
+	public void close() {
+
+		for(Source source : sources) {
+			source.stop();
+		}
+		for(Source source : sources) {
+			source.feed.close();
+		}
+	}
+
+
+	private void start() throws IOException {
+
+		started = true;
+		if(prefetch > 0) {
+			for(Source source : sources) {
+				source.startPrefetch(prefetch);
+			}
+		}
+		for(Source source : sources) {
+			advance(source);
+		}
+	}
+
+	/**
+	 * Moves the source to its next observation and puts it back in the queue
+	 */
+	private void advance(Source source) throws IOException {
+
+		TimeSeriesEntry<Double> next = source.next();
+		if(next == null) {
+			source.head = null;
+			exhausted++;
+			return;
+		}
+		if(!next.hasTime()) {
+			throw new IOException("Observation " + next.getDateTime() + " of source " + source.index
+					+ " has no epoch time, set the date format of its feed");
+		}
+		source.head = next;
+		heads.add(source);
+	}
+
+	private void checkNotStarted() {
+
+		if(started) {
+			throw new IllegalStateException("The feed has already started");
+		}
+	}
+
+
+	/**
+	 * One source of the merge with its next observation and its
+	 * prefetch buffer
+	 */
+	private static class Source {
+
+		final int index;
+		final ObservationFeed feed;
+		TimeSeriesEntry<Double> head;
+		boolean seen;
+
+		BlockingQueue<TimeSeriesEntry<Double>> buffer;
+		Thread reader;
+		volatile Exception failure;
+
+		Source(int index, ObservationFeed feed) {
+			this.index = index;
+			this.feed = feed;
+		}
+
+		void startPrefetch(int capacity) {
+
+			buffer = new ArrayBlockingQueue<TimeSeriesEntry<Double>>(capacity);
+			reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					prefetch();
+				}
+			}, "merged-feed-source-" + index);
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private void prefetch() {
+
+			try {
+				try {
+					TimeSeriesEntry<Double> entry;
+					while((entry = feed.getNextObservation()) != null) {
+						buffer.put(entry);
+					}
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+				catch(Exception e) {
+					failure = e;
+				}
+				buffer.put(END);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		TimeSeriesEntry<Double> next() throws IOException {
+
+			if(buffer == null) {
+				return feed.getNextObservation();
+			}
+
+			TimeSeriesEntry<Double> entry;
+			try {
+				entry = buffer.take();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for source " + index, e);
+			}
+
+			if(entry == END) {
+
+				if(failure != null) {
+					throw new IOException("Source " + index + " failed: " + failure.getMessage(), failure);
+				}
+				return null;
+			}
+			return entry;
+		}
+
+		/**
+		 * Stops the reader, waiting for it so that the
+		 * feed is not closed while it is being read
+		 */
+		void stop() {
+
+			if(reader != null) {
+
+				reader.interrupt();
+				try {
+					reader.join(1000);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
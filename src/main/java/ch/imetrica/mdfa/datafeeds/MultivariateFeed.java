@@ -0,0 +1,21 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ *
+ * A stream of the prices of several series at the same time stamps. 
+ * Implemented by the {@link CsvFeed} and the {@link BinaryFeed} created 
+ * with several files, which are read in lockstep, and by the 
+ * {@link MergedFeed}, which aligns files with different calendars.
+ */
+public interface MultivariateFeed {
+
+	/**
+	 * @return The next observation of the prices of all the series
+	 *         of the feed, null once the data is exhausted
+	 */
+	TimeSeriesEntry<double[]> getNextMultivariateObservation() throws Exception;
+
+	void close();
+}
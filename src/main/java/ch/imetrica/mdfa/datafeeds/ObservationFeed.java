@@ -0,0 +1,22 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.IOException;
+
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+
+/**
+ *
+ * A stream of the price observations of a single series, read one
+ * after the other. Implemented by the {@link CsvFeed} and the 
+ * {@link BinaryFeed} created with a price column, the feeds merged 
+ * by a {@link MergedFeed} are read with it.
+ */
+public interface ObservationFeed {
+
+	/**
+	 * @return The next price observation, null once the data is exhausted
+	 */
+	TimeSeriesEntry<Double> getNextObservation() throws IOException;
+
+	void close();
+}
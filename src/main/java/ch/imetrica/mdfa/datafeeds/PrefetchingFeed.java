@@ -0,0 +1,505 @@
+package ch.imetrica.mdfa.datafeeds;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.imetrica.mdfa.series.TimeSeriesEntry;
+import ch.imetrica.mdfa.util.SpscRingBuffer;
+
+/**
+ *
+ * Reads a feed on its own thread ahead of the consumer, so that the disk
+ * reads and the parsing do not stall the updates of the series. There is
+ * one prefetcher per kind of feed, each one implementing the interface of
+ * the feed it reads:
+ *
+ * - {@link Observations}: an {@link ObservationFeed}
+ * - {@link Bars}: a {@link BarFeed}
+ * - {@link InfoBars}: an {@link InfoBarFeed}
+ * - {@link MultivariateObservations}: a {@link MultivariateFeed}
+ *
+ * The producer thread reads the feed and hands the observations to the
+ * consumer through a bounded {@link SpscRingBuffer}. The consumer takes
+ * them from the ring in batches of up to {@link #setBatchSize(int)}
+ * observations and returns them one at a time.
+ *
+ * When the ring is full the producer waits for the consumer
+ * (backpressure), when it is empty the consumer waits for the producer.
+ * Both wait by spinning briefly, then yielding, then parking for a few
+ * microseconds. The metrics count these waits and sample the depth of
+ * the queue: many producer waits mean that the consumer is the bottleneck,
+ * many consumer waits that the feed is.
+ *
+ * The producer starts when the prefetcher is created. An exception of the
+ * feed is thrown by the consumer after the observations read before it.
+ *
+ * @param <V>
+ *    The type of the values of the observations
+ */
+public abstract class PrefetchingFeed<V> {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private static final int SPINS = 100;
+	private static final int YIELDS = 10;
+	private static final long PARK_NANOS = 20000;
+
+	private final SpscRingBuffer<TimeSeriesEntry<V>> ring;
+	private final Thread producer;
+
+	/* consumer side */
+	private Object[] batch;
+	private int batchIndex;
+	private int batchCount;
+	private long consumed;
+	private long consumerWaits;
+	private long depthSum;
+	private long depthSamples;
+	private int maxDepth;
+
+	/* producer side */
+	private volatile boolean finished = false;
+	private volatile boolean closed = false;
+	private volatile Exception failure;
+	private volatile long produced;
+	private volatile long producerWaits;
+	private volatile long producerWaitNanos;
+
+
+	/**
+	 * Creates the ring and the daemon producer thread, which
+	 * is started by {@link #start()} once the feed is set
+	 *
+	 * @param name
+	 *    The name of the producer thread
+	 * @param capacity
+	 *    The number of observations read ahead, rounded up to a power of two
+	 */
+	protected PrefetchingFeed(String name, int capacity) {
+
+		this.ring = new SpscRingBuffer<TimeSeriesEntry<V>>(capacity);
+		this.batch = new Object[Math.min(DEFAULT_BATCH_SIZE, ring.capacity())];
+
+		this.producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				produce();
+			}
+		}, name);
+		producer.setDaemon(true);
+	}
+
+	/**
+	 * @return The next observation of the feed, read by the producer thread
+	 */
+	protected abstract TimeSeriesEntry<V> read() throws Exception;
+
+	/**
+	 * Closes the feed, after the producer stopped
+	 */
+	protected abstract void closeFeed();
+
+	protected final void start() {
+		producer.start();
+	}
+
+
+	/**
+	 * Sets the maximum number of observations taken from the ring at once
+	 *
+	 * @param n
+	 *    Number of observations, at least 1
+	 * @return
+	 *    This feed
+	 */
+	public PrefetchingFeed<V> setBatchSize(int n) {
+
+		if(n < 1) {
+			throw new IllegalArgumentException("The batch size must be positive: " + n);
+		}
+		if(batchIndex < batchCount) {
+			throw new IllegalStateException("A batch is being consumed");
+		}
+		this.batch = new Object[n];
+		return this;
+	}
+
+	public int getBatchSize() {
+		return batch.length;
+	}
+
+	public int getCapacity() {
+		return ring.capacity();
+	}
+
+	/**
+	 * @return The number of observations read ahead and not yet consumed
+	 */
+	public int getQueueDepth() {
+		return ring.size() + (batchCount - batchIndex);
+	}
+
+	/**
+	 * @return The largest depth of the ring seen by the consumer
+	 */
+	public int getMaxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return The mean depth of the ring seen by the consumer
+	 *         each time it took a batch
+	 */
+	public double getMeanQueueDepth() {
+		return (depthSamples == 0) ? 0 : (double)depthSum/depthSamples;
+	}
+
+	/**
+	 * @return The number of observations read by the producer
+	 *         and handed to the ring
+	 */
+	public long getProduced() {
+		return produced;
+	}
+
+	/**
+	 * @return The number of observations returned to the consumer
+	 */
+	public long getConsumed() {
+		return consumed;
+	}
+
+	/**
+	 * @return The number of times the producer found the ring full
+	 */
+	public long getProducerWaits() {
+		return producerWaits;
+	}
+
+	/**
+	 * @return The time the producer waited for room in the ring, in nanoseconds
+	 */
+	public long getProducerWaitNanos() {
+		return producerWaitNanos;
+	}
+
+	/**
+	 * @return The number of times the consumer found the ring empty
+	 */
+	public long getConsumerWaits() {
+		return consumerWaits;
+	}
+
+	/**
+	 * @return True once the feed is read to its end
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Stops the producer and closes the feed
+	 */
+	public void close() {
+
+		closed = true;
+		LockSupport.unpark(producer);
+		try {
+			producer.join(1000);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeFeed();
+	}
+
+
+	/**
+	 * The next observation from the current batch, taking
+	 * a new batch from the ring when it is consumed
+	 */
+	@SuppressWarnings("unchecked")
+	protected TimeSeriesEntry<V> next() throws IOException {
+
+		if(batchIndex == batchCount) {
+
+			batchIndex = 0;
+			batchCount = 0;
+
+			int waits = 0;
+			while(true) {
+
+				int depth = ring.size();
+				batchCount = ring.drainTo(batch, batch.length);
+				if(batchCount > 0) {
+
+					depthSum += depth;
+					depthSamples++;
+					maxDepth = Math.max(maxDepth, depth);
+					break;
+				}
+				if(finished) {
+
+					/* the last observations may have been added before finished was set */
+					batchCount = ring.drainTo(batch, batch.length);
+					if(batchCount > 0) {
+						break;
+					}
+					if(failure != null) {
+						throw new IOException("Prefetching failed after " + consumed + " observations: "
+								+ failure.getMessage(), failure);
+					}
+					return null;
+				}
+				if(waits++ == 0) {
+					consumerWaits++;
+				}
+				idle(waits);
+			}
+		}
+
+		TimeSeriesEntry<V> entry = (TimeSeriesEntry<V>)batch[batchIndex];
+		batch[batchIndex++] = null;
+		consumed++;
+		return entry;
+	}
+
+	private void produce() {
+
+		try {
+			TimeSeriesEntry<V> entry;
+			while(!closed && (entry = read()) != null) {
+
+				boolean offered = ring.offer(entry);
+				if(!offered) {
+
+					long start = System.nanoTime();
+					producerWaits++;
+					int waits = 0;
+					while(!closed && !(offered = ring.offer(entry))) {
+						idle(++waits);
+					}
+					producerWaitNanos += System.nanoTime() - start;
+				}
+				if(offered) {
+					produced++;
+				}
+			}
+		}
+		catch(Exception e) {
+			failure = e;
+		}
+		finished = true;
+	}
+
+	private static void idle(int waits) {
+
+		if(waits < SPINS) {
+			return;
+		}
+		if(waits < SPINS + YIELDS) {
+			Thread.yield();
+		}
+		else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+
+	/**
+	 * Reads the getNextObservation of a feed ahead
+	 */
+	public static class Observations extends PrefetchingFeed<Double> implements ObservationFeed {
+
+		private final ObservationFeed feed;
+
+		public Observations(ObservationFeed feed) {
+			this(feed, DEFAULT_CAPACITY);
+		}
+
+		/**
+		 * Starts reading the feed on a new daemon thread
+		 *
+		 * @param feed
+		 *    The feed, which is only read by the producer thread from now on
+		 * @param capacity
+		 *    The number of observations read ahead, rounded up to a power of two
+		 */
+		public Observations(ObservationFeed feed, int capacity) {
+
+			super("prefetching-feed-observation", capacity);
+			this.feed = feed;
+			start();
+		}
+
+		@Override
+		public Observations setBatchSize(int n) {
+
+			super.setBatchSize(n);
+			return this;
+		}
+
+		@Override
+		public TimeSeriesEntry<Double> getNextObservation() throws IOException {
+			return next();
+		}
+
+		@Override
+		protected TimeSeriesEntry<Double> read() throws Exception {
+			return feed.getNextObservation();
+		}
+
+		@Override
+		protected void closeFeed() {
+			feed.close();
+		}
+	}
+
+	/**
+	 * Reads the getNextBar of a feed ahead
+	 */
+	public static class Bars extends PrefetchingFeed<double[]> implements BarFeed {
+
+		private final BarFeed feed;
+
+		public Bars(BarFeed feed) {
+			this(feed, DEFAULT_CAPACITY);
+		}
+
+		/**
+		 * Starts reading the feed on a new daemon thread
+		 *
+		 * @param feed
+		 *    The feed, which is only read by the producer thread from now on
+		 * @param capacity
+		 *    The number of bars read ahead, rounded up to a power of two
+		 */
+		public Bars(BarFeed feed, int capacity) {
+
+			super("prefetching-feed-bar", capacity);
+			this.feed = feed;
+			start();
+		}
+
+		@Override
+		public Bars setBatchSize(int n) {
+
+			super.setBatchSize(n);
+			return this;
+		}
+
+		@Override
+		public TimeSeriesEntry<double[]> getNextBar() throws IOException {
+			return next();
+		}
+
+		@Override
+		protected TimeSeriesEntry<double[]> read() throws Exception {
+			return feed.getNextBar();
+		}
+
+		@Override
+		protected void closeFeed() {
+			feed.close();
+		}
+	}
+
+	/**
+	 * Reads the getNextInfoBar of a feed ahead
+	 */
+	public static class InfoBars extends PrefetchingFeed<double[]> implements InfoBarFeed {
+
+		private final InfoBarFeed feed;
+
+		public InfoBars(InfoBarFeed feed) {
+			this(feed, DEFAULT_CAPACITY);
+		}
+
+		/**
+		 * Starts reading the feed on a new daemon thread
+		 *
+		 * @param feed
+		 *    The feed, which is only read by the producer thread from now on
+		 * @param capacity
+		 *    The number of bars read ahead, rounded up to a power of two
+		 */
+		public InfoBars(InfoBarFeed feed, int capacity) {
+
+			super("prefetching-feed-info-bar", capacity);
+			this.feed = feed;
+			start();
+		}
+
+		@Override
+		public InfoBars setBatchSize(int n) {
+
+			super.setBatchSize(n);
+			return this;
+		}
+
+		@Override
+		public TimeSeriesEntry<double[]> getNextInfoBar() throws IOException {
+			return next();
+		}
+
+		@Override
+		protected TimeSeriesEntry<double[]> read() throws Exception {
+			return feed.getNextInfoBar();
+		}
+
+		@Override
+		protected void closeFeed() {
+			feed.close();
+		}
+	}
+
+	/**
+	 * Reads the getNextMultivariateObservation of a feed ahead
+	 */
+	public static class MultivariateObservations extends PrefetchingFeed<double[]> implements MultivariateFeed {
+
+		private final MultivariateFeed feed;
+
+		public MultivariateObservations(MultivariateFeed feed) {
+			this(feed, DEFAULT_CAPACITY);
+		}
+
+		/**
+		 * Starts reading the feed on a new daemon thread
+		 *
+		 * @param feed
+		 *    The feed, which is only read by the producer thread from now on
+		 * @param capacity
+		 *    The number of observations read ahead, rounded up to a power of two
+		 */
+		public MultivariateObservations(MultivariateFeed feed, int capacity) {
+
+			super("prefetching-feed-multivariate", capacity);
+			this.feed = feed;
+			start();
+		}
+
+		@Override
+		public MultivariateObservations setBatchSize(int n) {
+
+			super.setBatchSize(n);
+			return this;
+		}
+
+		@Override
+		public TimeSeriesEntry<double[]> getNextMultivariateObservation() throws IOException {
+			return next();
+		}
+
+		@Override
+		protected TimeSeriesEntry<double[]> read() throws Exception {
+			return feed.getNextMultivariateObservation();
+		}
+
+		@Override
+		protected void closeFeed() {
+			feed.close();
+		}
+	}
+}
@@ -3,6 +3,9 @@ package ch.imetrica.mdfa.examples;
 import org.joda.time.format.DateTimeFormat;
 
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.MultivariateFeed;
+import ch.imetrica.mdfa.datafeeds.ObservationFeed;
+import ch.imetrica.mdfa.datafeeds.PrefetchingFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.mdfa.MDFAFactory;
 import ch.imetrica.mdfa.mdfa.MDFASolver;
@@ -61,8 +64,11 @@ public class ExampleAdaptiveSignal {
 			
 			String dataFile = "data/EEM.IB.dat";
 			
-			CsvFeed marketFeed = new CsvFeed(dataFiles, "dateTime", "close");
-			CsvFeed eemMarketFeed = new CsvFeed(dataFile, "dateTime", "close");
+			/* Read and parse the files on their own threads while the filters are computed */
+			MultivariateFeed marketFeed = new PrefetchingFeed.MultivariateObservations(
+					new CsvFeed(dataFiles, "dateTime", "close"));
+			ObservationFeed eemMarketFeed = new PrefetchingFeed.Observations(
+					new CsvFeed(dataFile, "dateTime", "close"));
 			
 			/* Create empty target series */
 			SignalSeries aaplSignal = new SignalSeries(new TargetSeries(0.9, true, "AAPL"), "yyyy-MM-dd");	
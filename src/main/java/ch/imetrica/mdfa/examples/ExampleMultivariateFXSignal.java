@@ -1,6 +1,7 @@
 package ch.imetrica.mdfa.examples;
 
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.MultivariateFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.series.MultivariateFXSeries;
 import ch.imetrica.mdfa.series.TargetSeries;
@@ -17,7 +18,7 @@ public class ExampleMultivariateFXSignal {
 		dataFiles[1] = "data/QQQ.daily.csv";
 		dataFiles[2] = "data/SPY.daily.csv";
 		
-		CsvFeed marketFeed = new CsvFeed(dataFiles, "Index", "Open");
+		MultivariateFeed marketFeed = new CsvFeed(dataFiles, "Index", "Open");
 				
 		/* Create some MDFA sigEx processes */
 		MDFABase[] anyMDFAs = new MDFABase[3];
@@ -1,6 +1,7 @@
 package ch.imetrica.mdfa.examples;
 
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.MultivariateFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.mdfa.MDFASolver;
 import ch.imetrica.mdfa.series.MultivariateSeries;
@@ -55,7 +56,7 @@ public class ExampleMultivariateSignal {
 		dataFiles[1] = "data/QQQ.IB.dat";
 		dataFiles[2] = "data/SPY.IB.dat";
 		
-		CsvFeed marketFeed = new CsvFeed(dataFiles, "dateTime", "close");
+		MultivariateFeed marketFeed = new CsvFeed(dataFiles, "dateTime", "close");
 		
 		/* Create empty target series */
 		SignalSeries aaplSignal = new SignalSeries(new TargetSeries(0.9, true, "AAPL"), "yyyy-MM-dd");	
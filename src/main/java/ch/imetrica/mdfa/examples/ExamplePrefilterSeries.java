@@ -3,6 +3,7 @@ package ch.imetrica.mdfa.examples;
 import javax.swing.plaf.multi.MultiListUI;
 
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.ObservationFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.mdfa.MDFAFactory;
 import ch.imetrica.mdfa.mdfa.MDFASolver;
@@ -57,7 +58,7 @@ public class ExamplePrefilterSeries {
 		
 		
 		/* Create market data feed */
-		CsvFeed marketDataFeed = new CsvFeed("data/AAPL.IB.dat", "dateTime", "close");
+		ObservationFeed marketDataFeed = new CsvFeed("data/AAPL.IB.dat", "dateTime", "close");
 		
 		/* Create empty target series and add a prefilter using the White
 		 * Noise library 
@@ -1,6 +1,10 @@
 package ch.imetrica.mdfa.examples;
 
-import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import java.io.File;
+
+import ch.imetrica.mdfa.datafeeds.BinaryColumnarFile;
+import ch.imetrica.mdfa.datafeeds.BinaryFeed;
+import ch.imetrica.mdfa.datafeeds.ObservationFeed;
 import ch.imetrica.mdfa.series.TargetSeries;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
 
@@ -11,8 +15,13 @@ public class ExampleTargetSeries {
 
 	public static void main(String[] args) throws Exception {
 		
-		/* Create market data feed */
-		CsvFeed marketDataFeed = new CsvFeed("data/AAPL.IB.dat", "dateTime", "close");
+		/* Convert the csv file once to a binary columnar file */
+		File binaryFile = File.createTempFile("AAPL.IB", BinaryColumnarFile.EXTENSION);
+		binaryFile.deleteOnExit();
+		BinaryColumnarFile.convert("data/AAPL.IB.dat", binaryFile.getPath(), "dateTime", "yyyy-MM-dd", "close");
+		
+		/* Create market data feed replaying the memory mapped file */
+		ObservationFeed marketDataFeed = new BinaryFeed(binaryFile.getPath(), "close");
 		
 		/* Create empty target series */
 		TargetSeries target = new TargetSeries(0.99, true, "test");
@@ -25,6 +34,7 @@ public class ExampleTargetSeries {
 			
 		}
 		
+		marketDataFeed.close();
 		target.plotSeries();
 
 	}
@@ -5,6 +5,7 @@ import org.joda.time.format.DateTimeFormat;
 import ch.imetrica.mdfa.customization.Customization;
 import ch.imetrica.mdfa.customization.SmoothingWeight;
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.ObservationFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.mdfa.MDFAFactory;
 import ch.imetrica.mdfa.mdfa.MDFASolver;
@@ -62,7 +63,7 @@ public class ExampleUnivariateSeries {
 		
 		
 		/* Create market data feed */
-		CsvFeed marketDataFeed = new CsvFeed("data/AAPL.IB.dat", "dateTime", "close");
+		ObservationFeed marketDataFeed = new CsvFeed("data/AAPL.IB.dat", "dateTime", "close");
 		
 		/* Create empty target series */
 		SignalSeries aaplSignal = new SignalSeries(new TargetSeries(1.0, true, "AAPL"), "AAPL");	
@@ -0,0 +1,123 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.series.MdfaSeries;
+
+/**
+ *
+ * Scores a configuration by the mean squared error between the
+ * real-time filter output and the output of the ideal symmetric
+ * target filter on the target series, over the observations
+ * [from, to). The symmetric filter is the ideal band-pass
+ * <code>gamma_0 = (w1 - w0)/pi, gamma_k = (sin(k*w1) - sin(k*w0))/(pi*k)</code>
+ * truncated at the given half length, with w0 the band-pass and
+ * w1 the low-pass cutoff of the configuration. For a lag, the real-time
+ * output at t is compared with the symmetric output at t - lag.
+ *
+ * Only observations where both filters are fully defined are used,
+ * so the evaluation range should leave at least L observations before
+ * and symmetricLength observations after it.
+ */
+public class FilterMSECriterion implements FitCriterion {
+
+	private final ArrayList<MdfaSeries> series;
+	private final int from;
+	private final int to;
+	private int targetIndex = 0;
+	private int symmetricLength = 100;
+
+
+	/**
+	 * @param series
+	 *    The series on which the filter is evaluated, in the same
+	 *    order as the series of the estimation
+	 * @param from
+	 *    First observation of the evaluation
+	 * @param to
+	 *    End (exclusive) of the evaluation
+	 */
+	public FilterMSECriterion(List<? extends MdfaSeries> series, int from, int to) {
+
+		this.series = new ArrayList<MdfaSeries>(series);
+		this.from = from;
+		this.to = to;
+	}
+
+	public FilterMSECriterion setTargetIndex(int target) {
+
+		this.targetIndex = target;
+		return this;
+	}
+
+	/**
+	 * Sets the half length of the truncated symmetric target filter,
+	 * 100 by default
+	 *
+	 * @param M
+	 *    Half length of the symmetric filter
+	 * @return
+	 *    This criterion
+	 */
+	public FilterMSECriterion setSymmetricLength(int M) {
+
+		this.symmetricLength = Math.max(0, M);
+		return this;
+	}
+
+	@Override
+	public double score(MDFABase anyMDFA, MdfaMatrix coeffs) throws Exception {
+
+		int L = anyMDFA.getFilterLength();
+		int M = symmetricLength;
+		int shift = -(int)Math.round(anyMDFA.getLag());
+		double[] b = coeffs.getMatrix().getData();
+		double[] gamma = symmetricCoefficients(anyMDFA.getBandPassCutoff(), anyMDFA.getLowPassCutoff(), M);
+
+		MdfaSeries target = series.get(targetIndex);
+		int n = target.size();
+
+		int start = Math.max(from, Math.max(L - 1, M - shift));
+		int end = Math.min(to, n - M - shift);
+		if(end <= start) {
+			throw new Exception("No observations in [" + from + ", " + to + ") where both filters are defined");
+		}
+
+		double sum = 0;
+		for(int t = start; t < end; t++) {
+
+			int s = t + shift;
+			double symmetric = gamma[0]*target.getTargetValue(s);
+			for(int k = 1; k <= M; k++) {
+				symmetric += gamma[k]*(target.getTargetValue(s - k) + target.getTargetValue(s + k));
+			}
+
+			double err = RealTimeFilter.apply(b, L, series, t) - symmetric;
+			sum += err*err;
+		}
+		return sum/(end - start);
+	}
+
+	private static double[] symmetricCoefficients(double w0, double w1, int M) {
+
+		double[] gamma = new double[M + 1];
+		gamma[0] = (w1 - w0)/Math.PI;
+		for(int k = 1; k <= M; k++) {
+			gamma[k] = (Math.sin(k*w1) - Math.sin(k*w0))/(Math.PI*k);
+		}
+		return gamma;
+	}
+
+	@Override
+	public boolean isHigherBetter() {
+		return false;
+	}
+
+	@Override
+	public String getName() {
+		return "MSE";
+	}
+}
@@ -0,0 +1,37 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+import ch.imetrica.mdfa.mdfa.MDFABase;
+
+/**
+ *
+ * Scores the filter coefficients of one MDFA configuration,
+ * typically on data that was not used for the estimation.
+ * A criterion is called concurrently for different
+ * configurations and must therefore not keep state between calls.
+ */
+public interface FitCriterion {
+
+	/**
+	 * Scores the coefficients of a configuration
+	 *
+	 * @param anyMDFA
+	 *    The MDFA configuration the coefficients were estimated with
+	 * @param coeffs
+	 *    The coefficients of all series, of length nseries*L
+	 * @return
+	 *    The score
+	 * @throws Exception
+	 */
+	double score(MDFABase anyMDFA, MdfaMatrix coeffs) throws Exception;
+
+	/**
+	 * @return true if a higher score is a better fit
+	 */
+	boolean isHigherBetter();
+
+	/**
+	 * @return Name of the criterion for the result table
+	 */
+	String getName();
+}
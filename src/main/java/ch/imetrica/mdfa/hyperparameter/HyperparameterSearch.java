@@ -0,0 +1,230 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.mdfa.MDFABatchSolver;
+import ch.imetrica.mdfa.series.MdfaSeries;
+
+/**
+ *
+ * Grid and random search over the customization and regularization
+ * parameters of an MDFA configuration.
+ *
+ * Each parameter combination gets its own MDFAFactory and solver. The
+ * combinations are estimated on the in-sample series with a
+ * {@link MDFABatchSolver}, so the dfts are computed once and shared,
+ * and the estimations and the scoring with the {@link FitCriterion}
+ * are done in parallel on a fork-join pool. For an out-of-sample
+ * criterion, the in-sample series should end before the observations
+ * the criterion evaluates.
+ *
+ * <pre>
+ * ArrayList&lt;SearchResult&gt; table = new HyperparameterSearch(inSample, new FilterMSECriterion(all, 600, 900))
+ *          .gridSearch(template, new ParameterGrid().setLambda(0, 5, 10).setAlpha(0, 10, 20));
+ * </pre>
+ */
+public class HyperparameterSearch {
+
+	private final ArrayList<MdfaSeries> series;
+	private final FitCriterion criterion;
+	private ForkJoinPool pool;
+	private int targetIndex = 0;
+
+
+	/**
+	 * @param series
+	 *    The in-sample series of the estimation
+	 * @param criterion
+	 *    The criterion that scores each combination
+	 */
+	public HyperparameterSearch(List<? extends MdfaSeries> series, FitCriterion criterion) {
+
+		this.series = new ArrayList<MdfaSeries>(series);
+		this.criterion = criterion;
+	}
+
+	/**
+	 * Sets the pool on which the combinations are estimated and
+	 * scored. By default the common fork-join pool is used
+	 *
+	 * @param pool
+	 *    A fork-join pool
+	 * @return
+	 *    This search
+	 */
+	public HyperparameterSearch setForkJoinPool(ForkJoinPool pool) {
+
+		this.pool = pool;
+		return this;
+	}
+
+	public HyperparameterSearch setTargetIndex(int target) {
+
+		this.targetIndex = target;
+		return this;
+	}
+
+
+	/**
+	 * Estimates and scores all combinations of the grid
+	 *
+	 * @param template
+	 *    The MDFABase with the parameters that are not searched
+	 * @param grid
+	 *    The parameter values
+	 * @return
+	 *    The results ranked from the best to the worst fit
+	 * @throws Exception
+	 */
+	public ArrayList<SearchResult> gridSearch(MDFABase template, ParameterGrid grid) throws Exception {
+		return search(grid.getCombinations(template));
+	}
+
+	/**
+	 * Estimates and scores n randomly drawn distinct
+	 * combinations of the grid
+	 *
+	 * @param template
+	 *    The MDFABase with the parameters that are not searched
+	 * @param grid
+	 *    The parameter values
+	 * @param n
+	 *    Number of combinations
+	 * @param seed
+	 *    Seed for drawing the combinations
+	 * @return
+	 *    The results ranked from the best to the worst fit
+	 * @throws Exception
+	 */
+	public ArrayList<SearchResult> randomSearch(MDFABase template, ParameterGrid grid, int n, long seed) throws Exception {
+		return search(grid.sampleCombinations(template, n, new Random(seed)));
+	}
+
+	/**
+	 * Estimates and scores the given configurations
+	 *
+	 * @param configurations
+	 *    The MDFA configurations
+	 * @return
+	 *    The results ranked from the best to the worst fit
+	 * @throws Exception
+	 */
+	public ArrayList<SearchResult> search(ArrayList<MDFABase> configurations) throws Exception {
+
+		ForkJoinPool anyPool = (pool == null) ? ForkJoinPool.commonPool() : pool;
+
+		ArrayList<MdfaMatrix> coeffs = (new MDFABatchSolver(configurations))
+				.setForkJoinPool(anyPool)
+				.setTargetIndex(targetIndex)
+				.solve(series);
+
+		SearchResult[] results = new SearchResult[configurations.size()];
+		try {
+			anyPool.invoke(new ScoreTask(configurations, coeffs, results, 0, results.length));
+		}
+		catch(ScoreException e) {
+			throw e.cause;
+		}
+
+		ArrayList<SearchResult> table = new ArrayList<SearchResult>(results.length);
+		Collections.addAll(table, results);
+		rank(table, criterion.isHigherBetter());
+		return table;
+	}
+
+
+	/**
+	 * Sorts the results from the best to the worst score and sets
+	 * their ranks. Results with an undefined score are ranked last
+	 */
+	static void rank(ArrayList<SearchResult> table, final boolean higherIsBetter) {
+
+		Collections.sort(table, new Comparator<SearchResult>() {
+
+			@Override
+			public int compare(SearchResult a, SearchResult b) {
+
+				boolean aNaN = Double.isNaN(a.getScore());
+				boolean bNaN = Double.isNaN(b.getScore());
+				if(aNaN || bNaN) {
+					return Boolean.compare(aNaN, bNaN);
+				}
+				return higherIsBetter ? Double.compare(b.getScore(), a.getScore())
+						              : Double.compare(a.getScore(), b.getScore());
+			}
+		});
+
+		for(int i = 0; i < table.size(); i++) {
+			table.get(i).setRank(i + 1);
+		}
+	}
+
+
+	/**
+	 * Scores the combinations [from, to) by splitting the
+	 * range in half until single combinations are left
+	 */
+	private class ScoreTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ArrayList<MDFABase> configurations;
+		private final ArrayList<MdfaMatrix> coeffs;
+		private final SearchResult[] results;
+		private final int from;
+		private final int to;
+
+		ScoreTask(ArrayList<MDFABase> configurations, ArrayList<MdfaMatrix> coeffs,
+				SearchResult[] results, int from, int to) {
+
+			this.configurations = configurations;
+			this.coeffs = coeffs;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if(to - from > 1) {
+
+				int mid = (from + to) >>> 1;
+				invokeAll(new ScoreTask(configurations, coeffs, results, from, mid),
+						  new ScoreTask(configurations, coeffs, results, mid, to));
+				return;
+			}
+
+			for(int m = from; m < to; m++) {
+				try {
+					results[m] = new SearchResult(configurations.get(m), coeffs.get(m),
+							criterion.score(configurations.get(m), coeffs.get(m)));
+				}
+				catch(Exception e) {
+					throw new ScoreException(e);
+				}
+			}
+		}
+	}
+
+	/** Carries a checked exception of a criterion out of the pool */
+	private static class ScoreException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+		private final Exception cause;
+
+		ScoreException(Exception cause) {
+
+			super(cause);
+			this.cause = cause;
+		}
+	}
+}
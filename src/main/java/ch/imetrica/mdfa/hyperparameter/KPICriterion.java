@@ -0,0 +1,94 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.imetrica.mdfa.market.KeyPerformanceIndicator;
+import ch.imetrica.mdfa.market.TradingPerformance;
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.series.MdfaSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
+
+/**
+ *
+ * Scores a configuration by a {@link KeyPerformanceIndicator} of
+ * the strategy that is long when the real-time filter output is
+ * positive and short when it is negative. The strategy is simulated
+ * with a {@link TradingPerformance} over the observations [from, to)
+ * at the given prices, which must be aligned with the series.
+ */
+public class KPICriterion implements FitCriterion {
+
+	private final ArrayList<MdfaSeries> series;
+	private final TimeSeries<Double> prices;
+	private final int from;
+	private final int to;
+	private final int kpiChoice;
+	private final boolean higherIsBetter;
+
+
+	/**
+	 * @param series
+	 *    The series on which the filter is evaluated, in the same
+	 *    order as the series of the estimation
+	 * @param prices
+	 *    Prices of the traded instrument at the same observations
+	 * @param from
+	 *    First observation of the evaluation
+	 * @param to
+	 *    End (exclusive) of the evaluation
+	 * @param kpiChoice
+	 *    Index of the KPI in {@link KeyPerformanceIndicator#getHeaders()}
+	 * @param higherIsBetter
+	 *    If a higher KPI is better, for example false for the max drawdown
+	 */
+	public KPICriterion(List<? extends MdfaSeries> series, TimeSeries<Double> prices, int from, int to,
+			int kpiChoice, boolean higherIsBetter) {
+
+		this.series = new ArrayList<MdfaSeries>(series);
+		this.prices = prices;
+		this.from = from;
+		this.to = to;
+		this.kpiChoice = kpiChoice;
+		this.higherIsBetter = higherIsBetter;
+	}
+
+	@Override
+	public double score(MDFABase anyMDFA, MdfaMatrix coeffs) throws Exception {
+
+		int L = anyMDFA.getFilterLength();
+		double[] b = coeffs.getMatrix().getData();
+
+		int start = Math.max(from, L - 1);
+		int end = Math.min(to, prices.size());
+		if(end <= start) {
+			throw new Exception("No observations in [" + from + ", " + to + ") to evaluate");
+		}
+
+		TradingPerformance performance = new TradingPerformance(1);
+		int[] signal = new int[1];
+		for(int t = start; t < end; t++) {
+
+			double y = RealTimeFilter.apply(b, L, series, t);
+			signal[0] = (y > 0) ? 1 : ((y < 0) ? -1 : 0);
+
+			double price = prices.get(t).getValue();
+			performance.addEvent(prices.get(t).getDateTime(), price, price, signal);
+		}
+
+		KeyPerformanceIndicator kpi = new KeyPerformanceIndicator(performance);
+		kpi.computeKPIs();
+		return kpi.getKPI(kpiChoice);
+	}
+
+	@Override
+	public boolean isHigherBetter() {
+		return higherIsBetter;
+	}
+
+	@Override
+	public String getName() {
+		return KeyPerformanceIndicator.getHeaders()[kpiChoice];
+	}
+}
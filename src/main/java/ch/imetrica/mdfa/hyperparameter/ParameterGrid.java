@@ -0,0 +1,173 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import ch.imetrica.mdfa.mdfa.MDFABase;
+
+/**
+ *
+ * A grid of values for the customization and regularization
+ * parameters lambda, alpha, smooth, decayStart, decayStrength,
+ * crossCorr and lag. Parameters without values keep the value
+ * of the template MDFABase the combinations are derived from.
+ *
+ * The combinations are enumerated in mixed radix order with
+ * lambda varying slowest and lag fastest.
+ */
+public class ParameterGrid {
+
+	private static final int LAMBDA = 0;
+	private static final int ALPHA = 1;
+	private static final int SMOOTH = 2;
+	private static final int DECAY_START = 3;
+	private static final int DECAY_STRENGTH = 4;
+	private static final int CROSS = 5;
+	private static final int LAG = 6;
+
+	private final double[][] values = new double[7][];
+
+
+	public ParameterGrid setLambda(double... lambda) {
+		return setValues(LAMBDA, lambda);
+	}
+
+	public ParameterGrid setAlpha(double... alpha) {
+		return setValues(ALPHA, alpha);
+	}
+
+	public ParameterGrid setSmooth(double... smooth) {
+		return setValues(SMOOTH, smooth);
+	}
+
+	public ParameterGrid setDecayStart(double... decayStart) {
+		return setValues(DECAY_START, decayStart);
+	}
+
+	public ParameterGrid setDecayStrength(double... decayStrength) {
+		return setValues(DECAY_STRENGTH, decayStrength);
+	}
+
+	public ParameterGrid setCrossCorr(double... crossCorr) {
+		return setValues(CROSS, crossCorr);
+	}
+
+	public ParameterGrid setLag(double... lag) {
+		return setValues(LAG, lag);
+	}
+
+	private ParameterGrid setValues(int param, double[] v) {
+
+		values[param] = (v == null || v.length == 0) ? null : v.clone();
+		return this;
+	}
+
+
+	/**
+	 * Number of combinations in the grid
+	 *
+	 * @return The product of the number of values of each parameter
+	 */
+	public long size() {
+
+		long n = 1;
+		for(int p = 0; p < values.length; p++) {
+			if(values[p] != null) {
+				n = n*values[p].length;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the combination at the given index
+	 *
+	 * @param index
+	 *    Index between 0 and size() - 1
+	 * @param template
+	 *    The MDFABase that holds all other parameters
+	 * @return
+	 *    A copy of the template with the parameters of the combination
+	 */
+	public MDFABase getCombination(long index, MDFABase template) {
+
+		MDFABase anyMDFA = template.copy();
+
+		for(int p = values.length - 1; p >= 0; p--) {
+
+			if(values[p] == null) {
+				continue;
+			}
+			int k = (int)(index % values[p].length);
+			index = index/values[p].length;
+			setParameter(anyMDFA, p, values[p][k]);
+		}
+		return anyMDFA;
+	}
+
+	/**
+	 * All combinations of the grid
+	 *
+	 * @param template
+	 *    The MDFABase that holds all other parameters
+	 * @return
+	 *    One MDFABase for each combination
+	 */
+	public ArrayList<MDFABase> getCombinations(MDFABase template) {
+
+		long n = size();
+		ArrayList<MDFABase> combinations = new ArrayList<MDFABase>();
+		for(long i = 0; i < n; i++) {
+			combinations.add(getCombination(i, template));
+		}
+		return combinations;
+	}
+
+	/**
+	 * A random sample of distinct combinations of the grid. If
+	 * n is at least the size of the grid, all combinations are returned
+	 *
+	 * @param template
+	 *    The MDFABase that holds all other parameters
+	 * @param n
+	 *    Number of combinations
+	 * @param rng
+	 *    Random number generator
+	 * @return
+	 *    n distinct combinations in random order
+	 */
+	public ArrayList<MDFABase> sampleCombinations(MDFABase template, int n, Random rng) {
+
+		long total = size();
+		if(n >= total) {
+			return getCombinations(template);
+		}
+
+		HashSet<Long> drawn = new HashSet<Long>();
+		ArrayList<MDFABase> combinations = new ArrayList<MDFABase>();
+		while(combinations.size() < n) {
+
+			long index = (long)(rng.nextDouble()*total);
+			if(drawn.add(index)) {
+				combinations.add(getCombination(index, template));
+			}
+		}
+		return combinations;
+	}
+
+
+	private static void setParameter(MDFABase anyMDFA, int param, double v) {
+
+		switch(param) {
+			case LAMBDA:         anyMDFA.setLambda(v); break;
+			case ALPHA:          anyMDFA.setAlpha(v); break;
+			case SMOOTH:         anyMDFA.setSmooth(v); break;
+			case DECAY_START:    anyMDFA.setDecayStart(v); break;
+			case DECAY_STRENGTH: anyMDFA.setDecayStrength(v); break;
+			case CROSS:          anyMDFA.setCrossCorr(v); break;
+			case LAG:            anyMDFA.setLag(v); break;
+			default: break;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import java.util.List;
+
+import ch.imetrica.mdfa.series.MdfaSeries;
+
+/**
+ * Applies estimated multivariate filter coefficients to the
+ * target values of the series
+ */
+final class RealTimeFilter {
+
+	private RealTimeFilter() {}
+
+	/**
+	 * The real-time filter output
+	 * <code>y_t = sum_i sum_l b_{i,l} x_i(t - l)</code>
+	 * for t >= L - 1
+	 */
+	static double apply(double[] b, int L, List<? extends MdfaSeries> series, int t) {
+
+		double sum = 0;
+		for(int i = 0; i < series.size(); i++) {
+
+			MdfaSeries anySeries = series.get(i);
+			for(int l = 0; l < L; l++) {
+				sum += b[i*L + l]*anySeries.getTargetValue(t - l);
+			}
+		}
+		return sum;
+	}
+}
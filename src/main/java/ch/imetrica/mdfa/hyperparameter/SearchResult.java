@@ -0,0 +1,81 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import java.text.DecimalFormat;
+
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+import ch.imetrica.mdfa.mdfa.MDFABase;
+
+/**
+ *
+ * One row of the ranked result table of a {@link HyperparameterSearch}:
+ * the configuration, its coefficients, its score and its rank
+ * (1 is the best fit).
+ */
+public class SearchResult {
+
+	private final MDFABase anyMDFA;
+	private final MdfaMatrix coeffs;
+	private final double score;
+	private int rank;
+
+	SearchResult(MDFABase anyMDFA, MdfaMatrix coeffs, double score) {
+
+		this.anyMDFA = anyMDFA;
+		this.coeffs = coeffs;
+		this.score = score;
+	}
+
+	public MDFABase getMDFABase() {
+		return anyMDFA;
+	}
+
+	public MdfaMatrix getCoefficients() {
+		return coeffs;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	void setRank(int rank) {
+		this.rank = rank;
+	}
+
+	/**
+	 * Returns the headers of the result table
+	 * @param criterion Name of the score
+	 * @return The column names
+	 */
+	public static String[] getHeaders(String criterion) {
+		return new String[] {"Rank", criterion, "Lambda", "Alpha", "Smooth", "DecayStart", "DecayStrength", "CrossCorr", "Lag"};
+	}
+
+	/**
+	 * The result as one comma separated line of the table
+	 * @return The line
+	 */
+	public String outputLine() {
+
+		DecimalFormat df = new DecimalFormat("#.######");
+		StringBuilder sb = new StringBuilder();
+		sb.append(rank).append(", ")
+		  .append(df.format(score)).append(", ")
+		  .append(df.format(anyMDFA.getLambda())).append(", ")
+		  .append(df.format(anyMDFA.getAlpha())).append(", ")
+		  .append(df.format(anyMDFA.getSmooth())).append(", ")
+		  .append(df.format(anyMDFA.getDecayStart())).append(", ")
+		  .append(df.format(anyMDFA.getDecayStrength())).append(", ")
+		  .append(df.format(anyMDFA.getCrossCorr())).append(", ")
+		  .append(df.format(anyMDFA.getLag()));
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return outputLine();
+	}
+}
@@ -3,21 +3,63 @@ package ch.imetrica.mdfa.market;
 import java.io.IOException;
 import java.util.Random;
 
+import ch.imetrica.mdfa.datafeeds.BinaryColumnarFile;
+import ch.imetrica.mdfa.datafeeds.BinaryFeed;
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.InfoBarFeed;
+import ch.imetrica.mdfa.datafeeds.PrefetchingFeed;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
 
 public class MarketFeed {
 
 	
-	CsvFeed marketFeed;
+	InfoBarFeed marketFeed;
 	Random rng;
 	boolean randomPrice;
 	
 	
+	/**
+	 * A feed of the bars with news probabilities of a csv file, or of a 
+	 * {@link BinaryColumnarFile} converted from such a csv file
+	 * 
+	 * @param dataFile
+	 *    The csv or binary columnar data file
+	 * @throws IOException
+	 */
 	public MarketFeed(String dataFile) throws IOException {		
 		
 		rng = new Random();
-		marketFeed = new CsvFeed(dataFile, "Index", "Open", "High", "Low", "Close", "ProbNoNews", "ProbBadNews", "ProbGoodNews");
+		if(BinaryColumnarFile.isBinaryColumnarFile(dataFile)) {
+			marketFeed = new BinaryFeed(dataFile, "Open", "High", "Low", "Close", "ProbNoNews", "ProbBadNews", "ProbGoodNews");
+		}
+		else {
+			marketFeed = new CsvFeed(dataFile, "Index", "Open", "High", "Low", "Close", "ProbNoNews", "ProbBadNews", "ProbGoodNews");
+		}
+	}
+	
+	public MarketFeed(InfoBarFeed marketFeed) {
+		
+		this.rng = new Random();
+		this.marketFeed = marketFeed;
+	}
+	
+	/**
+	 * Reads the info bars ahead on their own thread with a
+	 * {@link PrefetchingFeed.InfoBars}, before the first price is requested
+	 * 
+	 * @param capacity
+	 *    The number of bars read ahead
+	 * @return
+	 *    This market feed
+	 */
+	public MarketFeed setPrefetch(int capacity) {
+		
+		marketFeed = new PrefetchingFeed.InfoBars(marketFeed, capacity);
+		return this;
+	}
+	
+	public InfoBarFeed getMarketDataFeed() {
+		return marketFeed;
 	}
 	
 	public TimeSeriesEntry<double[]> getNextPrice() throws NumberFormatException, IOException {
@@ -8,6 +8,7 @@ import java.util.Random;
 
 import org.joda.time.format.DateTimeFormatter;
 
+import ch.imetrica.mdfa.datafeeds.PrefetchingFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.series.MultivariateFXSeries;
 import ch.imetrica.mdfa.series.TimeSeries;
@@ -38,7 +39,7 @@ public class SimulateStrategy {
 	public SimulateStrategy(String market_name, String strategyName, int n_strategies, float tradeFreq, boolean print) throws IOException {
 		
 		this.setStrategyName(strategyName);
-		market = new MarketFeed(market_name);
+		market = new MarketFeed(market_name).setPrefetch(PrefetchingFeed.DEFAULT_CAPACITY);
 		this.n_strategies = n_strategies;
 		current_state = new int[n_strategies];
 		trader = new TradingPerformance(n_strategies);
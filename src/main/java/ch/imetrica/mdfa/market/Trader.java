@@ -7,7 +7,11 @@ import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import ch.imetrica.mdfa.datafeeds.BinaryColumnarFile;
+import ch.imetrica.mdfa.datafeeds.BinaryFeed;
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.datafeeds.BarFeed;
+import ch.imetrica.mdfa.datafeeds.PrefetchingFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.series.TimeSeries;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
@@ -115,7 +119,19 @@ public class Trader {
 
 		Random rng = new Random(123);
 		
-		CsvFeed marketFeed = new CsvFeed("data/CEVA.SW.daily.csv", "Index", "Close", "High", "Low");
+		/* the daily csv bars, or a binary columnar file converted from them */
+		String dataFile = (args.length > 0) ? args[0] : "data/CEVA.SW.daily.csv";
+		
+		BarFeed marketFeed;
+		if(BinaryColumnarFile.isBinaryColumnarFile(dataFile)) {
+			marketFeed = new BinaryFeed(dataFile, "Close", "High", "Low", "Close");
+		}
+		else {
+			marketFeed = new CsvFeed(dataFile, "Index", "Close", "High", "Low", "Close");
+		}
+		
+		/* parse the bars on their own thread while the strategy is updated */
+		marketFeed = new PrefetchingFeed.Bars(marketFeed);
 		
 		MDFABase anyMdfa = (new MDFABase()).setLowpassCutoff(Math.PI/20.0)
 				.setI1(1)
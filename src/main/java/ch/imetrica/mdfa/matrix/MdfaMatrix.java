@@ -172,6 +172,87 @@ public class MdfaMatrix {
 	}
 	
 	
+	/**
+     * Computes <code>A<sup>T</sup>*B</code> into the given 
+     * result matrix without allocating a new matrix
+     * 
+     * @param des_mat
+     *     Right side matrix B not transposed
+     * @param result
+     *     Matrix of size this.numColumns and des_mat.nColumns, 
+     *     overwritten with the product
+     * @return result 
+     */
+	public MdfaMatrix mdfaMatrixMultTransAInto(MdfaMatrix des_mat, MdfaMatrix result) {
+		
+		anymatrix.transAmult(des_mat.getMatrix(), result.getMatrix());
+		return result;
+	}
+	
+	/**
+     * Computes <code>A*B<sup>T</sup></code> into the given 
+     * result matrix without allocating a new matrix
+     * 
+     * @param des_mat
+     *     Right side matrix B transposed
+     * @param result
+     *     Matrix of size this.numRows and des_mat.nRows, 
+     *     overwritten with the product
+     * @return result 
+     */
+	public MdfaMatrix mdfaMatrixMultTransBInto(MdfaMatrix des_mat, MdfaMatrix result) {
+		
+		anymatrix.transBmult(des_mat.getMatrix(), result.getMatrix());
+		return result;
+	}
+	
+	/**
+     * Computes <code>A*B</code> into the given 
+     * result matrix without allocating a new matrix
+     * 
+     * @param des_mat
+     *     Right side matrix B
+     * @param result
+     *     Matrix of size this.numRows and des_mat.nColumns, 
+     *     overwritten with the product
+     * @return result 
+     */
+	public MdfaMatrix mdfaMatrixMultInto(MdfaMatrix des_mat, MdfaMatrix result) {
+		
+		anymatrix.mult(des_mat.getMatrix(), result.getMatrix());
+		return result;
+	}
+	
+	/**
+	 * Copies the values of the given matrix of the 
+	 * same dimensions into this matrix
+	 * 
+	 * @param B 
+	 *    Matrix of the same dimensions
+	 * @return this
+	 */
+	public MdfaMatrix mdfaMatrixCopy(MdfaMatrix B) {
+		
+		System.arraycopy(B.getMatrix().getData(), 0, anymatrix.getData(), 0, anymatrix.getData().length);
+		return this;
+	}
+	
+	/**
+	 * Number of rows of this matrix
+	 * @return number of rows
+	 */
+	public int getNumRows() {
+		return anymatrix.numRows();
+	}
+	
+	/**
+	 * Number of columns of this matrix
+	 * @return number of columns
+	 */
+	public int getNumColumns() {
+		return anymatrix.numColumns();
+	}
+	
 	/**
      * Solves Ax = b where A is decomposed in LU form
      *   <code>A*A<sup>T</sup></code>
@@ -184,6 +265,22 @@ public class MdfaMatrix {
 			
 		DenseLU.factorize(anymatrix).solve(b.getMatrix());	
 	}
+	
+	/**
+     * Solves Ax = b with the given LU decomposition object. 
+     * The LU factors overwrite this matrix, so no copy of 
+     * the matrix is made
+     * 
+     * @param b
+     *     Right side or equation. b is overwritten with the solution
+     * @param lu 
+     *     A DenseLU of the dimensions of this matrix which is reused 
+     *     between solves
+     */
+	public void mdfaSolveInPlace(MdfaMatrix b, DenseLU lu) {
+		
+		lu.factor(anymatrix).solve(b.getMatrix());
+	}
 
 	public double sum() {
 	  
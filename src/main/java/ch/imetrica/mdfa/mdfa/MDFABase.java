@@ -279,4 +279,21 @@ public class MDFABase {
 		this.hybridForecast = hybridForecast;
 		return this;
 	}
+	
+	/**
+	 * A copy of this MDFABase with the same parameters, 
+	 * for example to vary one parameter without changing
+	 * the definition it was derived from
+	 * 
+	 * @return A new MDFABase
+	 */
+	public MDFABase copy() {
+		
+		MDFABase other = new MDFABase(N, nseries, L, i1, i2, lag, lowpass_cutoff, alpha, lambda, 
+				smooth, decayStrength, decayStart, crossCorr, shift_constraint);
+		
+		other.omega0 = this.omega0;
+		other.hybridForecast = this.hybridForecast;
+		return other;
+	}
 }
@@ -0,0 +1,303 @@
+package ch.imetrica.mdfa.mdfa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+import ch.imetrica.mdfa.series.MdfaSeries;
+import ch.imetrica.mdfa.series.MdfaSeries.SeriesType;
+import ch.imetrica.mdfa.series.VectorSignalSeries;
+import ch.imetrica.mdfa.spectraldensity.SpectralBase;
+
+/**
+ *
+ * Solves many MDFA configurations on one set of series.
+ *
+ * The dfts of the series only depend on the in-sample length
+ * (and, for prefiltered vector signal series, on which signal
+ * is estimated), so one {@link SpectralBase} is computed for
+ * each distinct in-sample length and shared by all the
+ * configurations that use it. The customization and the solve
+ * of each configuration are then done in parallel on a
+ * {@link ForkJoinPool}.
+ *
+ * The shared spectral bases are only read during the
+ * parallel solves. Each configuration has its own
+ * {@link MDFASolver}, so a batch solver must not be used
+ * by more than one thread at a time.
+ */
+public class MDFABatchSolver {
+
+	private final ArrayList<MDFASolver> anySolvers;
+	private ForkJoinPool pool;
+	private int targetIndex = 0;
+	private int lastSpectralBaseCount = 0;
+
+
+	/**
+	 * Creates a batch solver with one MDFASolver
+	 * for each MDFABase definition
+	 *
+	 * @param anyMDFAs
+	 *     The MDFA configurations
+	 */
+	public MDFABatchSolver(MDFABase[] anyMDFAs) {
+
+		anySolvers = new ArrayList<MDFASolver>();
+		for(int i = 0; i < anyMDFAs.length; i++) {
+			anySolvers.add(new MDFASolver(new MDFAFactory(anyMDFAs[i])));
+		}
+	}
+
+	/**
+	 * Creates a batch solver with one MDFASolver
+	 * for each MDFABase definition
+	 *
+	 * @param anyMDFAs
+	 *     The MDFA configurations
+	 */
+	public MDFABatchSolver(ArrayList<MDFABase> anyMDFAs) {
+
+		anySolvers = new ArrayList<MDFASolver>();
+		for(MDFABase anyMDFA : anyMDFAs) {
+			anySolvers.add(new MDFASolver(new MDFAFactory(anyMDFA)));
+		}
+	}
+
+	/**
+	 * Creates a batch solver on existing solvers. The solvers
+	 * keep their customization and workspace between batches
+	 *
+	 * @param solvers
+	 *     The MDFA solvers of each configuration
+	 */
+	public MDFABatchSolver(List<MDFASolver> solvers) {
+		this.anySolvers = new ArrayList<MDFASolver>(solvers);
+	}
+
+
+	/**
+	 * Sets the pool on which the configurations are solved.
+	 * By default the common fork-join pool is used
+	 *
+	 * @param pool
+	 *    A fork-join pool
+	 * @return
+	 *    This batch solver
+	 */
+	public MDFABatchSolver setForkJoinPool(ForkJoinPool pool) {
+
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * Sets the index of the target series in
+	 * the series given to {@link #solve(List)}
+	 *
+	 * @param target
+	 *    Index of the target series
+	 * @return
+	 *    This batch solver
+	 */
+	public MDFABatchSolver setTargetIndex(int target) {
+
+		this.targetIndex = target;
+		return this;
+	}
+
+	/**
+	 * Sets the solver mode of all the configurations, see
+	 * {@link MDFASolver#setSolverMode(SolverMode)}. The tolerance and 
+	 * the maximum iterations of the ITERATIVE mode are kept by each
+	 * solver, set them with {@link MDFASolver#setIterativeTolerance(double)}
+	 * and {@link MDFASolver#setMaxIterations(int)} on {@link #getSolver(int)}
+	 *
+	 * @param mode
+	 *    LU, CHOLESKY or ITERATIVE
+	 * @return
+	 *    This batch solver
+	 */
+	public MDFABatchSolver setSolverMode(SolverMode mode) {
+
+		for(MDFASolver anySolver : anySolvers) {
+			anySolver.setSolverMode(mode);
+		}
+		return this;
+	}
+
+
+	/**
+	 * Computes the filter coefficients of every configuration on
+	 * the given series. The dfts are computed once for each distinct
+	 * in-sample length, the configurations are solved in parallel.
+	 *
+	 * @param series
+	 *    The series of the estimation, the same for all configurations
+	 * @return
+	 *    The coefficients of each configuration, in the order
+	 *    of the configurations
+	 * @throws Exception
+	 *    If a series is too short for an in-sample length, or
+	 *    any of the solves fails
+	 */
+	public ArrayList<MdfaMatrix> solve(List<? extends MdfaSeries> series) throws Exception {
+
+		int M = anySolvers.size();
+		boolean signalDependent = isSignalDependent(series);
+
+		HashMap<String, SpectralBase> bases = new HashMap<String, SpectralBase>();
+		SpectralBase[] solverBases = new SpectralBase[M];
+
+		for(int m = 0; m < M; m++) {
+
+			MDFAFactory anyFactory = anySolvers.get(m).getMDFAFactory();
+			anyFactory.setNumberOfSeries(series.size());
+
+			int N = anyFactory.getSeriesLength();
+			int whichSig = signalDependent ? m : -1;
+			String key = N + ":" + whichSig;
+
+			SpectralBase base = bases.get(key);
+			if(base == null) {
+
+				base = computeSpectralBase(series, N, whichSig);
+				bases.put(key, base);
+			}
+			solverBases[m] = base;
+		}
+		lastSpectralBaseCount = bases.size();
+
+		MdfaMatrix[] coeffs = new MdfaMatrix[M];
+		SolveTask task = new SolveTask(solverBases, coeffs, 0, M);
+		try {
+			getPool().invoke(task);
+		}
+		catch(BatchException e) {
+			throw e.cause;
+		}
+
+		ArrayList<MdfaMatrix> result = new ArrayList<MdfaMatrix>(M);
+		for(int m = 0; m < M; m++) {
+			result.add(coeffs[m]);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Prefiltered vector signal series enter the dft with the
+	 * prefiltered values of the signal that is estimated, so
+	 * their dfts differ between configurations
+	 */
+	private static boolean isSignalDependent(List<? extends MdfaSeries> series) {
+
+		for(MdfaSeries anySeries : series) {
+			if(anySeries.getSeriesType() == SeriesType.MULTISIGNAL && anySeries.isPrefiltered()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private SpectralBase computeSpectralBase(List<? extends MdfaSeries> series, int N, int whichSig) throws Exception {
+
+		SpectralBase base = new SpectralBase(N).setTargetIndex(targetIndex);
+		if(whichSig >= 0) {
+			base.addVectorSeries(new ArrayList<VectorSignalSeries>((List<VectorSignalSeries>)series), whichSig);
+		}
+		else {
+			for(MdfaSeries anySeries : series) {
+				base.addSeries(anySeries);
+			}
+		}
+		return base;
+	}
+
+	private ForkJoinPool getPool() {
+		return (pool == null) ? ForkJoinPool.commonPool() : pool;
+	}
+
+
+	/**
+	 * Number of spectral bases computed in the last
+	 * call to {@link #solve(List)}
+	 *
+	 * @return Number of distinct spectral bases
+	 */
+	public int getLastSpectralBaseCount() {
+		return lastSpectralBaseCount;
+	}
+
+	public int size() {
+		return anySolvers.size();
+	}
+
+	public MDFASolver getSolver(int i) {
+		return anySolvers.get(i);
+	}
+
+
+	/**
+	 * Solves the configurations [from, to) by splitting the
+	 * range in half until single configurations are left
+	 */
+	private class SolveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final SpectralBase[] bases;
+		private final MdfaMatrix[] coeffs;
+		private final int from;
+		private final int to;
+
+		SolveTask(SpectralBase[] bases, MdfaMatrix[] coeffs, int from, int to) {
+
+			this.bases = bases;
+			this.coeffs = coeffs;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if(to - from > 1) {
+
+				int mid = (from + to) >>> 1;
+				invokeAll(new SolveTask(bases, coeffs, from, mid), new SolveTask(bases, coeffs, mid, to));
+				return;
+			}
+
+			for(int m = from; m < to; m++) {
+
+				MDFASolver anySolver = anySolvers.get(m);
+				try {
+					anySolver.updateSpectralBase(bases[m]);
+					coeffs[m] = anySolver.solver();
+				}
+				catch(Exception e) {
+					throw new BatchException(e);
+				}
+			}
+		}
+	}
+
+	/** Carries a checked exception of a solve out of the pool */
+	private static class BatchException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+		private final Exception cause;
+
+		BatchException(Exception cause) {
+
+			super(cause);
+			this.cause = cause;
+		}
+	}
+
+}
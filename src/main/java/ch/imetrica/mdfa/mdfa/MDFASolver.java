@@ -1,8 +1,16 @@
 package ch.imetrica.mdfa.mdfa;
 
+import java.util.Arrays;
+
+import com.github.fommil.netlib.BLAS;
+
+import no.uib.cipr.matrix.DenseCholesky;
+import no.uib.cipr.matrix.DenseMatrix;
+import no.uib.cipr.matrix.UpperSPDDenseMatrix;
 import ch.imetrica.mdfa.customization.Customization;
 import ch.imetrica.mdfa.matrix.MdfaMatrix;
 import ch.imetrica.mdfa.regularization.Regularization;
+import ch.imetrica.mdfa.spectraldensity.RollingSpectralBase;
 import ch.imetrica.mdfa.spectraldensity.SpectralBase;
 
 
@@ -26,6 +34,12 @@ public class MDFASolver {
 
 	
 	private MDFAFactory anyMDFAFactory;
+	private SolverMode solverMode = SolverMode.LU;
+	private SolverMode lastFactorization;
+	private double iterativeTolerance = 1E-10;
+	private int maxIterations = 50;
+	private int lastIterations = 0;
+	private final MDFASolverWorkspace workspace = new MDFASolverWorkspace();
 	
 
 	
@@ -58,12 +72,45 @@ public class MDFASolver {
 		anyMDFAFactory.getCustomization().setSpectralBase(anySpectralBase);
 	}
 	
+	/**
+	 * Recomputes the customization matrices with the current 
+	 * spectral base of the customization. If it is a 
+	 * {@link RollingSpectralBase}, its dfts are first slid 
+	 * to the latest observations of the series
+	 * 
+	 * @throws Exception
+	 *     If no spectral base has been set or the number of series 
+	 *     in the spectral base does not equal the number of series 
+	 *     for the MDFA estimation process
+	 */
+	public void updateSpectralBase() throws Exception {
+		
+		SpectralBase anySpectralBase = anyMDFAFactory.getCustomization().getSpectralBase();
+		if(anySpectralBase == null) {
+			throw new Exception("No spectral base has been set for the customization");
+		}
+		
+		if(anySpectralBase instanceof RollingSpectralBase) {
+			((RollingSpectralBase) anySpectralBase).update();
+		}
+		anyMDFAFactory.getCustomization().setSpectralBase(anySpectralBase);
+	}
+	
 	
 	/**
 	* 
 	* Assembles the customization and regularization matrices together 
 	* to put in the form <code>A*x = b</code> and solves for x. This solution
 	* are the coefficients for the MDFA real-time filtering process. 
+	* 
+	* In the ITERATIVE mode, the system is solved with preconditioned 
+	* conjugate gradients starting from the previous solution, see 
+	* {@link SolverMode}. 
+	* 
+	* All intermediate matrices are kept in the workspace of this 
+	* solver and reused in the next solve. Only the returned 
+	* coefficient matrix is newly allocated, so that it can be kept 
+	* by the caller
 	*  
 	* @return MdfaMatrix b_coeffs 
 	*      Is the solution to the 
@@ -75,54 +122,38 @@ public class MDFASolver {
 		
 		Regularization anyReg = anyMDFAFactory.getRegularization();
 		Customization anyCustomization = anyMDFAFactory.getCustomization();
+		MDFASolverWorkspace ws = workspace;
 		
-
-		
-		MdfaMatrix des = anyReg.getQSmooth().mdfaMatrixMultTransB(anyReg.getDesignMatrix());
-		MdfaMatrix reg_mat = anyReg.getDesignMatrix().mdfaMatrixMult(des);
-		MdfaMatrix temp = anyReg.getQSmooth().mdfaMatrixMult(anyReg.getWeight());
-		MdfaMatrix reg_xtxy = anyReg.getDesignMatrix().mdfaMatrixMult(temp);
+		MdfaMatrix design = anyReg.getDesignMatrix();
+		MdfaMatrix weight = anyReg.getWeight();
 		
+		/* the regularization products are memoized, they are copied since they are scaled in place */
+		MdfaMatrix reg_xtxy = ws.copy("reg_xtxy", anyReg.getRegularizationVector());
 		
-		if(anyReg.getQSmooth().mdfaMatrixGet(0, 0) != 0.0) {
-		     
-	      double distangle = anyReg.getQSmooth().meanDiag(false)/reg_mat.meanDiag(false);
-		  reg_mat.mdfaMatrixScale(distangle);	
-		  reg_xtxy.mdfaMatrixScale(distangle);
-
-		} 
+		MdfaMatrix reX = ws.multTransB("reX", anyCustomization.getREX(), design);
+		MdfaMatrix imX = ws.multTransB("imX", anyCustomization.getIMX(), design);
 		
-	
-		MdfaMatrix reX = anyCustomization.getREX().mdfaMatrixMultTransB(anyReg.getDesignMatrix());
-		MdfaMatrix imX = anyCustomization.getIMX().mdfaMatrixMultTransB(anyReg.getDesignMatrix());
+		if(solverMode == SolverMode.CHOLESKY) {
+			return solveCholesky(anyReg, anyCustomization, reX, imX, anyReg.getRegularizationMatrix(), reg_xtxy);
+		}
 		
-		MdfaMatrix XtX = reX.mdfaMatrixMultTransA(reX);
-		MdfaMatrix imXtX = imX.mdfaMatrixMultTransA(imX);
+		MdfaMatrix XtX = ws.multTransA("XtX", reX, reX);
+		MdfaMatrix imXtX = ws.multTransA("imXtX", imX, imX);
 		
 		XtX.mdfaMatrixAdd(imXtX);
 
-		MdfaMatrix temp2 = reX.mdfaMatrixMultTransA(anyCustomization.getREX().mdfaMatrixMult(anyReg.getWeight()));
-		MdfaMatrix xtxy = imX.mdfaMatrixMultTransA(anyCustomization.getIMX().mdfaMatrixMult(anyReg.getWeight()));
-		
-		xtxy.mdfaMatrixAdd(temp2);
-		xtxy.mdfaMatrixScale(-1.0);
-        dev = XtX.meanDiag(true); 
-        
-        MdfaMatrix b = reX.mdfaMatrixMultTransA(anyCustomization.getGamma());
-        b.mdfaMatrixAdd(xtxy);
-        reg_xtxy.mdfaMatrixScale(-dev);
-        b.mdfaMatrixAdd(reg_xtxy);
-
+		dev = XtX.meanDiag(true); 
+		MdfaMatrix b = assembleRightHandSide(anyReg, anyCustomization, reX, imX, reg_xtxy, dev);
         
 		if(anyMDFAFactory.getHybridForecast() > 0) {
 			
-			MdfaMatrix hreX = anyCustomization.getHybridREX().mdfaMatrixMultTransB(anyReg.getDesignMatrix());
-			MdfaMatrix himX = anyCustomization.getHybridIMX().mdfaMatrixMultTransB(anyReg.getDesignMatrix());
+			MdfaMatrix hreX = ws.multTransB("hreX", anyCustomization.getHybridREX(), design);
+			MdfaMatrix himX = ws.multTransB("himX", anyCustomization.getHybridIMX(), design);
 			
-			MdfaMatrix hXtX = hreX.mdfaMatrixMultTransA(hreX);
-			MdfaMatrix himXtX = himX.mdfaMatrixMultTransA(himX);
+			MdfaMatrix hXtX = ws.multTransA("hXtX", hreX, hreX);
+			MdfaMatrix himXtX = ws.multTransA("himXtX", himX, himX);
 			
-			MdfaMatrix hb = hreX.mdfaMatrixMultTransA(anyCustomization.getHybridGamma());
+			MdfaMatrix hb = ws.multTransA("hb", hreX, anyCustomization.getHybridGamma());
 			b.mdfaMatrixAdd(hb);
 			
 			hXtX.mdfaMatrixAdd(himXtX);
@@ -130,17 +161,376 @@ public class MDFASolver {
 		}
         
             
+        MdfaMatrix reg_mat = ws.copy("reg_mat", anyReg.getRegularizationMatrix());
         reg_mat.mdfaMatrixScale(dev);
         XtX.mdfaMatrixAdd(reg_mat);
      
-        XtX.mdfaSolve(b);
+        if(solverMode == SolverMode.ITERATIVE) {
+        	solveIterative(XtX, b);
+        }
+        else {
+        	
+        	XtX.mdfaSolveInPlace(b, ws.getLU(XtX.getNumRows()));
+        	lastFactorization = SolverMode.LU;
+        }
         
-        MdfaMatrix b_coeffs = anyReg.getDesignMatrix().mdfaMatrixMultTransA(b);
-        b_coeffs.mdfaMatrixAdd(anyReg.getWeight());
+        MdfaMatrix b_coeffs = design.mdfaMatrixMultTransA(b);
+        b_coeffs.mdfaMatrixAdd(weight);
 
         return b_coeffs;
         
 	}
+	
+	
+	/**
+	 * Assembles the right hand side of the normal equations 
+	 * <code>reX'*gamma - reX'*REX*w - imX'*IMX*w - dev*reg_xtxy</code>
+	 * 
+	 * reg_xtxy is scaled in place 
+	 */
+	private MdfaMatrix assembleRightHandSide(Regularization anyReg, Customization anyCustomization, 
+			MdfaMatrix reX, MdfaMatrix imX, MdfaMatrix reg_xtxy, double dev) {
+		
+		MDFASolverWorkspace ws = workspace;
+		
+		MdfaMatrix temp2 = ws.multTransA("temp2", reX, ws.mult("REXw", anyCustomization.getREX(), anyReg.getWeight()));
+		MdfaMatrix xtxy = ws.multTransA("xtxy", imX, ws.mult("IMXw", anyCustomization.getIMX(), anyReg.getWeight()));
+		
+		xtxy.mdfaMatrixAdd(temp2);
+		xtxy.mdfaMatrixScale(-1.0);
+        
+        MdfaMatrix b = ws.multTransA("b", reX, anyCustomization.getGamma());
+        b.mdfaMatrixAdd(xtxy);
+        reg_xtxy.mdfaMatrixScale(-dev);
+        b.mdfaMatrixAdd(reg_xtxy);
+        
+        return b;
+	}
+	
+	
+	/**
+	 * Assembles only the upper triangle of the system matrix with 
+	 * symmetric rank-k updates <code>A = reX'*reX + imX'*imX + ...</code>
+	 * and solves it with a Cholesky decomposition. Falls back to 
+	 * LU if the system is numerically not positive definite
+	 */
+	private MdfaMatrix solveCholesky(Regularization anyReg, Customization anyCustomization, 
+			MdfaMatrix reX, MdfaMatrix imX, MdfaMatrix reg_mat, MdfaMatrix reg_xtxy) {
+		
+		MDFASolverWorkspace ws = workspace;
+		int n = reX.getNumColumns();
+		
+		UpperSPDDenseMatrix XtX = ws.getUpper(n);
+		symmetricRankUpdate(XtX, reX.getMatrix());
+		symmetricRankUpdate(XtX, imX.getMatrix());
+		
+		double dev = 0;
+		for(int i = 0; i < n; i++) {
+			dev += XtX.get(i, i);
+		}
+		dev = dev/(double)n;
+		
+		MdfaMatrix b = assembleRightHandSide(anyReg, anyCustomization, reX, imX, reg_xtxy, dev);
+		
+		MdfaMatrix hreX = null;
+		MdfaMatrix himX = null;
+		if(anyMDFAFactory.getHybridForecast() > 0) {
+			
+			hreX = ws.multTransB("hreX", anyCustomization.getHybridREX(), anyReg.getDesignMatrix());
+			himX = ws.multTransB("himX", anyCustomization.getHybridIMX(), anyReg.getDesignMatrix());
+			
+			MdfaMatrix hb = ws.multTransA("hb", hreX, anyCustomization.getHybridGamma());
+			b.mdfaMatrixAdd(hb);
+		}
+		addUpperTerms(XtX, hreX, himX, reg_mat, dev);
+		
+		/* the factorization overwrites XtX */
+		DenseCholesky cholesky = ws.getCholesky(n).factor(XtX);
+		if(cholesky.isSPD()) {
+			
+			cholesky.solve(b.getMatrix());
+			lastFactorization = SolverMode.CHOLESKY;
+		}
+		else {
+			
+			XtX = ws.getUpper(n);
+			symmetricRankUpdate(XtX, reX.getMatrix());
+			symmetricRankUpdate(XtX, imX.getMatrix());
+			addUpperTerms(XtX, hreX, himX, reg_mat, dev);
+			
+			double[] upper = XtX.getData();
+			MdfaMatrix full = ws.get("full", n, n);
+			double[] data = full.getMatrix().getData();
+			for(int j = 0; j < n; j++) {
+				for(int i = 0; i <= j; i++) {
+					
+					double v = upper[j*n + i];
+					data[j*n + i] = v;
+					data[i*n + j] = v;
+				}
+			}
+			full.mdfaSolveInPlace(b, ws.getLU(n));
+			lastFactorization = SolverMode.LU;
+		}
+		
+		MdfaMatrix b_coeffs = anyReg.getDesignMatrix().mdfaMatrixMultTransA(b);
+        b_coeffs.mdfaMatrixAdd(anyReg.getWeight());
+
+        return b_coeffs;
+	}
+	
+	/**
+	 * Solves the SPD system <code>A*x = b</code> with the preconditioned 
+	 * conjugate gradient method, starting from the previous solution and 
+	 * preconditioned with the Cholesky factor of an earlier system. If 
+	 * there is no preconditioner yet or the iteration does not reach the 
+	 * tolerance within maxIterations, A is factored, solved directly and 
+	 * its factor is kept as the new preconditioner. The solution 
+	 * overwrites b
+	 */
+	private void solveIterative(MdfaMatrix A, MdfaMatrix b) {
+		
+		MDFASolverWorkspace ws = workspace;
+		int n = A.getNumRows();
+		lastIterations = 0;
+		
+		DenseCholesky preconditioner = ws.getPreconditioner(n);
+		if(preconditioner != null && conjugateGradient(A, b, preconditioner)) {
+			
+			ws.setPreviousSolution(b);
+			lastFactorization = SolverMode.ITERATIVE;
+			return;
+		}
+		
+		/* refactor, A is copied so it is still intact for the LU fallback */
+		preconditioner = ws.factorPreconditioner(A);
+		if(preconditioner != null) {
+			
+			preconditioner.solve(b.getMatrix());
+			lastFactorization = SolverMode.CHOLESKY;
+		}
+		else {
+			
+			A.mdfaSolveInPlace(b, ws.getLU(n));
+			lastFactorization = SolverMode.LU;
+		}
+		ws.setPreviousSolution(b);
+	}
+	
+	/**
+	 * Preconditioned conjugate gradient iteration. The solution 
+	 * is written to b only if the relative residual reaches the 
+	 * tolerance
+	 * 
+	 * @return true if the iteration converged
+	 */
+	private boolean conjugateGradient(MdfaMatrix A, MdfaMatrix b, DenseCholesky preconditioner) {
+		
+		MDFASolverWorkspace ws = workspace;
+		int n = A.getNumRows();
+		double[] a = A.getMatrix().getData();
+		double[] rhs = b.getMatrix().getData();
+		
+		double[] x = ws.get("cg_x", n, 1).getMatrix().getData();
+		double[] r = ws.get("cg_r", n, 1).getMatrix().getData();
+		DenseMatrix zm = ws.get("cg_z", n, 1).getMatrix();
+		double[] z = zm.getData();
+		double[] p = ws.get("cg_p", n, 1).getMatrix().getData();
+		double[] q = ws.get("cg_q", n, 1).getMatrix().getData();
+		
+		BLAS blas = BLAS.getInstance();
+		
+		double bnorm = blas.dnrm2(n, rhs, 1);
+		if(bnorm == 0) {
+			
+			Arrays.fill(rhs, 0);
+			return true;
+		}
+		double threshold = iterativeTolerance*bnorm;
+		
+		/* r = b - A*x0 */
+		MdfaMatrix previous = ws.getPreviousSolution(n);
+		if(previous != null) {
+			System.arraycopy(previous.getMatrix().getData(), 0, x, 0, n);
+		}
+		else {
+			Arrays.fill(x, 0);
+		}
+		System.arraycopy(rhs, 0, r, 0, n);
+		blas.dsymv("U", n, -1.0, a, n, x, 1, 1.0, r, 1);
+		
+		double rnorm = blas.dnrm2(n, r, 1);
+		if(rnorm <= threshold) {
+			
+			System.arraycopy(x, 0, rhs, 0, n);
+			return true;
+		}
+		
+		System.arraycopy(r, 0, z, 0, n);
+		preconditioner.solve(zm);
+		System.arraycopy(z, 0, p, 0, n);
+		double rz = blas.ddot(n, r, 1, z, 1);
+		
+		for(int k = 1; k <= maxIterations; k++) {
+			
+			blas.dsymv("U", n, 1.0, a, n, p, 1, 0.0, q, 1);
+			double pq = blas.ddot(n, p, 1, q, 1);
+			if(pq <= 0) {
+				return false;
+			}
+			
+			double step = rz/pq;
+			blas.daxpy(n, step, p, 1, x, 1);
+			blas.daxpy(n, -step, q, 1, r, 1);
+			lastIterations = k;
+			
+			if(blas.dnrm2(n, r, 1) <= threshold) {
+				
+				System.arraycopy(x, 0, rhs, 0, n);
+				return true;
+			}
+			
+			System.arraycopy(r, 0, z, 0, n);
+			preconditioner.solve(zm);
+			double rzNew = blas.ddot(n, r, 1, z, 1);
+			
+			/* p = z + beta*p */
+			double beta = rzNew/rz;
+			blas.dscal(n, beta, p, 1);
+			blas.daxpy(n, 1.0, z, 1, p, 1);
+			rz = rzNew;
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Adds the hybrid terms (if any) and the scaled regularization 
+	 * to the upper triangle of the system matrix
+	 */
+	private static void addUpperTerms(UpperSPDDenseMatrix XtX, MdfaMatrix hreX, MdfaMatrix himX, 
+			MdfaMatrix reg_mat, double dev) {
+		
+		if(hreX != null) {
+			
+			symmetricRankUpdate(XtX, hreX.getMatrix());
+			symmetricRankUpdate(XtX, himX.getMatrix());
+		}
+		
+		int n = XtX.numColumns();
+		double[] reg = reg_mat.getMatrix().getData();
+		double[] upper = XtX.getData();
+		for(int j = 0; j < n; j++) {
+			for(int i = 0; i <= j; i++) {
+				upper[j*n + i] += dev*reg[j*n + i];
+			}
+		}
+	}
+	
+	
+	/**
+	 * Adds <code>C'*C</code> to the upper triangle of A with 
+	 * the BLAS symmetric rank-k update. MTJ's transRank1 is not 
+	 * used since it passes the wrong dimensions to dsyrk for 
+	 * non-square C
+	 */
+	private static void symmetricRankUpdate(UpperSPDDenseMatrix A, DenseMatrix C) {
+		
+		int n = A.numColumns();
+		int k = C.numRows();
+		BLAS.getInstance().dsyrk("U", "T", n, k, 1.0, C.getData(), Math.max(1, k), 1.0, A.getData(), Math.max(1, n));
+	}
+	
+	
+	/**
+	 * Sets the method for assembling and solving the 
+	 * normal equations, see {@link SolverMode}. LU by default
+	 * 
+	 * - LU: full X'X, LU decomposition
+	 * - CHOLESKY: upper triangle of X'X, Cholesky decomposition,
+	 *   falling back to LU if X'X is not positive definite
+	 * - ITERATIVE: warm-started preconditioned conjugate gradient, 
+	 *   which stops at {@link #setIterativeTolerance(double)} and 
+	 *   factors the system again after {@link #setMaxIterations(int)}
+	 *   iterations without converging
+	 * 
+	 * @param mode 
+	 *     LU, CHOLESKY or ITERATIVE
+	 * @return
+	 *     This solver
+	 */
+	public MDFASolver setSolverMode(SolverMode mode) {
+		
+		this.solverMode = mode;
+		return this;
+	}
+	
+	public SolverMode getSolverMode() {
+		return this.solverMode;
+	}
+	
+	/**
+	 * Sets the relative residual <code>|b - A*x|/|b|</code> at which 
+	 * the conjugate gradient iteration of the ITERATIVE mode stops. 
+	 * 1E-10 by default
+	 * 
+	 * @param tol 
+	 *     The relative tolerance
+	 * @return
+	 *     This solver
+	 */
+	public MDFASolver setIterativeTolerance(double tol) {
+		
+		this.iterativeTolerance = tol;
+		return this;
+	}
+	
+	public double getIterativeTolerance() {
+		return this.iterativeTolerance;
+	}
+	
+	/**
+	 * Sets the number of conjugate gradient iterations in the ITERATIVE 
+	 * mode after which the system is factored again. 50 by default
+	 * 
+	 * @param iterations 
+	 *     Maximum number of iterations
+	 * @return
+	 *     This solver
+	 */
+	public MDFASolver setMaxIterations(int iterations) {
+		
+		this.maxIterations = Math.max(0, iterations);
+		return this;
+	}
+	
+	public int getMaxIterations() {
+		return this.maxIterations;
+	}
+	
+	/**
+	 * Number of conjugate gradient iterations in the last call 
+	 * to solver() in the ITERATIVE mode. 0 if the system was 
+	 * factored instead
+	 * 
+	 * @return The number of iterations
+	 */
+	public int getLastIterations() {
+		return this.lastIterations;
+	}
+	
+	/**
+	 * The factorization that was used in the last call 
+	 * to solver(). In CHOLESKY mode this is LU if the 
+	 * system was not positive definite. In ITERATIVE mode 
+	 * this is ITERATIVE if the conjugate gradient iteration 
+	 * converged, otherwise the factorization used instead
+	 * 
+	 * @return The last factorization or null if solver() hasn't been called
+	 */
+	public SolverMode getLastFactorization() {
+		return this.lastFactorization;
+	}
 
 	public MDFAFactory getMDFAFactory() {
 		return anyMDFAFactory;
@@ -0,0 +1,179 @@
+package ch.imetrica.mdfa.mdfa;
+
+import java.util.HashMap;
+
+import no.uib.cipr.matrix.DenseCholesky;
+import no.uib.cipr.matrix.DenseLU;
+import no.uib.cipr.matrix.UpperSPDDenseMatrix;
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+
+/**
+ * 
+ * Holds the intermediate matrices and factorizations of an
+ * {@link MDFASolver} so that they are reused between solves. 
+ * Each buffer is identified by a name and is only reallocated 
+ * when the requested dimensions change, so repeated solves 
+ * at fixed dimensions allocate no new matrices.
+ * 
+ * A workspace is owned by one solver and is not thread-safe.
+ */
+class MDFASolverWorkspace {
+
+	private final HashMap<String, MdfaMatrix> buffers = new HashMap<String, MdfaMatrix>();
+	
+	private DenseLU lu;
+	private UpperSPDDenseMatrix upper;
+	private DenseCholesky cholesky;
+	private int luSize = -1;
+	private int choleskySize = -1;
+	
+	/* state kept between solves of the iterative mode */
+	private UpperSPDDenseMatrix preconditionerFactor;
+	private DenseCholesky preconditioner;
+	private boolean hasSolution = false;
+	
+	
+	/**
+	 * Gets the buffer with the given name and dimensions. The 
+	 * content of the buffer is whatever was left from the last use
+	 */
+	MdfaMatrix get(String name, int rows, int cols) {
+		
+		MdfaMatrix mat = buffers.get(name);
+		if(mat == null || mat.getNumRows() != rows || mat.getNumColumns() != cols) {
+			
+			mat = new MdfaMatrix(rows, cols);
+			buffers.put(name, mat);
+		}
+		return mat;
+	}
+	
+	/** A copy of A in the named buffer */
+	MdfaMatrix copy(String name, MdfaMatrix A) {
+		return get(name, A.getNumRows(), A.getNumColumns()).mdfaMatrixCopy(A);
+	}
+	
+	/** A*B into the named buffer */
+	MdfaMatrix mult(String name, MdfaMatrix A, MdfaMatrix B) {
+		return A.mdfaMatrixMultInto(B, get(name, A.getNumRows(), B.getNumColumns()));
+	}
+	
+	/** A'*B into the named buffer */
+	MdfaMatrix multTransA(String name, MdfaMatrix A, MdfaMatrix B) {
+		return A.mdfaMatrixMultTransAInto(B, get(name, A.getNumColumns(), B.getNumColumns()));
+	}
+	
+	/** A*B' into the named buffer */
+	MdfaMatrix multTransB(String name, MdfaMatrix A, MdfaMatrix B) {
+		return A.mdfaMatrixMultTransBInto(B, get(name, A.getNumRows(), B.getNumRows()));
+	}
+	
+	DenseLU getLU(int n) {
+		
+		if(lu == null || luSize != n) {
+			lu = new DenseLU(n, n);
+			luSize = n;
+		}
+		return lu;
+	}
+	
+	/**
+	 * The upper triangular system matrix for the Cholesky 
+	 * mode, zeroed before it is returned
+	 */
+	UpperSPDDenseMatrix getUpper(int n) {
+		
+		if(upper == null || upper.numRows() != n) {
+			upper = new UpperSPDDenseMatrix(n);
+		}
+		else {
+			upper.zero();
+		}
+		return upper;
+	}
+	
+	DenseCholesky getCholesky(int n) {
+		
+		if(cholesky == null || choleskySize != n) {
+			cholesky = new DenseCholesky(n, true);
+			choleskySize = n;
+		}
+		return cholesky;
+	}
+	
+	/**
+	 * The Cholesky factor of an earlier system of size n used as 
+	 * preconditioner, or null if there is none
+	 */
+	DenseCholesky getPreconditioner(int n) {
+		
+		if(preconditioner == null || preconditionerFactor.numRows() != n) {
+			return null;
+		}
+		return preconditioner;
+	}
+	
+	/**
+	 * Factors the symmetric matrix A into the preconditioner. The 
+	 * factor is kept in its own storage so that it survives the 
+	 * following solves. 
+	 * 
+	 * @return The new preconditioner, or null if A is numerically not SPD 
+	 */
+	DenseCholesky factorPreconditioner(MdfaMatrix A) {
+		
+		int n = A.getNumRows();
+		if(preconditionerFactor == null || preconditionerFactor.numRows() != n) {
+			
+			preconditionerFactor = new UpperSPDDenseMatrix(n);
+			preconditioner = new DenseCholesky(n, true);
+		}
+		
+		double[] a = A.getMatrix().getData();
+		double[] upperData = preconditionerFactor.getData();
+		System.arraycopy(a, 0, upperData, 0, a.length);
+		
+		preconditioner.factor(preconditionerFactor);
+		if(!preconditioner.isSPD()) {
+			
+			preconditionerFactor = null;
+			preconditioner = null;
+		}
+		return preconditioner;
+	}
+	
+	/**
+	 * The solution of the previous iterative solve, used 
+	 * as starting value. Null if there is none of size n
+	 */
+	MdfaMatrix getPreviousSolution(int n) {
+		
+		MdfaMatrix x = buffers.get("x_prev");
+		if(!hasSolution || x == null || x.getNumRows() != n) {
+			return null;
+		}
+		return x;
+	}
+	
+	void setPreviousSolution(MdfaMatrix x) {
+		
+		copy("x_prev", x);
+		hasSolution = true;
+	}
+	
+	/**
+	 * Releases all buffers
+	 */
+	void clear() {
+		
+		buffers.clear();
+		preconditionerFactor = null;
+		preconditioner = null;
+		hasSolution = false;
+		lu = null;
+		upper = null;
+		cholesky = null;
+		luSize = -1;
+		choleskySize = -1;
+	}
+}
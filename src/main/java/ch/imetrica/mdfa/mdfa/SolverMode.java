@@ -0,0 +1,29 @@
+package ch.imetrica.mdfa.mdfa;
+
+/**
+ * 
+ * The method used by the {@link MDFASolver} for assembling 
+ * and solving the normal equations of the MDFA system.
+ * 
+ * LU assembles the full X'X with general matrix products and solves 
+ * with an LU decomposition. 
+ * 
+ * CHOLESKY assembles only the upper triangle of X'X with symmetric 
+ * rank-k updates and solves with a Cholesky decomposition, which 
+ * roughly halves the flops and temporary memory. If the system is 
+ * numerically not positive definite, the LU decomposition is used instead.
+ * 
+ * ITERATIVE assembles the full X'X and solves it with the preconditioned 
+ * conjugate gradient method, warm-started from the previous solution and 
+ * preconditioned with the Cholesky factor of a previous system. This is 
+ * cheap when the system only changes slightly between solves, for 
+ * example after a small change of lambda or alpha or a new observation. 
+ * If the iteration does not converge, the system is factored again and 
+ * the new factor becomes the preconditioner.
+ */
+public enum SolverMode {
+	
+	LU,
+	CHOLESKY,
+	ITERATIVE
+}
@@ -22,6 +22,7 @@ import ch.imetrica.mdfa.series.MultivariateSeries;
 import ch.imetrica.mdfa.series.MultivariateSignalSeries;
 import ch.imetrica.mdfa.series.SignalSeries;
 import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.TieredSignalHistory;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
 
 public class TimeSeriesPlot extends ApplicationFrame {
@@ -213,6 +214,53 @@ public class TimeSeriesPlot extends ApplicationFrame {
 	    	return dataset;
 		}
 
+		public TimeSeriesPlot(String title, TieredSignalHistory history, DateTimeFormatter formatter) {
+			
+			super(title);
+	        final XYDataset dataset = createDataset(title, history, formatter);
+	        final JFreeChart chart = createChart(dataset);
+	        final ChartPanel chartPanel = new ChartPanel(chart);
+	        chartPanel.setPreferredSize(new java.awt.Dimension(900, 570));
+	        chartPanel.setMouseZoomable(true, false);
+	        setContentPane(chartPanel);
+		}
+		
+		/**
+		 * The signals of a tiered history, the close of each bucket 
+		 * followed by the full resolution values. Points falling on the 
+		 * same day keep the latest value
+		 */
+		private XYDataset createDataset(String title, TieredSignalHistory history,
+				DateTimeFormatter formatter) {
+			
+			TimeSeriesCollection dataset = new TimeSeriesCollection();
+			
+			int M = history.getColumnCount();
+			
+			final TimeSeries[] signalSeries = new TimeSeries[M];
+			for(int m = 0; m < M; m++) {
+				signalSeries[m] = new TimeSeries("Signal " + m);
+			}
+			
+			int N = history.size();
+			for(int i = 0; i < N; i++) {
+				
+				long time = history.getTime(i);
+				DateTime sigDateTime = (time != TimeSeriesEntry.NO_TIME) ? new DateTime(time, formatter.getZone()) 
+						: getSignalDateTime(history.getSignalDate(i), formatter);
+                Day current = new Day(sigDateTime.toDate());   
+                
+                for(int m = 0; m < M; m++) {  	
+    				signalSeries[m].addOrUpdate(current, history.getValue(i, m));
+    			}               
+			}
+			
+			for(int m = 0; m < M; m++) {
+				dataset.addSeries(signalSeries[m]);
+			} 	
+	    	return dataset;
+		}
+
 		private XYDataset createDataset(String title, MultivariateSignalSeries multivariateSignalSeries,
 				DateTimeFormatter formatter) {
 		
@@ -26,6 +26,12 @@ public class Regularization {
 	private MdfaMatrix Q_decay;
 	private MdfaMatrix Q_cross;
 	
+	/* data independent products of the normal equations, memoized */
+	private MdfaMatrix reg_mat;
+	private MdfaMatrix reg_xtxy;
+	private double distangle = 1.0;
+	private boolean productsValid = false;
+	
 
 	/**
 	 * 
@@ -49,6 +55,7 @@ public class Regularization {
 	
 	public void setMDFABase(MDFABase anyMDFA) {
 		this.anyMDFA = anyMDFA;
+		this.productsValid = false;
 	}
 	
 	/**
@@ -122,6 +129,7 @@ public class Regularization {
 		double shift_constraint = anyMDFA.getShift_constraint();
 		double[] weight_constraint = new double[nseries];
 		w_eight = new MdfaMatrix(nseries*L, 1);
+		productsValid = false;
 		
 		if(anyMDFA.getBandPassCutoff() == 0) {
 			weight_constraint[0] = 1.0;	
@@ -502,7 +510,7 @@ public class Regularization {
 	  else {
 		  Q_smooth.mdfaMatrixAdd(Q_decay);
 	  }  
-	       
+	  productsValid = false;     
 	}
 	
 
@@ -835,6 +843,79 @@ public class Regularization {
 	}
 	
 	
+	/**
+	 * 
+	 * Returns the regularization part of the system matrix 
+	 * <code>des_mat*Q_smooth*des_mat'</code> scaled by 
+	 * {@link #getDistangle()}. It only depends on the regularization 
+	 * parameters and is computed once until they change. 
+	 * 
+	 * The returned matrix is shared and must not be modified
+	 * 
+	 * @return reg_mat
+	 *     The scaled regularization matrix of the system
+	 */
+	public MdfaMatrix getRegularizationMatrix() {
+		
+		computeProducts();
+		return reg_mat;
+	}
+	
+	/**
+	 * 
+	 * Returns the regularization part of the right-hand side 
+	 * <code>des_mat*Q_smooth*w_eight</code> scaled by 
+	 * {@link #getDistangle()}. It is computed once until the 
+	 * regularization parameters change. 
+	 * 
+	 * The returned vector is shared and must not be modified
+	 * 
+	 * @return reg_xtxy
+	 *     The scaled regularization vector of the right-hand side
+	 */
+	public MdfaMatrix getRegularizationVector() {
+		
+		computeProducts();
+		return reg_xtxy;
+	}
+	
+	/**
+	 * 
+	 * The scaling <code>meanDiag(Q_smooth)/meanDiag(des_mat*Q_smooth*des_mat')</code>
+	 * that makes the regularization independent of the design, or 
+	 * 1.0 if there is no regularization
+	 * 
+	 * @return distangle
+	 */
+	public double getDistangle() {
+		
+		computeProducts();
+		return distangle;
+	}
+	
+	
+	private void computeProducts() {
+		
+		if(productsValid) {
+			return;
+		}
+		
+		MdfaMatrix des = Q_smooth.mdfaMatrixMultTransB(des_mat);
+		reg_mat = des_mat.mdfaMatrixMult(des);
+		MdfaMatrix temp = Q_smooth.mdfaMatrixMult(w_eight);
+		reg_xtxy = des_mat.mdfaMatrixMult(temp);
+		
+		distangle = 1.0;
+		if(Q_smooth.mdfaMatrixGet(0, 0) != 0.0) {
+			
+			distangle = Q_smooth.meanDiag(false)/reg_mat.meanDiag(false);
+			reg_mat.mdfaMatrixScale(distangle);	
+			reg_xtxy.mdfaMatrixScale(distangle);
+		}
+		productsValid = true;
+	}
+	
+	
 	
 	private MdfaMatrix getQDeviation() {
 		
@@ -0,0 +1,539 @@
+package ch.imetrica.mdfa.series;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ *
+ * A time series stored in columns of primitives: one long column
+ * with the time stamps in epoch milliseconds and one or more double
+ * value columns. Compared to a {@link TimeSeries} of boxed
+ * entries, an observation costs 8 bytes per column instead of an entry
+ * object, a String time stamp and a boxed Double or double[] array.
+ *
+ * The accessors follow the ones of {@link TimeSeries} that are used by
+ * the series classes (size, get, last, add, removing the first
+ * observations, a bounded history), with primitive variants that do not
+ * allocate. With a date format, String time stamps are parsed when they
+ * are added and only formatted again when they are requested as String.
+ * Without a date format, the String time stamps are kept as they are
+ * given in one more column, next to the epoch times if there are any.
+ *
+ * This is the storage of the {@link TargetSeries}, with the transformed
+ * values in column 0 and the raw values in column 1, and of the eager
+ * signals of the signal series, one column per signal. It also holds the
+ * data read in bulk by the {@link ch.imetrica.mdfa.datafeeds.FastCsvReader}
+ * and the {@link ch.imetrica.mdfa.datafeeds.BinaryColumnarFile}.
+ *
+ * The observations are kept in a window of the columns that slides
+ * forward as the first observations are removed, so removing them does
+ * not move the others. The window is moved back to the start of the
+ * columns once they are full and at least half of them is free, so a
+ * series bounded with {@link #setMaxHistory(int)} is updated without
+ * allocating once its columns have grown to twice its history.
+ *
+ * Time stamps are expected to be added in ascending order, which is
+ * what {@link #indexOf(long)} relies on.
+ */
+public class ColumnarTimeSeries implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final String datePattern;
+	private transient DateTimeFormatter formatter;
+	private final int ncolumns;
+
+	private long[] times;
+	private String[] dates;
+	private double[][] columns;
+	private int head;
+	private int size;
+	private int maxHistory = 0;
+
+
+	/**
+	 * Creates an empty columnar series without a date format,
+	 * which keeps the String time stamps as they are given
+	 *
+	 * @param ncolumns
+	 *     Number of value columns
+	 */
+	public ColumnarTimeSeries(int ncolumns) {
+		this(ncolumns, null, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty columnar series
+	 *
+	 * @param ncolumns
+	 *     Number of value columns
+	 * @param dateFormat
+	 *     Joda format of the String time stamps, for
+	 *     example "yyyy-MM-dd HH:mm:ss"
+	 */
+	public ColumnarTimeSeries(int ncolumns, String dateFormat) {
+		this(ncolumns, dateFormat, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty columnar series with room for
+	 * capacity observations before it has to grow
+	 *
+	 * @param ncolumns
+	 *     Number of value columns
+	 * @param dateFormat
+	 *     Joda format of the String time stamps, null
+	 *     to keep the String time stamps as they are given
+	 * @param capacity
+	 *     Initial capacity
+	 */
+	public ColumnarTimeSeries(int ncolumns, String dateFormat, int capacity) {
+
+		if(ncolumns < 1) {
+			throw new IllegalArgumentException("At least one value column is needed");
+		}
+
+		this.ncolumns = ncolumns;
+		this.datePattern = dateFormat;
+		this.formatter = (dateFormat == null) ? null : DateTimeFormat.forPattern(dateFormat);
+
+		capacity = Math.max(1, capacity);
+		this.times = new long[capacity];
+		this.dates = (dateFormat == null) ? new String[capacity] : null;
+		this.columns = new double[ncolumns][capacity];
+	}
+
+
+	/**
+	 * Builds a one column series from a TimeSeries of values
+	 *
+	 * @param anySeries Any time series
+	 * @param dateFormat Format of its time stamps, null to keep them as they are
+	 * @return The columnar series
+	 */
+	public static ColumnarTimeSeries fromValues(TimeSeries<Double> anySeries, String dateFormat) {
+
+		ColumnarTimeSeries series = new ColumnarTimeSeries(1, dateFormat, anySeries.size());
+		for(TimeSeriesEntry<Double> entry : anySeries) {
+			series.add(entry.getTime(), entry.getDateTime(), entry.getValue());
+		}
+		return series;
+	}
+
+	/**
+	 * Builds a series with ncolumns columns from a TimeSeries of
+	 * double[] values
+	 *
+	 * @param anySeries Any time series of double[] values
+	 * @param ncolumns Number of columns, the values must be at least of this length
+	 * @param dateFormat Format of its time stamps, null to keep them as they are
+	 * @return The columnar series
+	 */
+	public static ColumnarTimeSeries fromEntries(TimeSeries<double[]> anySeries, int ncolumns, String dateFormat) {
+
+		ColumnarTimeSeries series = new ColumnarTimeSeries(ncolumns, dateFormat, anySeries.size());
+		for(TimeSeriesEntry<double[]> entry : anySeries) {
+			series.add(entry);
+		}
+		return series;
+	}
+
+
+	/**
+	 * Adds an observation with the value of the first column,
+	 * the other columns are zero
+	 */
+	public void add(long time, double value) {
+
+		int p = append(time, null);
+		columns[0][p] = value;
+	}
+
+	/**
+	 * Adds an observation with the values of the first two columns,
+	 * the other columns are zero
+	 */
+	public void add(long time, double value0, double value1) {
+
+		int p = append(time, null);
+		columns[0][p] = value0;
+		columns[1][p] = value1;
+	}
+
+	/**
+	 * Adds an observation with the first values.length columns
+	 */
+	public void add(long time, double[] values) {
+
+		int p = append(time, null);
+		for(int c = 0; c < values.length; c++) {
+			columns[c][p] = values[c];
+		}
+	}
+
+	public void add(String timeStamp, double value) {
+		add(TimeSeriesEntry.NO_TIME, timeStamp, value);
+	}
+
+	public void add(String timeStamp, double value0, double value1) {
+		add(TimeSeriesEntry.NO_TIME, timeStamp, value0, value1);
+	}
+
+	/**
+	 * Adds an observation with the value of the first column. With a date
+	 * format the time stamp is only parsed if time is {@link TimeSeriesEntry#NO_TIME},
+	 * without one both are kept as they are
+	 */
+	public void add(long time, String timeStamp, double value) {
+
+		int p = append(time, timeStamp);
+		columns[0][p] = value;
+	}
+
+	/**
+	 * Adds an observation with the values of the first two
+	 * columns, see {@link #add(long, String, double)}
+	 */
+	public void add(long time, String timeStamp, double value0, double value1) {
+
+		int p = append(time, timeStamp);
+		columns[0][p] = value0;
+		columns[1][p] = value1;
+	}
+
+	/**
+	 * Adds an observation with the first values.length
+	 * columns, see {@link #add(long, String, double)}
+	 */
+	public void add(long time, String timeStamp, double[] values) {
+
+		int p = append(time, timeStamp);
+		for(int c = 0; c < values.length; c++) {
+			columns[c][p] = values[c];
+		}
+	}
+
+	public void add(TimeSeriesEntry<double[]> entry) {
+
+		int p = append(entry.getTime(), entry.getDateTime());
+		double[] values = entry.getValue();
+		for(int c = 0; c < ncolumns; c++) {
+			columns[c][p] = values[c];
+		}
+	}
+
+	/**
+	 * Adds a batch of n observations, the values of column c being
+	 * values[c][0], ..., values[c][n-1]. Without a date format
+	 * the observations have no String time stamps
+	 *
+	 * @param times Epoch milliseconds of the observations
+	 * @param values One array per column
+	 * @param n Number of observations
+	 */
+	public void addAll(long[] times, double[][] values, int n) {
+
+		if(values.length != ncolumns) {
+			throw new IllegalArgumentException("Expected " + ncolumns + " columns, got " + values.length);
+		}
+		makeRoom(n);
+		int end = head + size;
+		System.arraycopy(times, 0, this.times, end, n);
+		for(int c = 0; c < ncolumns; c++) {
+			System.arraycopy(values[c], 0, columns[c], end, n);
+		}
+		if(dates != null) {
+			Arrays.fill(dates, end, end + n, null);
+		}
+		size += n;
+		if(maxHistory > 0 && size > maxHistory) {
+			removeFirst(size - maxHistory);
+		}
+	}
+
+	/**
+	 * Appends an observation with zero values, evicting the oldest
+	 * one if the history is full, and returns its position in the columns
+	 */
+	private int append(long time, String timeStamp) {
+
+		if(dates == null && time == TimeSeriesEntry.NO_TIME) {
+			time = parseTime(timeStamp);
+		}
+		if(maxHistory > 0 && size == maxHistory) {
+			removeFirst(1);
+		}
+		makeRoom(1);
+
+		int p = head + size++;
+		times[p] = time;
+		if(dates != null) {
+			dates[p] = timeStamp;
+		}
+		for(int c = 0; c < ncolumns; c++) {
+			columns[c][p] = 0;
+		}
+		return p;
+	}
+
+	/**
+	 * Makes room for n observations after the last one, moving the
+	 * window to the start of the columns if at least half of them is
+	 * free in front of it, and growing the columns otherwise
+	 */
+	private void makeRoom(int n) {
+
+		int capacity = times.length;
+		if(head + size + n <= capacity) {
+			return;
+		}
+		if(head >= size && size + n <= capacity) {
+
+			System.arraycopy(times, head, times, 0, size);
+			for(int c = 0; c < ncolumns; c++) {
+				System.arraycopy(columns[c], head, columns[c], 0, size);
+			}
+			if(dates != null) {
+				System.arraycopy(dates, head, dates, 0, size);
+				Arrays.fill(dates, size, head + size, null);
+			}
+			head = 0;
+			return;
+		}
+
+		capacity = capacity + (capacity >> 1) + 1;
+		if(maxHistory > 0) {
+			capacity = Math.min(capacity, 2*maxHistory);
+		}
+		resize(Math.max(capacity, size + n));
+	}
+
+	private void resize(int capacity) {
+
+		times = Arrays.copyOfRange(times, head, head + capacity);
+		for(int c = 0; c < ncolumns; c++) {
+			columns[c] = Arrays.copyOfRange(columns[c], head, head + capacity);
+		}
+		if(dates != null) {
+			dates = Arrays.copyOfRange(dates, head, head + capacity);
+			Arrays.fill(dates, size, capacity, null);
+		}
+		head = 0;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getColumnCount() {
+		return ncolumns;
+	}
+
+	/**
+	 * Bounds the series to the latest maxHistory observations. Adding
+	 * an observation to a full series evicts the oldest one
+	 *
+	 * @param maxHistory
+	 *    Maximum number of observations kept, 0 for no maximum
+	 * @return
+	 *    This series
+	 */
+	public ColumnarTimeSeries setMaxHistory(int maxHistory) {
+
+		this.maxHistory = Math.max(0, maxHistory);
+		if(this.maxHistory > 0 && size > this.maxHistory) {
+			removeFirst(size - this.maxHistory);
+		}
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of observations kept, 0 if unbounded
+	 */
+	public int getMaxHistory() {
+		return maxHistory;
+	}
+
+	/**
+	 * Time stamp of the ith observation in epoch milliseconds,
+	 * {@link TimeSeriesEntry#NO_TIME} if it was added without one
+	 */
+	public long getTime(int i) {
+
+		checkIndex(i);
+		return times[head + i];
+	}
+
+	/**
+	 * Time stamp of the ith observation formatted with the date
+	 * format of the series, or as it was added without one
+	 */
+	public String getDateTime(int i) {
+
+		checkIndex(i);
+		return (dates != null) ? dates[head + i] : formatter.print(times[head + i]);
+	}
+
+	/**
+	 * Value of the first column of the ith observation
+	 */
+	public double getValue(int i) {
+
+		checkIndex(i);
+		return columns[0][head + i];
+	}
+
+	public double getValue(int i, int column) {
+
+		checkIndex(i);
+		return columns[column][head + i];
+	}
+
+	/**
+	 * The values of all the columns of the ith observation, in a new array
+	 */
+	public double[] getValues(int i) {
+
+		checkIndex(i);
+		double[] values = new double[ncolumns];
+		for(int c = 0; c < ncolumns; c++) {
+			values[c] = columns[c][head + i];
+		}
+		return values;
+	}
+
+	public void setValue(int i, int column, double value) {
+
+		checkIndex(i);
+		columns[column][head + i] = value;
+	}
+
+	/**
+	 * The ith observation as a new entry with its time stamps and a
+	 * copy of all the column values. Changing the entry does not
+	 * change the series
+	 */
+	public TimeSeriesEntry<double[]> get(int i) {
+		return new TimeSeriesEntry<double[]>(getTime(i), getDateTime(i), getValues(i));
+	}
+
+	public TimeSeriesEntry<double[]> last() {
+		return get(size - 1);
+	}
+
+	/**
+	 * Index of the observation with the given time stamp
+	 *
+	 * @param time Epoch milliseconds
+	 * @return The index, or -1 if there is no observation at this time
+	 */
+	public int indexOf(long time) {
+
+		int i = Arrays.binarySearch(times, head, head + size, time);
+		return (i < 0) ? -1 : i - head;
+	}
+
+	/**
+	 * Copies the values of a column from index from (inclusive)
+	 * to index to (exclusive) into a new array
+	 */
+	public double[] copyColumn(int column, int from, int to) {
+
+		if(from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of series of size " + size);
+		}
+		return Arrays.copyOfRange(columns[column], head + from, head + to);
+	}
+
+	/**
+	 * Removes the first n observations, without moving the others
+	 */
+	public void removeFirst(int n) {
+
+		n = Math.min(Math.max(n, 0), size);
+		if(dates != null) {
+			Arrays.fill(dates, head, head + n, null);
+		}
+		head += n;
+		size -= n;
+		if(size == 0) {
+			head = 0;
+		}
+	}
+
+	public void clear() {
+		removeFirst(size);
+	}
+
+	/**
+	 * Releases the unused capacity
+	 */
+	public void trimToSize() {
+
+		if(times.length > size) {
+			resize(Math.max(1, size));
+		}
+	}
+
+	/**
+	 * One column as a TimeSeries of boxed values, for
+	 * plotting and the other classes working on TimeSeries
+	 */
+	public TimeSeries<Double> toTimeSeries(int column) {
+
+		TimeSeries<Double> series = new TimeSeries<Double>(size);
+		for(int i = 0; i < size; i++) {
+			series.add(new TimeSeriesEntry<Double>(times[head + i], getDateTime(i), columns[column][head + i]));
+		}
+		return series;
+	}
+
+	public long parseTime(String timeStamp) {
+
+		if(formatter == null) {
+			throw new IllegalStateException("The series has no date format to parse " + timeStamp);
+		}
+		return formatter.parseMillis(timeStamp);
+	}
+
+	/**
+	 * @return The date format of the series, null if it keeps
+	 * the String time stamps as they are given
+	 */
+	public DateTimeFormatter getDateFormat() {
+		return formatter;
+	}
+
+	/**
+	 * @return The Joda pattern of the date format of the series
+	 */
+	public String getDatePattern() {
+		return datePattern;
+	}
+
+	private void checkIndex(int i) {
+
+		if(i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+		in.defaultReadObject();
+		if(datePattern != null) {
+			formatter = DateTimeFormat.forPattern(datePattern);
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package ch.imetrica.mdfa.series;
+
+import java.io.Serializable;
+
+import ch.imetrica.mdfa.util.FIRFilterEngine;
+
+/**
+ *
+ * A lazy view of the signals of M filters applied to a target series.
+ * Setting new filters does not filter the history: a signal value is
+ * only computed when it is requested, together with the values after it
+ * that have not been computed yet, with the {@link FIRFilterEngine}.
+ * The computed values are memoized for the current filters, which are
+ * numbered by a version that is increased each time they are set.
+ *
+ * The memoized values are always the signals of the latest
+ * observations of the target, so reading the last few hundred values
+ * after new coefficients only filters these values. Observations removed
+ * from the start of the target (chopped or evicted by a bounded history)
+ * drop out of the memo without recomputation. Values that were not
+ * computed before the start of the target was removed are computed from
+ * the remaining observations, so the first L-1 of them use the truncated
+ * filter, as a signal computed from the shortened target would.
+ * When the transformed values of the target are recomputed (a new 
+ * fractional difference or a maximum weight length), the memo is 
+ * discarded, which is told by the modification count of the target.
+ *
+ * The signal of each new target observation is computed and memoized
+ * by {@link #update()}, which must be called after each value is added
+ * to the target. The memo is kept in {@link SignalColumns}, so with a
+ * bounded target history the update does not allocate.
+ */
+public class LazySignal implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Minimum number of values computed when the memo is extended back */
+	private static final int MIN_WINDOW = 64;
+
+	private final TargetSeries target;
+	private double[][] filters;
+	private int maxLength;
+	private int version;
+	private int targetModification;
+
+	/** The memoized signals of the latest observations of the target */
+	private SignalColumns memo;
+	private transient FIRFilterEngine engine;
+
+	/** Scratch row of the latest signals */
+	private double[] latest;
+
+
+	/**
+	 * Creates the lazy signal of the given filters
+	 *
+	 * @param target
+	 *    The target series that is filtered
+	 * @param filters
+	 *    The M filters, at least one
+	 */
+	public LazySignal(TargetSeries target, double[]... filters) {
+
+		this.target = target;
+		setFilters(filters);
+	}
+
+
+	/**
+	 * Replaces the filters. Nothing is computed, the memoized
+	 * signals of the previous filters are discarded
+	 *
+	 * @param filters
+	 *    The M filters, at least one
+	 * @return
+	 *    This lazy signal
+	 */
+	public LazySignal setFilters(double[]... filters) {
+
+		if(filters.length < 1) {
+			throw new IllegalArgumentException("At least one filter is needed");
+		}
+
+		this.filters = filters.clone();
+		maxLength = 0;
+		for(double[] b : filters) {
+			maxLength = Math.max(maxLength, b.length);
+		}
+		version++;
+
+		memo = new SignalColumns(filters.length);
+		targetModification = target.getModificationCount();
+		return this;
+	}
+
+	/**
+	 * Sets the engine that computes the signal values, the
+	 * values already computed are kept
+	 *
+	 * @param engine
+	 *    The engine, null for the default engine
+	 * @return
+	 *    This lazy signal
+	 */
+	public LazySignal setFilterEngine(FIRFilterEngine engine) {
+
+		this.engine = engine;
+		return this;
+	}
+
+	/**
+	 * @return The engine that computes the signal values
+	 */
+	public FIRFilterEngine getFilterEngine() {
+		return (engine == null) ? FIRFilterEngine.getDefault() : engine;
+	}
+
+	/**
+	 * @return The version of the filters, increased each time they are set
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public int getNumberFilters() {
+		return filters.length;
+	}
+
+	public double[] getFilter(int m) {
+		return filters[m];
+	}
+
+	/**
+	 * @return The number of signal values, the size of the target
+	 */
+	public int size() {
+		return target.size();
+	}
+
+	/**
+	 * @return The number of latest signal values that are computed
+	 */
+	public int getComputedCount() {
+
+		trim();
+		return memo.size();
+	}
+
+
+	/**
+	 * The signal of the mth filter at index i. If it has not been
+	 * computed for the current filters, it is computed with all
+	 * the following values that have not been computed yet
+	 *
+	 * @param i
+	 *    Index in the target series
+	 * @param m
+	 *    Index of the filter
+	 * @return
+	 *    The signal value
+	 */
+	public double getValue(int i, int m) {
+
+		compute(i);
+		return memo.get(i - (target.size() - memo.size()), m);
+	}
+
+	/**
+	 * The signals of all the filters at index i
+	 *
+	 * @param i
+	 *    Index in the target series
+	 * @return
+	 *    A new array with the M signal values
+	 */
+	public double[] getValues(int i) {
+
+		compute(i);
+		return memo.getRow(i - (target.size() - memo.size()), new double[filters.length]);
+	}
+
+	/**
+	 * The signal of the mth filter at the latest observation, which
+	 * is always computed once {@link #update()} has been called
+	 *
+	 * @param m
+	 *    Index of the filter
+	 * @return
+	 *    The latest signal value
+	 */
+	public double getLatestValue(int m) {
+		return getValue(target.size() - 1, m);
+	}
+
+	/**
+	 * Adds multiplier times the latest signals of all the
+	 * filters to sum, without allocating
+	 *
+	 * @param sum
+	 *    Array of length at least M
+	 * @param multiplier
+	 *    The multiplier of the signals
+	 */
+	public void addLatestValues(double[] sum, double multiplier) {
+
+		compute(target.size() - 1);
+		int last = memo.size() - 1;
+		for(int m = 0; m < filters.length; m++) {
+			sum[m] += multiplier*memo.get(last, m);
+		}
+	}
+
+	/**
+	 * The signal of the mth filter from index from (inclusive)
+	 * to index to (exclusive) as a TimeSeries with the times of the target
+	 *
+	 * @param m
+	 *    Index of the filter
+	 * @param from
+	 *    First index
+	 * @param to
+	 *    End index
+	 * @return
+	 *    The signal values
+	 */
+	public TimeSeries<Double> toTimeSeries(int m, int from, int to) {
+
+		TimeSeries<Double> series = new TimeSeries<Double>(Math.max(0, to - from));
+		if(from < to) {
+			compute(from);
+		}
+		for(int i = from; i < to; i++) {
+			series.add(new TimeSeriesEntry<Double>(target.getTargetTime(i), target.getTargetDate(i), getValue(i, m)));
+		}
+		return series;
+	}
+
+	/**
+	 * Computes the signals of the whole target series
+	 * for the current filters
+	 */
+	public void computeAll() {
+
+		if(target.size() > 0) {
+			compute(0);
+		}
+	}
+
+
+	/**
+	 * Replaces the memo by the signals of the latest n observations
+	 * of the target as they were saved in a {@link SeriesSnapshot},
+	 * the signals of filter m being values[m][0], ..., values[m][n-1]
+	 */
+	void restore(double[][] values, int n) {
+
+		if(n > target.size()) {
+			throw new IllegalArgumentException("More signal values than target observations: " + n);
+		}
+		memo.clear();
+		memo.prepend(values, 0, n);
+		targetModification = target.getModificationCount();
+	}
+
+	/**
+	 * Computes and memoizes the signals of the latest target
+	 * observation, to be called once it is added to the target.
+	 * The values are read with {@link #getLatestValue(int)}
+	 */
+	public void update() {
+
+		trim();
+		int N = target.size();
+		if(latest == null || latest.length != filters.length) {
+			latest = new double[filters.length];
+		}
+		for(int m = 0; m < filters.length; m++) {
+
+			int filter_length = Math.min(N, filters[m].length);
+			double sum = 0;
+			for (int l = 0; l < filter_length; l++) {
+				sum += filters[m][l]*target.getTargetValue(N - l - 1);
+			}
+			latest[m] = sum;
+		}
+
+		memo.append(latest);
+		trim();
+	}
+
+
+	/**
+	 * Makes sure the signals are computed from index from on. The
+	 * missing window is at least as long as the values already computed,
+	 * so reading the history backwards costs about twice a full recomputation
+	 */
+	private void compute(int from) {
+
+		trim();
+		int N = target.size();
+		if(from < 0 || from >= N) {
+			throw new IndexOutOfBoundsException("Index: " + from + ", Size: " + N);
+		}
+
+		int end = N - memo.size();
+		if(from >= end) {
+			return;
+		}
+
+		int window = Math.max(end - from, Math.max(memo.size(), MIN_WINDOW));
+		int start = Math.max(0, end - window);
+		int s = Math.max(0, start - maxLength + 1);
+
+		double[][] y = getFilterEngine().filter(target.getTargetValues(s, end), start - s, end - s, filters);
+
+		memo.prepend(y, 0, end - start);
+	}
+
+	/**
+	 * Drops the memoized values of the observations that were
+	 * removed from the start of the target, and all of them once
+	 * the values of the target were recomputed
+	 */
+	private void trim() {
+
+		if(targetModification != target.getModificationCount()) {
+
+			memo.clear();
+			targetModification = target.getModificationCount();
+		}
+		int N = target.size();
+		if(memo.size() > N) {
+			memo.removeFirst(memo.size() - N);
+		}
+	}
+}
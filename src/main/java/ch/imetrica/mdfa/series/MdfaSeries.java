@@ -61,6 +61,20 @@ public interface MdfaSeries extends Serializable {
      */
 	void addValue(String date, double val);
 	
+	/**
+     * Adds a raw time series value with the time stamp 
+     * already parsed to epoch milliseconds, which is then 
+     * used to align the series without parsing the date again
+     * 
+     * @param time
+     *            Epoch milliseconds of the date
+     * @param date
+     *  		  The date of the entry
+     * @param val
+     *            A raw TimeSeries value
+     */
+	void addValue(long time, String date, double val);
+	
 	/**
      * Gets the latest time series value
      * 
@@ -155,6 +169,18 @@ public interface MdfaSeries extends Serializable {
 	 *   eliminate
 	 */
 	void chopFirstObservations(int n);
+	
+	/**
+	 * Bounds the series to its latest n observations.
+	 * Once n observations are stored, adding a new 
+	 * observation evicts the oldest one in O(1), and 
+	 * index i refers to the ith retained observation
+	 * 
+	 * @param n
+	 *   The maximum number of observations kept, 
+	 *   0 for an unbounded series
+	 */
+	void setMaxHistory(int n);
 
 	/**
 	 * In the case that the MDFASeries is 
@@ -1,6 +1,11 @@
 package ch.imetrica.mdfa.series;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -8,11 +13,14 @@ import ch.imetrica.mdfa.market.Side;
 import ch.imetrica.mdfa.matrix.MdfaMatrix;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.mdfa.MDFAFactory;
+import ch.imetrica.mdfa.mdfa.MDFABatchSolver;
 import ch.imetrica.mdfa.mdfa.MDFASolver;
 import ch.imetrica.mdfa.plotutil.TimeSeriesPlot;
 import ch.imetrica.mdfa.prefilter.WhiteNoiseFilter;
+import ch.imetrica.mdfa.spectraldensity.RollingSpectralBase;
 import ch.imetrica.mdfa.spectraldensity.SpectralBase;
 import ch.imetrica.mdfa.util.MdfaUtil;
+import ch.imetrica.mdfa.util.PhasedWorkerPool;
 
 /**
  * 
@@ -24,6 +32,26 @@ import ch.imetrica.mdfa.util.MdfaUtil;
  * applies K independent MDFA solvers to the M multivariate 
  * series to produce K different signals
  * 
+ * The K aggregate signals are kept in primitive {@link SignalColumns}
+ * aligned with the latest observations of the target series. With lazy
+ * signal series and a bounded history the target and signal series are
+ * updated in their preallocated columns, so that a tick does not allocate.
+ * 
+ * With a parallel update (see {@link #setParallelUpdate(int)}) the series
+ * are updated on a fixed pool of threads and their signals are then 
+ * summed in the calling thread in the order of the series, so the
+ * aggregate signals are the same as with the serial update. The threads
+ * of a parallel update are stopped with {@link #close()}, which must be
+ * called once the series is no longer used.
+ * 
+ * The aggregate signals can also be kept beyond the bounded history
+ * in a {@link TieredSignalHistory}, at full resolution for the latest
+ * observations and downsampled before, see {@link #setTieredHistory(int, long)}.
+ * 
+ * A fitted series can be saved with {@link #saveSnapshot(String)} and 
+ * restored with {@link #loadSnapshot(String)}, which continues with the
+ * same signals without the history and without estimating the filters again.
+ * 
  * 
  * @author Christian D. Blakely (clisztian@gmail.com)
  *
@@ -34,8 +62,10 @@ public class MultivariateFXSeries {
 	
 	private ArrayList<VectorSignalSeries> anySignals;  /* Multivariate Series */
 	private ArrayList<MDFASolver> anySolvers;   /* All the solvers */		
-	private TimeSeries<double[]> fxSignals;     /* Aggregate Signals */	
+	private SignalColumns fxSignals;            /* Aggregate Signals */	
+	private double[] aggregate;                /* Scratch row of the aggregate signals */
 	private DateTimeFormatter formatter;
+	private String datePattern;
 	private int targetSeriesIndex = 0;         
 	private boolean prefilterAll = false;
 		
@@ -44,6 +74,25 @@ public class MultivariateFXSeries {
 	private double latest = 0;
 	private double previous = 0;
 	private double filterMultiplier = 1.0;
+	
+	private boolean rollingSpectralBase = false;
+	private ArrayList<RollingSpectralBase> rollingBases = new ArrayList<RollingSpectralBase>();
+	private int maxHistory = 0;
+	private TieredSignalHistory history;       /* Downsampled history of the aggregate signals */
+	private int historyWindow;
+	private long historyBytes;
+	
+	private PhasedWorkerPool updatePool;       /* Threads of the parallel update */
+	private long tickTime;                     /* Observation being added in parallel */
+	private String tickDate;
+	private double[] tickValues;
+	private final PhasedWorkerPool.Task updateTask = new PhasedWorkerPool.Task() {
+		@Override
+		public void run(int m) throws Exception {
+			anySignals.get(m).addValue(tickTime, tickDate, tickValues[m]);
+		}
+	};
+	
 	/**
 	 * A MultivariateFX series is instantiated with an array of 
 	 * MDFABase objects, each object defining a real-time signal 
@@ -57,6 +106,7 @@ public class MultivariateFXSeries {
 	public MultivariateFXSeries(MDFABase[] anyMDFAs, String anyformat) {
 		
 		this.formatter = DateTimeFormat.forPattern(anyformat);
+		this.datePattern = anyformat;
 		
 		anySolvers = new ArrayList<MDFASolver>();
 		for(int i = 0; i < anyMDFAs.length; i++) {
@@ -64,7 +114,7 @@ public class MultivariateFXSeries {
 		}	
 		
 		anySignals = new ArrayList<VectorSignalSeries>();
-		fxSignals = new TimeSeries<double[]>();
+		fxSignals = new SignalColumns(Math.max(1, anySolvers.size()));
 	}
 	
 	
@@ -81,6 +131,7 @@ public class MultivariateFXSeries {
 	public MultivariateFXSeries(ArrayList<MDFABase> anyMDFAs, String anyformat) {
 		
 		this.formatter = DateTimeFormat.forPattern(anyformat);
+		this.datePattern = anyformat;
 		
 		anySolvers = new ArrayList<MDFASolver>();
 		for(int i = 0; i < anyMDFAs.size(); i++) {
@@ -88,7 +139,7 @@ public class MultivariateFXSeries {
 		}	
 		
 		anySignals = new ArrayList<VectorSignalSeries>();
-		fxSignals = new TimeSeries<double[]>();
+		fxSignals = new SignalColumns(Math.max(1, anySolvers.size()));
 	}
 	
 	
@@ -106,6 +157,33 @@ public class MultivariateFXSeries {
 	 * 		   does not equal the number of series
 	 */
     public void addValue(String date, double[] val) throws Exception {
+    	addValue(TimeSeriesEntry.NO_TIME, date, val);
+    }
+    
+	/**
+	 * Adds a new multivariate series value with the time stamp
+	 * already parsed to epoch milliseconds, for example by a 
+	 * {@link ch.imetrica.mdfa.datafeeds.CsvFeed} with a date format
+	 * 
+	 * @param observation The newest observations with their common date
+	 * @throws Exception if the multivariate size of the new observation
+	 * 		   does not equal the number of series
+	 */
+    public void addValue(TimeSeriesEntry<double[]> observation) throws Exception {
+    	addValue(observation.getTime(), observation.getDateTime(), observation.getValue());
+    }
+    
+	/**
+	 * Adds a new multivariate series value for the given date
+	 * and its epoch time in milliseconds
+	 * 
+	 * @param time Epoch milliseconds of the date
+	 * @param date Current date
+	 * @param val array of newest observations at given date
+	 * @throws Exception if the multivariate size of the new observation
+	 * 		   does not equal the number of series
+	 */
+    public void addValue(long time, String date, double[] val) throws Exception {
         
     	if(val.length != anySignals.size()) {
     		throw new Exception("Sizes of array and number of time series don't match");
@@ -113,37 +191,37 @@ public class MultivariateFXSeries {
     	
 
     	previous = latest;
-    	double[] sigVal = new double[anySolvers.size()];
+    	double[] sigVal = clearAggregate();
+    	
+    	VectorSignalSeries target = anySignals.get(targetSeriesIndex);
+    	boolean targetOnly = prefilterAll && target.hasFilter();
+    	
+    	if(updatePool != null) {
+    		updateSeries(time, date, val);
+    	}
     	
     	for(int m = 0; m < anySignals.size(); m++) { 		
     		
-    		anySignals.get(m).addValue(date, val[m]);
+    		VectorSignalSeries signal = anySignals.get(m);
+    		if(updatePool == null) {
+    			signal.addValue(time, date, val[m]);
+    		}
     		
-    		if(anySignals.get(m).hasFilter()) {
-    			sigVal = MdfaUtil.plus(sigVal, anySignals.get(m).getLatestSignalValue(), filterMultiplier);
+    		if(!targetOnly && signal.hasFilter()) {
+    			signal.addLatestSignalValue(sigVal, filterMultiplier);
     		}    	
 		}
 
-    	if(prefilterAll && anySignals.get(targetSeriesIndex).hasFilter()) {
-    		sigVal = anySignals.get(targetSeriesIndex).getLatestSignalValue();
+    	if(targetOnly) {
+    		target.addLatestSignalValue(sigVal, 1.0);
     	}
-    	else {
-	    	for(int m = 0; m < anySignals.size(); m++) { 		
-	    		  			
-	    		anySignals.get(m).addValue(date, val[m]);
-	    		
-	    		if(anySignals.get(m).hasFilter()) {
-	    			sigVal = MdfaUtil.plus(sigVal, anySignals.get(m).getLatestSignalValue(), filterMultiplier);
-	    		}    	
-			}
-    	}
-
     	   	
-		fxSignals.add(new TimeSeriesEntry<double[]>(date, sigVal));	 
+		fxSignals.append(sigVal);	 
 		latest = sigVal[0]; 
+		addToHistory(time, date, sigVal);
 		
-
-		
+		updateRollingBases();
+		evictHistory();
     }
 	
     
@@ -168,21 +246,106 @@ public class MultivariateFXSeries {
     	}
     	
     	previous = latest;
-    	double[] sigVal = new double[anySolvers.size()];
+    	double[] sigVal = clearAggregate();
     	for(int m = 0; m < anySignals.size(); m++) { 		
     		
     		anySignals.get(m).addValue(date, val.get(m));
     		
     		if(anySignals.get(m).hasFilter()) {
-    			sigVal = MdfaUtil.plus(sigVal, anySignals.get(m).getLatestSignalValue(), filterMultiplier);
+    			anySignals.get(m).addLatestSignalValue(sigVal, filterMultiplier);
     		}		
 		}
-		fxSignals.add(new TimeSeriesEntry<double[]>(date, sigVal));
+		fxSignals.append(sigVal);
 		latest = sigVal[0]; 
+		addToHistory(TimeSeriesEntry.NO_TIME, date, sigVal);
 		
 		double value = getTargetValue(size()-1);
 		if(value > maxValue) maxValue = value;
 		else if(value < minValue) minValue = value;
+		
+		updateRollingBases();
+		evictHistory();
+    }
+    
+    
+    /**
+     * Adds the observation to each series on the threads of 
+     * the update pool and waits until all are updated
+     */
+    private void updateSeries(long time, String date, double[] val) throws Exception {
+    	
+    	tickTime = time;
+    	tickDate = date;
+    	tickValues = val;
+    	try {
+    		updatePool.run(anySignals.size(), updateTask);
+    	}
+    	finally {
+    		tickDate = null;
+    		tickValues = null;
+    	}
+    }
+    
+    /**
+     * Adds the latest aggregate signals to the tiered history, 
+     * which is started again if the number of signals has changed
+     */
+    private void addToHistory(long time, String date, double[] sigVal) {
+    	
+    	if(history == null) {
+    		return;
+    	}
+    	if(history.getColumnCount() != sigVal.length) {
+    		history = new TieredSignalHistory(sigVal.length, historyWindow, historyBytes);
+    	}
+    	history.add(time, date, sigVal);
+    }
+    
+    /**
+     * The scratch row of the aggregate signals, set to zero. The
+     * aggregate signal columns are started again if the number of 
+     * solvers has changed
+     */
+    private double[] clearAggregate() {
+    	
+    	int K = anySolvers.size();
+    	if(fxSignals.getColumnCount() != K) {
+    		fxSignals = new SignalColumns(K);
+    	}
+    	if(aggregate == null || aggregate.length != K) {
+    		aggregate = new double[K];
+    	}
+    	Arrays.fill(aggregate, 0);
+    	return aggregate;
+    }
+    
+    /**
+     * The ith aggregate signal as an entry with the time 
+     * stamp of the target series
+     */
+    private TimeSeriesEntry<double[]> getAggregateEntry(int i) {
+    	
+    	TargetSeries target = anySignals.get(targetSeriesIndex).getTargetSeries();
+    	int t = i + target.size() - fxSignals.size();
+    	double[] values = fxSignals.getRow(i, new double[fxSignals.getColumnCount()]);
+    	return new TimeSeriesEntry<double[]>(target.getTargetTime(t), target.getTargetDate(t), values);
+    }
+    
+    /**
+     * Slides the rolling spectral bases of each solver 
+     * to the newest observations, if they are being used
+     * 
+     * @throws Exception
+     */
+    private void updateRollingBases() throws Exception {
+    	
+    	if(rollingSpectralBase) {
+    		for(RollingSpectralBase base : rollingBases) {
+    			if(base != null) {
+    				base.update();
+    			}
+    		}
+    	}
     }
 	
 	
@@ -231,6 +394,10 @@ public class MultivariateFXSeries {
 	 * insample length of first target. This is then shared 
 	 * among all solvers
 	 * 
+	 * Without rolling spectral bases, the solvers are solved 
+	 * in parallel with a {@link MDFABatchSolver} which computes the 
+	 * dfts once for each distinct series length. If the series are 
+	 * prefiltered, each solver has its own prefiltered dfts
 	 * 
 	 * @throws Exception
 	 */
@@ -240,9 +407,28 @@ public class MultivariateFXSeries {
 		for(VectorSignalSeries series : anySignals) {
 			series.clearFilters();
 		}
-				
-		for(int n = 0; n < anySolvers.size(); n++) {
-			computeFilterCoefficients(n);
+		
+		if(rollingSpectralBase) {
+			
+			for(int n = 0; n < anySolvers.size(); n++) {
+				computeFilterCoefficients(n);
+			}
+		}
+		else {
+			
+			if(prefilterAll) {
+				for(int n = 0; n < anySolvers.size(); n++) {
+					setWhiteNoisePrefilters(n, 50);
+				}
+			}
+			
+			ArrayList<MdfaMatrix> bcoeffs = (new MDFABatchSolver(anySolvers))
+					.setTargetIndex(targetSeriesIndex)
+					.solve(anySignals);
+			
+			for(int n = 0; n < anySolvers.size(); n++) {
+				setFilterCoefficients(n, bcoeffs.get(n));
+			}
 		}
 		computeAggregateSignal();
 	}	
@@ -271,19 +457,18 @@ public class MultivariateFXSeries {
 			
 			anySolver.getMDFAFactory().setNumberOfSeries(anySignals.size());
 			
-			SpectralBase base = new SpectralBase(anySolver.getMDFAFactory().getSeriesLength())
+			SpectralBase base;
+			if(rollingSpectralBase) {
+				base = getRollingSpectralBase(n, anySolver.getMDFAFactory().getSeriesLength());
+			}
+			else {
+				base = new SpectralBase(anySolver.getMDFAFactory().getSeriesLength())
 					                            .setTargetIndex(targetSeriesIndex);
-			base.addVectorSeries(anySignals, n);
+				base.addVectorSeries(anySignals, n);
+			}
 			anySolver.updateSpectralBase(base);
 			
-			int L = anySolver.getMDFAFactory().getFilterLength();
-			MdfaMatrix bcoeffs = anySolver.solver();
-			
-			for(int i = 0; i < anySignals.size(); i++) {
-				
-				double[] sig_coeffs = bcoeffs.getSubsetColumn(0, i*L, i*L + L);
-				anySignals.get(i).setMDFAFilterCoefficients(n, sig_coeffs);
-			}	
+			setFilterCoefficients(n, anySolver.solver());
 		}
 		else {
 			throw new Exception("The Solver at index " + n + " is not defined. Only " + 
@@ -291,6 +476,53 @@ public class MultivariateFXSeries {
 		}	
 	}
 	
+	/**
+	 * Splits the coefficients of the nth solver into 
+	 * the coefficients of each series
+	 */
+	private void setFilterCoefficients(int n, MdfaMatrix bcoeffs) throws Exception {
+		
+		int L = anySolvers.get(n).getMDFAFactory().getFilterLength();
+		for(int i = 0; i < anySignals.size(); i++) {
+			
+			double[] sig_coeffs = bcoeffs.getSubsetColumn(0, i*L, i*L + L);
+			anySignals.get(i).setMDFAFilterCoefficients(n, sig_coeffs);
+		}	
+	}
+	
+	/**
+	 * 
+	 * Gets the rolling spectral base of the nth solver, slid to 
+	 * the latest observations. A new rolling base is created 
+	 * if none exists yet or the in-sample size or number of 
+	 * series has changed
+	 * 
+	 * @param n The nth solver
+	 * @param N The in-sample size
+	 * @return The rolling spectral base
+	 * @throws Exception
+	 */
+	private RollingSpectralBase getRollingSpectralBase(int n, int N) throws Exception {
+		
+		while(rollingBases.size() <= n) {
+			rollingBases.add(null);
+		}
+		
+		RollingSpectralBase base = rollingBases.get(n);
+		if(base == null || base.getInSampleSize() != N || base.size() != anySignals.size() 
+				|| base.getTargetIndex() != targetSeriesIndex) {
+			
+			base = new RollingSpectralBase(N);
+			base.setTargetIndex(targetSeriesIndex);
+			base.addVectorSeries(anySignals, n);
+			rollingBases.set(n, base);
+		}
+		else {
+			base.update();
+		}
+		return base;
+	}
+	
 	/**
 	 * Computes the aggregate signal from all the series
 	 * for each MDFASolver
@@ -299,29 +531,31 @@ public class MultivariateFXSeries {
 	 */
 	public void computeAggregateSignal() throws Exception {
 		
-		fxSignals.clear();
 		int N = anySignals.get(0).size();
+		fxSignals = new SignalColumns(anySolvers.size(), N);
+		double[] val = clearAggregate();
 		
 		minValue = Double.MAX_VALUE;
 		maxValue = -Double.MAX_VALUE;
 		
 		for(int i = 0; i < N; i++) {
 			
-			double[] val = anySignals.get(0).getSignalValue(i);
-			String current = anySignals.get(0).getSignalDate(i);
+			TimeSeriesEntry<double[]> current = anySignals.get(0).getSignalEntry(i);
+			System.arraycopy(current.getValue(), 0, val, 0, val.length);
 			
 			
 			for(int m = 1; m < anySignals.size(); m++) {
 				
-				if(current.equals(anySignals.get(m).getSignalDate(i))) {					
+				TimeSeriesEntry<double[]> other = anySignals.get(m).getSignalEntry(i);
+				if(current.isSameTime(other)) {					
 					
-					val = MdfaUtil.plus(val, anySignals.get(m).getSignalValue(i), filterMultiplier);
+					MdfaUtil.plus(val, other.getValue(), filterMultiplier);
 				}
 				else {
-					  throw new Exception("Dates do not match of the signals: " + current + " is not " + anySignals.get(m).getSignalDate(i));
+					  throw new Exception("Dates do not match of the signals: " + current.getDateTime() + " is not " + other.getDateTime());
 				}
 			}
-			fxSignals.add(new TimeSeriesEntry<double[]>(current, val));	
+			fxSignals.append(val);	
 			
 			if(i > N - 300) {
 				double value = getTargetValue(i);
@@ -376,7 +610,8 @@ public class MultivariateFXSeries {
 					anySignals.get(m).addPrefilter(whiteFilter);
 				}
 			}		
-		}		
+		}
+		resyncRollingBases();
 	}
 	
 	
@@ -396,6 +631,11 @@ public class MultivariateFXSeries {
 				double[] whiteFilter = (new WhiteNoiseFilter(anySolvers.get(i).getMDFAFactory().getBandPassCutoff(),
 																 anySolvers.get(i).getMDFAFactory().getLowPassCutoff(), 0, L))
 			                  			.getFilterCoefficients();
+				
+				if(i < rollingBases.size() && rollingBases.get(i) != null && (i >= anySignals.get(m).getNumberPrefilterCoefficientSets()  
+						|| !Arrays.equals(whiteFilter, anySignals.get(m).getPrefilterSet(i)))) {
+					rollingBases.get(i).resync();
+				}
 				anySignals.get(m).setPrefilter(i, whiteFilter);
 			}		
 		}		
@@ -418,13 +658,16 @@ public class MultivariateFXSeries {
 	 */
 	public void chopFirstObservations(int n) {
 		
-		int chopped = Math.min(n, fxSignals.size());
-		for(int i = 0; i < chopped; i++) {
-			fxSignals.remove(0);
-		}	
+		fxSignals.removeFirst(n);
 		
-		for(VectorSignalSeries signal : anySignals) {
-			signal.chopFirstObservations(n);
+		for(int i = 0; i < anySignals.size(); i++) {
+			anySignals.get(i).chopFirstObservations(n);
+		}
+		
+		for(int i = 0; i < rollingBases.size(); i++) {
+			if(rollingBases.get(i) != null) {
+				rollingBases.get(i).chopFirstObservations(n);
+			}
 		}
 	}
 	
@@ -492,7 +735,7 @@ public class MultivariateFXSeries {
 	 * @return A double array
 	 */
 	public double[] getSignalValue(int i) {
-		return fxSignals.get(i).getValue();
+		return fxSignals.getRow(i, new double[fxSignals.getColumnCount()]);
 	}
 
 	
@@ -502,7 +745,7 @@ public class MultivariateFXSeries {
 	 * @return TimeSeriesEntry<double[]>
 	 */
 	public TimeSeriesEntry<double[]> getSignal(int i) {
-		return fxSignals.get(i);
+		return getAggregateEntry(i);
 	}
 	
 	/**
@@ -511,7 +754,7 @@ public class MultivariateFXSeries {
 	 * @return TimeSeriesEntry<double[]>
 	 */
 	public TimeSeriesEntry<double[]> getLatestSignalEntry() {
-		return fxSignals.last();
+		return getAggregateEntry(fxSignals.size() - 1);
 	}
 
 	/**
@@ -545,6 +788,7 @@ public class MultivariateFXSeries {
 		for(int i = 0; i < anySignals.size(); i++) {	
 				anySignals.get(i).getTargetSeries().adjustFractionalDifferenceData(d);			
 		}
+		resyncRollingBases();
 		
 		minValue = Double.MAX_VALUE;
 		maxValue = -Double.MAX_VALUE;
@@ -562,6 +806,7 @@ public class MultivariateFXSeries {
      */
 	public void setDateFormat(String anyformat) {
 		this.formatter = DateTimeFormat.forPattern(anyformat);	
+		this.datePattern = anyformat;
 	}
 
 
@@ -623,6 +868,159 @@ public class MultivariateFXSeries {
 		}
 	}
 	
+	/**
+	 * 
+	 * Activates the rolling spectral bases. Each solver keeps 
+	 * its own spectral base whose dfts are slid forward with each
+	 * new observation instead of being recomputed when the 
+	 * filter coefficients are computed
+	 * 
+	 * @param rolling True to use rolling spectral bases
+	 * @return This MultivariateFXSeries
+	 */
+	public MultivariateFXSeries setRollingSpectralBase(boolean rolling) {
+		
+		this.rollingSpectralBase = rolling;
+		if(!rolling) {
+			rollingBases.clear();
+		}
+		return this;
+	}
+	
+	public boolean isRollingSpectralBase() {
+		return this.rollingSpectralBase;
+	}
+	
+	/**
+	 * 
+	 * Bounds the signals and all the series to their latest n 
+	 * observations. After each new observation, the oldest 
+	 * observations beyond n are chopped in O(1), and the rolling 
+	 * spectral bases are notified. n must be at least the largest 
+	 * in-sample length of the solvers
+	 * 
+	 * @param n The maximum number of observations kept, 0 for no bound
+	 * @return This MultivariateFXSeries
+	 */
+	public MultivariateFXSeries setMaxHistory(int n) {
+		
+		if(n < 0) {
+			throw new IllegalArgumentException("Maximum history must be non-negative: " + n);
+		}
+		this.maxHistory = n;
+		evictHistory();
+		return this;
+	}
+	
+	public int getMaxHistory() {
+		return this.maxHistory;
+	}
+	
+	/**
+	 * 
+	 * Keeps the aggregate signals of each new observation in a 
+	 * {@link TieredSignalHistory}: the latest window observations at 
+	 * full resolution and the older ones downsampled into buckets, all
+	 * within maxBytes. Unlike the signals bounded by 
+	 * {@link #setMaxHistory(int)}, the history covers all observations 
+	 * added from now on, and can be plotted with {@link TimeSeriesPlot}
+	 * 
+	 * @param window Number of latest observations kept at full resolution
+	 * @param maxBytes The memory budget of the history
+	 * @return This MultivariateFXSeries
+	 */
+	public MultivariateFXSeries setTieredHistory(int window, long maxBytes) {
+		
+		this.historyWindow = window;
+		this.historyBytes = maxBytes;
+		this.history = new TieredSignalHistory(Math.max(1, anySolvers.size()), window, maxBytes);
+		return this;
+	}
+	
+	/**
+	 * @return The history of the aggregate signals, 
+	 * null if {@link #setTieredHistory(int, long)} was not called
+	 */
+	public TieredSignalHistory getTieredHistory() {
+		return history;
+	}
+	
+	/**
+	 * 
+	 * Updates the series in parallel on nthreads threads, the calling
+	 * thread included, when an observation is added. Each thread updates
+	 * a fixed stripe of the series, which pays off when there are many
+	 * series or many signals per series. The aggregate signals are summed
+	 * in the order of the series as in the serial update, so they are
+	 * identical. A value of 1 stops the threads and updates the series
+	 * one after another again. The threads are daemon threads that are
+	 * only stopped by {@link #close()}, which must be called once the
+	 * series is no longer used
+	 * 
+	 * @param nthreads The number of threads, at least 1
+	 * @return This MultivariateFXSeries
+	 */
+	public MultivariateFXSeries setParallelUpdate(int nthreads) {
+		
+		if(nthreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed: " + nthreads);
+		}
+		close();
+		if(nthreads > 1) {
+			updatePool = new PhasedWorkerPool(nthreads);
+		}
+		return this;
+	}
+	
+	/**
+	 * @return The number of threads updating the series, 1 for the serial update
+	 */
+	public int getParallelUpdate() {
+		return (updatePool == null) ? 1 : updatePool.getNumberThreads();
+	}
+	
+	/**
+	 * Stops the threads of the parallel update. It must be called once
+	 * a series with a parallel update (see {@link #setParallelUpdate(int)})
+	 * is no longer used, as its worker threads otherwise wait for the next
+	 * observation forever. The series can still be used afterwards, the
+	 * series being updated one after another
+	 */
+	public void close() {
+		
+		if(updatePool != null) {
+			updatePool.shutdown();
+			updatePool = null;
+		}
+	}
+	
+	private void evictHistory() {
+		
+		if(maxHistory == 0) {
+			return;
+		}
+		int longest = fxSignals.size();
+		for(int i = 0; i < anySignals.size(); i++) {
+			longest = Math.max(longest, anySignals.get(i).size());
+		}
+		if(longest > maxHistory) {
+			chopFirstObservations(longest - maxHistory);
+		}
+	}
+	
+	/**
+	 * Forces an exact recomputation of the dfts 
+	 * of all rolling spectral bases
+	 */
+	private void resyncRollingBases() {
+		
+		for(RollingSpectralBase base : rollingBases) {
+			if(base != null) {
+				base.resync();
+			}
+		}
+	}
+	
 	public boolean isPrefiltered() {
 		
 		for(VectorSignalSeries series : anySignals) {
@@ -646,9 +1044,12 @@ public class MultivariateFXSeries {
 	}
 	
 	public long getLongtime() {
-		return (formatter.parseDateTime(fxSignals
-				         .last().getDateTime()))
-				         .getMillis()/1000;
+		
+		TimeSeriesEntry<double[]> latest = getAggregateEntry(fxSignals.size() - 1);
+		if(latest.hasTime()) {
+			return latest.getTime()/1000;
+		}
+		return formatter.parseMillis(latest.getDateTime())/1000;
 	}
 
 
@@ -701,5 +1102,134 @@ public class MultivariateFXSeries {
 		return anySignals.get(0).getRealizedPnl();
 	}
 	
+	
+	/**
+	 * Saves the fitted state of this series in a {@link SeriesSnapshot} 
+	 * with the default window of observations: the largest in-sample 
+	 * length, filter length and number of fractional difference weights
+	 * 
+	 * @param fileName The snapshot file
+	 * @throws IOException
+	 */
+	public void saveSnapshot(String fileName) throws IOException {
+		
+		int window = 1;
+		for(MDFASolver solver : anySolvers) {
+			window = Math.max(window, SeriesSnapshot.getWindow(solver));
+		}
+		for(VectorSignalSeries series : anySignals) {
+			window = Math.max(window, series.getSnapshotWindow());
+		}
+		saveSnapshot(fileName, window);
+	}
+	
+	/**
+	 * Saves the MDFA definitions and solver settings, the filter 
+	 * coefficients and prefilters of all series and the latest
+	 * observations of the targets and of the signals in a {@link SeriesSnapshot}
+	 * 
+	 * @param fileName The snapshot file
+	 * @param window The number of latest observations saved
+	 * @throws IOException
+	 */
+	public void saveSnapshot(String fileName, int window) throws IOException {
+		
+		if(window < 1) {
+			throw new IllegalArgumentException("At least one observation must be saved: " + window);
+		}
+		
+		DataOutputStream out = SeriesSnapshot.create(fileName, SeriesSnapshot.MULTIVARIATE_FX_SERIES);
+		try {
+			SeriesSnapshot.writeString(out, datePattern);
+			out.writeInt(anySolvers.size());
+			for(MDFASolver solver : anySolvers) {
+				SeriesSnapshot.writeSolver(out, solver);
+			}
+			out.writeInt(targetSeriesIndex);
+			out.writeBoolean(prefilterAll);
+			out.writeBoolean(rollingSpectralBase);
+			out.writeInt(maxHistory);
+			out.writeDouble(filterMultiplier);
+			out.writeDouble(minValue);
+			out.writeDouble(maxValue);
+			out.writeDouble(latest);
+			out.writeDouble(previous);
+			
+			out.writeInt(anySignals.size());
+			for(VectorSignalSeries series : anySignals) {
+				series.writeSnapshot(out, window);
+			}
+			
+			int K = fxSignals.getColumnCount();
+			int n = Math.min(window, fxSignals.size());
+			out.writeInt(K);
+			out.writeInt(n);
+			double[] row = new double[K];
+			for(int i = fxSignals.size() - n; i < fxSignals.size(); i++) {
+				
+				fxSignals.getRow(i, row);
+				for(int k = 0; k < K; k++) {
+					out.writeDouble(row[k]);
+				}
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Restores a series saved with {@link #saveSnapshot(String)}. New 
+	 * observations can be added right away, their signals are the ones 
+	 * the saved series would have computed
+	 * 
+	 * @param fileName The snapshot file
+	 * @return The restored series
+	 * @throws IOException if the file is not a snapshot of a MultivariateFXSeries
+	 */
+	public static MultivariateFXSeries loadSnapshot(String fileName) throws IOException {
+		
+		DataInputStream in = SeriesSnapshot.open(fileName, SeriesSnapshot.MULTIVARIATE_FX_SERIES);
+		try {
+			String pattern = SeriesSnapshot.readString(in);
+			MultivariateFXSeries fxSeries = new MultivariateFXSeries(new MDFABase[0], pattern);
+			
+			int nsolvers = in.readInt();
+			for(int i = 0; i < nsolvers; i++) {
+				fxSeries.anySolvers.add(SeriesSnapshot.readSolver(in));
+			}
+			fxSeries.targetSeriesIndex = in.readInt();
+			fxSeries.prefilterAll = in.readBoolean();
+			fxSeries.rollingSpectralBase = in.readBoolean();
+			fxSeries.maxHistory = in.readInt();
+			fxSeries.filterMultiplier = in.readDouble();
+			fxSeries.minValue = in.readDouble();
+			fxSeries.maxValue = in.readDouble();
+			fxSeries.latest = in.readDouble();
+			fxSeries.previous = in.readDouble();
+			
+			int nseries = in.readInt();
+			for(int i = 0; i < nseries; i++) {
+				fxSeries.anySignals.add(VectorSignalSeries.readSnapshot(in));
+			}
+			
+			int K = in.readInt();
+			int n = in.readInt();
+			fxSeries.fxSignals = new SignalColumns(K, n);
+			double[] row = new double[K];
+			for(int i = 0; i < n; i++) {
+				
+				for(int k = 0; k < K; k++) {
+					row[k] = in.readDouble();
+				}
+				fxSeries.fxSignals.append(row);
+			}
+			return fxSeries;
+		}
+		finally {
+			in.close();
+		}
+	}
+	
 
 }
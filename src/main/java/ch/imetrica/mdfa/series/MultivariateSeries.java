@@ -1,5 +1,8 @@
 package ch.imetrica.mdfa.series;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import org.jfree.ui.RefineryUtilities;
@@ -11,7 +14,9 @@ import ch.imetrica.mdfa.mdfa.MDFAFactory;
 import ch.imetrica.mdfa.mdfa.MDFASolver;
 import ch.imetrica.mdfa.plotutil.TimeSeriesPlot;
 import ch.imetrica.mdfa.series.MdfaSeries.SeriesType;
+import ch.imetrica.mdfa.spectraldensity.RollingSpectralBase;
 import ch.imetrica.mdfa.spectraldensity.SpectralBase;
+import ch.imetrica.mdfa.util.PhasedWorkerPool;
 
 /**
  * 
@@ -39,6 +44,13 @@ import ch.imetrica.mdfa.spectraldensity.SpectralBase;
  * 6) (Not yet implemented) A MasterSignal which serves as the head aggregate signal for the entire 
  *    multivariate time series combining the MDFA and machine learning components
  *
+ * The fitted state can be saved with {@link #saveSnapshot(String)} and restored with 
+ * {@link #loadSnapshot(String)}, for signal, target and price series.
+ *
+ * The threads of a parallel update (see {@link #setParallelUpdate(int)})
+ * are stopped with {@link #close()}, which must be called once the
+ * series is no longer used.
+ *
  * 
  * @author Christian D. Blakely (clisztian@gmail.com)
  *
@@ -51,10 +63,26 @@ public class MultivariateSeries {
 	ArrayList<MdfaSeries> anySeries;
 	MDFASolver anySolver;
 	DateTimeFormatter formatter;
+	private String datePattern;
 	
 	private int numberOfSignals = 0;
 	private int targetIndex = 0;
 	
+	private boolean rollingSpectralBase = false;
+	private RollingSpectralBase rollingBase;
+	private int maxHistory = 0;
+	
+	private PhasedWorkerPool updatePool;
+	private long tickTime;
+	private String tickDate;
+	private double[] tickValues;
+	private final PhasedWorkerPool.Task updateTask = new PhasedWorkerPool.Task() {
+		@Override
+		public void run(int i) throws Exception {
+			anySeries.get(i).addValue(tickTime, tickDate, tickValues[i]);
+		}
+	};
+	
 	public MultivariateSeries(MDFASolver anySolver) {
 		
 		this.aggregateSignal = new TimeSeries<Double>();
@@ -82,11 +110,11 @@ public class MultivariateSeries {
 		boolean success = true;
 		if(anySeries.size() > 0 && series.size() > 0) {
 			
-			String datetime = series.getLatest().getDateTime();
+			TimeSeriesEntry<Double> latest = series.getLatest();
 			
 			for(int i = 0; i < anySeries.size(); i++) {
 				
-				if(!datetime.equals(anySeries.get(i).getLatest().getDateTime())) {
+				if(!latest.isSameTime(anySeries.get(i).getLatest())) {
 					success = false;
 				}
 			}		
@@ -115,20 +143,61 @@ public class MultivariateSeries {
 	 * @throws Exception 
 	 */
     public void addValue(double[] val, String date) throws Exception {
+    	addValue(val, TimeSeriesEntry.NO_TIME, date);
+    }
+    
+	/**
+	 * 
+	 * Adds raw time series values to the multivariate series
+	 * with the common time stamp already parsed to epoch milliseconds, 
+	 * for example by a {@link ch.imetrica.mdfa.datafeeds.CsvFeed}
+	 * with a date format 
+	 * 
+	 * @param observation
+	 *    The values of all the series with their common date
+	 * @throws Exception
+	 */
+    public void addValue(TimeSeriesEntry<double[]> observation) throws Exception {
+    	addValue(observation.getValue(), observation.getTime(), observation.getDateTime());
+    }
+    
+	/**
+	 * 
+	 * Adds raw time series values to the multivariate series.
+	 * They must all share the same timestamp and size must 
+	 * equal number of total series 
+	 * 
+	 * @param val
+	 *    A double[] array of values to be added 
+	 * @param time
+	 *    Epoch milliseconds of the common date
+	 * @param date
+	 *    The common date among the time series values
+	 * @throws Exception 
+	 */
+    public void addValue(double[] val, long time, String date) throws Exception {
     
     	if(val.length != this.size()) {
     		throw new Exception("Sizes of array and number of time series don't match");
     	}
     	
+    	if(updatePool != null) {
+    		updateSeries(time, date, val);
+    	}
+    	
     	double sigVal = 0;
     	for(int i = 0; i < anySeries.size(); i++) { 		
-    		anySeries.get(i).addValue(date, val[i]);
+    		if(updatePool == null) {
+    			anySeries.get(i).addValue(time, date, val[i]);
+    		}
     		
     		if(anySeries.get(i).getSeriesType() == SeriesType.SIGNAL) {
 				sigVal += ((SignalSeries) anySeries.get(i)).getLatestSignalValue();
 			}		
     	}
-    	aggregateSignal.add(new TimeSeriesEntry<Double>(date, sigVal));  	
+    	aggregateSignal.add(new TimeSeriesEntry<Double>(time, date, sigVal));  	
+    	updateRollingBase();
+    	evictHistory();
     }
 
 	/**
@@ -158,7 +227,42 @@ public class MultivariateSeries {
 			}		
     	}
     	aggregateSignal.add(new TimeSeriesEntry<Double>(date, sigVal));
+    	updateRollingBase();
+    	evictHistory();
+    }
+    
+    
+    /**
+     * Adds the observation to each series on the threads
+     * of the update pool and waits until all are updated 
+     * 
+     * @throws Exception
+     */
+    private void updateSeries(long time, String date, double[] val) throws Exception {
     	
+    	tickTime = time;
+    	tickDate = date;
+    	tickValues = val;
+    	try {
+    		updatePool.run(anySeries.size(), updateTask);
+    	}
+    	finally {
+    		tickDate = null;
+    		tickValues = null;
+    	}
+    }
+    
+    /**
+     * Slides the rolling spectral base to the newest 
+     * observations, if one is being used 
+     * 
+     * @throws Exception
+     */
+    private void updateRollingBase() throws Exception {
+    	
+    	if(rollingSpectralBase && rollingBase != null) {
+    		rollingBase.update();
+    	}
     }
     
     
@@ -197,19 +301,15 @@ public class MultivariateSeries {
 	public TimeSeriesEntry<double[]> getSignalTargetPair(int i) throws Exception {
 		
 		
-		 String datetime = aggregateSignal.get(i).getDateTime();
-		 double sigval = aggregateSignal.get(i).getValue();
+		 TimeSeriesEntry<Double> aggregate = aggregateSignal.get(i);
+		 TimeSeriesEntry<Double> target = ((SignalSeries) anySeries.get(targetIndex)).getTargetSeries().getTargetEntry(i);
 		 
-		 String tsdatetime = ((SignalSeries) anySeries.get(targetIndex)).getTargetDate(i);
-		 double val = ((SignalSeries) anySeries.get(targetIndex)).getTargetValue(i);
-		 
-		 
-		 if(!datetime.equals(tsdatetime)) {
-			 throw new Exception("Dates do not match: " + datetime + " " + tsdatetime);
+		 if(!aggregate.isSameTime(target)) {
+			 throw new Exception("Dates do not match: " + aggregate.getDateTime() + " " + target.getDateTime());
 		 }
 		 
-		 double[] vals = new double[]{val, sigval};
-		 return (new TimeSeriesEntry<double[]>(datetime, vals));
+		 double[] vals = new double[]{target.getValue(), aggregate.getValue()};
+		 return aggregate.withValue(vals);
 	}
 	
 	
@@ -219,6 +319,10 @@ public class MultivariateSeries {
 	 * recent N time series observations and the given 
 	 * MDFA Base and solver. 
 	 * 
+	 * If the rolling spectral base is activated, the dfts of the series
+	 * are slid forward from the previous estimation instead of being 
+	 * recomputed
+	 * 
 	 * This will first set how many series/signals are in the estimation
 	 * for the filter coefficients in the MDFABase object and then 
 	 * extract the latest N points from each series to send to the spectral 
@@ -229,8 +333,27 @@ public class MultivariateSeries {
 	public void computeFilterCoefficients() throws Exception {
 		
 		anySolver.getMDFAFactory().setNumberOfSeries(numberOfSignals);
-		SpectralBase base = new SpectralBase(anySolver.getMDFAFactory().getSeriesLength());
-		base.addMultivariateSeries(this);
+		
+		SpectralBase base;
+		int N = anySolver.getMDFAFactory().getSeriesLength();
+		if(rollingSpectralBase) {
+			
+			int target = getSpectralTargetIndex();
+			if(rollingBase == null || rollingBase.getInSampleSize() != N || rollingBase.size() != numberOfSignals
+					|| rollingBase.getTargetIndex() != target) {
+				rollingBase = new RollingSpectralBase(N);
+				rollingBase.setTargetIndex(target);
+				rollingBase.addMultivariateSeries(this);
+			}
+			else {
+				rollingBase.update();
+			}
+			base = rollingBase;
+		}
+		else {
+			base = new SpectralBase(N);
+			base.addMultivariateSeries(this);
+		}
 		anySolver.updateSpectralBase(base);
 		MdfaMatrix bcoeffs = anySolver.solver();
 		
@@ -283,6 +406,21 @@ public class MultivariateSeries {
 		return anySeries.get(i);
 	}
 	
+	/**
+	 * The index of the target among the signal 
+	 * series, which are the series of the spectral base
+	 */
+	private int getSpectralTargetIndex() {
+		
+		int signal = 0;
+		for(int i = 0; i < targetIndex; i++) {
+			if(anySeries.get(i).getSeriesType() == SeriesType.SIGNAL) {
+				signal++;
+			}
+		}
+		return signal;
+	}
+	
 	/**
 	 * 
 	 * Print all the MDFA coefficients for each signal in 
@@ -406,12 +544,99 @@ public class MultivariateSeries {
 		for(int i = 0; i < anySeries.size(); i++) {
 			anySeries.get(i).chopFirstObservations(n);
 		}
-		if(aggregateSignal != null && aggregateSignal.size() > 0) {
-			
-			int chopped = Math.min(n, aggregateSignal.size());
-			for(int i = 0; i < chopped; i++) {
-				aggregateSignal.remove(0);
-			}
+		if(rollingBase != null) {
+			rollingBase.chopFirstObservations(n);
+		}
+		if(aggregateSignal != null) {
+			aggregateSignal.removeFirst(n);
+		}
+	}
+	
+	/**
+	 * 
+	 * Bounds all the series to their latest n observations. After 
+	 * each new observation, the oldest observations beyond n are 
+	 * chopped in O(1), and the rolling spectral base is notified. 
+	 * n must be at least the in-sample length of the MDFA 
+	 * estimation for the filter coefficients to be computed
+	 * 
+	 * @param n
+	 *    The maximum number of observations kept, 0 for no bound
+	 * @return
+	 *    This multivariate series
+	 */
+	public MultivariateSeries setMaxHistory(int n) {
+		
+		if(n < 0) {
+			throw new IllegalArgumentException("Maximum history must be non-negative: " + n);
+		}
+		this.maxHistory = n;
+		evictHistory();
+		return this;
+	}
+	
+	public int getMaxHistory() {
+		return this.maxHistory;
+	}
+	
+	/**
+	 * 
+	 * Updates the series in parallel on nthreads threads, the calling
+	 * thread included, when an observation is added. The aggregate signal
+	 * is summed in the order of the series after all are updated, so it 
+	 * is the same as with the serial update. A value of 1 stops the 
+	 * threads and updates the series one after another again. The threads
+	 * are daemon threads that are only stopped by {@link #close()}, which
+	 * must be called once the series is no longer used
+	 * 
+	 * @param nthreads The number of threads, at least 1
+	 * @return This MultivariateSeries
+	 */
+	public MultivariateSeries setParallelUpdate(int nthreads) {
+		
+		if(nthreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed: " + nthreads);
+		}
+		close();
+		if(nthreads > 1) {
+			updatePool = new PhasedWorkerPool(nthreads);
+		}
+		return this;
+	}
+	
+	/**
+	 * @return The number of threads updating the series, 1 for the serial update
+	 */
+	public int getParallelUpdate() {
+		return (updatePool == null) ? 1 : updatePool.getNumberThreads();
+	}
+	
+	/**
+	 * Stops the threads of the parallel update. It must be called once
+	 * a series with a parallel update (see {@link #setParallelUpdate(int)})
+	 * is no longer used, as its worker threads otherwise wait for the next
+	 * observation forever. The series can still be used afterwards, the
+	 * series being updated one after another
+	 */
+	public void close() {
+		
+		if(updatePool != null) {
+			updatePool.shutdown();
+			updatePool = null;
+		}
+	}
+	
+	private void evictHistory() {
+		
+		if(maxHistory == 0) {
+			return;
+		}
+		int longest = aggregateSignal.size();
+		for(int i = 0; i < anySeries.size(); i++) {
+			longest = Math.max(longest, anySeries.get(i).size());
+		}
+		if(longest > maxHistory) {
+			chopFirstObservations(longest - maxHistory);
 		}
 	}
 		
@@ -435,6 +660,7 @@ public class MultivariateSeries {
 	 */
 	public MultivariateSeries setDateFormat(String format) {
 		this.formatter = DateTimeFormat.forPattern(format);
+		this.datePattern = format;
 		return this;
 	}
 	
@@ -442,24 +668,24 @@ public class MultivariateSeries {
 		
 		if(aggregateSignal.isEmpty()) {				
 			for(int i = 0; i < signal.size(); i++) {
-				
-			      String current = signal.getSignalDate(i);	
-			      double val = signal.getSignalValue(i);
-			      aggregateSignal.add(new TimeSeriesEntry<Double>(current, val));
+			      aggregateSignal.add(new TimeSeriesEntry<Double>(signal.getSignalTime(i), signal.getSignalDate(i), signal.getSignalValue(i)));
 			}		
 		}
 		else {
 			
 			for(int i = 0; i < signal.size(); i++) {
 				
-		      String current = signal.getSignalDate(i);	
-			  if(current.equals(aggregateSignal.get(i).getDateTime())) {
-				  
-				  double val = aggregateSignal.get(i).getValue() + signal.getSignalValue(i);
-				  aggregateSignal.set(i, new TimeSeriesEntry<Double>(current, val));	  
+		      TimeSeriesEntry<Double> aggregate = aggregateSignal.get(i);
+		      long time = signal.getSignalTime(i);
+		      String date = signal.getSignalDate(i);
+		      boolean sameTime = (aggregate.hasTime() && time != TimeSeriesEntry.NO_TIME) ? 
+		    		  aggregate.getTime() == time : aggregate.getDateTime().equals(date);
+		      
+			  if(sameTime) {
+				  aggregateSignal.set(i, aggregate.withValue(aggregate.getValue() + signal.getSignalValue(i)));	  
 			  }
 			  else {
-				  throw new Exception("Dates do not match of the signals: " + current + " is not " + aggregateSignal.get(i).getDateTime());
+				  throw new Exception("Dates do not match of the signals: " + date + " is not " + aggregate.getDateTime());
 			  }
  			}			
 		}
@@ -500,6 +726,171 @@ public class MultivariateSeries {
 				((SignalSeries) anySeries.get(i)).getTargetSeries().adjustFractionalDifferenceData(d);		
 			}
 		}
+		if(rollingBase != null) {
+			rollingBase.resync();
+		}
+	}
+	
+	
+	/**
+	 * 
+	 * Activates the rolling spectral base. Instead of recomputing
+	 * the dfts of all the series in computeFilterCoefficients, they 
+	 * are slid forward with each new observation which makes 
+	 * re-estimating the coefficients at every new observation 
+	 * much cheaper
+	 * 
+	 * @param rolling
+	 *    True to use a rolling spectral base
+	 * @return
+	 *    This multivariate series
+	 */
+	public MultivariateSeries setRollingSpectralBase(boolean rolling) {
+		
+		this.rollingSpectralBase = rolling;
+		if(!rolling) {
+			rollingBase = null;
+		}
+		return this;
+	}
+	
+	public boolean isRollingSpectralBase() {
+		return this.rollingSpectralBase;
+	}
+	
+	
+	/**
+	 * Saves the fitted state of this multivariate series in a {@link SeriesSnapshot}
+	 * with the default window of observations: the largest of the in-sample 
+	 * length, the filter lengths and the numbers of fractional difference weights
+	 * 
+	 * @param fileName The snapshot file
+	 * @throws IOException if a series is not a signal, target or price series
+	 */
+	public void saveSnapshot(String fileName) throws IOException {
+		
+		int window = SeriesSnapshot.getWindow(anySolver);
+		for(MdfaSeries series : anySeries) {
+			
+			if(series.getSeriesType() == SeriesType.SIGNAL) {
+				window = Math.max(window, ((SignalSeries) series).getSnapshotWindow());
+			}
+			else if(series.getSeriesType() == SeriesType.TARGET) {
+				window = Math.max(window, ((TargetSeries) series).getSnapshotWindow());
+			}
+		}
+		saveSnapshot(fileName, window);
+	}
+	
+	/**
+	 * Saves the MDFA definition and solver settings, the series with 
+	 * their coefficients and prefilters and the latest observations of 
+	 * the series and of the aggregate signal in a {@link SeriesSnapshot}
+	 * 
+	 * @param fileName The snapshot file
+	 * @param window The number of latest observations saved
+	 * @throws IOException if a series is not a signal, target or price series
+	 */
+	public void saveSnapshot(String fileName, int window) throws IOException {
+		
+		if(window < 1) {
+			throw new IllegalArgumentException("At least one observation must be saved: " + window);
+		}
+		for(MdfaSeries series : anySeries) {
+			
+			SeriesType type = series.getSeriesType();
+			if(type != SeriesType.SIGNAL && type != SeriesType.TARGET && type != SeriesType.PRICE) {
+				throw new IOException("A series of type " + type + " can not be saved in a snapshot");
+			}
+		}
+		
+		DataOutputStream out = SeriesSnapshot.create(fileName, SeriesSnapshot.MULTIVARIATE_SERIES);
+		try {
+			SeriesSnapshot.writeString(out, datePattern);
+			SeriesSnapshot.writeSolver(out, anySolver);
+			out.writeInt(targetIndex);
+			out.writeBoolean(rollingSpectralBase);
+			out.writeInt(maxHistory);
+			
+			out.writeInt(anySeries.size());
+			for(MdfaSeries series : anySeries) {
+				
+				out.writeUTF(series.getSeriesType().name());
+				switch(series.getSeriesType()) {
+					case SIGNAL: ((SignalSeries) series).writeSnapshot(out, window); break;
+					case TARGET: ((TargetSeries) series).writeSnapshot(out, window); break;
+					default: ((PriceSeries) series).writeSnapshot(out, window); break;
+				}
+			}
+			
+			int n = Math.min(window, aggregateSignal.size());
+			out.writeInt(n);
+			for(int i = aggregateSignal.size() - n; i < aggregateSignal.size(); i++) {
+				
+				TimeSeriesEntry<Double> entry = aggregateSignal.get(i);
+				out.writeLong(entry.getTime());
+				out.writeUTF(entry.getDateTime());
+				out.writeDouble(entry.getValue());
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Restores a multivariate series saved with {@link #saveSnapshot(String)}.
+	 * New observations can be added right away, their signals are the ones 
+	 * the saved series would have computed. The series are updated serially
+	 * until {@link #setParallelUpdate(int)} is called again
+	 * 
+	 * @param fileName The snapshot file
+	 * @return The restored multivariate series
+	 * @throws IOException if the file is not a snapshot of a MultivariateSeries
+	 */
+	public static MultivariateSeries loadSnapshot(String fileName) throws IOException {
+		
+		DataInputStream in = SeriesSnapshot.open(fileName, SeriesSnapshot.MULTIVARIATE_SERIES);
+		try {
+			String pattern = SeriesSnapshot.readString(in);
+			MultivariateSeries multiSeries = new MultivariateSeries(SeriesSnapshot.readSolver(in));
+			if(pattern != null) {
+				multiSeries.setDateFormat(pattern);
+			}
+			multiSeries.targetIndex = in.readInt();
+			multiSeries.rollingSpectralBase = in.readBoolean();
+			multiSeries.maxHistory = in.readInt();
+			
+			int nseries = in.readInt();
+			for(int i = 0; i < nseries; i++) {
+				
+				String type = in.readUTF();
+				if(type.equals(SeriesType.SIGNAL.name())) {
+					
+					multiSeries.anySeries.add(SignalSeries.readSnapshot(in));
+					multiSeries.numberOfSignals++;
+				}
+				else if(type.equals(SeriesType.TARGET.name())) {
+					multiSeries.anySeries.add(TargetSeries.readSnapshot(in));
+				}
+				else if(type.equals(SeriesType.PRICE.name())) {
+					multiSeries.anySeries.add(PriceSeries.readSnapshot(in));
+				}
+				else {
+					throw new IOException("Unknown series type in snapshot: " + type);
+				}
+			}
+			
+			int n = in.readInt();
+			multiSeries.aggregateSignal = new TimeSeries<Double>(n);
+			for(int i = 0; i < n; i++) {
+				multiSeries.aggregateSignal.add(new TimeSeriesEntry<Double>(in.readLong(), in.readUTF(), in.readDouble()));
+			}
+			return multiSeries;
+		}
+		finally {
+			in.close();
+		}
 	}
 	
     
@@ -1,6 +1,10 @@
 package ch.imetrica.mdfa.series;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.swing.plaf.multi.MultiListUI;
 
@@ -11,11 +15,12 @@ import org.joda.time.format.DateTimeFormatter;
 import ch.imetrica.mdfa.matrix.MdfaMatrix;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.mdfa.MDFAFactory;
+import ch.imetrica.mdfa.mdfa.MDFABatchSolver;
 import ch.imetrica.mdfa.mdfa.MDFASolver;
 import ch.imetrica.mdfa.plotutil.TimeSeriesPlot;
 import ch.imetrica.mdfa.prefilter.WhiteNoiseFilter;
 import ch.imetrica.mdfa.series.MdfaSeries.SeriesType;
-import ch.imetrica.mdfa.spectraldensity.SpectralBase;
+import ch.imetrica.mdfa.util.FIRFilterEngine;
 
 /**
  * 
@@ -31,6 +36,9 @@ import ch.imetrica.mdfa.spectraldensity.SpectralBase;
  * The motivation behind the MultivariateSignal is to create an "easier"
  * interface for our Machine Learning applications
  * 
+ * The fitted signals can be saved with {@link #saveSnapshot(String)} and
+ * restored with {@link #loadSnapshot(String)} without estimating them again
+ * 
  * 
  * @author Christian D. Blakely (clisztian@gmail.com)
  *
@@ -47,10 +55,13 @@ public class MultivariateSignalSeries implements MdfaSeries {
 	private ArrayList<double[]> bcoeffs;
 	private ArrayList<double[]> preFilterCoeffs;
 	
-	private TimeSeries<double[]> multiSignalSeries;
+	private ColumnarTimeSeries multiSignalSeries;
+	private double[] signalRow;
 	private String name;
 	private DateTimeFormatter formatter;
+	private String datePattern;
 	private MDFASolver[] anySolvers;
+	private transient FIRFilterEngine filterEngine;
 	
 	
 	/**
@@ -68,6 +79,7 @@ public class MultivariateSignalSeries implements MdfaSeries {
 		
 		this.myTarget = anytarget;
 		this.formatter = DateTimeFormat.forPattern(anyformat);
+		this.datePattern = anyformat;
 		this.bcoeffs = new ArrayList<double[]>();
 		this.preFilterCoeffs = new ArrayList<double[]>();
 		
@@ -93,6 +105,7 @@ public class MultivariateSignalSeries implements MdfaSeries {
 		
 		this.myTarget = anytarget;
 		this.formatter = DateTimeFormat.forPattern(anyformat);
+		this.datePattern = anyformat;
 		this.bcoeffs = new ArrayList<double[]>();
 		this.preFilterCoeffs = new ArrayList<double[]>();
 		
@@ -107,7 +120,9 @@ public class MultivariateSignalSeries implements MdfaSeries {
 	/**
 	 * With the target data set and a sufficient amount of 
 	 * observations, this computes the filter coefficients 
-	 * for all the MDFABase definitions
+	 * for all the MDFABase definitions. The dfts of the target 
+	 * are computed once for each distinct series length and the 
+	 * definitions are solved in parallel with a {@link MDFABatchSolver}
 	 * 
 	 * @throws Exception
 	 */
@@ -116,12 +131,13 @@ public class MultivariateSignalSeries implements MdfaSeries {
 		int M = anySolvers.length;
 		bcoeffs.clear();
 		
+		ArrayList<TargetSeries> series = new ArrayList<TargetSeries>();
+		series.add(this.myTarget);
+		ArrayList<MdfaMatrix> allCoeffs = (new MDFABatchSolver(Arrays.asList(anySolvers))).solve(series);
+		
 		for(int m = 0; m < M; m++) {
 			
-			SpectralBase base = new SpectralBase(anySolvers[m].getMDFAFactory().getSeriesLength());
-			base.addSeries(this.myTarget);
-			anySolvers[m].updateSpectralBase(base);
-			MdfaMatrix myCoeffs = anySolvers[m].solver();
+			MdfaMatrix myCoeffs = allCoeffs.get(m);
 			
 			int L = anySolvers[m].getMDFAFactory().getFilterLength();
 			double[] sig_coeffs = myCoeffs.getSubsetColumn(0, 0, L);
@@ -142,15 +158,24 @@ public class MultivariateSignalSeries implements MdfaSeries {
 	 */
 	@Override
 	public void addValue(String date, double val) {
+		addValue(TimeSeriesEntry.NO_TIME, date, val);
+	}
+	
+	@Override
+	public void addValue(long time, String date, double val) {
 		
-		myTarget.addValue(date, val);
+		myTarget.addValue(time, date, val);
 		
 		if(bcoeffs.size() == anySolvers.length) {
 			
 			int M = anySolvers.length;
 			int N = myTarget.size();
 			
-			double[] sums = new double[M];
+			if(signalRow == null || signalRow.length != M) {
+				signalRow = new double[M];
+			}
+			double[] sums = signalRow;
+			Arrays.fill(sums, 0);
 			for(int m = 0; m < M; m++) {
 				
 				int filter_length = Math.min(N, bcoeffs.get(m).length);
@@ -158,11 +183,34 @@ public class MultivariateSignalSeries implements MdfaSeries {
 					sums[m] += bcoeffs.get(m)[l]*myTarget.getTargetValue(N - l - 1);
 				}		
 			}
-			multiSignalSeries.add(new TimeSeriesEntry<double[]>(date, sums));			
+			multiSignalSeries.add(time, date, sums);
 		}		
 	}
 	
 
+	/**
+	 * Sets the engine that filters the target series, for instance
+	 * one with its own fork-join pool or FFT threshold. The engine is 
+	 * not part of the snapshot, a restored series uses the default engine
+	 * 
+	 * @param engine
+	 *   The engine, null for the default {@link FIRFilterEngine#getDefault()}
+	 * @return
+	 *   This signal series
+	 */
+	public MultivariateSignalSeries setFilterEngine(FIRFilterEngine engine) {
+		
+		this.filterEngine = engine;
+		return this;
+	}
+	
+	/**
+	 * @return The engine that filters the target series
+	 */
+	public FIRFilterEngine getFilterEngine() {
+		return (filterEngine == null) ? FIRFilterEngine.getDefault() : filterEngine;
+	}
+	
 	/**
 	 * 
 	 * Once the filter coefficients have been computed, the historical 
@@ -181,21 +229,17 @@ public class MultivariateSignalSeries implements MdfaSeries {
 			throw new Exception("No target series has been defined yet");
 		}
 		
-		multiSignalSeries = new TimeSeries<double[]>();
-		
 		int M = anySolvers.length;
 		int N = myTarget.size();
+		multiSignalSeries = new ColumnarTimeSeries(M, null, N).setMaxHistory(myTarget.getMaxHistory());
+		
+		double[][] signals = getFilterEngine().filter(myTarget.getTargetValues(), N, bcoeffs);
 		for(int i = 0; i < N; i++) {
 			
-			double[] sums = new double[M];
+			multiSignalSeries.add(myTarget.getTargetTime(i), myTarget.getTargetDate(i), 0);
 			for(int m = 0; m < M; m++) {
-				
-				int filter_length = Math.min(i+1, bcoeffs.get(m).length);
-				for (int l = 0; l < filter_length; l++) {
-					sums[m] += bcoeffs.get(m)[l]*myTarget.getTargetValue(i - l);
-				}		
+				multiSignalSeries.setValue(i, m, signals[m][i]);
 			}
-			multiSignalSeries.add(new TimeSeriesEntry<double[]>(myTarget.getTargetDate(i), sums));
 		}
 		return this;
 	} 
@@ -210,7 +254,7 @@ public class MultivariateSignalSeries implements MdfaSeries {
 	 */
 	public double[] getSignalValue(int i) {
 		
-		return multiSignalSeries.get(i).getValue();
+		return multiSignalSeries.getValues(i);
 	}
 	
 	/**
@@ -235,7 +279,7 @@ public class MultivariateSignalSeries implements MdfaSeries {
 	 *    A double array of the M signal values
 	 */
 	public double[] getLatestSignalValue() {
-		return multiSignalSeries.last().getValue();
+		return multiSignalSeries.getValues(multiSignalSeries.size() - 1);
 	}
 	
 	/**
@@ -354,6 +398,7 @@ public class MultivariateSignalSeries implements MdfaSeries {
 	@Override
 	public void setDateFormat(String anyformat) {
 		this.formatter = DateTimeFormat.forPattern(anyformat);
+		this.datePattern = anyformat;
 	}
 
 	@Override
@@ -380,10 +425,18 @@ public class MultivariateSignalSeries implements MdfaSeries {
 		
 		myTarget.chopFirstObservations(n);
 		
-		int chopped = Math.min(n, multiSignalSeries.size());
-		for(int i = 0; i < chopped; i++) {
-			multiSignalSeries.remove(0);
-		}
+		multiSignalSeries.removeFirst(n);
+	}
+	
+	/**
+	 * Bounds both the target and the signals to 
+	 * their latest n observations 
+	 */
+	@Override
+	public void setMaxHistory(int n) {
+		
+		myTarget.setMaxHistory(n);
+		multiSignalSeries.setMaxHistory(n);
 	}
 
 	@Override
@@ -417,6 +470,118 @@ public class MultivariateSignalSeries implements MdfaSeries {
 
 	
 	
+	/**
+	 * Saves the fitted state of this multisignal in a {@link SeriesSnapshot} 
+	 * with the default window of observations: the largest in-sample 
+	 * length, filter length and number of fractional difference weights
+	 * 
+	 * @param fileName The snapshot file
+	 * @throws IOException
+	 */
+	public void saveSnapshot(String fileName) throws IOException {
+		
+		int window = myTarget.getSnapshotWindow();
+		for(MDFASolver solver : anySolvers) {
+			window = Math.max(window, SeriesSnapshot.getWindow(solver));
+		}
+		for(double[] b : bcoeffs) {
+			window = Math.max(window, b.length);
+		}
+		saveSnapshot(fileName, window);
+	}
+	
+	/**
+	 * Saves the M MDFA definitions and solver settings, the coefficients,
+	 * the prefilters and the latest observations of the target and of the
+	 * signals in a {@link SeriesSnapshot}
+	 * 
+	 * @param fileName The snapshot file
+	 * @param window The number of latest observations saved
+	 * @throws IOException
+	 */
+	public void saveSnapshot(String fileName, int window) throws IOException {
+		
+		if(window < 1) {
+			throw new IllegalArgumentException("At least one observation must be saved: " + window);
+		}
+		
+		DataOutputStream out = SeriesSnapshot.create(fileName, SeriesSnapshot.MULTIVARIATE_SIGNAL_SERIES);
+		try {
+			SeriesSnapshot.writeString(out, datePattern);
+			SeriesSnapshot.writeString(out, name);
+			out.writeInt(anySolvers.length);
+			for(MDFASolver solver : anySolvers) {
+				SeriesSnapshot.writeSolver(out, solver);
+			}
+			myTarget.writeSnapshot(out, window);
+			SeriesSnapshot.writeArrays(out, bcoeffs);
+			SeriesSnapshot.writeArrays(out, preFilterCoeffs);
+			
+			out.writeBoolean(multiSignalSeries != null);
+			if(multiSignalSeries != null) {
+				
+				int n = Math.min(window, multiSignalSeries.size());
+				out.writeInt(multiSignalSeries.getMaxHistory());
+				out.writeInt(n);
+				for(int i = multiSignalSeries.size() - n; i < multiSignalSeries.size(); i++) {
+					
+					out.writeLong(multiSignalSeries.getTime(i));
+					out.writeUTF(multiSignalSeries.getDateTime(i));
+					SeriesSnapshot.writeArray(out, multiSignalSeries.getValues(i));
+				}
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Restores a multisignal saved with {@link #saveSnapshot(String)}. New 
+	 * observations can be added right away, their signals are the ones 
+	 * the saved multisignal would have computed
+	 * 
+	 * @param fileName The snapshot file
+	 * @return The restored multisignal
+	 * @throws IOException if the file is not a snapshot of a MultivariateSignalSeries
+	 */
+	public static MultivariateSignalSeries loadSnapshot(String fileName) throws IOException {
+		
+		DataInputStream in = SeriesSnapshot.open(fileName, SeriesSnapshot.MULTIVARIATE_SIGNAL_SERIES);
+		try {
+			String pattern = SeriesSnapshot.readString(in);
+			String name = SeriesSnapshot.readString(in);
+			
+			MDFASolver[] solvers = new MDFASolver[in.readInt()];
+			for(int i = 0; i < solvers.length; i++) {
+				solvers[i] = SeriesSnapshot.readSolver(in);
+			}
+			
+			MultivariateSignalSeries multiSignal = new MultivariateSignalSeries(TargetSeries.readSnapshot(in), 
+					new MDFABase[0], pattern);
+			multiSignal.name = name;
+			multiSignal.anySolvers = solvers;
+			multiSignal.bcoeffs = SeriesSnapshot.readArrays(in);
+			multiSignal.preFilterCoeffs = SeriesSnapshot.readArrays(in);
+			
+			if(in.readBoolean()) {
+				
+				int maxHistory = in.readInt();
+				int n = in.readInt();
+				multiSignal.multiSignalSeries = new ColumnarTimeSeries(solvers.length, null, n);
+				for(int i = 0; i < n; i++) {
+					multiSignal.multiSignalSeries.add(in.readLong(), in.readUTF(), SeriesSnapshot.readArray(in));
+				}
+				multiSignal.multiSignalSeries.setMaxHistory(maxHistory);
+			}
+			return multiSignal;
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	
 	@Override
 	public TimeSeriesEntry<Double> getLatest() {
 		// TODO Auto-generated method stub
@@ -1,5 +1,9 @@
 package ch.imetrica.mdfa.series;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -14,6 +18,7 @@ public class PriceSeries implements MdfaSeries {
 	private static final long serialVersionUID = 1L;
 	private final SeriesType seriesType = SeriesType.PRICE;
 	private DateTimeFormatter formatter;
+	private String datePattern;
 	TimeSeries<Double> timeSeries;
 	Transform seriesTransform;
 	boolean logTransform = false;
@@ -43,6 +48,11 @@ public class PriceSeries implements MdfaSeries {
 	public void addValue(String date, double val) {		
 		seriesTransform.addPrice(timeSeries, val, date);		
 	}
+	
+	@Override
+	public void addValue(long time, String date, double val) {		
+		seriesTransform.addPrice(timeSeries, val, time, date);		
+	}
 
 	@Override
 	public TimeSeriesEntry<Double> getLatest() {
@@ -75,6 +85,7 @@ public class PriceSeries implements MdfaSeries {
 	@Override
 	public void setDateFormat(String anyformat) {
 		formatter = DateTimeFormat.forPattern(anyformat);
+		datePattern = anyformat;
 	}
 
 
@@ -117,10 +128,12 @@ public class PriceSeries implements MdfaSeries {
 	@Override
 	public void chopFirstObservations(int n) {
 		
-		int chopped = Math.min(n, timeSeries.size());
-		for(int i = 0; i < chopped; i++) {
-			timeSeries.remove(0);
-		}	
+		timeSeries.removeFirst(n);
+	}
+
+	@Override
+	public void setMaxHistory(int n) {
+		timeSeries.setMaxHistory(n);
 	}
 
 
@@ -128,4 +141,48 @@ public class PriceSeries implements MdfaSeries {
 	public boolean isPrefiltered() {
 		return false;
 	}
+	
+	
+	/**
+	 * Writes the latest n (log) prices to a {@link SeriesSnapshot}
+	 */
+	void writeSnapshot(DataOutputStream out, int n) throws IOException {
+		
+		SeriesSnapshot.writeString(out, name);
+		SeriesSnapshot.writeString(out, datePattern);
+		out.writeBoolean(logTransform);
+		out.writeInt(timeSeries.getMaxHistory());
+		
+		n = Math.min(n, timeSeries.size());
+		out.writeInt(n);
+		for(int i = timeSeries.size() - n; i < timeSeries.size(); i++) {
+			
+			TimeSeriesEntry<Double> entry = timeSeries.get(i);
+			out.writeLong(entry.getTime());
+			out.writeUTF(entry.getDateTime());
+			out.writeDouble(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Reads a price series written by {@link #writeSnapshot(DataOutputStream, int)}
+	 */
+	static PriceSeries readSnapshot(DataInputStream in) throws IOException {
+		
+		String name = SeriesSnapshot.readString(in);
+		String pattern = SeriesSnapshot.readString(in);
+		PriceSeries price = new PriceSeries(new TimeSeries<Double>(), in.readBoolean());
+		price.name = name;
+		if(pattern != null) {
+			price.setDateFormat(pattern);
+		}
+		int maxHistory = in.readInt();
+		
+		int n = in.readInt();
+		for(int i = 0; i < n; i++) {
+			price.timeSeries.add(new TimeSeriesEntry<Double>(in.readLong(), in.readUTF(), in.readDouble()));
+		}
+		price.setMaxHistory(maxHistory);
+		return price;
+	}
 }
@@ -0,0 +1,272 @@
+package ch.imetrica.mdfa.series;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.mdfa.MDFAFactory;
+import ch.imetrica.mdfa.mdfa.MDFASolver;
+import ch.imetrica.mdfa.mdfa.SolverMode;
+
+/**
+ *
+ * The binary format of the snapshots of a fitted {@link MultivariateSeries},
+ * {@link MultivariateSignalSeries} or {@link MultivariateFXSeries}, with
+ * which a process can restart and emit its next signal without reading the
+ * history again and without solving the MDFA problems again.
+ *
+ * A snapshot starts with the header
+ *
+ * - int magic 0x4D444653 ("MDFS")
+ * - int version
+ * - byte kind of the series
+ *
+ * followed by the fields of the series in the DataOutput encoding: the
+ * date format, the parameters of the {@link MDFABase} and the settings
+ * of each solver, and for each series its transform, the latest
+ * observations of the target (epoch time, date, transformed and raw
+ * value), the filter coefficients as they are applied, the prefilters,
+ * and the signal values of these observations. Restoring the memoized
+ * signals along with the target makes the signals of the restored
+ * series identical to the ones of the saved series, before and after
+ * new observations are added.
+ *
+ * The window of observations saved is given to saveSnapshot, by default
+ * it is the largest of the in-sample length of the solvers, the filter
+ * lengths and the number of fractional difference weights, so that the
+ * filters can be computed again and the transform and the signals of new
+ * observations are computed from as many observations as before. The
+ * series keep the maximum history they were bounded to.
+ *
+ * What is not saved: the rolling spectral bases, which are built again
+ * at the next estimation, the tiered histories, the threads of a parallel
+ * update and the trading state of the {@link VectorSignalSeries}.
+ */
+public final class SeriesSnapshot {
+
+	public static final int MAGIC = 0x4D444653;
+	public static final int VERSION = 1;
+	public static final String EXTENSION = ".mdfs";
+
+	static final byte MULTIVARIATE_SERIES = 1;
+	static final byte MULTIVARIATE_SIGNAL_SERIES = 2;
+	static final byte MULTIVARIATE_FX_SERIES = 3;
+
+	private static final String[] KIND_NAMES = {"", "MultivariateSeries",
+			"MultivariateSignalSeries", "MultivariateFXSeries"};
+
+
+	private SeriesSnapshot() {
+	}
+
+
+	/**
+	 * @return True if the file starts with the magic number of a snapshot
+	 */
+	public static boolean isSnapshot(String fileName) {
+
+		File f = new File(fileName);
+		if(!f.isFile() || f.length() < 9) {
+			return false;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(f));
+			try {
+				return in.readInt() == MAGIC;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the file and writes the header of a snapshot of the given kind
+	 */
+	static DataOutputStream create(String fileName, byte kind) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeByte(kind);
+		return out;
+	}
+
+	/**
+	 * Opens the file and checks that it is a snapshot of the given kind
+	 * in the current version
+	 */
+	static DataInputStream open(String fileName, byte kind) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException(fileName + " is not an MDFA snapshot");
+			}
+			int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version + " of " + fileName
+						+ ", expected " + VERSION);
+			}
+			byte saved = in.readByte();
+			if(saved != kind) {
+				throw new IOException(fileName + " is a snapshot of a " + kindName(saved)
+						+ ", not of a " + kindName(kind));
+			}
+		}
+		catch(IOException e) {
+			in.close();
+			throw e;
+		}
+		return in;
+	}
+
+	private static String kindName(byte kind) {
+		return (kind > 0 && kind < KIND_NAMES.length) ? KIND_NAMES[kind] : "unknown series " + kind;
+	}
+
+
+	/**
+	 * The number of observations needed to estimate the filter
+	 * coefficients of the solver again
+	 */
+	static int getWindow(MDFASolver solver) {
+
+		MDFAFactory factory = solver.getMDFAFactory();
+		return Math.max(factory.getSeriesLength(), factory.getFilterLength());
+	}
+
+	/**
+	 * Writes the parameters of the MDFABase of the solver
+	 * and the settings of the solver
+	 */
+	static void writeSolver(DataOutputStream out, MDFASolver solver) throws IOException {
+
+		MDFAFactory factory = solver.getMDFAFactory();
+		out.writeInt(factory.getSeriesLength());
+		out.writeInt(factory.getNSeries());
+		out.writeInt(factory.getFilterLength());
+		out.writeInt(factory.getI1());
+		out.writeInt(factory.getI2());
+		out.writeDouble(factory.getLag());
+		out.writeDouble(factory.getLowPassCutoff());
+		out.writeDouble(factory.getBandPassCutoff());
+		out.writeDouble(factory.getAlpha());
+		out.writeDouble(factory.getLambda());
+		out.writeDouble(factory.getSmooth());
+		out.writeDouble(factory.getDecayStrength());
+		out.writeDouble(factory.getDecayStart());
+		out.writeDouble(factory.getCrossCorr());
+		out.writeDouble(factory.getShift_constraint());
+		out.writeDouble(factory.getHybridForecast());
+
+		out.writeUTF(solver.getSolverMode().name());
+		out.writeDouble(solver.getIterativeTolerance());
+		out.writeInt(solver.getMaxIterations());
+	}
+
+	static MDFASolver readSolver(DataInputStream in) throws IOException {
+
+		int N = in.readInt();
+		int nseries = in.readInt();
+		int L = in.readInt();
+		int i1 = in.readInt();
+		int i2 = in.readInt();
+		double lag = in.readDouble();
+		double lowpass = in.readDouble();
+		double bandpass = in.readDouble();
+		double alpha = in.readDouble();
+		double lambda = in.readDouble();
+		double smooth = in.readDouble();
+		double decayStrength = in.readDouble();
+		double decayStart = in.readDouble();
+		double crossCorr = in.readDouble();
+		double shift = in.readDouble();
+		double hybridForecast = in.readDouble();
+
+		MDFABase base = new MDFABase(N, nseries, L, i1, i2, lag, lowpass, alpha, lambda,
+				smooth, decayStrength, decayStart, crossCorr, shift)
+				.setBandPassCutoff(bandpass)
+				.setHybridForecast(hybridForecast);
+
+		MDFASolver solver = new MDFASolver(new MDFAFactory(base));
+		try {
+			solver.setSolverMode(SolverMode.valueOf(in.readUTF()));
+		}
+		catch(IllegalArgumentException e) {
+			throw new IOException("Unknown solver mode in snapshot: " + e.getMessage(), e);
+		}
+		solver.setIterativeTolerance(in.readDouble());
+		solver.setMaxIterations(in.readInt());
+		return solver;
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+
+		out.writeBoolean(s != null);
+		if(s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Writes the length of the array, -1 for null, and its values
+	 */
+	static void writeArray(DataOutputStream out, double[] values) throws IOException {
+
+		if(values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for(double v : values) {
+			out.writeDouble(v);
+		}
+	}
+
+	static double[] readArray(DataInputStream in) throws IOException {
+
+		int n = in.readInt();
+		if(n < 0) {
+			return null;
+		}
+		double[] values = new double[n];
+		for(int i = 0; i < n; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	static void writeArrays(DataOutputStream out, List<double[]> arrays) throws IOException {
+
+		out.writeInt(arrays.size());
+		for(double[] values : arrays) {
+			writeArray(out, values);
+		}
+	}
+
+	static ArrayList<double[]> readArrays(DataInputStream in) throws IOException {
+
+		int n = in.readInt();
+		ArrayList<double[]> arrays = new ArrayList<double[]>(n);
+		for(int i = 0; i < n; i++) {
+			arrays.add(readArray(in));
+		}
+		return arrays;
+	}
+}
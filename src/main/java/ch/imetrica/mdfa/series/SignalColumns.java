@@ -0,0 +1,163 @@
+package ch.imetrica.mdfa.series;
+
+import java.io.Serializable;
+
+/**
+ *
+ * The values of K signals over a window of observations, kept in K
+ * primitive columns. Observations are appended at the end and removed
+ * from the start, and a block of observations can be put in front of the
+ * first one, which is how a {@link LazySignal} extends the signal values
+ * it has computed back in time.
+ *
+ * The columns are only reallocated when the window outgrows them.
+ * Otherwise the values are moved within the columns, so a window of
+ * bounded length is updated without allocating.
+ */
+public class SignalColumns implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static final int MIN_CAPACITY = 64;
+
+	private final double[][] columns;
+	private int offset;
+	private int count;
+
+
+	/**
+	 * Creates an empty window of ncolumns signals
+	 *
+	 * @param ncolumns
+	 *    Number of signals K
+	 */
+	public SignalColumns(int ncolumns) {
+		this(ncolumns, 0);
+	}
+
+	/**
+	 * Creates an empty window of ncolumns signals with room
+	 * for capacity observations before it has to grow
+	 *
+	 * @param ncolumns
+	 *    Number of signals K
+	 * @param capacity
+	 *    Initial capacity
+	 */
+	public SignalColumns(int ncolumns, int capacity) {
+
+		if(ncolumns < 1) {
+			throw new IllegalArgumentException("At least one column is needed");
+		}
+		columns = new double[ncolumns][capacity];
+	}
+
+
+	public int size() {
+		return count;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * The value of signal k at index i of the window
+	 */
+	public double get(int i, int k) {
+
+		checkIndex(i);
+		return columns[k][offset + i];
+	}
+
+	/**
+	 * Copies the values of all signals at index i into row
+	 *
+	 * @param i
+	 *    Index in the window
+	 * @param row
+	 *    Array of length at least K
+	 * @return
+	 *    row
+	 */
+	public double[] getRow(int i, double[] row) {
+
+		checkIndex(i);
+		for(int k = 0; k < columns.length; k++) {
+			row[k] = columns[k][offset + i];
+		}
+		return row;
+	}
+
+	/**
+	 * Appends an observation with the first K values of row
+	 */
+	public void append(double[] row) {
+
+		reserve(0, 1);
+		for(int k = 0; k < columns.length; k++) {
+			columns[k][offset + count] = row[k];
+		}
+		count++;
+	}
+
+	/**
+	 * Puts n observations in front of the first one, the
+	 * values of signal k being values[k][from], ..., values[k][from+n-1]
+	 */
+	public void prepend(double[][] values, int from, int n) {
+
+		reserve(n, 0);
+		offset -= n;
+		for(int k = 0; k < columns.length; k++) {
+			System.arraycopy(values[k], from, columns[k], offset, n);
+		}
+		count += n;
+	}
+
+	/**
+	 * Removes the first n observations
+	 */
+	public void removeFirst(int n) {
+
+		n = Math.min(Math.max(n, 0), count);
+		offset += n;
+		count -= n;
+	}
+
+	public void clear() {
+
+		offset = 0;
+		count = 0;
+	}
+
+	/**
+	 * Makes room for front values before and back values after the
+	 * window. The window is moved to the middle of the columns if they
+	 * are at least twice as long as needed, and to new columns otherwise
+	 */
+	private void reserve(int front, int back) {
+
+		int capacity = columns[0].length;
+		if(offset >= front && capacity - offset - count >= back) {
+			return;
+		}
+
+		int needed = count + front + back;
+		int grown = (2*needed <= capacity) ? capacity : 2*needed + MIN_CAPACITY;
+		int start = front + (grown - needed)/2;
+		for(int k = 0; k < columns.length; k++) {
+
+			double[] values = (grown == capacity) ? columns[k] : new double[grown];
+			System.arraycopy(columns[k], offset, values, start, count);
+			columns[k] = values;
+		}
+		offset = start;
+	}
+
+	private void checkIndex(int i) {
+
+		if(i < 0 || i >= count) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package ch.imetrica.mdfa.series;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
@@ -12,6 +14,7 @@ import com.csvreader.CsvReader;
 
 import ch.imetrica.mdfa.plotutil.TimeSeriesPlot;
 import ch.imetrica.mdfa.prefilter.WhiteNoiseFilter;
+import ch.imetrica.mdfa.util.FIRFilterEngine;
 import ch.imetrica.mdfa.util.MdfaUtil;
 
 
@@ -33,6 +36,15 @@ import ch.imetrica.mdfa.util.MdfaUtil;
  * will only begin registering signal values once the coeffs array 
  * has been defined. 
  * 
+ * By default the signal is a {@link LazySignal}: new coefficients 
+ * do not recompute the history, only the signal values that are read 
+ * are computed. With {@link #setEagerSignal(boolean)} the whole signal 
+ * series is recomputed each time the coefficients change. 
+ * 
+ * The signal values that are emitted as new observations arrive can 
+ * be kept in a bounded {@link TieredSignalHistory} for monitoring, see 
+ * {@link #setTieredHistory(int, long)}.
+ * 
  * 
  * @author Christian D. Blakely (clisztian@gmail.com)
  *
@@ -46,11 +58,16 @@ public class SignalSeries implements MdfaSeries {
 
 	private final SeriesType seriesType = SeriesType.SIGNAL;
 	private DateTimeFormatter formatter;
-	private TimeSeries<Double> signalSeries;
+	private String datePattern;
+	private ColumnarTimeSeries signalSeries;
 	private TargetSeries target;
 	private double[] coeffs;
 	private double[] preFilterCoeffs = null;
 	private String name;
+	private boolean eagerSignal = false;
+	private LazySignal lazySignal;
+	private TieredSignalHistory history;
+	private transient FIRFilterEngine filterEngine;
 
 
 
@@ -67,7 +84,7 @@ public class SignalSeries implements MdfaSeries {
 		
 		this.coeffs = null;
 		this.target = anytarget;
-		this.signalSeries = new TimeSeries<Double>();
+		this.signalSeries = new ColumnarTimeSeries(1);
 
 	}
 	
@@ -88,7 +105,8 @@ public class SignalSeries implements MdfaSeries {
 		this.coeffs = null;
 		this.target = anytarget;	
 		this.formatter = DateTimeFormat.forPattern(anyformat);
-		this.signalSeries = new TimeSeries<Double>();
+		this.datePattern = anyformat;
+		this.signalSeries = new ColumnarTimeSeries(1);
 		this.name = anytarget.getName();
 	}
 		
@@ -136,21 +154,25 @@ public class SignalSeries implements MdfaSeries {
 		this.coeffs = coeffs;		
 		this.target = anytarget;
 		this.formatter = DateTimeFormat.forPattern(formatter);
+		this.datePattern = formatter;
 		this.target.setDateFormat(formatter);
-		this.computeSignalFromTarget();
+		this.signalSeries = new ColumnarTimeSeries(1);
+		this.resetSignal();
 	}
 	
 	public SignalSeries(double[] coeffs, TargetSeries anytarget) throws Exception {		
 		
 		this.coeffs = coeffs;		
 		this.target = anytarget;
-		this.computeSignalFromTarget();
+		this.signalSeries = new ColumnarTimeSeries(1);
+		this.resetSignal();
 	}
 	
 	/**
      * Stores the latest filter coefficients
      * coefficients. Recomputes a new signal series based on (new)
-     * coefficients. 
+     * coefficients, or only starts a new lazy signal if the 
+     * signal is not eager. 
      * 
      * If a preFilter exists for this signal, the coefficients will be 
      * convolved with the prefilter to produce the aggregate filter
@@ -172,8 +194,113 @@ public class SignalSeries implements MdfaSeries {
 		}
 		
 		if(target != null) {
+			this.resetSignal();
+		}
+	}
+	
+	/**
+	 * Chooses between recomputing the whole signal series each
+	 * time the coefficients change (eager) and the default
+	 * {@link LazySignal}, which only computes the values that are read
+	 * 
+	 * @param eager
+	 *   True to recompute the whole signal series eagerly
+	 * @return
+	 *   This signal series
+	 * @throws Exception
+	 *   if the signal can not be recomputed
+	 */
+	public SignalSeries setEagerSignal(boolean eager) throws Exception {
+		
+		this.eagerSignal = eager;
+		this.lazySignal = null;
+		this.signalSeries = new ColumnarTimeSeries(1);
+		if(coeffs != null && target != null) {
+			this.resetSignal();
+		}
+		return this;
+	}
+	
+	public boolean isEagerSignal() {
+		return eagerSignal;
+	}
+	
+	/**
+	 * Keeps the latest signal value of each new observation in a 
+	 * {@link TieredSignalHistory}: the latest window values at full 
+	 * resolution and the older ones downsampled, within maxBytes
+	 * 
+	 * @param window
+	 *   Number of latest signal values kept at full resolution
+	 * @param maxBytes
+	 *   The memory budget of the history
+	 * @return
+	 *   This signal series
+	 */
+	public SignalSeries setTieredHistory(int window, long maxBytes) {
+		
+		this.history = new TieredSignalHistory(1, window, maxBytes);
+		return this;
+	}
+	
+	/**
+	 * @return The history of the emitted signal values, 
+	 * null if {@link #setTieredHistory(int, long)} was not called
+	 */
+	public TieredSignalHistory getTieredHistory() {
+		return history;
+	}
+	
+	/**
+	 * Sets the engine that filters the target series, for instance
+	 * one with its own fork-join pool or FFT threshold. The engine is 
+	 * not part of the snapshot, a restored series uses the default engine
+	 * 
+	 * @param engine
+	 *   The engine, null for the default {@link FIRFilterEngine#getDefault()}
+	 * @return
+	 *   This signal series
+	 */
+	public SignalSeries setFilterEngine(FIRFilterEngine engine) {
+		
+		this.filterEngine = engine;
+		if(lazySignal != null) {
+			lazySignal.setFilterEngine(engine);
+		}
+		return this;
+	}
+	
+	/**
+	 * @return The engine that filters the target series
+	 */
+	public FIRFilterEngine getFilterEngine() {
+		return (filterEngine == null) ? FIRFilterEngine.getDefault() : filterEngine;
+	}
+	
+	/**
+	 * @return The lazy signal, null if the signal is
+	 * eager or there are no coefficients yet
+	 */
+	public LazySignal getLazySignal() {
+		return lazySignal;
+	}
+	
+	/**
+	 * Starts the signal of new coefficients, recomputed from the 
+	 * target if the signal is eager and otherwise a new version of the
+	 * lazy signal
+	 */
+	private void resetSignal() throws Exception {
+		
+		if(eagerSignal) {
 			this.computeSignalFromTarget();
 		}
+		else if(lazySignal == null) {
+			lazySignal = new LazySignal(target, coeffs).setFilterEngine(filterEngine);
+		}
+		else {
+			lazySignal.setFilters(coeffs);
+		}
 	}
 	
 	
@@ -185,6 +312,9 @@ public class SignalSeries implements MdfaSeries {
      * For the first L values of signal series, the values are computed
      * using the truncated coefficients, so the signal series and underlying
      * target series match in datetime values
+     * 
+     * For a lazy signal, all the values of the signal are 
+     * computed and memoized for the current coefficients
      *            
      * @throws Exception 
      * 			Both the coefficients and the 
@@ -200,17 +330,19 @@ public class SignalSeries implements MdfaSeries {
 			throw new Exception("No target series has been defined yet");
 		}
 		
-		signalSeries = new TimeSeries<Double>();
+		if(!eagerSignal) {
+			
+			resetSignal();
+			lazySignal.computeAll();
+			return;
+		}
 		
-		int N = target.size();		
+		signalSeries = new ColumnarTimeSeries(1, null, target.size()).setMaxHistory(target.getMaxHistory());
+		
+		int N = target.size();
+		double[] signal = getFilterEngine().filter(target.getTargetValues(), N, coeffs);
 		for(int i = 0; i < N; i++) {
-			
-			int filter_length = Math.min(i+1, coeffs.length);
-			double sum = 0;
-			for (int l = 0; l < filter_length; l++) {
-				sum = sum + coeffs[l]*target.getTargetValue(i - l);
-			}
-			signalSeries.add(new TimeSeriesEntry<Double>(target.getTargetDate(i), sum));	
+			signalSeries.add(target.getTargetTime(i), target.getTargetDate(i), signal[i]);
 		}		
 	}
 	
@@ -228,10 +360,22 @@ public class SignalSeries implements MdfaSeries {
      */
 	@Override
 	public void addValue(String date, double val) {
+		addValue(TimeSeriesEntry.NO_TIME, date, val);
+	}
+	
+	@Override
+	public void addValue(long time, String date, double val) {
 		
-		target.addValue(date, val);
+		target.addValue(time, date, val);
 		
-		if(coeffs != null) {
+		if(lazySignal != null) {
+			
+			lazySignal.update();
+			if(history != null) {
+				history.add(time, date, lazySignal.getLatestValue(0));
+			}
+		}
+		else if(coeffs != null) {
 			
 			int N = target.size();
 			int filter_length = Math.min(N, coeffs.length);
@@ -239,7 +383,10 @@ public class SignalSeries implements MdfaSeries {
 			for (int l = 0; l < filter_length; l++) {
 				sum = sum + coeffs[l]*target.getTargetValue(N - l - 1);
 			}
-			signalSeries.add(new TimeSeriesEntry<Double>(target.getTargetDate(N - 1), sum));	
+			signalSeries.add(time, date, sum);
+			if(history != null) {
+				history.add(time, date, sum);
+			}
 		}
 	}
 
@@ -248,9 +395,19 @@ public class SignalSeries implements MdfaSeries {
 		return target.getLatest();
 	}
 
+	/**
+	 * Returns a copy of the signal series, made on each call. With a lazy 
+	 * signal (the default) the whole signal is first computed for the 
+	 * current coefficients, so single values are better read with 
+	 * {@link #getSignalValue(int)} and {@link #getSignalDate(int)}
+	 */
 	@Override
 	public TimeSeries<Double> getTimeSeries() {
-		return signalSeries;
+		
+		if(lazySignal != null) {
+			return lazySignal.toTimeSeries(0, 0, lazySignal.size());
+		}
+		return signalSeries.toTimeSeries(0);
 	}
 
 	@Override
@@ -258,11 +415,15 @@ public class SignalSeries implements MdfaSeries {
 		
 		TimeSeries<Double> series = new TimeSeries<Double>();
 		
-		int mySize = Math.min(signalSeries.size(), n);
-		int start = Math.max(signalSeries.size() - mySize,0);
+		int mySize = Math.min(signalSize(), n);
+		int start = Math.max(signalSize() - mySize,0);
+		
+		if(lazySignal != null) {
+			return lazySignal.toTimeSeries(0, start, signalSize());
+		}
 		
 		for(int i = start; i < signalSeries.size(); i++) {
-			series.add(signalSeries.get(i));
+			series.add(getSignalEntry(i));
 		}		
 		return series;
 	}
@@ -284,7 +445,7 @@ public class SignalSeries implements MdfaSeries {
      *          int the current size of the signal series
      */
 	public int signalSize() {
-		return signalSeries.size();
+		return (lazySignal != null) ? lazySignal.size() : signalSeries.size();
 	}
 	
 	/**
@@ -296,10 +457,10 @@ public class SignalSeries implements MdfaSeries {
      *          double value at index i
      */
 	public double getSignalValue(int i) {
-		if(signalSeries == null || signalSeries.isEmpty()) {
+		if(signalSeries == null || signalSize() == 0) {
 			return 0;
 		}
-		return signalSeries.get(i).getValue();
+		return (lazySignal != null) ? lazySignal.getValue(i, 0) : signalSeries.getValue(i);
 	}
 	
 
@@ -336,10 +497,10 @@ public class SignalSeries implements MdfaSeries {
 	 * @return TimeSeriesEntry<Double>
 	 */
 	public TimeSeriesEntry<Double> getLatestSignalObservation() {
-		if(signalSeries == null || signalSeries.isEmpty()) {
+		if(signalSeries == null || signalSize() == 0) {
 			return new TimeSeriesEntry<Double>("", 0.0);
 		}
-		return signalSeries.get(signalSeries.size()-1);
+		return getSignalEntry(signalSize()-1);
 	}
 	
 	/**
@@ -350,10 +511,23 @@ public class SignalSeries implements MdfaSeries {
 	 * @return double
 	 */
 	public double getLatestSignalValue() {
-		if(signalSeries == null || signalSeries.isEmpty()) {
+		if(signalSeries == null || signalSize() == 0) {
 			return 0.0;
 		}
-		return signalSeries.get(signalSeries.size()-1).getValue();
+		return getSignalValue(signalSize()-1);
+	}
+	
+	/**
+	 * 
+	 * Returns the signal observation at index i
+	 * 
+	 * @param i index at i
+	 * @return TimeSeriesEntry<Double>
+	 */
+	public TimeSeriesEntry<Double> getSignalEntry(int i) {
+		
+		return new TimeSeriesEntry<Double>(getSignalTime(i), getSignalDate(i), 
+				(lazySignal != null) ? lazySignal.getValue(i, 0) : signalSeries.getValue(i));
 	}
 
 	/**
@@ -365,7 +539,14 @@ public class SignalSeries implements MdfaSeries {
      *          String the datetime at index i
      */
 	public String getSignalDate(int i) {
-		return signalSeries.get(i).getDateTime();
+		return (lazySignal != null) ? target.getTargetDate(i) : signalSeries.getDateTime(i);
+	}
+	
+	/**
+	 * The epoch time at index i, {@link TimeSeriesEntry#NO_TIME} if none
+	 */
+	long getSignalTime(int i) {
+		return (lazySignal != null) ? target.getTargetTime(i) : signalSeries.getTime(i);
 	}
 	
 	
@@ -379,6 +560,7 @@ public class SignalSeries implements MdfaSeries {
 	@Override
 	public void setDateFormat(String anyformat) {
 		formatter = DateTimeFormat.forPattern(anyformat);
+		datePattern = anyformat;
 	}
 
 
@@ -393,6 +575,11 @@ public class SignalSeries implements MdfaSeries {
 	}
 
 	public DateTime getSignalDateTime(int i) {
+		
+		long time = getSignalTime(i);
+		if(time != TimeSeriesEntry.NO_TIME) {
+			return new DateTime(time, formatter.getZone());
+		}
 		return formatter.parseDateTime(getSignalDate(i));
 	}
 	
@@ -400,7 +587,7 @@ public class SignalSeries implements MdfaSeries {
 	
     public static void plotSignal(SignalSeries signal) throws Exception {
 		
-      if(signal.signalSeries.size() > 10) {	
+      if(signal.signalSize() > 10) {	
 		final String title = "EURUSD frac diff";
         final TimeSeriesPlot eurusd = new TimeSeriesPlot(title, signal);
         eurusd.pack();
@@ -415,7 +602,7 @@ public class SignalSeries implements MdfaSeries {
     
     public void plotSignal() throws Exception {
     
-     if(this.signalSeries.size() > 10) {	
+     if(this.signalSize() > 10) {	
     
     	final String title = "EURUSD frac diff";
         final TimeSeriesPlot eurusd = new TimeSeriesPlot(title, this);
@@ -432,9 +619,9 @@ public class SignalSeries implements MdfaSeries {
     public String toString() {
     	
     	String tostring = "";
-		for(int i = 0; i < signalSeries.size(); i++) {
+		for(int i = 0; i < signalSize(); i++) {
 			
-			tostring += signalSeries.get(i).getDateTime() + " " + signalSeries.get(i).getValue() + " " + target.getTargetDate(i) + " " + target.getTargetValue(i) + "\n";
+			tostring += getSignalDate(i) + " " + getSignalValue(i) + " " + target.getTargetDate(i) + " " + target.getTargetValue(i) + "\n";
 		}
 		return tostring;
     }
@@ -516,10 +703,18 @@ public class SignalSeries implements MdfaSeries {
 	public void chopFirstObservations(int n) {
 		target.chopFirstObservations(n);
 		
-		int chopped = Math.min(n, signalSeries.size());
-		for(int i = 0; i < chopped; i++) {
-			signalSeries.remove(0);
-		}		
+		signalSeries.removeFirst(n);
+	}
+	
+	/**
+	 * Bounds both the target and the signal to 
+	 * their latest n observations 
+	 */
+	@Override
+	public void setMaxHistory(int n) {
+		
+		target.setMaxHistory(n);
+		signalSeries.setMaxHistory(n);
 	}
 
 	/**
@@ -546,6 +741,81 @@ public class SignalSeries implements MdfaSeries {
 	}
 	
 	
+	/**
+	 * The number of latest observations from which the target
+	 * and the signal of a new observation are computed
+	 */
+	int getSnapshotWindow() {
+		return Math.max(target.getSnapshotWindow(), (coeffs == null) ? 0 : coeffs.length);
+	}
+	
+	/**
+	 * Writes the target, the coefficients and the signal values 
+	 * of the latest n observations to a {@link SeriesSnapshot}
+	 */
+	void writeSnapshot(DataOutputStream out, int n) throws IOException {
+		
+		target.writeSnapshot(out, n);
+		SeriesSnapshot.writeString(out, name);
+		SeriesSnapshot.writeString(out, datePattern);
+		out.writeBoolean(eagerSignal);
+		SeriesSnapshot.writeArray(out, preFilterCoeffs);
+		SeriesSnapshot.writeArray(out, coeffs);
+		
+		if(coeffs != null) {
+			
+			int size = signalSize();
+			n = Math.min(Math.min(n, size), target.size());
+			out.writeInt(n);
+			for(int i = size - n; i < size; i++) {
+				out.writeDouble(getSignalValue(i));
+			}
+		}
+	}
+	
+	/**
+	 * Reads a signal series written by {@link #writeSnapshot(DataOutputStream, int)}.
+	 * The coefficients are set as they were applied, already convolved with
+	 * the prefilter, and the saved signal values are restored without 
+	 * filtering the target again
+	 */
+	static SignalSeries readSnapshot(DataInputStream in) throws IOException {
+		
+		SignalSeries signal = new SignalSeries(TargetSeries.readSnapshot(in));
+		signal.name = SeriesSnapshot.readString(in);
+		String pattern = SeriesSnapshot.readString(in);
+		if(pattern != null) {
+			signal.setDateFormat(pattern);
+		}
+		signal.eagerSignal = in.readBoolean();
+		signal.preFilterCoeffs = SeriesSnapshot.readArray(in);
+		signal.coeffs = SeriesSnapshot.readArray(in);
+		
+		TargetSeries target = signal.target;
+		signal.signalSeries.setMaxHistory(target.getMaxHistory());
+		if(signal.coeffs != null) {
+			
+			int n = in.readInt();
+			double[] values = new double[n];
+			for(int i = 0; i < n; i++) {
+				values[i] = in.readDouble();
+			}
+			
+			int start = target.size() - n;
+			if(signal.eagerSignal) {
+				for(int i = 0; i < n; i++) {
+					signal.signalSeries.add(target.getTargetTime(start + i), target.getTargetDate(start + i), values[i]);
+				}
+			}
+			else {
+				signal.lazySignal = new LazySignal(target, signal.coeffs);
+				signal.lazySignal.restore(new double[][] {values}, n);
+			}
+		}
+		return signal;
+	}
+	
+	
 
 	
 
@@ -1,4 +1,8 @@
 package ch.imetrica.mdfa.series;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import org.jfree.ui.ApplicationFrame;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
@@ -15,15 +19,17 @@ public class TargetSeries implements MdfaSeries {
 	private static final long serialVersionUID = 1L;
 	private final SeriesType seriesType = SeriesType.TARGET;
 	private DateTimeFormatter formatter;// = DateTimeFormat.forPattern("dd/MM/yyyy HH:mm:ss");
-	private TimeSeries<double[]> timeSeries;
+	private String datePattern;
+	private ColumnarTimeSeries timeSeries;
 	private Transform seriesTransform;
     private String name;
+    private int modificationCount;
 	
     
     /**
      * 
-     * A TargetSeries with an empty TimeSeries<double[]> and a 
-     * initiated fractional differencing weight set. Raw time series
+     * A TargetSeries with empty columns of transformed and raw values 
+     * and a initiated fractional differencing weight set. Raw time series
      * values are ready to be added
      * 
      * @param d A differencing operater d such that 0 <= d < =1.
@@ -37,7 +43,7 @@ public class TargetSeries implements MdfaSeries {
     public TargetSeries(double d, boolean log, String name) {
     	
     	seriesTransform = new Transform(d, log);
-    	timeSeries = new TimeSeries<double[]>();
+    	timeSeries = new ColumnarTimeSeries(2);
     	this.name = name;
     }
     
@@ -46,9 +52,9 @@ public class TargetSeries implements MdfaSeries {
      * TargetSeries is a type of time series which has two components:
      * The original time series, and the transformed time series.
      * TimeSeries data is raw series, with no transformations
-     * applied. After transformation, the raw series is kept as the 
-     * second index of the double[2] value. The first (zeroth) index
-     * contains the transformed data
+     * applied. After transformation, the raw series is kept in the 
+     * second column of a {@link ColumnarTimeSeries}. The first (zeroth)
+     * column contains the transformed data
      * 
      * @param anyseries
      *            A raw univariate TimeSeries 
@@ -65,15 +71,19 @@ public class TargetSeries implements MdfaSeries {
 	public TargetSeries(TimeSeries<Double> anyseries, double d, boolean log) {
 		
 		seriesTransform = new Transform(d, log);
-		timeSeries = seriesTransform.applyTransform(anyseries);
+		timeSeries = new ColumnarTimeSeries(2, null, anyseries.size());
+		for(TimeSeriesEntry<Double> entry : anyseries) {
+			timeSeries.add(entry.getTime(), entry.getDateTime(), 0, entry.getValue());
+		}
+		seriesTransform.adjustFractionalDifference(timeSeries, d);
 				
 	}
 
 
 	/**
-     * Adds a new TimeSeriesEntry observation to the timeSeries.
-     * The raw value is kept in the second index of the timeSeries.
-     * The transformation value is stored in the first index.
+     * Adds a new observation to the timeSeries.
+     * The raw value is kept in the second column of the timeSeries.
+     * The transformation value is stored in the first column.
      * 
      * @param val
      *            A raw time series value
@@ -85,16 +95,20 @@ public class TargetSeries implements MdfaSeries {
 	@Override
 	public void addValue(String date, double val) {
 		
-		seriesTransform.addValue(timeSeries, val, date);
+		seriesTransform.addValue(timeSeries, val, TimeSeriesEntry.NO_TIME, date);
+	}
+
+	@Override
+	public void addValue(long time, String date, double val) {
+		
+		seriesTransform.addValue(timeSeries, val, time, date);
 	}
 
 
 
 	@Override
 	public TimeSeriesEntry<Double> getLatest() {
-		
-		return new TimeSeriesEntry<Double>(timeSeries.get(timeSeries.size() - 1).getDateTime(),
-				                   timeSeries.get(timeSeries.size() - 1).getValue()[0]);
+		return getTargetEntry(timeSeries.size() - 1);
 	}
 
 
@@ -102,14 +116,7 @@ public class TargetSeries implements MdfaSeries {
 	@Override
 	public TimeSeries<Double> getTimeSeries() {
 		
-		TimeSeries<Double> series = new TimeSeries<Double>();
-		
-		for(int i = 0; i < timeSeries.size(); i++) {
-			series.add(new TimeSeriesEntry<Double>(timeSeries.get(i).getDateTime(),
-				                   timeSeries.get(i).getValue()[0]));
-		}
-		
-		return series;
+		return timeSeries.toTimeSeries(0);
 	}
 
 
@@ -121,8 +128,7 @@ public class TargetSeries implements MdfaSeries {
 		int start = Math.max(timeSeries.size() - mySize,0);
 		
 		for(int i = start; i < timeSeries.size(); i++) {
-			series.add(new TimeSeriesEntry<Double>(timeSeries.get(i).getDateTime(),
-				                   timeSeries.get(i).getValue()[0]));
+			series.add(getTargetEntry(i));
 		}		
 		return series;
 	}
@@ -150,7 +156,27 @@ public class TargetSeries implements MdfaSeries {
      *          double value at index i
      */
 	public double getTargetValue(int i) {
-		return timeSeries.get(i).getValue()[0];
+		return timeSeries.getValue(i);
+	}
+
+	/**
+     * Returns all the target values in one array,
+     * for filtering the whole series at once
+     * @return
+     *          The target values at index 0, ..., size()-1
+     */
+	public double[] getTargetValues() {
+		return getTargetValues(0, timeSeries.size());
+	}
+
+	/**
+     * Returns the target values from index from (inclusive)
+     * to index to (exclusive) in one array
+     * @return
+     *          The target values at index from, ..., to-1
+     */
+	public double[] getTargetValues(int from, int to) {
+		return timeSeries.copyColumn(0, from, to);
 	}
 
 	/**
@@ -160,7 +186,7 @@ public class TargetSeries implements MdfaSeries {
 	 * @return
 	 */
 	public double getOriginalValue(int i) {
-		return timeSeries.get(i).getValue()[1];
+		return timeSeries.getValue(i, 1);
 	}
 
 	
@@ -171,7 +197,27 @@ public class TargetSeries implements MdfaSeries {
      *          String the datetime at index i
      */
 	public String getTargetDate(int i) {
-		return timeSeries.get(i).getDateTime();
+		return timeSeries.getDateTime(i);
+	}
+	
+	/**
+     * Returns the time at index i in epoch milliseconds
+     * @return 
+     *          The epoch time at index i, or TimeSeriesEntry.NO_TIME
+     *          if the value was added without one
+     */
+	public long getTargetTime(int i) {
+		return timeSeries.getTime(i);
+	}
+	
+	/**
+     * Returns the target value at index i 
+     * as an entry with its time stamp
+     * @return 
+     *          The target entry at index i
+     */
+	public TimeSeriesEntry<Double> getTargetEntry(int i) {
+		return new TimeSeriesEntry<Double>(timeSeries.getTime(i), timeSeries.getDateTime(i), timeSeries.getValue(i));
 	}
 	
 	/**
@@ -184,9 +230,9 @@ public class TargetSeries implements MdfaSeries {
 	public String toString() {
 		
 		String tostring = "";
-		for(TimeSeriesEntry<double[]> entry : timeSeries) {
+		for(int i = 0; i < timeSeries.size(); i++) {
 			
-			tostring += entry.getDateTime() + ", " + entry.getValue()[0] + ", " + entry.getValue()[1] + "\n";
+			tostring += timeSeries.getDateTime(i) + ", " + timeSeries.getValue(i, 0) + ", " + timeSeries.getValue(i, 1) + "\n";
 		}
 		return tostring;
 	}
@@ -200,7 +246,36 @@ public class TargetSeries implements MdfaSeries {
 	 */
 	public void adjustFractionalDifferenceData(double d) {
 		
-		seriesTransform.adjustFractionalDifference(this.timeSeries, d);		
+		seriesTransform.adjustFractionalDifference(this.timeSeries, d);
+		modificationCount++;
+	}
+	
+	/**
+	 * Truncates the fractional difference weights to at most 
+	 * n weights and recomputes the transformed data. Each new 
+	 * value then costs at most n multiplications, see 
+	 * {@link Transform#getTruncationErrorBound()} for the error made
+	 * 
+	 * @param n Maximum number of weights, 0 for no maximum
+	 */
+	public void setMaxWeightLength(int n) {
+		
+		seriesTransform.setMaxWeightLength(n);
+		seriesTransform.adjustFractionalDifference(this.timeSeries, seriesTransform.getFractionalDifference());
+		modificationCount++;
+	}
+	
+	/**
+	 * The number of times the transformed values already in the 
+	 * series were recomputed. Adding, chopping or evicting 
+	 * observations does not change it
+	 */
+	int getModificationCount() {
+		return modificationCount;
+	}
+	
+	public Transform getTransform() {
+		return seriesTransform;
 	}
 	
 	
@@ -235,6 +310,14 @@ public class TargetSeries implements MdfaSeries {
 	@Override
 	public void setDateFormat(String anyformat) {
 		formatter = DateTimeFormat.forPattern(anyformat);
+		datePattern = anyformat;
+	}
+	
+	/**
+	 * @return The pattern of the date format, null if none was set
+	 */
+	public String getDatePattern() {
+		return datePattern;
 	}
 
 	@Override
@@ -247,7 +330,12 @@ public class TargetSeries implements MdfaSeries {
 	}
 	
 	public DateTime getDateTime(int i) {
-		return formatter.parseDateTime(timeSeries.get(i).getDateTime());
+		
+		long time = timeSeries.getTime(i);
+		if(time != TimeSeriesEntry.NO_TIME) {
+			return new DateTime(time, formatter.getZone());
+		}
+		return formatter.parseDateTime(timeSeries.getDateTime(i));
 	}
 
 
@@ -266,10 +354,21 @@ public class TargetSeries implements MdfaSeries {
 	@Override
 	public void chopFirstObservations(int n) {
 		
-		int chopped = Math.min(n, timeSeries.size());
-		for(int i = 0; i < chopped; i++) {
-			timeSeries.remove(0);
-		}	
+		timeSeries.removeFirst(n);
+	}
+
+	@Override
+	public void setMaxHistory(int n) {
+		timeSeries.setMaxHistory(n);
+	}
+	
+	/**
+	 * Returns the maximum number of observations kept
+	 * @return 
+	 *          The maximum history, 0 if unbounded
+	 */
+	public int getMaxHistory() {
+		return timeSeries.getMaxHistory();
 	}
 
 
@@ -278,6 +377,72 @@ public class TargetSeries implements MdfaSeries {
 		return false;
 	}
 
+	
+	/**
+	 * The number of latest observations from which the transform
+	 * of a new observation is computed
+	 */
+	int getSnapshotWindow() {
+		return seriesTransform.getWeightLength() + 1;
+	}
+	
+	/**
+	 * Writes the transform and the latest n observations
+	 * of this target to a {@link SeriesSnapshot}
+	 */
+	void writeSnapshot(DataOutputStream out, int n) throws IOException {
+		
+		SeriesSnapshot.writeString(out, name);
+		SeriesSnapshot.writeString(out, datePattern);
+		out.writeDouble(seriesTransform.getFractionalDifference());
+		out.writeBoolean(seriesTransform.isLogTransform());
+		out.writeInt(seriesTransform.getMaxWeightLength());
+		out.writeInt(seriesTransform.getFFTThreshold());
+		out.writeInt(getMaxHistory());
+		
+		n = Math.min(n, timeSeries.size());
+		out.writeInt(n);
+		for(int i = timeSeries.size() - n; i < timeSeries.size(); i++) {
+			
+			out.writeLong(timeSeries.getTime(i));
+			out.writeUTF(timeSeries.getDateTime(i));
+			out.writeDouble(timeSeries.getValue(i, 0));
+			out.writeDouble(timeSeries.getValue(i, 1));
+		}
+	}
+	
+	/**
+	 * Reads a target written by {@link #writeSnapshot(DataOutputStream, int)}. 
+	 * The transformed values are restored as they were saved, the transform 
+	 * of the next observation is computed from the restored raw values
+	 */
+	static TargetSeries readSnapshot(DataInputStream in) throws IOException {
+		
+		String name = SeriesSnapshot.readString(in);
+		String pattern = SeriesSnapshot.readString(in);
+		double d = in.readDouble();
+		boolean log = in.readBoolean();
+		
+		TargetSeries target = new TargetSeries(d, log, name);
+		if(pattern != null) {
+			target.setDateFormat(pattern);
+		}
+		target.seriesTransform.setMaxWeightLength(in.readInt());
+		target.seriesTransform.setFFTThreshold(in.readInt());
+		int maxHistory = in.readInt();
+		
+		int n = in.readInt();
+		target.timeSeries = new ColumnarTimeSeries(2, null, n);
+		for(int i = 0; i < n; i++) {
+			
+			long time = in.readLong();
+			String date = in.readUTF();
+			target.timeSeries.add(time, date, in.readDouble(), in.readDouble());
+		}
+		target.setMaxHistory(maxHistory);
+		return target;
+	}
+
 
 
 	
@@ -0,0 +1,444 @@
+package ch.imetrica.mdfa.series;
+
+import java.io.Serializable;
+
+/**
+ *
+ * A bounded-memory history of K signals. The latest W observations are
+ * kept at full resolution, older observations are downsampled into
+ * buckets that keep the open, high, low and close of each signal over
+ * the observations they cover, with the times of the first and last of
+ * them.
+ *
+ * All the memory is allocated when the history is created, from a
+ * budget in bytes: what is left of the budget after the W full resolution
+ * observations is the number of buckets. Each bucket starts with one
+ * observation and is filled up to the current bucket width. Once all the
+ * buckets are full, neighbouring buckets are merged in pairs and the
+ * width is doubled, so the buckets always cover the whole history, with a
+ * resolution that halves each time the history has doubled. Adding an
+ * observation does not allocate.
+ *
+ * The history is read as a sequence of points, the buckets from the
+ * oldest one followed by the full resolution observations, with the
+ * same accessors as the signal series: {@link #size()},
+ * {@link #getSignalValue(int)} (the close of a bucket) and
+ * {@link #getSignalDate(int)} (the date of its last observation).
+ * {@link ch.imetrica.mdfa.plotutil.TimeSeriesPlot} plots it that way.
+ */
+public class TieredSignalHistory implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Estimated size of a reference */
+	private static final int REFERENCE_BYTES = 8;
+
+	/** Estimated size of a date string that is only held by this history */
+	public static final int DATE_BYTES = 64;
+
+	private final int ncolumns;
+	private final int window;
+
+	/* the full resolution ring */
+	private final long[] times;
+	private final String[] dates;
+	private final double[][] values;
+	private int head;
+	private int count;
+
+	/* the buckets, oldest first */
+	private final long[] startTimes;
+	private final long[] endTimes;
+	private final String[] startDates;
+	private final String[] endDates;
+	private final int[] counts;
+	private final double[][] open;
+	private final double[][] high;
+	private final double[][] low;
+	private final double[][] close;
+	private int nbuckets;
+	private int width = 1;
+
+	private long total;
+
+
+	/**
+	 * Creates an empty history within the given memory budget
+	 *
+	 * @param ncolumns
+	 *    Number of signals K
+	 * @param window
+	 *    Number W of latest observations kept at full resolution
+	 * @param maxBytes
+	 *    The memory budget in bytes, which must leave room
+	 *    for at least two buckets, see {@link #getObservationBytes(int)}
+	 *    and {@link #getBucketBytes(int)}
+	 */
+	public TieredSignalHistory(int ncolumns, int window, long maxBytes) {
+
+		if(ncolumns < 1) {
+			throw new IllegalArgumentException("At least one column is needed");
+		}
+		if(window < 1) {
+			throw new IllegalArgumentException("The full resolution window must be positive: " + window);
+		}
+
+		long capacity = (maxBytes - (long)window*getObservationBytes(ncolumns))/getBucketBytes(ncolumns);
+		capacity -= capacity % 2;
+		if(capacity < 2) {
+			throw new IllegalArgumentException("A budget of " + maxBytes + " bytes does not hold "
+					+ window + " observations and two buckets of " + ncolumns + " signals");
+		}
+		int nb = (int)Math.min(capacity, Integer.MAX_VALUE - 1);
+
+		this.ncolumns = ncolumns;
+		this.window = window;
+
+		times = new long[window];
+		dates = new String[window];
+		values = new double[ncolumns][window];
+
+		startTimes = new long[nb];
+		endTimes = new long[nb];
+		startDates = new String[nb];
+		endDates = new String[nb];
+		counts = new int[nb];
+		open = new double[ncolumns][nb];
+		high = new double[ncolumns][nb];
+		low = new double[ncolumns][nb];
+		close = new double[ncolumns][nb];
+	}
+
+	/**
+	 * Estimated memory of one full resolution observation of ncolumns signals
+	 */
+	public static long getObservationBytes(int ncolumns) {
+		return 8 + REFERENCE_BYTES + DATE_BYTES + 8L*ncolumns;
+	}
+
+	/**
+	 * Estimated memory of one bucket of ncolumns signals
+	 */
+	public static long getBucketBytes(int ncolumns) {
+		return 8*2 + 4 + 2*(REFERENCE_BYTES + DATE_BYTES) + 4*8L*ncolumns;
+	}
+
+	/**
+	 * @return The estimated memory of the history in bytes, which
+	 *         does not change after the history is created
+	 */
+	public long getMemoryBytes() {
+		return window*getObservationBytes(ncolumns) + counts.length*getBucketBytes(ncolumns);
+	}
+
+
+	/**
+	 * Adds the latest observation of a univariate signal
+	 */
+	public void add(long time, String date, double value) {
+
+		if(ncolumns != 1) {
+			throw new IllegalArgumentException("The history has " + ncolumns + " signals");
+		}
+		if(count == window) {
+			evict();
+		}
+		int slot = (head + count) % window;
+		times[slot] = time;
+		dates[slot] = date;
+		values[0][slot] = value;
+		count++;
+		total++;
+	}
+
+	/**
+	 * Adds the latest observation of the K signals
+	 *
+	 * @param time
+	 *    Epoch milliseconds, or TimeSeriesEntry.NO_TIME
+	 * @param date
+	 *    The date of the observation
+	 * @param value
+	 *    Array with at least K values
+	 */
+	public void add(long time, String date, double[] value) {
+
+		if(count == window) {
+			evict();
+		}
+		int slot = (head + count) % window;
+		times[slot] = time;
+		dates[slot] = date;
+		for(int k = 0; k < ncolumns; k++) {
+			values[k][slot] = value[k];
+		}
+		count++;
+		total++;
+	}
+
+	/**
+	 * Removes all observations
+	 */
+	public void clear() {
+
+		for(int i = 0; i < window; i++) {
+			dates[i] = null;
+		}
+		for(int j = 0; j < nbuckets; j++) {
+			startDates[j] = null;
+			endDates[j] = null;
+		}
+		head = 0;
+		count = 0;
+		nbuckets = 0;
+		width = 1;
+		total = 0;
+	}
+
+
+	/**
+	 * @return The number of points, buckets and full resolution observations
+	 */
+	public int size() {
+		return nbuckets + count;
+	}
+
+	public int getColumnCount() {
+		return ncolumns;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * @return The number of buckets the history can hold
+	 */
+	public int getBucketCapacity() {
+		return counts.length;
+	}
+
+	public int getBucketCount() {
+		return nbuckets;
+	}
+
+	/**
+	 * @return The number of observations a bucket covers
+	 *         before a new one is started
+	 */
+	public int getBucketWidth() {
+		return width;
+	}
+
+	public int getFullResolutionCount() {
+		return count;
+	}
+
+	/**
+	 * @return The number of observations added since the history was created or cleared
+	 */
+	public long getTotalObservations() {
+		return total;
+	}
+
+	/**
+	 * @return The number of observations covered by point i, 1 at full resolution
+	 */
+	public int getObservationCount(int i) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? counts[i] : 1;
+	}
+
+	/**
+	 * @return True if point i is a full resolution observation
+	 */
+	public boolean isFullResolution(int i) {
+
+		checkIndex(i);
+		return i >= nbuckets;
+	}
+
+	/**
+	 * @return The time of point i, the time of the last observation of a bucket
+	 */
+	public long getTime(int i) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? endTimes[i] : times[slot(i)];
+	}
+
+	/**
+	 * @return The time of the first observation covered by point i
+	 */
+	public long getStartTime(int i) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? startTimes[i] : times[slot(i)];
+	}
+
+	/**
+	 * @return The date of point i, the date of the last observation of a bucket
+	 */
+	public String getSignalDate(int i) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? endDates[i] : dates[slot(i)];
+	}
+
+	/**
+	 * @return The date of the first observation covered by point i
+	 */
+	public String getStartDate(int i) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? startDates[i] : dates[slot(i)];
+	}
+
+	/**
+	 * @return The value of signal k at point i, the close of a bucket
+	 */
+	public double getValue(int i, int k) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? close[k][i] : values[k][slot(i)];
+	}
+
+	public double getOpen(int i, int k) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? open[k][i] : values[k][slot(i)];
+	}
+
+	public double getHigh(int i, int k) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? high[k][i] : values[k][slot(i)];
+	}
+
+	public double getLow(int i, int k) {
+
+		checkIndex(i);
+		return (i < nbuckets) ? low[k][i] : values[k][slot(i)];
+	}
+
+	/**
+	 * @return A new array with the values of the K signals at point i
+	 */
+	public double[] getSignalValue(int i) {
+
+		double[] row = new double[ncolumns];
+		for(int k = 0; k < ncolumns; k++) {
+			row[k] = getValue(i, k);
+		}
+		return row;
+	}
+
+	/**
+	 * @return Point i as an entry with the values of the K signals
+	 */
+	public TimeSeriesEntry<double[]> getSignal(int i) {
+		return new TimeSeriesEntry<double[]>(getTime(i), getSignalDate(i), getSignalValue(i));
+	}
+
+	/**
+	 * The values of signal k at all the points
+	 *
+	 * @param k
+	 *    Index of the signal
+	 * @return
+	 *    A TimeSeries with the close of the buckets followed
+	 *    by the full resolution values
+	 */
+	public TimeSeries<Double> toTimeSeries(int k) {
+
+		TimeSeries<Double> series = new TimeSeries<Double>(size());
+		for(int i = 0; i < size(); i++) {
+			series.add(new TimeSeriesEntry<Double>(getTime(i), getSignalDate(i), getValue(i, k)));
+		}
+		return series;
+	}
+
+
+	/**
+	 * Moves the oldest full resolution observation into the buckets
+	 */
+	private void evict() {
+
+		if(nbuckets > 0 && counts[nbuckets - 1] < width) {
+
+			int j = nbuckets - 1;
+			endTimes[j] = times[head];
+			endDates[j] = dates[head];
+			counts[j]++;
+			for(int k = 0; k < ncolumns; k++) {
+
+				double v = values[k][head];
+				high[k][j] = Math.max(high[k][j], v);
+				low[k][j] = Math.min(low[k][j], v);
+				close[k][j] = v;
+			}
+		}
+		else {
+
+			if(nbuckets == counts.length) {
+				coarsen();
+			}
+			int j = nbuckets++;
+			startTimes[j] = endTimes[j] = times[head];
+			startDates[j] = endDates[j] = dates[head];
+			counts[j] = 1;
+			for(int k = 0; k < ncolumns; k++) {
+
+				double v = values[k][head];
+				open[k][j] = high[k][j] = low[k][j] = close[k][j] = v;
+			}
+		}
+
+		dates[head] = null;
+		head = (head + 1) % window;
+		count--;
+	}
+
+	/**
+	 * Merges the buckets in pairs and doubles the bucket width
+	 */
+	private void coarsen() {
+
+		int merged = nbuckets/2;
+		for(int j = 0; j < merged; j++) {
+
+			int a = 2*j;
+			int b = 2*j + 1;
+			startTimes[j] = startTimes[a];
+			startDates[j] = startDates[a];
+			endTimes[j] = endTimes[b];
+			endDates[j] = endDates[b];
+			counts[j] = counts[a] + counts[b];
+			for(int k = 0; k < ncolumns; k++) {
+
+				open[k][j] = open[k][a];
+				high[k][j] = Math.max(high[k][a], high[k][b]);
+				low[k][j] = Math.min(low[k][a], low[k][b]);
+				close[k][j] = close[k][b];
+			}
+		}
+		for(int j = merged; j < nbuckets; j++) {
+			startDates[j] = null;
+			endDates[j] = null;
+		}
+		nbuckets = merged;
+		width *= 2;
+	}
+
+	private int slot(int i) {
+		return (head + i - nbuckets) % window;
+	}
+
+	private void checkIndex(int i) {
+
+		if(i < 0 || i >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+		}
+	}
+}
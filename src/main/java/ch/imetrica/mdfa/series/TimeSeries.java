@@ -1,37 +1,63 @@
 package ch.imetrica.mdfa.series;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.RandomAccess;
 
 import lombok.val;
 
 /**
- * 
+ *
  * The underlying TimeSeries class for all the time series types.
- * 
+ *
+ * The entries are kept in a circular array, so removing the first
+ * observations with {@link #removeFirst(int)} (or remove(0)) does
+ * not shift the remaining ones and costs O(1) per removed observation.
+ * Index i always refers to the ith observation of the retained
+ * window, index 0 being the oldest one.
+ *
+ * With a maximum history set, the series is a bounded ring
+ * buffer: once it holds maxHistory observations, adding a new one
+ * overwrites the oldest one in place.
+ *
  * @author Christian D. Blakely (clisztian@gmail.com)
  *
  * @param <V>
  */
-public class TimeSeries<V> extends ArrayList<TimeSeriesEntry<V>> {
-	
-	private static final long serialVersionUID = 4071035106419033490L;
+public class TimeSeries<V> extends AbstractList<TimeSeriesEntry<V>> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = -7369158436195280927L;
+	private static final int DEFAULT_CAPACITY = 10;
 
     @SuppressWarnings("rawtypes")
     public static final TimeSeries EMPTY_SERIES = new TimeSeries<>(0);
-	
+
+    private Object[] elements;
+    private int head;
+    private int size;
+    private int maxHistory;
+
+
 	public TimeSeries() {
-		super();
+		this(DEFAULT_CAPACITY);
 	}
 
 	public TimeSeries(Collection<? extends TimeSeriesEntry<V>> c) {
-		super(c);
+
+		this(c.size());
+		addAll(c);
 	}
 
 	public TimeSeries(int initialCapacity) {
-		super(initialCapacity);
+
+		if(initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+		}
+		elements = new Object[initialCapacity];
 	}
-	
+
 	public void add(String timeStamp, V value) {
 		add(new TimeSeriesEntry<V>(timeStamp, value));
 	}
@@ -40,11 +66,233 @@ public class TimeSeries<V> extends ArrayList<TimeSeriesEntry<V>> {
     public static final <T> TimeSeries<T> empty() {
         return EMPTY_SERIES;
     }
-    
+
     public TimeSeriesEntry<V> last() {
-        return get(size() - 1);
+        return get(size - 1);
+    }
+
+
+    /**
+     * Bounds the series to the latest maxHistory observations.
+     * If the series is already longer, the oldest observations are
+     * removed. From then on, adding an observation to a full series
+     * evicts the oldest one in O(1)
+     *
+     * @param maxHistory
+     *     Maximum number of observations kept, 0 for no bound
+     * @return
+     *     This time series
+     */
+    public TimeSeries<V> setMaxHistory(int maxHistory) {
+
+    	if(maxHistory < 0) {
+    		throw new IllegalArgumentException("Maximum history must be non-negative: " + maxHistory);
+    	}
+    	this.maxHistory = maxHistory;
+    	if(maxHistory > 0) {
+
+    		if(size > maxHistory) {
+    			removeFirst(size - maxHistory);
+    		}
+    		if(elements.length > maxHistory) {
+    			resize(maxHistory);
+    		}
+    	}
+    	return this;
+    }
+
+    /**
+     * @return The maximum number of observations kept, 0 if unbounded
+     */
+    public int getMaxHistory() {
+    	return maxHistory;
+    }
+
+
+    /**
+     * Removes the first n observations of the series. The
+     * remaining observations are not moved
+     *
+     * @param n
+     *    Number of observations to remove, at most size()
+     */
+    public void removeFirst(int n) {
+
+    	n = Math.min(Math.max(n, 0), size);
+    	for(int i = 0; i < n; i++) {
+    		elements[head] = null;
+    		head = next(head);
+    	}
+    	size -= n;
+    	if(size == 0) {
+    		head = 0;
+    	}
+    	modCount++;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public TimeSeriesEntry<V> get(int index) {
+
+    	checkIndex(index);
+    	return (TimeSeriesEntry<V>) elements[physical(index)];
+    }
+
+    @Override
+    public TimeSeriesEntry<V> set(int index, TimeSeriesEntry<V> entry) {
+
+    	TimeSeriesEntry<V> previous = get(index);
+    	elements[physical(index)] = entry;
+    	return previous;
+    }
+
+    @Override
+    public int size() {
+    	return size;
+    }
+
+    @Override
+    public boolean add(TimeSeriesEntry<V> entry) {
+
+    	if(maxHistory > 0 && size == maxHistory) {
+
+    		elements[head] = null;
+    		head = next(head);
+    		size--;
+    	}
+    	ensureCapacity(size + 1);
+    	elements[physical(size)] = entry;
+    	size++;
+    	modCount++;
+    	return true;
+    }
+
+    /**
+     * Inserts an observation at the given index. When the history is
+     * bounded and full, the oldest observation makes room for it
+     *
+     * @throws IllegalStateException
+     *    If the history is bounded and full and the observation
+     *    would be inserted before the oldest one, which it would evict
+     */
+    @Override
+    public void add(int index, TimeSeriesEntry<V> entry) {
+
+    	if(index < 0 || index > size) {
+    		throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    	}
+    	if(index == size) {
+    		add(entry);
+    		return;
+    	}
+    	if(maxHistory > 0 && size == maxHistory) {
+
+    		if(index == 0) {
+    			throw new IllegalStateException("The history is full (" + maxHistory
+    					+ ") and the observation would be evicted on insert");
+    		}
+    		removeFirst(1);
+    		index--;
+    	}
+    	ensureCapacity(size + 1);
+    	for(int i = size; i > index; i--) {
+    		elements[physical(i)] = elements[physical(i - 1)];
+    	}
+    	elements[physical(index)] = entry;
+    	size++;
+    	modCount++;
     }
 
+    @Override
+    public TimeSeriesEntry<V> remove(int index) {
+
+    	TimeSeriesEntry<V> removed = get(index);
+    	if(index == 0) {
+    		removeFirst(1);
+    		return removed;
+    	}
+    	for(int i = index; i < size - 1; i++) {
+    		elements[physical(i)] = elements[physical(i + 1)];
+    	}
+    	elements[physical(size - 1)] = null;
+    	size--;
+    	modCount++;
+    	return removed;
+    }
+
+    @Override
+    public void clear() {
+
+    	Arrays.fill(elements, null);
+    	head = 0;
+    	size = 0;
+    	modCount++;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+
+    	if(fromIndex == 0) {
+    		removeFirst(toIndex);
+    		return;
+    	}
+    	int n = toIndex - fromIndex;
+    	for(int i = fromIndex; i < size - n; i++) {
+    		elements[physical(i)] = elements[physical(i + n)];
+    	}
+    	for(int i = size - n; i < size; i++) {
+    		elements[physical(i)] = null;
+    	}
+    	size -= n;
+    	modCount++;
+    }
+
+
+    /**
+     * Grows the circular array. Resizing unrolls it so
+     * that the oldest observation is at position 0
+     */
+    private void ensureCapacity(int minCapacity) {
+
+    	if(minCapacity <= elements.length) {
+    		return;
+    	}
+    	int capacity = Math.max(minCapacity, elements.length + (elements.length >> 1) + 1);
+    	if(maxHistory > 0) {
+    		capacity = Math.max(minCapacity, Math.min(capacity, maxHistory));
+    	}
+    	resize(capacity);
+    }
+
+    private void resize(int capacity) {
+
+    	Object[] grown = new Object[capacity];
+    	int first = Math.min(size, elements.length - head);
+    	System.arraycopy(elements, head, grown, 0, first);
+    	System.arraycopy(elements, 0, grown, first, size - first);
+    	elements = grown;
+    	head = 0;
+    }
+
+    private int physical(int index) {
+
+    	int p = head + index;
+    	return (p >= elements.length) ? p - elements.length : p;
+    }
+
+    private int next(int p) {
+    	return (p + 1 == elements.length) ? 0 : p + 1;
+    }
+
+    private void checkIndex(int index) {
+
+    	if(index < 0 || index >= size) {
+    		throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    	}
+    }
+
+
     @Override
     public String toString() {
         val it = iterator();
@@ -62,4 +310,4 @@ public class TimeSeries<V> extends ArrayList<TimeSeriesEntry<V>> {
         }
     }
 
-}
\ No newline at end of file
+}
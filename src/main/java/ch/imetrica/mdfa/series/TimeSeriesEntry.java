@@ -1,6 +1,7 @@
 package ch.imetrica.mdfa.series;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
@@ -9,22 +10,92 @@ import lombok.ToString;
  * a string as the timeStamp which is typically in the form
  * of a standard DataTimeFormatter, for example
  * "yyyy-MM-dd HH:mm:ss"
- * "dd-MM-yyyy" 
- * 
+ * "dd-MM-yyyy"
+ *
+ * An entry can also carry its time stamp in epoch milliseconds,
+ * parsed once when the observation enters the system (see
+ * {@link ch.imetrica.mdfa.datafeeds.CsvFeed#setDateFormat(String)}).
+ * Entries with an epoch time are aligned with primitive comparisons
+ * in {@link #isSameTime(TimeSeriesEntry)}, the String time stamp is
+ * then only used for output.
+ *
  * @author Christian D. Blakely (clisztian@gmail.com)
  *
  * @param <V>
  */
 
 @Data
-@ToString(includeFieldNames=false)
+@ToString(includeFieldNames=false, exclude="time")
+@EqualsAndHashCode(exclude="time")
 public class TimeSeriesEntry<V> {
+
+	/** Value of time for entries without an epoch time */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
 	@Getter
 	private final String timeStamp;
 	@Getter
 	private final V value;
-	
+	@Getter
+	private final long time;
+
+
+	public TimeSeriesEntry(String timeStamp, V value) {
+		this(NO_TIME, timeStamp, value);
+	}
+
+	/**
+	 * An entry with both its epoch time and
+	 * its formatted time stamp
+	 *
+	 * @param time
+	 *    Epoch milliseconds of the time stamp
+	 * @param timeStamp
+	 *    The formatted time stamp
+	 * @param value
+	 *    The value
+	 */
+	public TimeSeriesEntry(long time, String timeStamp, V value) {
+
+		this.time = time;
+		this.timeStamp = timeStamp;
+		this.value = value;
+	}
+
 	public String getDateTime() {
 		return timeStamp;
 	}
-}
\ No newline at end of file
+
+	public boolean hasTime() {
+		return time != NO_TIME;
+	}
+
+	/**
+	 * An entry with the same time as this one and a new value
+	 *
+	 * @param newValue
+	 *    The value of the new entry
+	 * @return
+	 *    A new entry at the time of this entry
+	 */
+	public <W> TimeSeriesEntry<W> withValue(W newValue) {
+		return new TimeSeriesEntry<W>(time, timeStamp, newValue);
+	}
+
+	/**
+	 * Whether two entries are at the same time. The epoch times
+	 * are compared when both entries have one, the time stamps otherwise
+	 *
+	 * @param other
+	 *    Any other entry
+	 * @return
+	 *    True if the entries are at the same time
+	 */
+	public boolean isSameTime(TimeSeriesEntry<?> other) {
+
+		if(hasTime() && other.hasTime()) {
+			return time == other.time;
+		}
+		return timeStamp.equals(other.timeStamp);
+	}
+}
@@ -1,6 +1,10 @@
 package ch.imetrica.mdfa.series;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -8,6 +12,7 @@ import org.joda.time.format.DateTimeFormatter;
 import ch.imetrica.mdfa.market.Side;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.series.MdfaSeries.SeriesType;
+import ch.imetrica.mdfa.util.FIRFilterEngine;
 import ch.imetrica.mdfa.util.MdfaUtil;
 import lombok.Getter;
 
@@ -20,13 +25,21 @@ public class VectorSignalSeries implements MdfaSeries {
 	private static final long serialVersionUID = 1L;
 	private final SeriesType seriesType = SeriesType.MULTISIGNAL;
 	private DateTimeFormatter formatter;
-	private TimeSeries<double[]> signalSeries;
+	private ColumnarTimeSeries signalSeries;
 	private TargetSeries target;
 	private ArrayList<double[]> coeffs;
 	private ArrayList<double[]> original_coeffs;
 	private ArrayList<double[]> preFilterCoeffs = null;
 	private String name;
 	private boolean preFilteringActivated = true;
+	private boolean eagerSignal = false;
+	private LazySignal lazySignal;
+	private transient FIRFilterEngine filterEngine;
+	private TieredSignalHistory history;
+	private int historyWindow;
+	private long historyBytes;
+	private double[] historyRow;
+	private double[] signalRow;
 	
 	
 	/**
@@ -80,7 +93,7 @@ public class VectorSignalSeries implements MdfaSeries {
 		this.preFilterCoeffs = new ArrayList<double[]>();
 		this.target = anytarget;	
 		this.formatter = DateTimeFormat.forPattern(anyformat);
-		this.signalSeries = new TimeSeries<double[]>();
+		this.signalSeries = new ColumnarTimeSeries(1);
 		this.name = anytarget.getName();
 		
 	}
@@ -92,7 +105,7 @@ public class VectorSignalSeries implements MdfaSeries {
 		this.original_coeffs = new ArrayList<double[]>();
 		this.target = anytarget;	
 		this.formatter = DateTimeFormat.forPattern(anyformat);
-		this.signalSeries = new TimeSeries<double[]>();
+		this.signalSeries = new ColumnarTimeSeries(1);
 		this.name = anytarget.getName();
 		
 	}
@@ -104,7 +117,7 @@ public class VectorSignalSeries implements MdfaSeries {
 		this.preFilterCoeffs = new ArrayList<double[]>();
 		this.target = anytarget;	
 
-		this.signalSeries = new TimeSeries<double[]>();
+		this.signalSeries = new ColumnarTimeSeries(1);
 		this.name = anytarget.getName();
 		
 	}
@@ -112,7 +125,8 @@ public class VectorSignalSeries implements MdfaSeries {
 	/**
      * Replaces the latest filter coefficients
      * coefficients. Recomputes a new signal series based on (new)
-     * coefficients. 
+     * coefficients if the signal is eager, otherwise the signals
+     * are computed lazily when they are read (see {@link LazySignal}). 
      * 
      * If a preFilter exists for this signal, the coefficients will be 
      * convolved with the prefilter to produce the aggregate filter
@@ -138,7 +152,7 @@ public class VectorSignalSeries implements MdfaSeries {
 		}
 		
 		if(target != null) {
-			this.computeSignalFromTarget();
+			this.resetSignal();
 		}
 	}
 	
@@ -161,11 +175,139 @@ public class VectorSignalSeries implements MdfaSeries {
 		}
 		
 		if(target != null) {
-			this.computeSignalFromTarget();
+			this.resetSignal();
+		}
+	}
+	
+	
+	
+	/**
+	 * Chooses between recomputing all the signals each time
+	 * coefficients change (eager) and the default {@link LazySignal},
+	 * which only computes the signal values that are read
+	 * 
+	 * @param eager
+	 *   True to recompute all the signals eagerly
+	 * @return
+	 *   This signal series
+	 * @throws Exception
+	 *   if the signals can not be recomputed
+	 */
+	public VectorSignalSeries setEagerSignal(boolean eager) throws Exception {
+		
+		this.eagerSignal = eager;
+		this.lazySignal = null;
+		this.signalSeries = new ColumnarTimeSeries(1);
+		if(coeffs.size() > 0 && target != null) {
+			this.resetSignal();
+		}
+		return this;
+	}
+	
+	public boolean isEagerSignal() {
+		return eagerSignal;
+	}
+	
+	/**
+	 * Keeps the latest signals of each new observation in a 
+	 * {@link TieredSignalHistory}: the latest window observations at 
+	 * full resolution and the older ones downsampled, within maxBytes.
+	 * The history holds one column per filter and is started again
+	 * if the number of filters changes
+	 * 
+	 * @param window
+	 *   Number of latest observations kept at full resolution
+	 * @param maxBytes
+	 *   The memory budget of the history
+	 * @return
+	 *   This signal series
+	 */
+	public VectorSignalSeries setTieredHistory(int window, long maxBytes) {
+		
+		this.historyWindow = window;
+		this.historyBytes = maxBytes;
+		this.history = new TieredSignalHistory(Math.max(1, coeffs.size()), window, maxBytes);
+		return this;
+	}
+	
+	/**
+	 * @return The history of the emitted signals, 
+	 * null if {@link #setTieredHistory(int, long)} was not called
+	 */
+	public TieredSignalHistory getTieredHistory() {
+		return history;
+	}
+	
+	/**
+	 * Adds the latest signals to the tiered history
+	 */
+	private void addToHistory(long time, String date, double[] sigvec) {
+		
+		if(history.getColumnCount() != coeffs.size()) {
+			history = new TieredSignalHistory(coeffs.size(), historyWindow, historyBytes);
+		}
+		if(sigvec == null) {
+			
+			if(historyRow == null || historyRow.length != coeffs.size()) {
+				historyRow = new double[coeffs.size()];
+			}
+			Arrays.fill(historyRow, 0);
+			lazySignal.addLatestValues(historyRow, 1.0);
+			sigvec = historyRow;
 		}
+		history.add(time, date, sigvec);
 	}
 	
+	/**
+	 * Sets the engine that filters the target series, for instance
+	 * one with its own fork-join pool or FFT threshold. The engine is 
+	 * not part of the snapshot, a restored series uses the default engine
+	 * 
+	 * @param engine
+	 *   The engine, null for the default {@link FIRFilterEngine#getDefault()}
+	 * @return
+	 *   This signal series
+	 */
+	public VectorSignalSeries setFilterEngine(FIRFilterEngine engine) {
+		
+		this.filterEngine = engine;
+		if(lazySignal != null) {
+			lazySignal.setFilterEngine(engine);
+		}
+		return this;
+	}
 	
+	/**
+	 * @return The engine that filters the target series
+	 */
+	public FIRFilterEngine getFilterEngine() {
+		return (filterEngine == null) ? FIRFilterEngine.getDefault() : filterEngine;
+	}
+	
+	/**
+	 * @return The lazy signals, null if the signals are
+	 * eager or there are no coefficients yet
+	 */
+	public LazySignal getLazySignal() {
+		return lazySignal;
+	}
+	
+	private void resetSignal() throws Exception {
+		
+		if(eagerSignal) {
+			this.computeSignalFromTarget();
+		}
+		else if(coeffs.size() > 0) {
+			
+			double[][] filters = coeffs.toArray(new double[coeffs.size()][]);
+			if(lazySignal == null) {
+				lazySignal = new LazySignal(target, filters).setFilterEngine(filterEngine);
+			}
+			else {
+				lazySignal.setFilters(filters);
+			}
+		}
+	}
 	
 	private void computeSignalFromTarget() throws Exception {
 		
@@ -177,29 +319,30 @@ public class VectorSignalSeries implements MdfaSeries {
 			throw new Exception("No target series has been defined yet");
 		}
 		
-		signalSeries = new TimeSeries<double[]>();
-		
 		int N = target.size();
+		int M = coeffs.size();
+		signalSeries = new ColumnarTimeSeries(M, null, N).setMaxHistory(target.getMaxHistory());
 		
+		double[][] signals = getFilterEngine().filter(target.getTargetValues(), N, coeffs);
 		for(int i = 0; i < N; i++) {
 			
-			double[] sigvec = new double[coeffs.size()];
-			for(int m = 0; m < coeffs.size(); m++) {
-				
-				int filter_length = Math.min(i+1, coeffs.get(m).length);
-				for (int l = 0; l < filter_length; l++) {
-					sigvec[m] += coeffs.get(m)[l]*target.getTargetValue(i - l);
-				}
+			signalSeries.add(target.getTargetTime(i), target.getTargetDate(i), 0);
+			for(int m = 0; m < M; m++) {
+				signalSeries.setValue(signalSeries.size() - 1, m, signals[m][i]);
 			}
-			signalSeries.add(new TimeSeriesEntry<double[]>(target.getTargetDate(i), sigvec));	
 		}	
 	}
 
 
 	@Override
 	public void addValue(String date, double val) {
+		addValue(TimeSeriesEntry.NO_TIME, date, val);
+	}
+	
+	@Override
+	public void addValue(long time, String date, double val) {
 		
-		target.addValue(date, val);
+		target.addValue(time, date, val);
 		
 		CurrentBid = val; 
 		CurrentAsk = val; 
@@ -209,22 +352,40 @@ public class VectorSignalSeries implements MdfaSeries {
 		
 		if(coeffs.size() > 0) {
 			
-			int N = target.size();
-			double[] sigvec = new double[coeffs.size()];
-			for(int m = 0; m < coeffs.size(); m++) {
+			if(lazySignal != null) {
+				
+				lazySignal.update();
+				CurrentSignal = lazySignal.getLatestValue(0);
+				if(history != null) {
+					addToHistory(time, date, null);
+				}
+			}
+			else {
 				
-				int filter_length = Math.min(N, coeffs.get(m).length);
-				for (int l = 0; l < filter_length; l++) {
-					sigvec[m] += coeffs.get(m)[l]*target.getTargetValue(N - l - 1);
+				int N = target.size();
+				if(signalRow == null || signalRow.length != coeffs.size()) {
+					signalRow = new double[coeffs.size()];
+				}
+				double[] sigvec = signalRow;
+				Arrays.fill(sigvec, 0);
+				for(int m = 0; m < coeffs.size(); m++) {
+					
+					int filter_length = Math.min(N, coeffs.get(m).length);
+					for (int l = 0; l < filter_length; l++) {
+						sigvec[m] += coeffs.get(m)[l]*target.getTargetValue(N - l - 1);
+					}
+				}
+				signalSeries.add(time, date, sigvec);	
+				CurrentSignal = sigvec[0];
+				if(history != null) {
+					addToHistory(time, date, sigvec);
 				}
 			}
-			signalSeries.add(new TimeSeriesEntry<double[]>(date, sigvec));	
 		
 			/**
 			 * Compute financial signals
 			 */
 			
-			CurrentSignal = sigvec[0];
 			
 			if(CurrentSide == Side.LONG) {
 				CurrentPnL = CurrentBid - LastFillPrice;
@@ -356,11 +517,18 @@ public class VectorSignalSeries implements MdfaSeries {
 	public void chopFirstObservations(int n) {
 
 		target.chopFirstObservations(n);		
-		int chopped = Math.min(n, signalSeries.size());
-		for(int i = 0; i < chopped; i++) {
-			signalSeries.remove(0);
-		}	
+		signalSeries.removeFirst(n);
+	}
+	
+	/**
+	 * Bounds both the target and the signals to 
+	 * their latest n observations 
+	 */
+	@Override
+	public void setMaxHistory(int n) {
 		
+		target.setMaxHistory(n);
+		signalSeries.setMaxHistory(n);
 	}
 
 	/**
@@ -404,7 +572,9 @@ public class VectorSignalSeries implements MdfaSeries {
 	}
 	
 	public void clearFilters() {
+		
 		coeffs.clear();
+		lazySignal = null;
 	}
 	
 	public void clearPreFilters() {
@@ -417,17 +587,49 @@ public class VectorSignalSeries implements MdfaSeries {
 
 	public String getSignalDate(int i) {
 		
-		return signalSeries.get(i).getDateTime();
+		return (lazySignal != null) ? target.getTargetDate(i) : signalSeries.getDateTime(i);
+	}
+	
+	/**
+	 * Returns the signal entry at index i with
+	 * its time stamp and the values of all signals 
+	 */
+	public TimeSeriesEntry<double[]> getSignalEntry(int i) {
+		
+		if(lazySignal != null) {
+			return new TimeSeriesEntry<double[]>(target.getTargetTime(i), target.getTargetDate(i), lazySignal.getValues(i));
+		}
+		return signalSeries.get(i);
 	}
 
 	public double[] getSignalValue(int i) {
 
-		return signalSeries.get(i).getValue();
+		return (lazySignal != null) ? lazySignal.getValues(i) : signalSeries.getValues(i);
 	}
 
 	public double[] getLatestSignalValue() {
 
-		return signalSeries.last().getValue();
+		return (lazySignal != null) ? lazySignal.getValues(lazySignal.size() - 1) : signalSeries.getValues(signalSeries.size() - 1);
+	}
+	
+	/**
+	 * Adds multiplier times the latest values of all signals to 
+	 * sum. Unlike {@link #getLatestSignalValue()} this does not allocate
+	 * 
+	 * @param sum Array of length at least the number of signals
+	 * @param multiplier Multiplier of the signal values
+	 */
+	public void addLatestSignalValue(double[] sum, double multiplier) {
+		
+		if(lazySignal != null) {
+			lazySignal.addLatestValues(sum, multiplier);
+		}
+		else {
+			int last = signalSeries.size() - 1;
+			for(int m = 0; m < sum.length; m++) {
+				sum[m] += multiplier*signalSeries.getValue(last, m);
+			}
+		}
 	}
 
 	public boolean hasFilter() {
@@ -466,6 +668,95 @@ public class VectorSignalSeries implements MdfaSeries {
 	}
 	
 	
+	/**
+	 * The number of latest observations from which the target
+	 * and the signals of a new observation are computed
+	 */
+	int getSnapshotWindow() {
+		
+		int window = target.getSnapshotWindow();
+		for(double[] b : coeffs) {
+			window = Math.max(window, b.length);
+		}
+		return window;
+	}
+	
+	/**
+	 * Writes the target, the filters and the signals of the latest 
+	 * n observations to a {@link SeriesSnapshot}. The trading 
+	 * state is not written
+	 */
+	void writeSnapshot(DataOutputStream out, int n) throws IOException {
+		
+		target.writeSnapshot(out, n);
+		out.writeBoolean(eagerSignal);
+		out.writeBoolean(preFilteringActivated);
+		SeriesSnapshot.writeArrays(out, preFilterCoeffs);
+		SeriesSnapshot.writeArrays(out, coeffs);
+		SeriesSnapshot.writeArrays(out, original_coeffs);
+		
+		if(coeffs.size() > 0) {
+			
+			int size = (lazySignal != null) ? lazySignal.size() : signalSeries.size();
+			n = Math.min(Math.min(n, size), target.size());
+			out.writeInt(n);
+			for(int i = size - n; i < size; i++) {
+				
+				double[] sigvec = getSignalValue(i);
+				for(int m = 0; m < coeffs.size(); m++) {
+					out.writeDouble(sigvec[m]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a vector signal series written by {@link #writeSnapshot(DataOutputStream, int)},
+	 * restoring the filters as they were applied and the saved signals
+	 * without filtering the target again
+	 */
+	static VectorSignalSeries readSnapshot(DataInputStream in) throws IOException {
+		
+		VectorSignalSeries series = new VectorSignalSeries(TargetSeries.readSnapshot(in));
+		series.eagerSignal = in.readBoolean();
+		series.preFilteringActivated = in.readBoolean();
+		series.preFilterCoeffs = SeriesSnapshot.readArrays(in);
+		series.coeffs = SeriesSnapshot.readArrays(in);
+		series.original_coeffs = SeriesSnapshot.readArrays(in);
+		
+		TargetSeries target = series.target;
+		int M = series.coeffs.size();
+		if(M > 0) {
+			
+			int n = in.readInt();
+			double[][] signals = new double[M][n];
+			for(int i = 0; i < n; i++) {
+				for(int m = 0; m < M; m++) {
+					signals[m][i] = in.readDouble();
+				}
+			}
+			
+			int start = target.size() - n;
+			if(series.eagerSignal) {
+				
+				series.signalSeries = new ColumnarTimeSeries(M, null, n).setMaxHistory(target.getMaxHistory());
+				for(int i = 0; i < n; i++) {
+					
+					series.signalSeries.add(target.getTargetTime(start + i), target.getTargetDate(start + i), 0);
+					for(int m = 0; m < M; m++) {
+						series.signalSeries.setValue(i, m, signals[m][i]);
+					}
+				}
+			}
+			else {
+				series.lazySignal = new LazySignal(target, series.coeffs.toArray(new double[M][]));
+				series.lazySignal.restore(signals, n);
+			}
+		}
+		return series;
+	}
+	
+	
 	/**
 	 * Financial functionality
 	 */
@@ -0,0 +1,47 @@
+package ch.imetrica.mdfa.spectraldensity;
+
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * 
+ * The reference dft computation that evaluates each 
+ * frequency directly with complex exponentials. The 
+ * cost is O(N*K), so this estimator is only 
+ * recommended for testing other estimators 
+ */
+public class DirectSpectralEstimator implements SpectralEstimator {
+
+	@Override
+	public Complex[] computeDFT(double[] values) {
+		
+		int in_sample_size = values.length;
+		int K = in_sample_size/2;
+		int K1 = K+1;
+		final double M_PI = Math.PI;
+		double mean = 0;
+		double normalizer = Math.sqrt(M_PI*in_sample_size);
+		
+		Complex[] prdx = new Complex[K1];
+		 
+		for(int i = 0; i < in_sample_size; i++) {			
+			mean += values[i];
+		}
+		mean = mean/normalizer;
+		 		 
+		prdx[0] = new Complex(mean,0);
+		Complex ab = new Complex(0,0);
+		 
+		for(int j = 1; j < K1; j++) {
+			 
+			 ab = new Complex(0,0);
+			 for(int i = 0; i < in_sample_size; i++) {
+				 
+				 Complex z = (new Complex(0, M_PI*(i + 1.0)*j/K)).exp();				 
+				 ab = ab.add(z.multiply(values[i])); 
+			 }
+			 prdx[j] = ab.divide(normalizer);			 
+		}
+		return prdx;	
+	}
+
+}
@@ -0,0 +1,81 @@
+package ch.imetrica.mdfa.spectraldensity;
+
+import org.apache.commons.math3.complex.Complex;
+
+import ch.imetrica.mdfa.util.FFT;
+
+/**
+ * 
+ * Computes the dft of the in-sample values with a 
+ * fast Fourier transform of length M = 2K, where K = N/2.
+ * 
+ * The frequencies pi*j/K are exactly the Fourier frequencies 
+ * of length M. For even N, M = N. For odd N, M = N-1 and the last 
+ * value is folded onto the first since exp(i*pi*N*j/K) = exp(i*pi*j/K)*exp(2*pi*i*j). 
+ * The (n+1) phase convention and the sqrt(pi*N) normalization of the 
+ * {@link DirectSpectralEstimator} are applied after the transform. 
+ * 
+ * The FFT object is kept between calls so that repeated estimates with
+ * the same in-sample size reuse the twiddle factors. An estimator is 
+ * therefore not thread-safe. 
+ */
+public class FFTSpectralEstimator implements SpectralEstimator {
+
+	private FFT fft;
+	private double[] re;
+	private double[] im;
+	
+	@Override
+	public Complex[] computeDFT(double[] values) {
+		
+		int N = values.length;
+		int K = N/2;
+		int K1 = K+1;
+		double normalizer = Math.sqrt(Math.PI*N);
+		
+		Complex[] prdx = new Complex[K1];
+		
+		double mean = 0;
+		for(int i = 0; i < N; i++) {
+			mean += values[i];
+		}
+		prdx[0] = new Complex(mean/normalizer, 0);
+		
+		if(K == 0) {
+			return prdx;
+		}
+		
+		int M = 2*K;
+		if(fft == null || fft.size() != M) {
+			
+			fft = new FFT(M);
+			re = new double[M];
+			im = new double[M];
+		}
+		
+		for(int i = 0; i < M; i++) {
+			re[i] = values[i];
+			im[i] = 0;
+		}
+		for(int i = M; i < N; i++) {
+			re[i - M] += values[i];
+		}
+		
+		fft.forward(re, im);
+		
+		/* prdx[j] = exp(i*pi*j/K) * conj(X_j) / normalizer */
+		for(int j = 1; j < K1; j++) {
+			
+			double phase = Math.PI*j/K;
+			double c = Math.cos(phase);
+			double s = Math.sin(phase);
+			
+			double xr = re[j];
+			double xi = -im[j];
+			
+			prdx[j] = new Complex((c*xr - s*xi)/normalizer, (s*xr + c*xi)/normalizer);
+		}
+		return prdx;
+	}
+
+}
@@ -0,0 +1,398 @@
+package ch.imetrica.mdfa.spectraldensity;
+
+import java.util.ArrayList;
+
+import org.apache.commons.math3.complex.Complex;
+
+import ch.imetrica.mdfa.series.MdfaSeries;
+
+/**
+ *
+ * A spectral base for rolling re-estimation windows. Instead of
+ * recomputing the dft of the latest in_sample_size observations
+ * every time the coefficients are re-estimated, the rolling base
+ * keeps the dft state of each series and slides it forward with
+ * the sliding dft recurrence
+ *
+ * <code>X_j(t+1) = exp(-i*w_j)*X_j(t) - x_old + x_new*exp(i*w_j*N)</code>
+ *
+ * with w_j = pi*j/K. Each new observation costs O(K) for all K+1
+ * frequencies. To bound the accumulated rounding drift, the dfts are
+ * recomputed exactly with the {@link SpectralEstimator} every
+ * resyncInterval updates. An exact resync is also done whenever the
+ * window can not be slid, for example after the in-sample values of a
+ * series have changed (new fractional difference, new prefilter) or
+ * more than in_sample_size observations have been added.
+ *
+ * The series are registered once with addSeries and {@link #update()}
+ * is called after new observations have been added to the series.
+ * When observations are chopped from the series,
+ * {@link #chopFirstObservations(int)} must be called so that the
+ * rolling base can keep track of the latest observation.
+ */
+public class RollingSpectralBase extends SpectralBase {
+
+	private ArrayList<RollingDFT> rolling;
+	private RollingDFT targetRolling;
+	private int resyncInterval;
+	private boolean stale = true;
+
+	/* frequencies and phase of the incoming value */
+	private double[] cosFreq;
+	private double[] sinFreq;
+	private double[] cosNFreq;
+	private double[] sinNFreq;
+
+
+	/**
+	 * Creates a rolling spectral base with the in-sample
+	 * size nObservations. By default, an exact resync is done
+	 * every nObservations updates
+	 *
+	 * @param nObservations
+	 *     Number of in-sample observations
+	 */
+	public RollingSpectralBase(int nObservations) {
+
+		super(nObservations);
+		this.rolling = new ArrayList<RollingDFT>();
+		this.resyncInterval = Math.max(1, nObservations);
+
+		int K = nObservations/2;
+		int K1 = K+1;
+		cosFreq = new double[K1];
+		sinFreq = new double[K1];
+		cosNFreq = new double[K1];
+		sinNFreq = new double[K1];
+
+		for(int j = 0; j < K1; j++) {
+
+			double w = (K == 0) ? 0 : Math.PI*j/K;
+			cosFreq[j] = Math.cos(w);
+			sinFreq[j] = Math.sin(w);
+			cosNFreq[j] = Math.cos(w*nObservations);
+			sinNFreq[j] = Math.sin(w*nObservations);
+		}
+	}
+
+
+	/**
+	 * Registers the series with the rolling base and computes
+	 * its dft exactly. The series must be of at least size in_sample_size
+	 */
+	@Override
+	public synchronized void addSeries(MdfaSeries anySeries) throws Exception {
+
+		if(anySeries.size() < in_sample_size) {
+			 throw new Exception("Size of anySeries must be at least " + in_sample_size);
+		}
+
+		RollingDFT series = new RollingDFT(anySeries, signalNumber, false);
+		series.resync();
+		rolling.add(series);
+		updateTarget();
+		stale = true;
+	}
+
+
+	/**
+	 * Slides the dfts of all registered series to the latest
+	 * observations. Series that can not be slid, or that have been
+	 * slid resyncInterval times since the last exact computation, are
+	 * recomputed exactly
+	 *
+	 * @throws Exception
+	 */
+	public synchronized void update() throws Exception {
+
+		for(RollingDFT series : rolling) {
+			series.update();
+		}
+		updateTarget();
+		stale = true;
+	}
+
+
+	/**
+	 * The target dft uses the target values of the series at the
+	 * target index. If that series is not prefiltered, it is the same
+	 * as the dft of the series, otherwise it is rolled separately
+	 */
+	private void updateTarget() throws Exception {
+
+		if(myTarget < rolling.size()) {
+
+			MdfaSeries target = rolling.get(myTarget).series;
+			if(target.isPrefiltered()) {
+
+				if(targetRolling == null || targetRolling.series != target) {
+					targetRolling = new RollingDFT(target, signalNumber, true);
+					targetRolling.resync();
+				}
+				else {
+					targetRolling.update();
+				}
+			}
+			else {
+				targetRolling = null;
+			}
+		}
+	}
+
+
+	/**
+	 * Forces an exact recomputation of all dfts with the
+	 * spectral estimator on the next update
+	 */
+	public synchronized void resync() {
+
+		for(RollingDFT series : rolling) {
+			series.needsResync = true;
+		}
+		if(targetRolling != null) {
+			targetRolling.needsResync = true;
+		}
+	}
+
+	/**
+	 *
+	 * Notifies the rolling base that the first n observations
+	 * have been chopped from all the registered series
+	 *
+	 * @param n
+	 *    Number of observations chopped
+	 */
+	public synchronized void chopFirstObservations(int n) {
+
+		for(RollingDFT series : rolling) {
+			series.lastSize = Math.max(0, series.lastSize - n);
+		}
+		if(targetRolling != null) {
+			targetRolling.lastSize = Math.max(0, targetRolling.lastSize - n);
+		}
+	}
+
+
+	/**
+	 * Sets the number of updates after which the dfts
+	 * are recomputed exactly. Smaller values bound the
+	 * drift more tightly at a higher cost
+	 *
+	 * @param interval
+	 *    Number of updates between exact recomputations
+	 * @return
+	 *    This rolling spectral base
+	 */
+	public RollingSpectralBase setResyncInterval(int interval) {
+
+		this.resyncInterval = Math.max(1, interval);
+		return this;
+	}
+
+	public int getResyncInterval() {
+		return this.resyncInterval;
+	}
+
+
+	/**
+	 * Sets the index of the target series. The target dft
+	 * is recomputed on the next update
+	 */
+	@Override
+	public synchronized SpectralBase setTargetIndex(int target) {
+
+		super.setTargetIndex(target);
+		targetRolling = null;
+		stale = true;
+		return this;
+	}
+
+	@Override
+	public synchronized ArrayList<Complex[]> getSpectralBase() throws Exception {
+
+		materialize();
+		return super.getSpectralBase();
+	}
+
+	@Override
+	public synchronized Complex[] getSpectralDensity(int i) {
+
+		materialize();
+		return super.getSpectralDensity(i);
+	}
+
+	@Override
+	public synchronized Complex getTargetSpectralDensity(int k) {
+
+		materialize();
+		return super.getTargetSpectralDensity(k);
+	}
+
+	@Override
+	public synchronized int size() {
+		return rolling.size();
+	}
+
+	@Override
+	public synchronized void clearSpectralBase() {
+
+		super.clearSpectralBase();
+		rolling.clear();
+		targetRolling = null;
+		stale = true;
+	}
+
+
+	/**
+	 * Builds the normalized Complex dfts from the rolling state
+	 * if it has changed since the last time they were requested
+	 */
+	private void materialize() {
+
+		if(!stale) {
+			return;
+		}
+
+		dfts.clear();
+		for(RollingDFT series : rolling) {
+			dfts.add(series.toComplex());
+		}
+
+		if(targetRolling != null) {
+			targetDFTs = targetRolling.toComplex();
+		}
+		else if(myTarget < dfts.size()) {
+			targetDFTs = dfts.get(myTarget);
+		}
+		stale = false;
+	}
+
+
+	/**
+	 * The sliding dft state of one series: the window of
+	 * in-sample values and the unnormalized dft sums
+	 */
+	private class RollingDFT {
+
+		private final MdfaSeries series;
+		private final int whichSig;
+		private final boolean targetOnly;
+		private boolean target;
+
+		private final double[] window;
+		private int head;
+		private final double[] re;
+		private final double[] im;
+
+		private int lastSize;
+		private int updates;
+		private boolean needsResync;
+
+		RollingDFT(MdfaSeries series, int whichSig, boolean targetOnly) {
+
+			this.series = series;
+			this.whichSig = whichSig;
+			this.targetOnly = targetOnly;
+			this.window = new double[in_sample_size];
+			this.re = new double[cosFreq.length];
+			this.im = new double[cosFreq.length];
+		}
+
+
+		void update() throws Exception {
+
+			int size = series.size();
+			int delta = size - lastSize;
+
+			if(needsResync || target != usesTargetValues() || delta < 0
+					|| delta >= in_sample_size || updates + delta > resyncInterval
+					|| !isConsistent(size)) {
+
+				resync();
+				return;
+			}
+
+			for(int i = lastSize; i < size; i++) {
+				slide(value(i));
+			}
+			lastSize = size;
+		}
+
+		private boolean usesTargetValues() {
+			return targetOnly || !series.isPrefiltered();
+		}
+
+		/**
+		 * The latest value in the window must still be the value
+		 * of the series at the same index, otherwise the series
+		 * has been changed or chopped without notification
+		 */
+		private boolean isConsistent(int size) throws Exception {
+
+			if(lastSize < 1 || lastSize > size) {
+				return false;
+			}
+			int newest = (head + in_sample_size - 1) % in_sample_size;
+			return window[newest] == value(lastSize - 1);
+		}
+
+		private void slide(double x) {
+
+			double old = window[head];
+			window[head] = x;
+			head = (head + 1) % in_sample_size;
+
+			for(int j = 0; j < re.length; j++) {
+
+				double r = cosFreq[j]*re[j] + sinFreq[j]*im[j];
+				double m = cosFreq[j]*im[j] - sinFreq[j]*re[j];
+
+				re[j] = r - old + x*cosNFreq[j];
+				im[j] = m + x*sinNFreq[j];
+			}
+			updates++;
+		}
+
+		void resync() throws Exception {
+
+			target = usesTargetValues();
+			int size = series.size();
+			if(size < in_sample_size) {
+				throw new Exception("Size of anySeries must be at least " + in_sample_size);
+			}
+
+			int start = size - in_sample_size;
+			for(int i = 0; i < in_sample_size; i++) {
+				window[i] = value(start + i);
+			}
+			head = 0;
+
+			Complex[] dft = estimator.computeDFT(window);
+			double normalizer = Math.sqrt(Math.PI*in_sample_size);
+			for(int j = 0; j < re.length; j++) {
+
+				re[j] = dft[j].getReal()*normalizer;
+				im[j] = dft[j].getImaginary()*normalizer;
+			}
+
+			lastSize = size;
+			updates = 0;
+			needsResync = false;
+		}
+
+		private double value(int i) throws Exception {
+			return getValue(series, i, target, whichSig);
+		}
+
+		Complex[] toComplex() {
+
+			double normalizer = Math.sqrt(Math.PI*in_sample_size);
+			Complex[] prdx = new Complex[re.length];
+			for(int j = 0; j < re.length; j++) {
+				prdx[j] = new Complex(re[j]/normalizer, im[j]/normalizer);
+			}
+			return prdx;
+		}
+	}
+
+}
@@ -46,11 +46,12 @@ public class SpectralBase {
 
 	
 
-	private ArrayList<Complex[]> dfts;
-	private int in_sample_size;
-	private int myTarget;
-	private Complex[] targetDFTs;
-	private int signalNumber = 0;
+	protected ArrayList<Complex[]> dfts;
+	protected int in_sample_size;
+	protected int myTarget;
+	protected Complex[] targetDFTs;
+	protected int signalNumber = 0;
+	protected SpectralEstimator estimator = new FFTSpectralEstimator();
 	
 	/**
      * Sets the in_sample_size for the SpectralDensity estimation
@@ -123,51 +124,85 @@ public class SpectralBase {
 	 
 	 
 	private Complex[] computeDFT(MdfaSeries anySeries, boolean target) throws Exception {
+		return estimator.computeDFT(getInSampleValues(anySeries, target));		
+	}
+	
+	
+	/**
+	 * Extracts the final in_sample_size values of the series that 
+	 * are transformed to the frequency domain
+	 * 
+	 * @param anySeries
+	 *     An Mdfa series of at least size in_sample_size
+	 * @param target
+	 *     If true, the target values are used, otherwise the prefiltered values
+	 * @return
+	 *     The in-sample values
+	 * @throws Exception 
+	 */
+	protected double[] getInSampleValues(MdfaSeries anySeries, boolean target) throws Exception {
 		
-		int K = (int)in_sample_size/2;
-		int K1 = K+1;
-		final double M_PI = Math.PI;
-		double mean = 0;
-		double val = 0;
-		double normalizer = Math.sqrt(M_PI*in_sample_size);
-		
-		
-		Complex[] prdx = new Complex[K1];
+		double[] values = new double[in_sample_size];
 		int start = anySeries.size() - in_sample_size;
 		 
-		for(int i = start; i < anySeries.size(); i++) {
-			
-			if(target) 
-				mean += anySeries.getTargetValue(i);
-			else if(anySeries.getSeriesType() == SeriesType.SIGNAL)
-				mean += ((SignalSeries)anySeries).getPrefilteredValue(i);
-			else if(anySeries.getSeriesType() == SeriesType.MULTISIGNAL)
-				mean += ((VectorSignalSeries)anySeries).getPrefilteredValue(signalNumber,i);
-			
-		}
-		mean = mean/normalizer;
-		 		 
-		prdx[0] = new Complex(mean,0);
-		Complex ab = new Complex(0,0);
-		 
-		for(int j = 1; j < K1; j++) {
-			 
-			 ab = new Complex(0,0);
-			 for(int i = start; i < anySeries.size(); i++) {
-				 
-				 if(target) 
-					 val = anySeries.getTargetValue(i);				 
-				 else if(anySeries.getSeriesType() == SeriesType.SIGNAL)
-					 val = ((SignalSeries)anySeries).getPrefilteredValue(i);
-				 else if(anySeries.getSeriesType() == SeriesType.MULTISIGNAL) {
-						val = ((VectorSignalSeries)anySeries).getPrefilteredValue(signalNumber,i);
-				 }
-				 Complex z = (new Complex(0, M_PI*(i - start + 1.0)*j/K)).exp();				 
-				 ab = ab.add(z.multiply(val)); 
-			 }
-			 prdx[j] = ab.divide(normalizer);			 
+		for(int i = start; i < anySeries.size(); i++) {			
+			values[i - start] = getValue(anySeries, i, target, signalNumber);
 		}
-		return prdx;		
+		return values;
+	}
+	
+	/**
+	 * Gets the ith value of the series that enters the dft, 
+	 * either the target value or the prefiltered value
+	 * 
+	 * @param anySeries
+	 *     Any Mdfa series
+	 * @param i
+	 *     Index of the value
+	 * @param target
+	 *     If true, the target value is returned, otherwise the prefiltered value
+	 * @param whichSig
+	 *     The prefilter of a vector signal series that is used
+	 * @return
+	 *     The value at index i
+	 * @throws Exception
+	 */
+	protected double getValue(MdfaSeries anySeries, int i, boolean target, int whichSig) throws Exception {
+		
+		if(target) 
+			return anySeries.getTargetValue(i);
+		else if(anySeries.getSeriesType() == SeriesType.SIGNAL)
+			return ((SignalSeries)anySeries).getPrefilteredValue(i);
+		else if(anySeries.getSeriesType() == SeriesType.MULTISIGNAL)
+			return ((VectorSignalSeries)anySeries).getPrefilteredValue(whichSig,i);
+		
+		return 0;
+	}
+	
+	
+	/**
+	 * Sets the spectral estimator used for computing the 
+	 * dfts of the series. By default an {@link FFTSpectralEstimator} is used. 
+	 * The {@link DirectSpectralEstimator} is the reference implementation
+	 * 
+	 * @param estimator
+	 *     Any spectral estimator
+	 * @return
+	 *     This spectral base
+	 */
+	public SpectralBase setSpectralEstimator(SpectralEstimator estimator) {
+		
+		this.estimator = estimator;
+		return this;
+	}
+	
+	/**
+	 * Gets the spectral estimator used for computing the dfts
+	 * @return
+	 *     The spectral estimator
+	 */
+	public SpectralEstimator getSpectralEstimator() {
+		return this.estimator;
 	}
 	 
 	 
@@ -277,6 +312,16 @@ public class SpectralBase {
 		return this.myTarget;
 	}
 	
+	/**
+	 * Gets the number of in-sample observations used 
+	 * for the dfts
+	 * 
+	 * @return in_sample_size
+	 */
+	public int getInSampleSize() {
+		return this.in_sample_size;
+	}
+	
 	/**
 		* Returns number of series that have been added
 		* for estimation of real-time signal
@@ -0,0 +1,35 @@
+package ch.imetrica.mdfa.spectraldensity;
+
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * 
+ * Interface for computing the frequency domain information of 
+ * the in-sample values of a series which is used by the 
+ * {@link SpectralBase}. 
+ * 
+ * For N in-sample values x_0,...,x_{N-1} and K = N/2, an estimator 
+ * returns the K+1 values
+ * 
+ * <code>prdx[0] = sum_n x_n / sqrt(pi*N)</code>
+ * <code>prdx[j] = sum_n x_n exp(i*pi*(n+1)*j/K) / sqrt(pi*N), j = 1,...,K</code>
+ * 
+ * Two implementations are provided, the {@link DirectSpectralEstimator} 
+ * which evaluates the sums directly in O(N*K) and serves as the reference 
+ * implementation, and the {@link FFTSpectralEstimator} which computes the 
+ * same values in O(N log N) 
+ */
+public interface SpectralEstimator {
+
+	/**
+	 * Computes the K+1 normalized dft values of the given 
+	 * in-sample values
+	 * 
+	 * @param values
+	 *     The N in-sample values, where N is the in-sample size
+	 * @return
+	 *     Complex array of length K+1 where K = N/2
+	 */
+	Complex[] computeDFT(double[] values);
+	
+}
@@ -1,6 +1,7 @@
 package ch.imetrica.mdfa.targetfilter;
 
 import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.util.FrequencyBasisCache;
 
 /**
  * 
@@ -51,48 +52,55 @@ public class TargetFilter {
 	
 	void computeTargetFilter(MDFABase anyMDFA) {
 		
-		int N = anyMDFA.getSeriesLength();
-		int K = (int)Math.ceil(N/2.0);
-		int K1 = K+1;
-		
-		targetGamma = new double[K1];
-				
-		int omega_Gamma0 = (int)(omega0*K/Math.PI);
-	    int omega_Gamma = (int)(cutoff*K/Math.PI);
-		
-		for(int i = 0; i <= K; i++) {
-			
-			if(i >= omega_Gamma0 && i <= omega_Gamma) {
-				targetGamma[i] = 1.0;
-			}
-		}		
+		targetGamma = getTargetGamma(anyMDFA.getSeriesLength(), omega0, cutoff);	
 	}
 	
 
 	public void adjustTargetFilter(MDFABase anyMDFA) {
 		
-		int N = anyMDFA.getSeriesLength();
 		this.cutoff = anyMDFA.getLowPassCutoff();
 		this.omega0 = anyMDFA.getBandPassCutoff();
-		int K = (int)Math.ceil(N/2.0);		
-
 		
-	    int omega_Gamma = (int)(this.cutoff*K/Math.PI);
-	    int omega_Gamma0 = (int)(this.omega0*K/Math.PI);
-	    
+		targetGamma = getTargetGamma(anyMDFA.getSeriesLength(), omega0, cutoff);
+	}
+	
+	/**
+	 * Gets the pass-band target filter from the shared cache
+	 * of frequency domain objects or computes it if not yet cached
+	 * 
+	 * @param N In-sample length
+	 * @param omega0 Band-pass cutoff
+	 * @param cutoff Low-pass cutoff
+	 * @return The target filter, shared and must not be modified
+	 */
+	private static double[] getTargetGamma(int N, double omega0, double cutoff) {
+		
+		double[] gamma = FrequencyBasisCache.get(double[].class, "target", N, omega0, cutoff);
+		if(gamma != null) {
+			return gamma;
+		}
+		
+		int K = (int)Math.ceil(N/2.0);
+		int K1 = K+1;
+		
+		gamma = new double[K1];
+				
+		int omega_Gamma0 = (int)(omega0*K/Math.PI);
+	    int omega_Gamma = (int)(cutoff*K/Math.PI);
+		
 		for(int i = 0; i <= K; i++) {
 			
 			if(i >= omega_Gamma0 && i <= omega_Gamma) {
-				targetGamma[i] = 1.0;
-			}
-			else {
-				targetGamma[i] = 0.0;
+				gamma[i] = 1.0;
 			}
-		}	
+		}
+		return FrequencyBasisCache.putIfAbsent(gamma, "target", N, omega0, cutoff);
 	}
 	
 	/**
-	 * Returns or sets the entire target filter
+	 * Returns the entire target filter. The array is shared 
+	 * with all target filters of the same parameters and 
+	 * must not be modified
 	 * 
 	 * @return targetGamma
 	 *   
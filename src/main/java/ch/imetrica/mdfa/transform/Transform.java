@@ -1,11 +1,14 @@
 package ch.imetrica.mdfa.transform;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.commons.lang.ArrayUtils;
 
+import ch.imetrica.mdfa.series.ColumnarTimeSeries;
 import ch.imetrica.mdfa.series.TimeSeries;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
+import ch.imetrica.mdfa.util.OverlapAddConvolution;
 
 
 /**
@@ -29,6 +32,20 @@ public class Transform {
 	double[] f_weights;  /* Fractional differencing weights */	
 	private boolean logTransform;
 	public double weight_threshold = .0001;
+	private int maxWeightLength = 0;
+	
+	/* number of weights from which whole series are differenced with the FFT */
+	public static final int DEFAULT_FFT_THRESHOLD = 64;
+	private int fftThreshold = DEFAULT_FFT_THRESHOLD;
+	private OverlapAddConvolution convolution;
+	
+	/* transformed raw values of the latest observations of loggedSeries, newest at loggedHead - 1 */
+	private double[] logged;
+	private int loggedHead;
+	private int loggedCount;
+	private Object loggedSeries;
+	private int loggedSize;
+	private double loggedLastRaw;
 	
 	private double baseTransform(double v) {
 		
@@ -86,7 +103,7 @@ public class Transform {
 			wk = wk1;
 			k = k + 1.0;
 			
-			if(Math.abs(wk) < thresh) {
+			if(Math.abs(wk) < thresh || (maxWeightLength > 0 && myWs.size() >= maxWeightLength)) {
 				overThresh = false;
 			}			
 		}
@@ -94,8 +111,158 @@ public class Transform {
 		frac_w = myWs.toArray(new Double[myWs.size()]);
 		f_weights = ArrayUtils.toPrimitive(frac_w);
 		
+		if(maxWeightLength > 0 && f_weights.length > maxWeightLength) {
+			f_weights = Arrays.copyOf(f_weights, maxWeightLength);
+		}
 	  }
+	  
+	  /* the cached history and the convolution depend on the weights */
+	  loggedSeries = null;
+	  convolution = null;
+	}
+	
+	/**
+     * Sets the number of weights from which whole series are 
+     * fractionally differenced with an FFT overlap-add convolution in 
+     * {@link #applyTransform(TimeSeries)} and 
+     * {@link #adjustFractionalDifference(TimeSeries, double)} instead 
+     * of the direct convolution. The FFT is only used for series 
+     * at least as long as the weights
+     * 
+     * @param threshold
+     *            Minimum number of weights for the FFT, 
+     *            Integer.MAX_VALUE to always use the direct convolution
+     * @return 
+     *            This transform
+     */
+	public Transform setFFTThreshold(int threshold) {
 		
+		this.fftThreshold = threshold;
+		return this;
+	}
+	
+	public int getFFTThreshold() {
+		return fftThreshold;
+	}
+	
+	/**
+	 * Fractionally differences the first n (log) values of x into y, 
+	 * y_N = sum_{l=0}^{min(N, W-1)} w_l x_{N-l}
+	 */
+	private void fractionalDifference(double[] x, int n, double[] y) {
+		
+		int w_length = f_weights.length;
+		if(w_length >= fftThreshold && n >= w_length) {
+			
+			if(convolution == null) {
+				convolution = new OverlapAddConvolution(f_weights);
+			}
+			convolution.convolve(x, n, y);
+			return;
+		}
+		
+		for(int N = 0; N < n; N++) {
+			
+			int filter_length = Math.min(N+1, w_length);
+			double sum = 0;
+			for (int l = 0; l < filter_length; l++) {
+				sum = sum + f_weights[l]*x[N - l];
+			}
+			y[N] = sum;
+		}
+	}
+	
+	/**
+	 * Transforms the first n raw values into y, (log) fractionally 
+	 * differenced, (log) differenced or only (log) transformed
+	 */
+	private void transformValues(double[] raw, int n, double[] y) {
+		
+		if(d < 1 && d > 0) {
+			
+			double[] x = new double[n];
+			for(int N = 0; N < n; N++) {
+				x[N] = baseTransform(raw[N]);
+			}
+			fractionalDifference(x, n, y);
+		}
+		else if(d == 1) {
+			
+			y[0] = 0.0;
+			for(int N = 1; N < n; N++) {
+				y[N] = baseTransform(raw[N]) - baseTransform(raw[N-1]);
+			}
+		}
+		else {
+			
+			for(int N = 0; N < n; N++) {
+				y[N] = baseTransform(raw[N]);
+			}
+		}
+	}
+	
+	/**
+     * Truncates the fractional difference weights to at most 
+     * length weights, on top of the truncation by the weight 
+     * threshold. The values already transformed are not changed, see
+     * {@link #adjustFractionalDifference(TimeSeries, double)}
+     * 
+     * @param length
+     *            Maximum number of weights, 0 for truncating 
+     *            only by the weight threshold
+     * @return 
+     *            This transform
+     */
+	public Transform setMaxWeightLength(int length) {
+		
+		this.maxWeightLength = Math.max(0, length);
+		computeFractionalDifferenceWeights(weight_threshold);
+		return this;
+	}
+	
+	public int getMaxWeightLength() {
+		return maxWeightLength;
+	}
+	
+	/**
+     * @return The number of fractional difference weights in use
+     */
+	public int getWeightLength() {
+		return (f_weights == null) ? 0 : f_weights.length;
+	}
+	
+	public double getFractionalDifference() {
+		return d;
+	}
+	
+	public boolean isLogTransform() {
+		return logTransform;
+	}
+	
+	/**
+     * Bound on the error made by truncating the fractional difference 
+     * weights, by the threshold and the maximum weight length. 
+     * 
+     * For 0 < d < 1 the weights after w_0 = 1 are all negative and sum
+     * to -1, so the absolute values of the weights left out sum to the 
+     * sum of the weights kept. A transformed value differs from the one 
+     * with the infinite filter by at most this bound times the 
+     * largest absolute (log) value left out of the filter. 
+     * For d = 0 and d = 1 there is no truncation and the bound is 0
+     * 
+     * @return 
+     *            The sum of the absolute values of the weights left out
+     */
+	public double getTruncationErrorBound() {
+		
+		if(!(d > 0 && d < 1)) {
+			return 0;
+		}
+		double sum = 0;
+		for(int k = 0; k < f_weights.length; k++) {
+			sum += f_weights[k];
+		}
+		return Math.abs(sum);
 	}
 
 	
@@ -125,27 +292,26 @@ public class Transform {
 				
 			if(d < 1 && d > 0) {
 			
-				double sum = 0;
-				int filter_length = 0;
-				int w_length = f_weights.length;
+				int n = anyseries.size();
+				double[] x = new double[n];
+				for(int N = 0; N < n; N++) {
+					x[N] = baseTransform(anyseries.get(N).getValue());
+				}
 				
-				for(int N = 0; N < anyseries.size(); N++) {
+				double[] y = new double[n];
+				fractionalDifference(x, n, y);
 				
-					filter_length = Math.min(N+1, w_length);	
-					sum = 0;
-					for (int l = 0; l < filter_length; l++) {
-						sum = sum + f_weights[l]*baseTransform(anyseries.get(N - l).getValue());
-					}
+				for(int N = 0; N < n; N++) {
 					
-					double[] values = new double[]{sum, anyseries.get(N).getValue()};
-					transformedSeries.add(new TimeSeriesEntry<double[]>(anyseries.get(N).getDateTime(), values));		
+					double[] values = new double[]{y[N], anyseries.get(N).getValue()};
+					transformedSeries.add(anyseries.get(N).withValue(values));		
 				}		
 				
 			}
 			else if(d == 1) {
 				
 				double[] values = new double[]{0.0, anyseries.get(0).getValue()};				
-				transformedSeries.add(0, new TimeSeriesEntry<double[]>(anyseries.get(0).getDateTime(), values));
+				transformedSeries.add(0, anyseries.get(0).withValue(values));
 				
 				for(int N = 1; N < anyseries.size(); N++) {
 					
@@ -153,7 +319,7 @@ public class Transform {
 							baseTransform(anyseries.get(N-1).getValue());
 					
 					values = new double[]{val, anyseries.get(N).getValue()};				
-					transformedSeries.add(new TimeSeriesEntry<double[]>(anyseries.get(N).getDateTime(), values));	
+					transformedSeries.add(anyseries.get(N).withValue(values));	
 					
 				}			
 			}
@@ -162,7 +328,7 @@ public class Transform {
 				for(int N = 0; N < anyseries.size(); N++) {
 					double val = baseTransform(anyseries.get(N).getValue());
 					double[] values = new double[]{val, anyseries.get(N).getValue()};				
-					transformedSeries.add(new TimeSeriesEntry<double[]>(anyseries.get(N).getDateTime(), values));	
+					transformedSeries.add(anyseries.get(N).withValue(values));	
 					
 				}					
 			}
@@ -190,41 +356,154 @@ public class Transform {
      */
 	
 	public void addValue(TimeSeries<double[]> timeSeries, double val, String date) {
+		addValue(timeSeries, val, TimeSeriesEntry.NO_TIME, date);
+	}
+	
+	/**
+     * Adds a new raw and transformed data to the referenced TimeSeries
+     * at the given epoch time 
+     * 
+     * @param timeSeries
+     *            The historical TimeSeries<double[]> transformed and raw 
+     *            nonstationary time series
+     * @param val
+     *           The new raw time series value
+     * @param time
+     *           The epoch milliseconds of the datetime stamp 
+     * @param date
+     *           The datetime stamp
+     */
+	public void addValue(TimeSeries<double[]> timeSeries, double val, long time, String date) {
 		
+		int N = timeSeries.size();
+		if(!isLoggedHistoryOf(timeSeries, N, (N > 0) ? timeSeries.get(N-1).getValue()[1] : 0)) {
+			
+			double[] raw = new double[Math.min(N, loggedCapacity())];
+			for(int i = 0; i < raw.length; i++) {
+				raw[i] = timeSeries.get(N - raw.length + i).getValue()[1];
+			}
+			reloadLoggedHistory(timeSeries, N, raw);
+		}
 		
-		timeSeries.add(new TimeSeriesEntry<double[]>(date, new double[]{0, val}));
+		double[] values = new double[]{0, val};
+		timeSeries.add(new TimeSeriesEntry<double[]>(time, date, values));
+		values[0] = transformLatest(val, timeSeries.size());
+	}
+	
+	/**
+     * Adds a new raw and transformed value to the columns of a target 
+     * series, the transformed value in column 0 and the raw value in 
+     * column 1. Nothing is allocated once the history of the latest 
+     * transformed values is cached for this series
+     * 
+     * @param timeSeries
+     *            The historical transformed and raw values
+     * @param val
+     *           The new raw time series value
+     * @param time
+     *           The epoch milliseconds of the datetime stamp 
+     * @param date
+     *           The datetime stamp
+     */
+	public void addValue(ColumnarTimeSeries timeSeries, double val, long time, String date) {
 		
 		int N = timeSeries.size();
+		if(!isLoggedHistoryOf(timeSeries, N, (N > 0) ? timeSeries.getValue(N-1, 1) : 0)) {
+			
+			int n = Math.min(N, loggedCapacity());
+			reloadLoggedHistory(timeSeries, N, timeSeries.copyColumn(1, N - n, N));
+		}
 		
-		if(N > 1) {
+		timeSeries.add(time, date, 0, val);
+		N = timeSeries.size();
+		timeSeries.setValue(N-1, 0, transformLatest(val, N));
+	}
+	
+	/**
+	 * Adds the raw value of the observation just added to the cached
+	 * history and returns its transformed value, 0 for the first one
+	 */
+	private double transformLatest(double val, int N) {
+		
+		double x = baseTransform(val);
+		pushLogged(x);
+		loggedSize = N;
+		loggedLastRaw = val;
 		
+		if(N > 1) {
+			
 			if(d < 1 && d > 0) {
-				
-				double sum = 0;
-				int w_length = f_weights.length;
-				int filter_length = Math.min(N, w_length);
-				
-			    sum = 0;
-				for (int l = 0; l < filter_length; l++) {
-						sum = sum + f_weights[l]*baseTransform(timeSeries.get(N - l - 1).getValue()[1]);
-				}			
-				timeSeries.get(N-1).getValue()[0] = sum;				
+				return convolveLogged(Math.min(N, f_weights.length));
 			}
 			else if(d == 1) {
-				
-	
-					double v = baseTransform(timeSeries.get(N - 1).getValue()[1]) - 
-							baseTransform(timeSeries.get(N - 2).getValue()[1]);
-					
-					timeSeries.get(N-1).getValue()[0] = v;			
+				return x - logged[(loggedHead < 2) ? loggedHead + logged.length - 2 : loggedHead - 2];
 			}
-			else {
-				
-				double v = baseTransform(timeSeries.get(N - 1).getValue()[1]);			
-				timeSeries.get(N-1).getValue()[0] = v;
-										
-			}	
+			return x;
 		}
+		return 0;
+	}
+	
+	/**
+	 * The cached history is valid if the latest observation of the 
+	 * series is still the one added last by this transform. Observations 
+	 * chopped from the beginning of the series are fine, as at most the 
+	 * latest size() values are used
+	 */
+	private boolean isLoggedHistoryOf(Object timeSeries, int N, double lastRaw) {
+		
+		return loggedSeries == timeSeries && N > 0 && N <= loggedSize && loggedCount >= Math.min(N, logged.length)
+				&& Double.doubleToLongBits(lastRaw) == Double.doubleToLongBits(loggedLastRaw);
+	}
+	
+	private int loggedCapacity() {
+		return Math.max(2, (f_weights == null) ? 0 : f_weights.length);
+	}
+	
+	/**
+	 * Transforms the latest raw values of the series of size N into the cached 
+	 * history. Only done once for a series, or after the weights have changed
+	 */
+	private void reloadLoggedHistory(Object timeSeries, int N, double[] raw) {
+		
+		int capacity = loggedCapacity();
+		if(logged == null || logged.length != capacity) {
+			logged = new double[capacity];
+		}
+		loggedHead = 0;
+		loggedCount = 0;
+		
+		for(int i = 0; i < raw.length; i++) {
+			pushLogged(baseTransform(raw[i]));
+		}
+		loggedSeries = timeSeries;
+		loggedSize = N;
+		loggedLastRaw = (raw.length > 0) ? raw[raw.length - 1] : 0;
+	}
+	
+	private void pushLogged(double x) {
+		
+		logged[loggedHead] = x;
+		loggedHead = (loggedHead + 1 == logged.length) ? 0 : loggedHead + 1;
+		loggedCount = Math.min(loggedCount + 1, logged.length);
+	}
+	
+	/**
+	 * Sum of f_weights[l] times the lth latest cached 
+	 * value for l < filter_length, in the order of the
+	 * direct convolution
+	 */
+	private double convolveLogged(int filter_length) {
+		
+		double sum = 0;
+		int first = Math.min(filter_length, loggedHead);
+		for (int l = 0; l < first; l++) {
+			sum = sum + f_weights[l]*logged[loggedHead - 1 - l];
+		}
+		int wrap = logged.length + loggedHead - 1;
+		for (int l = first; l < filter_length; l++) {
+			sum = sum + f_weights[l]*logged[wrap - l];
+		}
+		return sum;
 	}
 
 	/**
@@ -246,7 +525,7 @@ public class Transform {
 		for(int N = 0; N < anyseries.size(); N++) {
 			
 			double val = baseTransform(anyseries.get(N).getValue());			
-			transformedSeries.add(new TimeSeriesEntry<Double>(anyseries.get(N).getDateTime(), val));	
+			transformedSeries.add(anyseries.get(N).withValue(val));	
 			
 		}
 		return transformedSeries;
@@ -289,12 +568,19 @@ public class Transform {
      *            
      */
 	public void addPrice(TimeSeries<Double> timeSeries, double val, String date) {
-		timeSeries.add(new TimeSeriesEntry<Double>(date, baseTransform(val)));
+		addPrice(timeSeries, val, TimeSeriesEntry.NO_TIME, date);
+	}
+	
+	public void addPrice(TimeSeries<Double> timeSeries, double val, long time, String date) {
+		timeSeries.add(new TimeSeriesEntry<Double>(time, date, baseTransform(val)));
 	}
 	
 	/**
 	 * Adjusts the fractional differenced series in this 
 	 * 
+	 * The transformed values are written in place into the value
+	 * arrays of the entries. With at least getFFTThreshold() weights,
+	 * the series is differenced with an FFT overlap-add convolution
 	 * 
 	 * @param anySeries
 	 * @param d
@@ -304,49 +590,46 @@ public class Transform {
 		this.d = d;
 		computeFractionalDifferenceWeights(weight_threshold);
 		
-		if(d < 1 && d > 0) {
-			
-			double sum = 0;
-			int filter_length = 0;
-			int w_length = f_weights.length;
-			
-			for(int N = 0; N < anySeries.size(); N++) {
-			
-				filter_length = Math.min(N+1, w_length);	
-				sum = 0;
-				for (int l = 0; l < filter_length; l++) {
-					sum = sum + f_weights[l]*baseTransform(anySeries.get(N - l).getValue()[1]);
-				}
-				
-				double[] values = new double[]{sum, anySeries.get(N).getValue()[1]};
-				anySeries.set(N, new TimeSeriesEntry<double[]>(anySeries.get(N).getDateTime(), values));		
-			}		
-			
+		int n = anySeries.size();
+		if(n == 0) {
+			return;
 		}
-		else if(d == 1) {
-			
-			
-			double[] values = new double[]{0.0, anySeries.get(0).getValue()[1]};				
-			anySeries.set(0, new TimeSeriesEntry<double[]>(anySeries.get(0).getDateTime(), values));
-			
-			for(int N = 1; N < anySeries.size(); N++) {
-				
-				double val = baseTransform(anySeries.get(N).getValue()[1]) - 
-						baseTransform(anySeries.get(N-1).getValue()[1]);
-				
-				values = new double[]{val, anySeries.get(N).getValue()[1]};				
-				anySeries.set(N, new TimeSeriesEntry<double[]>(anySeries.get(N).getDateTime(), values));
-				
-			}			
+		
+		double[] raw = new double[n];
+		for(int N = 0; N < n; N++) {
+			raw[N] = anySeries.get(N).getValue()[1];
+		}
+		double[] y = new double[n];
+		transformValues(raw, n, y);
+		
+		for(int N = 0; N < n; N++) {
+			anySeries.get(N).getValue()[0] = y[N];
+		}
+	}
+	
+	/**
+	 * Adjusts the fractional differenced values in column 0 of the
+	 * columns of a target series, from the raw values in column 1
+	 * 
+	 * @param anySeries The transformed and raw values
+	 * @param d New fractional difference exponent
+	 */
+	public void adjustFractionalDifference(ColumnarTimeSeries anySeries, double d) {
+		
+		this.d = d;
+		computeFractionalDifferenceWeights(weight_threshold);
+		
+		int n = anySeries.size();
+		if(n == 0) {
+			return;
+		}
+		
+		double[] y = new double[n];
+		transformValues(anySeries.copyColumn(1, 0, n), n, y);
+		
+		for(int N = 0; N < n; N++) {
+			anySeries.setValue(N, 0, y[N]);
 		}
-		else {
-			
-			for(int N = 0; N < anySeries.size(); N++) {				
-				double val = baseTransform(anySeries.get(N).getValue()[1]);	
-				double[] values = new double[]{val, anySeries.get(N).getValue()[1]};				
-				anySeries.set(N, new TimeSeriesEntry<double[]>(anySeries.get(N).getDateTime(), values));				
-			}					
-		}		
 	}
 
 
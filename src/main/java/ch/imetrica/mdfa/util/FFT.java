@@ -0,0 +1,248 @@
+package ch.imetrica.mdfa.util;
+
+/**
+ *
+ * A fast Fourier transform of arbitrary length n working directly
+ * on primitive real and imaginary double arrays.
+ *
+ * For n a power of two, an in-place iterative radix-2 transform is used.
+ * For any other n, the transform is computed with Bluestein's
+ * chirp-z algorithm which rewrites the dft of length n as a convolution
+ * that is evaluated with a radix-2 transform of length m >= 2n-1.
+ * In both cases the cost is O(n log n).
+ *
+ * The forward transform is defined as
+ * <code>X_k = sum_{j=0}^{n-1} x_j exp(-2 pi i j k/n)</code>
+ * and the inverse transform includes the 1/n normalization.
+ *
+ * The twiddle factors and chirp are computed once in the constructor,
+ * so an FFT object should be reused for transforms of the same length.
+ * An FFT object holds scratch buffers and is therefore not thread-safe.
+ */
+public class FFT {
+
+	private final int n;
+	private final boolean powerOfTwo;
+
+	/* radix-2 transform length and twiddles */
+	private final int m;
+	private final double[] cosTable;
+	private final double[] sinTable;
+
+	/* Bluestein chirp and transformed kernel */
+	private double[] chirpRe;
+	private double[] chirpIm;
+	private double[] kernelRe;
+	private double[] kernelIm;
+	private double[] workRe;
+	private double[] workIm;
+
+	/**
+	 * Creates an FFT of length n and precomputes
+	 * all trigonometric tables
+	 *
+	 * @param n
+	 *    Length of the transform, must be positive
+	 */
+	public FFT(int n) {
+
+		if(n < 1) {
+			throw new IllegalArgumentException("FFT length must be positive: " + n);
+		}
+
+		this.n = n;
+		this.powerOfTwo = isPowerOfTwo(n);
+		this.m = powerOfTwo ? n : nextPowerOfTwo(2*n - 1);
+
+		cosTable = new double[m/2];
+		sinTable = new double[m/2];
+		for(int k = 0; k < m/2; k++) {
+			cosTable[k] = Math.cos(2.0*Math.PI*k/m);
+			sinTable[k] = Math.sin(2.0*Math.PI*k/m);
+		}
+
+		if(!powerOfTwo) {
+			initiateBluestein();
+		}
+	}
+
+	private void initiateBluestein() {
+
+		chirpRe = new double[n];
+		chirpIm = new double[n];
+
+		/* exp(-pi i k^2/n), with k^2 reduced mod 2n to keep the angle small */
+		long twoN = 2L*n;
+		for(int k = 0; k < n; k++) {
+
+			long kk = ((long)k*k) % twoN;
+			double angle = Math.PI*kk/n;
+			chirpRe[k] = Math.cos(angle);
+			chirpIm[k] = -Math.sin(angle);
+		}
+
+		kernelRe = new double[m];
+		kernelIm = new double[m];
+		kernelRe[0] = chirpRe[0];
+		kernelIm[0] = -chirpIm[0];
+		for(int k = 1; k < n; k++) {
+
+			kernelRe[k] = kernelRe[m-k] = chirpRe[k];
+			kernelIm[k] = kernelIm[m-k] = -chirpIm[k];
+		}
+		radix2(kernelRe, kernelIm);
+
+		workRe = new double[m];
+		workIm = new double[m];
+	}
+
+	/**
+	 * Length of this transform
+	 * @return n
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Computes the forward transform in place
+	 *
+	 * @param re
+	 *    Real part of length n, overwritten with the real part of the transform
+	 * @param im
+	 *    Imaginary part of length n, overwritten with the imaginary part
+	 *    of the transform
+	 */
+	public void forward(double[] re, double[] im) {
+
+		if(re.length < n || im.length < n) {
+			throw new IllegalArgumentException("Arrays must be of length at least " + n);
+		}
+
+		if(powerOfTwo) {
+			radix2(re, im);
+		}
+		else {
+			bluestein(re, im);
+		}
+	}
+
+	/**
+	 * Computes the normalized inverse transform in place
+	 *
+	 * @param re
+	 *    Real part of length n
+	 * @param im
+	 *    Imaginary part of length n
+	 */
+	public void inverse(double[] re, double[] im) {
+
+		for(int k = 0; k < n; k++) {
+			im[k] = -im[k];
+		}
+
+		forward(re, im);
+
+		double scale = 1.0/n;
+		for(int k = 0; k < n; k++) {
+			re[k] = re[k]*scale;
+			im[k] = -im[k]*scale;
+		}
+	}
+
+
+	private void bluestein(double[] re, double[] im) {
+
+		for(int k = 0; k < n; k++) {
+
+			workRe[k] = re[k]*chirpRe[k] - im[k]*chirpIm[k];
+			workIm[k] = re[k]*chirpIm[k] + im[k]*chirpRe[k];
+		}
+		for(int k = n; k < m; k++) {
+			workRe[k] = 0;
+			workIm[k] = 0;
+		}
+
+		radix2(workRe, workIm);
+
+		for(int k = 0; k < m; k++) {
+
+			double r = workRe[k]*kernelRe[k] - workIm[k]*kernelIm[k];
+			double i = workRe[k]*kernelIm[k] + workIm[k]*kernelRe[k];
+
+			/* conjugate for the inverse transform */
+			workRe[k] = r;
+			workIm[k] = -i;
+		}
+
+		radix2(workRe, workIm);
+
+		double scale = 1.0/m;
+		for(int k = 0; k < n; k++) {
+
+			double r = workRe[k]*scale;
+			double i = -workIm[k]*scale;
+
+			re[k] = r*chirpRe[k] - i*chirpIm[k];
+			im[k] = r*chirpIm[k] + i*chirpRe[k];
+		}
+	}
+
+
+	/**
+	 * In place iterative radix-2 decimation in time
+	 * transform of length m
+	 */
+	private void radix2(double[] re, double[] im) {
+
+		int levels = Integer.numberOfTrailingZeros(m);
+
+		for(int i = 0; i < m; i++) {
+
+			int j = Integer.reverse(i) >>> (32 - levels);
+			if(levels == 0) {
+				j = 0;
+			}
+			if(j > i) {
+
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+
+		for(int size = 2; size <= m; size *= 2) {
+
+			int half = size/2;
+			int step = m/size;
+			for(int i = 0; i < m; i += size) {
+
+				for(int j = i, k = 0; j < i + half; j++, k += step) {
+
+					int l = j + half;
+					double tRe =  re[l]*cosTable[k] + im[l]*sinTable[k];
+					double tIm = -re[l]*sinTable[k] + im[l]*cosTable[k];
+
+					re[l] = re[j] - tRe;
+					im[l] = im[j] - tIm;
+					re[j] = re[j] + tRe;
+					im[j] = im[j] + tIm;
+				}
+			}
+		}
+	}
+
+
+	public static boolean isPowerOfTwo(int n) {
+		return n > 0 && (n & (n - 1)) == 0;
+	}
+
+	public static int nextPowerOfTwo(int n) {
+
+		int p = 1;
+		while(p < n) {
+			p = p << 1;
+		}
+		return p;
+	}
+
+}
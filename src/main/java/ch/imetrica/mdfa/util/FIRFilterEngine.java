@@ -0,0 +1,399 @@
+package ch.imetrica.mdfa.util;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * Applies causal FIR filters to a series stored in a primitive array,
+ * <code>y_i = sum_{l=0}^{min(i, L-1)} b_l x_{i-l}</code>,
+ * which is how the signal series compute their signal from the target
+ * series. The start of the series is filtered with the truncated filter.
+ *
+ * There are three paths:
+ *
+ * - a direct convolution on the primitive arrays, for short filters.
+ *   It sums in the same order as the signal series used to, so the
+ *   values are the same
+ * - the same direct convolution cut into blocks of the series that are
+ *   filtered in parallel on a {@link ForkJoinPool}, once the total
+ *   work M*N*L of the M filters is large enough
+ * - an FFT overlap-add convolution ({@link OverlapAddConvolution}) for
+ *   filters of at least fftThreshold coefficients, with the filters
+ *   computed in parallel. As the transforms of an FFT of length F
+ *   about 4L have to be set up for each filter, the FFT is only used when
+ *   fftCost*(n + 2F)*log2(F) is less than the n*L multiplications of the
+ *   direct path, which it is for long series and long filters
+ *
+ * The engine only holds its settings. The default engine of
+ * {@link #getDefault()} can not be changed and is shared by all the 
+ * signal series, other settings are set on a new engine, which is given
+ * to a series with its setFilterEngine and can be shared by any number
+ * of threads once it is set up.
+ */
+public class FIRFilterEngine {
+
+	/** Filter length from which the FFT path is used */
+	public static final int DEFAULT_FFT_THRESHOLD = 64;
+
+	/** Cost of the FFT path per value and FFT stage relative to a direct multiplication */
+	public static final double DEFAULT_FFT_COST = 6.0;
+
+	/** Number of multiplications from which the direct path runs in parallel */
+	public static final long DEFAULT_PARALLEL_THRESHOLD = 1L << 20;
+
+	private static final int BLOCK = 512;
+	private static final FIRFilterEngine DEFAULT = new FIRFilterEngine(false);
+
+	private final boolean mutable;
+	private ForkJoinPool pool;
+	private int fftThreshold = DEFAULT_FFT_THRESHOLD;
+	private double fftCost = DEFAULT_FFT_COST;
+	private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+
+	/**
+	 * An engine with the default settings, to be changed with the setters
+	 */
+	public FIRFilterEngine() {
+		this(true);
+	}
+
+	private FIRFilterEngine(boolean mutable) {
+		this.mutable = mutable;
+	}
+
+	/**
+	 * The engine with the default settings used by the signal series
+	 * without an engine of their own, the setters of which throw an
+	 * IllegalStateException
+	 * @return The shared default engine
+	 */
+	public static FIRFilterEngine getDefault() {
+		return DEFAULT;
+	}
+
+
+	/**
+	 * Sets the pool of the parallel paths. By default
+	 * the common fork-join pool is used
+	 *
+	 * @param pool
+	 *    A fork-join pool
+	 * @return
+	 *    This engine
+	 */
+	public FIRFilterEngine setForkJoinPool(ForkJoinPool pool) {
+
+		checkMutable();
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * Sets the filter length from which filters may be applied with
+	 * the FFT. The FFT is only used for series at least as long as the
+	 * filter, and when it is cheaper than the direct path (see {@link #setFFTCost(double)})
+	 *
+	 * @param threshold
+	 *    Minimum filter length, Integer.MAX_VALUE to always filter directly
+	 * @return
+	 *    This engine
+	 */
+	public FIRFilterEngine setFFTThreshold(int threshold) {
+
+		checkMutable();
+		this.fftThreshold = threshold;
+		return this;
+	}
+
+	/**
+	 * Sets the cost of the FFT path per value and FFT stage, relative to
+	 * one multiplication of the direct path, with which the engine
+	 * decides whether a filter of at least fftThreshold coefficients
+	 * is applied with the FFT
+	 *
+	 * @param cost
+	 *    Relative cost, 0 to always use the FFT from fftThreshold on
+	 * @return
+	 *    This engine
+	 */
+	public FIRFilterEngine setFFTCost(double cost) {
+
+		checkMutable();
+		this.fftCost = cost;
+		return this;
+	}
+
+	/**
+	 * Sets the number of multiplications M*N*L from which the
+	 * direct path is parallelized over blocks of the series
+	 *
+	 * @param threshold
+	 *    Minimum number of multiplications, Long.MAX_VALUE to stay sequential
+	 * @return
+	 *    This engine
+	 */
+	public FIRFilterEngine setParallelThreshold(long threshold) {
+
+		checkMutable();
+		this.parallelThreshold = threshold;
+		return this;
+	}
+
+	private void checkMutable() {
+
+		if(!mutable) {
+			throw new IllegalStateException("The default engine can not be changed, set up a new FIRFilterEngine");
+		}
+	}
+
+	public int getFFTThreshold() {
+		return fftThreshold;
+	}
+
+	public double getFFTCost() {
+		return fftCost;
+	}
+
+	public long getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+
+	/**
+	 * Filters the first n values of x with one filter
+	 *
+	 * @param x
+	 *    The input series
+	 * @param n
+	 *    Number of values to filter
+	 * @param b
+	 *    The filter coefficients b_0, ..., b_{L-1}
+	 * @return
+	 *    The filtered values y_0, ..., y_{n-1}
+	 */
+	public double[] filter(double[] x, int n, double[] b) {
+		return filter(x, n, new double[][]{b})[0];
+	}
+
+	/**
+	 * Filters the first n values of x with each of the filters
+	 *
+	 * @param x
+	 *    The input series
+	 * @param n
+	 *    Number of values to filter
+	 * @param filters
+	 *    The M filters
+	 * @return
+	 *    The filtered values, M arrays of length n
+	 */
+	public double[][] filter(double[] x, int n, List<double[]> filters) {
+		return filter(x, n, filters.toArray(new double[filters.size()][]));
+	}
+
+	/**
+	 * Filters the first n values of x with each of the filters
+	 *
+	 * @param x
+	 *    The input series
+	 * @param n
+	 *    Number of values to filter
+	 * @param filters
+	 *    The M filters
+	 * @return
+	 *    The filtered values, M arrays of length n
+	 */
+	public double[][] filter(double[] x, int n, double[][] filters) {
+		return filter(x, 0, n, filters);
+	}
+
+	/**
+	 * Filters the first n values of x with each of the filters and keeps
+	 * the filtered values from index start on. The values of x before
+	 * start are only used as the history of the filters
+	 *
+	 * @param x
+	 *    The input series
+	 * @param start
+	 *    Index of the first filtered value that is needed
+	 * @param n
+	 *    Number of values to filter
+	 * @param filters
+	 *    The M filters
+	 * @return
+	 *    The filtered values y_start, ..., y_{n-1}, M arrays of length n - start
+	 */
+	public double[][] filter(double[] x, int start, int n, double[][] filters) {
+
+		if(x.length < n || start < 0 || start > n) {
+			throw new IllegalArgumentException("Input must be of length at least " + n + " and start in [0, n]: " + start);
+		}
+
+		int M = filters.length;
+		double[][] y = new double[M][n - start];
+
+		boolean fft = false;
+		long work = 0;
+		for(int m = 0; m < M; m++) {
+
+			int L = filters[m].length;
+			fft |= useFFT(L, start, n);
+			work += (long)(n - start)*Math.min(L, n);
+		}
+
+		if(fft) {
+
+			FFTTask task = new FFTTask(x, start, n, filters, y, 0, M);
+			if(M > 1) {
+				getPool().invoke(task);
+			}
+			else {
+				task.compute();
+			}
+		}
+		else if(work >= parallelThreshold && n - start > BLOCK) {
+			getPool().invoke(new DirectTask(x, filters, y, start, start, n));
+		}
+		else {
+
+			for(int m = 0; m < M; m++) {
+				direct(x, filters[m], y[m], start, start, n);
+			}
+		}
+		return y;
+	}
+
+	/**
+	 * Whether the FFT of the whole series is cheaper than
+	 * the direct convolution of the outputs [start, n)
+	 */
+	private boolean useFFT(int L, int start, int n) {
+
+		if(L < fftThreshold || n < L) {
+			return false;
+		}
+		int F = FFT.nextPowerOfTwo(4*L);
+		double stages = 31 - Integer.numberOfLeadingZeros(F);
+		return fftCost*(n + 2.0*F)*stages < (double)(n - start)*L;
+	}
+
+	/**
+	 * The direct convolution for the outputs [from, to),
+	 * output i being stored in y[i - shift]
+	 */
+	private static void direct(double[] x, double[] b, double[] y, int shift, int from, int to) {
+
+		int L = b.length;
+		for(int i = from; i < to; i++) {
+
+			int filter_length = Math.min(i+1, L);
+			double sum = 0;
+			for(int l = 0; l < filter_length; l++) {
+				sum = sum + b[l]*x[i - l];
+			}
+			y[i - shift] = sum;
+		}
+	}
+
+	private ForkJoinPool getPool() {
+		return (pool == null) ? ForkJoinPool.commonPool() : pool;
+	}
+
+
+	/**
+	 * Filters the outputs [from, to) with all the filters, splitting
+	 * the range in half until blocks of at most BLOCK outputs are left
+	 */
+	private static class DirectTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] x;
+		private final double[][] filters;
+		private final double[][] y;
+		private final int shift;
+		private final int from;
+		private final int to;
+
+		DirectTask(double[] x, double[][] filters, double[][] y, int shift, int from, int to) {
+
+			this.x = x;
+			this.filters = filters;
+			this.y = y;
+			this.shift = shift;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if(to - from > BLOCK) {
+
+				int mid = (from + to) >>> 1;
+				invokeAll(new DirectTask(x, filters, y, shift, from, mid), new DirectTask(x, filters, y, shift, mid, to));
+				return;
+			}
+			for(int m = 0; m < filters.length; m++) {
+				direct(x, filters[m], y[m], shift, from, to);
+			}
+		}
+	}
+
+	/**
+	 * Filters the series with the filters [from, to), each long
+	 * filter with its own overlap-add convolution
+	 */
+	private class FFTTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] x;
+		private final int start;
+		private final int n;
+		private final double[][] filters;
+		private final double[][] y;
+		private final int from;
+		private final int to;
+
+		FFTTask(double[] x, int start, int n, double[][] filters, double[][] y, int from, int to) {
+
+			this.x = x;
+			this.start = start;
+			this.n = n;
+			this.filters = filters;
+			this.y = y;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if(to - from > 1) {
+
+				int mid = (from + to) >>> 1;
+				invokeAll(new FFTTask(x, start, n, filters, y, from, mid), new FFTTask(x, start, n, filters, y, mid, to));
+				return;
+			}
+			for(int m = from; m < to; m++) {
+
+				if(!useFFT(filters[m].length, start, n)) {
+					direct(x, filters[m], y[m], start, start, n);
+				}
+				else if(start == 0) {
+					new OverlapAddConvolution(filters[m]).convolve(x, n, y[m]);
+				}
+				else {
+
+					double[] all = new double[n];
+					new OverlapAddConvolution(filters[m]).convolve(x, n, all);
+					System.arraycopy(all, start, y[m], 0, n - start);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package ch.imetrica.mdfa.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * A process-wide cache of immutable frequency domain objects, such 
+ * as the trigonometric basis of the customization, the target filter 
+ * and the smoothing weights. MDFA solvers sharing the same in-sample 
+ * length, filter length, lag and cutoffs then share one copy of these 
+ * objects instead of each computing and holding their own. 
+ * 
+ * Entries are keyed by a kind name and the parameters that 
+ * define the object. The cache is bounded by a maximum number of 
+ * entries, after which the least recently used entry is evicted. 
+ * All methods are thread-safe.
+ * 
+ * Objects stored in the cache are shared, so arrays obtained 
+ * from the cache must never be modified.
+ */
+public final class FrequencyBasisCache {
+
+	private static int maximumSize = 128;
+	private static long hits = 0;
+	private static long misses = 0;
+	
+	private static final LinkedHashMap<List<Object>, Object> cache = 
+			new LinkedHashMap<List<Object>, Object>(16, .75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+			return size() > maximumSize;
+		}
+	};
+	
+	private FrequencyBasisCache() {}
+	
+	
+	/**
+	 * Gets the cached object for the given key
+	 * 
+	 * @param type 
+	 *    The type of the cached object
+	 * @param key
+	 *    The kind of object followed by its defining parameters
+	 * @return
+	 *    The cached object or null if not in the cache
+	 */
+	public static synchronized <T> T get(Class<T> type, Object... key) {
+		
+		Object value = cache.get(Arrays.asList(key));
+		if(value == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return type.cast(value);
+	}
+	
+	/**
+	 * Adds the object to the cache unless an object with the same 
+	 * key has been added in the meantime, in which case that object 
+	 * is returned so that all users share the same copy
+	 * 
+	 * @param value
+	 *    The newly computed object
+	 * @param key
+	 *    The kind of object followed by its defining parameters
+	 * @return
+	 *    The cached object
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized <T> T putIfAbsent(T value, Object... key) {
+		
+		List<Object> k = Arrays.asList(key);
+		Object current = cache.get(k);
+		if(current != null) {
+			return (T) current;
+		}
+		cache.put(k, value);
+		return value;
+	}
+	
+	/**
+	 * Sets the maximum number of cached objects. Least recently 
+	 * used objects are evicted once the size is exceeded
+	 * 
+	 * @param size 
+	 *    Maximum number of objects, at least 1
+	 */
+	public static synchronized void setMaximumSize(int size) {
+		
+		maximumSize = Math.max(1, size);
+		while(cache.size() > maximumSize) {
+			cache.remove(cache.keySet().iterator().next());
+		}
+	}
+	
+	public static synchronized int getMaximumSize() {
+		return maximumSize;
+	}
+	
+	public static synchronized int size() {
+		return cache.size();
+	}
+	
+	public static synchronized long getHits() {
+		return hits;
+	}
+	
+	public static synchronized long getMisses() {
+		return misses;
+	}
+	
+	public static synchronized void clear() {
+		
+		cache.clear();
+		hits = 0;
+		misses = 0;
+	}
+	
+}
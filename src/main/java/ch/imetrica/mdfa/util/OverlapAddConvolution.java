@@ -0,0 +1,151 @@
+package ch.imetrica.mdfa.util;
+
+/**
+ *
+ * The causal convolution of a series with a fixed set of weights,
+ * <code>y_n = sum_{l=0}^{min(n, W-1)} w_l x_{n-l}</code>,
+ * computed with the overlap-add method: the series is cut into blocks of
+ * length B, each block is convolved with the weights by a radix-2
+ * {@link FFT} of length M >= B + W - 1 and the overlapping tails of
+ * the block convolutions are added up. This costs O(N log M) instead of
+ * the O(N W) of the direct convolution.
+ *
+ * The weights are real, so two blocks are convolved with one complex
+ * transform, one in the real and one in the imaginary part.
+ *
+ * The transformed weights and the scratch buffers are kept, so an
+ * OverlapAddConvolution should be reused for series convolved with the
+ * same weights. It is not thread-safe.
+ */
+public class OverlapAddConvolution {
+
+	private final int length;
+	private final int fftSize;
+	private final int blockSize;
+	private final FFT fft;
+
+	private final double[] weightRe;
+	private final double[] weightIm;
+	private final double[] re;
+	private final double[] im;
+
+
+	/**
+	 * Creates the convolution with an FFT length of
+	 * about four times the number of weights
+	 *
+	 * @param weights
+	 *    The weights w_0, ..., w_{W-1}
+	 */
+	public OverlapAddConvolution(double[] weights) {
+		this(weights, FFT.nextPowerOfTwo(4*weights.length));
+	}
+
+	/**
+	 * Creates the convolution with the given FFT length
+	 *
+	 * @param weights
+	 *    The weights w_0, ..., w_{W-1}
+	 * @param fftSize
+	 *    Length of the FFT, a power of two of at least the number of weights.
+	 *    The series is cut into blocks of fftSize - W + 1 values
+	 */
+	public OverlapAddConvolution(double[] weights, int fftSize) {
+
+		if(weights.length < 1) {
+			throw new IllegalArgumentException("At least one weight is needed");
+		}
+		if(!FFT.isPowerOfTwo(fftSize) || fftSize < weights.length) {
+			throw new IllegalArgumentException("FFT length must be a power of two of at least " + weights.length + ": " + fftSize);
+		}
+
+		this.length = weights.length;
+		this.fftSize = fftSize;
+		this.blockSize = fftSize - length + 1;
+		this.fft = new FFT(fftSize);
+
+		weightRe = new double[fftSize];
+		weightIm = new double[fftSize];
+		System.arraycopy(weights, 0, weightRe, 0, length);
+		fft.forward(weightRe, weightIm);
+
+		re = new double[fftSize];
+		im = new double[fftSize];
+	}
+
+
+	/**
+	 * Convolves the first n values of x with the weights
+	 *
+	 * @param x
+	 *    The series
+	 * @param n
+	 *    Number of values of x to convolve
+	 * @param y
+	 *    Output of length at least n, overwritten with
+	 *    the convolution y_0, ..., y_{n-1}
+	 */
+	public void convolve(double[] x, int n, double[] y) {
+
+		if(x.length < n || y.length < n) {
+			throw new IllegalArgumentException("Arrays must be of length at least " + n);
+		}
+
+		for(int i = 0; i < n; i++) {
+			y[i] = 0;
+		}
+
+		for(int start = 0; start < n; start += 2*blockSize) {
+
+			int second = start + blockSize;
+			int firstLength = Math.min(blockSize, n - start);
+			int secondLength = Math.max(0, Math.min(blockSize, n - second));
+
+			for(int j = 0; j < fftSize; j++) {
+
+				re[j] = (j < firstLength) ? x[start + j] : 0;
+				im[j] = (j < secondLength) ? x[second + j] : 0;
+			}
+
+			fft.forward(re, im);
+			for(int j = 0; j < fftSize; j++) {
+
+				double r = re[j]*weightRe[j] - im[j]*weightIm[j];
+				double m = re[j]*weightIm[j] + im[j]*weightRe[j];
+				re[j] = r;
+				im[j] = m;
+			}
+			fft.inverse(re, im);
+
+			int end = Math.min(fftSize, n - start);
+			for(int j = 0; j < end; j++) {
+				y[start + j] += re[j];
+			}
+			end = Math.min(fftSize, n - second);
+			for(int j = 0; j < end; j++) {
+				y[second + j] += im[j];
+			}
+		}
+	}
+
+	/**
+	 * @return Number of weights
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return Length of the FFT
+	 */
+	public int getFFTSize() {
+		return fftSize;
+	}
+
+	/**
+	 * @return Number of values of the series in each block
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+}
@@ -0,0 +1,182 @@
+package ch.imetrica.mdfa.util;
+
+import java.util.concurrent.Phaser;
+
+/**
+ *
+ * A fixed pool of worker threads that runs one task per index
+ * i = 0, ..., n-1 and returns once all of them are done, as used by the
+ * multivariate series to update their series in parallel on each new
+ * observation.
+ *
+ * The indices are cut into one contiguous stripe per thread, the calling
+ * thread running the first stripe itself, so each index is always run by
+ * the same thread as long as n does not change. The only coordination
+ * per run is a {@link Phaser} that the caller and the workers pass twice,
+ * once to start the run and once when it is done, so a run does not
+ * allocate. The workers are daemon threads that wait on the phaser
+ * between runs, until {@link #shutdown()} is called. The owner of a pool
+ * must shut it down once it is no longer used, otherwise its workers
+ * wait forever.
+ *
+ * A pool runs one task at a time: {@link #run(int, Task)} must not be
+ * called by several threads at once.
+ */
+public class PhasedWorkerPool {
+
+	/**
+	 * The task run for each index
+	 */
+	public interface Task {
+
+		void run(int i) throws Exception;
+	}
+
+	private final int nthreads;
+	private final Phaser phaser;
+	private final Thread[] workers;
+
+	private Task task;
+	private int count;
+	private volatile Exception failure;
+	private volatile boolean shutdown = false;
+
+
+	/**
+	 * Starts a pool of nthreads threads including the calling thread,
+	 * so nthreads-1 workers are started
+	 *
+	 * @param nthreads
+	 *    Number of threads, at least 1
+	 */
+	public PhasedWorkerPool(int nthreads) {
+
+		if(nthreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed: " + nthreads);
+		}
+		this.nthreads = nthreads;
+		this.phaser = new Phaser(nthreads);
+		this.workers = new Thread[nthreads - 1];
+
+		for(int w = 0; w < workers.length; w++) {
+
+			final int stripe = w + 1;
+			workers[w] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(stripe);
+				}
+			}, "phased-worker-" + stripe);
+			workers[w].setDaemon(true);
+			workers[w].start();
+		}
+	}
+
+	/**
+	 * @return The number of threads including the calling thread
+	 */
+	public int getNumberThreads() {
+		return nthreads;
+	}
+
+	/**
+	 * Runs task for the indices 0, ..., n-1 and waits for all of them
+	 *
+	 * @param n
+	 *    Number of indices
+	 * @param task
+	 *    The task
+	 * @throws Exception
+	 *    The first exception thrown by the task, after all
+	 *    the indices have been run
+	 */
+	public void run(int n, Task task) throws Exception {
+
+		if(shutdown) {
+			throw new IllegalStateException("The pool has been shut down");
+		}
+		if(nthreads == 1 || n <= 1) {
+
+			for(int i = 0; i < n; i++) {
+				task.run(i);
+			}
+			return;
+		}
+
+		this.task = task;
+		this.count = n;
+		this.failure = null;
+
+		phaser.arriveAndAwaitAdvance();
+		runStripe(0);
+		phaser.arriveAndAwaitAdvance();
+
+		this.task = null;
+		Exception e = failure;
+		if(e != null) {
+			failure = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops the workers and waits for them to end. The
+	 * pool cannot be used afterwards
+	 */
+	public void shutdown() {
+
+		if(shutdown) {
+			return;
+		}
+		shutdown = true;
+		if(workers.length > 0) {
+			phaser.arriveAndDeregister();
+		}
+		try {
+			for(Thread worker : workers) {
+				worker.join(1000);
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	private void work(int stripe) {
+
+		while(true) {
+
+			phaser.arriveAndAwaitAdvance();
+			if(shutdown || phaser.isTerminated()) {
+				phaser.arriveAndDeregister();
+				return;
+			}
+			runStripe(stripe);
+			phaser.arriveAndAwaitAdvance();
+		}
+	}
+
+	/**
+	 * Runs the indices of the given stripe, keeping the first
+	 * exception of the run
+	 */
+	private void runStripe(int stripe) {
+
+		int from = (int)((long)count*stripe/nthreads);
+		int to = (int)((long)count*(stripe + 1)/nthreads);
+		for(int i = from; i < to; i++) {
+
+			try {
+				task.run(i);
+			}
+			catch(Throwable e) {
+				synchronized(this) {
+					if(failure == null) {
+						failure = (e instanceof Exception) ? (Exception) e : new Exception(e);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package ch.imetrica.mdfa.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * A bounded lock-free queue between one producer thread and one consumer
+ * thread, as used by the {@link ch.imetrica.mdfa.datafeeds.PrefetchingFeed}
+ * to hand the parsed observations to the filtering thread.
+ *
+ * The elements are kept in a ring of a power of two slots. The producer
+ * alone moves the tail and the consumer alone moves the head, each one
+ * publishing its position with an ordered write (lazySet) and keeping a
+ * cached copy of the position of the other one, which is only read again
+ * when the ring looks full or empty. So handing over an element costs no
+ * lock, no compare-and-set and no allocation, and {@link #drainTo(Object[], int)}
+ * hands over a whole batch with one write of the head.
+ *
+ * {@link #offer(Object)} must only be called by the producer thread and
+ * {@link #poll()} and drainTo only by the consumer thread.
+ *
+ * @param <T>
+ */
+public class SpscRingBuffer<T> {
+
+	private final Object[] ring;
+	private final int mask;
+	private final int capacity;
+
+	/* written by the consumer */
+	private final AtomicLong head = new AtomicLong();
+	private long tailCache;
+
+	/* written by the producer */
+	private final AtomicLong tail = new AtomicLong();
+	private long headCache;
+
+
+	/**
+	 * Creates an empty ring
+	 *
+	 * @param capacity
+	 *    The number of elements the ring holds, rounded
+	 *    up to a power of two
+	 */
+	public SpscRingBuffer(int capacity) {
+
+		if(capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Capacity must be in [1, 2^30]: " + capacity);
+		}
+		int size = 1;
+		while(size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.ring = new Object[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds an element at the tail, from the producer thread
+	 *
+	 * @return False if the ring is full
+	 */
+	public boolean offer(T element) {
+
+		if(element == null) {
+			throw new NullPointerException("Null elements are not supported");
+		}
+
+		long t = tail.get();
+		if(t - headCache >= capacity) {
+
+			headCache = head.get();
+			if(t - headCache >= capacity) {
+				return false;
+			}
+		}
+		ring[(int)t & mask] = element;
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Removes the element at the head, from the consumer thread
+	 *
+	 * @return The element, or null if the ring is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll() {
+
+		long h = head.get();
+		if(h >= tailCache) {
+
+			tailCache = tail.get();
+			if(h >= tailCache) {
+				return null;
+			}
+		}
+		int slot = (int)h & mask;
+		T element = (T)ring[slot];
+		ring[slot] = null;
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * Removes up to max elements at once, from the consumer thread
+	 *
+	 * @param batch
+	 *    Receives the elements from index 0
+	 * @param max
+	 *    The maximum number of elements, at most batch.length
+	 * @return
+	 *    The number of elements removed, 0 if the ring is empty
+	 */
+	public int drainTo(Object[] batch, int max) {
+
+		long h = head.get();
+		if(h >= tailCache) {
+			tailCache = tail.get();
+		}
+
+		int n = (int)Math.min(max, tailCache - h);
+		for(int i = 0; i < n; i++) {
+
+			int slot = (int)(h + i) & mask;
+			batch[i] = ring[slot];
+			ring[slot] = null;
+		}
+		if(n > 0) {
+			head.lazySet(h + n);
+		}
+		return Math.max(n, 0);
+	}
+
+	/**
+	 * @return The number of elements in the ring, which is only a snapshot
+	 *         when the producer or the consumer is running
+	 */
+	public int size() {
+
+		long h = head.get();
+		long t = tail.get();
+		return (int)Math.max(0, Math.min(capacity, t - h));
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+}
@@ -2,13 +2,30 @@ package ch.imetrica.mdfa.datafeeds;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 
 import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.junit.Test;
 
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.mdfa.MDFAFactory;
+import ch.imetrica.mdfa.mdfa.MDFASolver;
+import ch.imetrica.mdfa.series.ColumnarTimeSeries;
+import ch.imetrica.mdfa.series.MultivariateSeries;
+import ch.imetrica.mdfa.series.SignalSeries;
+import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
+import ch.imetrica.mdfa.util.SpscRingBuffer;
 
 public class TestCsvFeed {
 
@@ -36,4 +53,452 @@ public class TestCsvFeed {
 		
 	}
 
+	@Test
+	public void testEpochTimes() throws Exception {
+		
+		String[] dataFiles = new String[]{"data/AAPL.IB.dat", "data/QQQ.IB.dat"};
+		DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd");
+		
+		CsvFeed timedFeed = new CsvFeed(dataFiles, "dateTime", "close").setDateFormat("yyyy-MM-dd");
+		CsvFeed stringFeed = new CsvFeed(dataFiles, "dateTime", "close");
+		
+		MultivariateSeries timed = epochTestSeries();
+		MultivariateSeries strings = epochTestSeries();
+		
+		for(int i = 0; i < 200; i++) {
+			
+			TimeSeriesEntry<double[]> observation = timedFeed.getNextMultivariateObservation();
+			TimeSeriesEntry<double[]> stringObservation = stringFeed.getNextMultivariateObservation();
+			
+			assertTrue(observation.hasTime());
+			assertFalse(stringObservation.hasTime());
+			assertEquals(formatter.parseMillis(observation.getDateTime()), observation.getTime());
+			assertEquals(stringObservation.getDateTime(), observation.getDateTime());
+			assertArrayEquals(stringObservation.getValue(), observation.getValue(), eps);
+			
+			timed.addValue(observation);
+			strings.addValue(stringObservation.getValue(), stringObservation.getDateTime());
+		}
+		
+		timed.computeFilterCoefficients();
+		strings.computeFilterCoefficients();
+		
+		SignalSeries signal = (SignalSeries)timed.getSeries(0);
+		assertEquals(formatter.parseDateTime(signal.getSignalDate(150)), signal.getSignalDateTime(150));
+		assertEquals(signal.getTargetSeries().getTargetTime(150), signal.getSignalDateTime(150).getMillis());
+		
+		for(int i = 0; i < strings.getSignalSize(); i++) {
+			
+			assertTrue(timed.getAggregateSignal(i).hasTime());
+			assertEquals(strings.getAggregateSignal(i), timed.getAggregateSignal(i));
+			assertArrayEquals(strings.getSignalTargetPair(i).getValue(), timed.getSignalTargetPair(i).getValue(), eps);
+		}
+		
+		TimeSeries<Double> chunk = CsvFeed.getChunkOfData(0, 10, "data/AAPL.IB.dat", "dateTime", "close", "yyyy-MM-dd");
+		assertEquals(timed.getAggregateSignal(9).getTime(), chunk.last().getTime());
+	}
+	
+	@Test
+	public void testFastCsvReader() throws Exception {
+		
+		String dataFile = "data/EURUSD.30min.csv";
+		String format = "yyyy-MM-dd HH:mm:ss";
+		String[] columns = new String[] {"mid", "ask", "low", "high", "logdiffmid"};
+		
+		ColumnarTimeSeries fast = CsvFeed.getColumnarData(dataFile, "dateTime", format, columns);
+		
+		/* a tiny buffer and batch size read the same values */
+		FastCsvReader reader = new FastCsvReader(new FileInputStream(dataFile), 16, "dateTime", format, columns).setBatchSize(7);
+		ColumnarTimeSeries small = new ColumnarTimeSeries(columns.length, format);
+		while(reader.readBatch(small) > 0) {
+		}
+		reader.close();
+		assertEquals(fast.size(), reader.getRowsRead());
+		
+		/* the same values and times as the javacsv reader, bit for bit */
+		for(int c = 0; c < columns.length; c++) {
+			
+			TimeSeries<Double> chunk = CsvFeed.getChunkOfData(0, Integer.MAX_VALUE, dataFile, "dateTime", columns[c], format);
+			assertEquals(chunk.size(), fast.size());
+			assertEquals(chunk.size(), small.size());
+			for(int i = 0; i < chunk.size(); i++) {
+				
+				assertEquals(chunk.get(i).getTime(), fast.getTime(i));
+				assertEquals(chunk.get(i).getTime(), small.getTime(i));
+				assertEquals(Double.doubleToLongBits(chunk.get(i).getValue()), Double.doubleToLongBits(fast.getValue(i, c)));
+				assertEquals(Double.doubleToLongBits(chunk.get(i).getValue()), Double.doubleToLongBits(small.getValue(i, c)));
+			}
+		}
+		
+		/* quoted headers */
+		ColumnarTimeSeries daily = CsvFeed.getColumnarData("data/AAPL.daily.csv", "Index", "yyyy-MM-dd", "Open", "Close");
+		TimeSeries<Double> close = CsvFeed.getChunkOfData(0, Integer.MAX_VALUE, "data/AAPL.daily.csv", "Index", "Close", "yyyy-MM-dd");
+		assertEquals(close.size(), daily.size());
+		assertEquals(close.last().getTime(), daily.getTime(daily.size() - 1));
+		assertEquals(close.last().getValue(), daily.getValue(daily.size() - 1, 1), 0);
+		
+		/* quotes, spaces, blank lines, CRLF, numbers that take the slow path and a text date */
+		String csv = "a, \"date\" ,x,\"y\"\r\n"
+				+ "1, \"02 Jan 2017\" , -0.0, \"1.5E3\"\r\n"
+				+ "\r\n"
+				+ "2,03 Jan 2017,0.1234567890123456789,-4.9e-324\n"
+				+ "3,04 Jan 2017,+12.,1e23";
+		reader = new FastCsvReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)), "date", "dd MMM yyyy", "y", "x");
+		ColumnarTimeSeries parsed = reader.readAll();
+		reader.close();
+		
+		DateTimeFormatter text = DateTimeFormat.forPattern("dd MMM yyyy");
+		assertEquals(3, parsed.size());
+		assertEquals(text.parseMillis("02 Jan 2017"), parsed.getTime(0));
+		assertEquals(text.parseMillis("04 Jan 2017"), parsed.getTime(2));
+		assertEquals(1500.0, parsed.getValue(0, 0), 0);
+		assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(parsed.getValue(0, 1)));
+		assertEquals(Double.parseDouble("0.1234567890123456789"), parsed.getValue(1, 1), 0);
+		assertEquals(-Double.MIN_VALUE, parsed.getValue(1, 0), 0);
+		assertEquals(12.0, parsed.getValue(2, 1), 0);
+		assertEquals(1e23, parsed.getValue(2, 0), 0);
+		
+		/* random doubles and long decimals parse as with Double.parseDouble */
+		Random rng = new Random(7);
+		StringBuilder numbers = new StringBuilder("date,v\n");
+		String[] expected = new String[20000];
+		for(int i = 0; i < expected.length; i++) {
+			
+			switch(i % 4) {
+				case 0: expected[i] = Double.toString(rng.nextDouble()); break;
+				case 1: expected[i] = Double.toString(1.1 + 1E-3*rng.nextGaussian()); break;
+				case 2: expected[i] = Double.toString(Math.exp(20*rng.nextGaussian())); break;
+				default: expected[i] = (rng.nextBoolean() ? "-" : "") + Math.abs(rng.nextLong() % 1000000000000000000L) 
+						+ "e" + (rng.nextInt(40) - 20); break;
+			}
+			numbers.append("2017-01-02,").append(expected[i]).append('\n');
+		}
+		reader = new FastCsvReader(new ByteArrayInputStream(numbers.toString().getBytes(StandardCharsets.US_ASCII)), "date", "yyyy-MM-dd", "v");
+		parsed = reader.readAll();
+		reader.close();
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], Double.doubleToLongBits(Double.parseDouble(expected[i])), Double.doubleToLongBits(parsed.getValue(i)));
+		}
+		
+		/* a missing column is reported when the reader is created, a bad value with its record */
+		try {
+			new FastCsvReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)), "date", "dd MMM yyyy", "z");
+			fail("Column z does not exist");
+		}
+		catch(IOException e) {
+			assertTrue(e.getMessage().contains("z"));
+		}
+		try {
+			CsvFeed.getChunkOfData(0, 10, "data/EURUSD.30min.csv", "dateTime", "dateTime");
+			fail("Dates are not numbers");
+		}
+		catch(NumberFormatException e) {
+			assertTrue(e.getMessage().contains("Observation 1"));
+		}
+	}
+	
+	@Test
+	public void testBinaryColumnarFile() throws Exception {
+		
+		/* dateTime, close */
+		File aapl = newBinaryFile();
+		assertEquals(CsvFeed.getChunkOfData(0, Integer.MAX_VALUE, "data/AAPL.IB.dat", "dateTime", "close").size(),
+				BinaryColumnarFile.convert("data/AAPL.IB.dat", aapl.getPath(), "dateTime", "yyyy-MM-dd", "close"));
+		assertTrue(BinaryColumnarFile.isBinaryColumnarFile(aapl.getPath()));
+		assertFalse(BinaryColumnarFile.isBinaryColumnarFile("data/AAPL.IB.dat"));
+		
+		CsvFeed csvFeed = new CsvFeed("data/AAPL.IB.dat", "dateTime", "close").setDateFormat("yyyy-MM-dd");
+		BinaryFeed binaryFeed = new BinaryFeed(aapl.getPath(), "close");
+		TimeSeriesEntry<Double> expected;
+		while((expected = csvFeed.getNextObservation()) != null) {
+			
+			TimeSeriesEntry<Double> observation = binaryFeed.getNextObservation();
+			assertEquals(expected.getTime(), observation.getTime());
+			assertEquals(expected.getDateTime(), observation.getDateTime());
+			assertEquals(Double.doubleToLongBits(expected.getValue()), Double.doubleToLongBits(observation.getValue()));
+		}
+		assertNull(binaryFeed.getNextObservation());
+		csvFeed.close();
+		binaryFeed.close();
+		
+		/* OHLC with news probabilities, all the columns converted */
+		File avec = newBinaryFile();
+		BinaryColumnarFile.convert("data/AVEC.all.csv", avec.getPath(), "Index", "yyyy-MM-dd");
+		BinaryColumnarFile columns = new BinaryColumnarFile(avec.getPath());
+		assertEquals(17, columns.getColumnCount());
+		assertEquals("ProbGoodNews", columns.getColumnNames()[columns.getColumnIndex("ProbGoodNews")]);
+		assertEquals("yyyy-MM-dd", columns.getDateFormat());
+		
+		ColumnarTimeSeries fast = CsvFeed.getColumnarData("data/AVEC.all.csv", "Index", "yyyy-MM-dd", "Close");
+		ColumnarTimeSeries copy = columns.toColumnarTimeSeries(0, columns.size());
+		assertEquals(fast.size(), copy.size());
+		assertEquals(fast.getTime(fast.size() - 1), copy.getTime(copy.size() - 1));
+		assertEquals(fast.getValue(fast.size() - 1), copy.getValue(copy.size() - 1, columns.getColumnIndex("Close")), 0);
+		columns.close();
+		
+		csvFeed = new CsvFeed("data/AVEC.all.csv", "Index", "Open", "High", "Low", "Close", "ProbNoNews", "ProbBadNews", "ProbGoodNews");
+		binaryFeed = new BinaryFeed(avec.getPath(), "Open", "High", "Low", "Close", "ProbNoNews", "ProbBadNews", "ProbGoodNews");
+		TimeSeriesEntry<double[]> bar;
+		while((bar = csvFeed.getNextInfoBar()) != null) {
+			
+			TimeSeriesEntry<double[]> binaryBar = binaryFeed.getNextInfoBar();
+			assertEquals(bar.getDateTime(), binaryBar.getDateTime());
+			assertArrayEquals(bar.getValue(), binaryBar.getValue(), 0);
+		}
+		assertNull(binaryFeed.getNextInfoBar());
+		
+		/* several files read in lockstep */
+		File qqq = newBinaryFile();
+		BinaryColumnarFile.convert("data/QQQ.IB.dat", qqq.getPath(), "dateTime", "yyyy-MM-dd", "close");
+		csvFeed = new CsvFeed(new String[] {"data/AAPL.IB.dat", "data/QQQ.IB.dat"}, "dateTime", "close").setDateFormat("yyyy-MM-dd");
+		binaryFeed = new BinaryFeed(new String[] {aapl.getPath(), qqq.getPath()}, "close");
+		while((bar = csvFeed.getNextMultivariateObservation()) != null) {
+			
+			TimeSeriesEntry<double[]> observation = binaryFeed.getNextMultivariateObservation();
+			assertEquals(bar.getTime(), observation.getTime());
+			assertArrayEquals(bar.getValue(), observation.getValue(), 0);
+		}
+		assertNull(binaryFeed.getNextMultivariateObservation());
+		csvFeed.close();
+		binaryFeed.close();
+		
+		/* headerless, the first row is converted too */
+		File ohne = newBinaryFile();
+		DateTime start = new DateTime().withDate(2018, 7, 10).withTimeAtStartOfDay();
+		BinaryColumnarFile.convertHeaderless("data/ohneTimeStamp.csv", ohne.getPath(), start.minusDays(1));
+		csvFeed = new CsvFeed("data/ohneTimeStamp.csv", start);
+		binaryFeed = new BinaryFeed(ohne.getPath());
+		assertEquals(3, binaryFeed.getNextMultivariateObservation().getValue().length);
+		while((bar = csvFeed.getNextMultivariateObservation()) != null) {
+			
+			TimeSeriesEntry<double[]> observation = binaryFeed.getNextMultivariateObservation();
+			assertEquals(bar.getDateTime(), observation.getDateTime());
+			assertArrayEquals(bar.getValue(), observation.getValue(), 0);
+		}
+		assertNull(binaryFeed.getNextMultivariateObservation());
+		
+		/* a series written and mapped again */
+		File written = newBinaryFile();
+		BinaryColumnarFile.write(written.getPath(), new String[] {"Close"}, fast);
+		columns = new BinaryColumnarFile(written.getPath());
+		assertEquals(fast.size(), columns.size());
+		assertEquals(fast.getDateTime(3), columns.getDateTime(3));
+		assertEquals(fast.getValue(3), columns.getColumn(0).get(3), 0);
+		columns.close();
+		
+		try {
+			new BinaryColumnarFile("data/AAPL.IB.dat");
+			fail("A csv file is not a binary columnar file");
+		}
+		catch(IOException e) {
+			assertTrue(e.getMessage().contains("not a binary columnar file"));
+		}
+	}
+	
+	@Test
+	public void testMergedFeed() throws Exception {
+		
+		/* three instruments with different calendars */
+		String[] dataFiles = new String[] {
+			newCsvFile("date,close\n2018-01-01,1\n2018-01-02,2\n2018-01-03,3\n2018-01-05,5\n"),
+			newCsvFile("date,close\n2018-01-02,20\n2018-01-03,30\n2018-01-04,40\n"),
+			newCsvFile("date,close\n2018-01-01,100\n2018-01-03,300\n2018-01-04,400\n2018-01-05,500\n2018-01-06,600\n")};
+		
+		double m = -1.0;
+		double[][] carried = {{1, m, 100}, {2, 20, 100}, {3, 30, 300}, {3, 40, 400}, {5, 40, 500}, {5, 40, 600}};
+		double[][] skipped = {{1, m, 100}, {2, 20, m}, {3, 30, 300}, {m, 40, 400}, {5, m, 500}, {m, m, 600}};
+		double[][] complete = {{3, 30, 300}};
+		
+		for(int prefetch : new int[] {0, 1, MergedFeed.DEFAULT_PREFETCH}) {
+			
+			assertMerged(carried, new MergedFeed(dataFiles, "date", "close", "yyyy-MM-dd")
+					.setPrefetch(prefetch));
+			assertMerged(skipped, new MergedFeed(dataFiles, "date", "close", "yyyy-MM-dd")
+					.setFillPolicy(MergedFeed.FillPolicy.SKIP).setPrefetch(prefetch));
+			assertMerged(complete, new MergedFeed(dataFiles, "date", "close", "yyyy-MM-dd")
+					.setFillPolicy(MergedFeed.FillPolicy.COMPLETE).setPrefetch(prefetch));
+		}
+		
+		MergedFeed merged = new MergedFeed(dataFiles, "date", "close", "yyyy-MM-dd");
+		TimeSeriesEntry<double[]> observation = merged.getNextMultivariateObservation();
+		assertEquals("2018-01-01", observation.getDateTime());
+		assertEquals(DateTimeFormat.forPattern("yyyy-MM-dd").parseMillis("2018-01-01"), observation.getTime());
+		assertTrue(merged.isObserved(0));
+		assertFalse(merged.isObserved(1));
+		assertTrue(merged.isObserved(2));
+		try {
+			merged.setPrefetch(0);
+			fail("The feed has started");
+		}
+		catch(IllegalStateException e) {
+		}
+		merged.close();
+		
+		/* on a common calendar the merge is the lockstep feed */
+		String[] common = new String[] {"data/AAPL.IB.dat", "data/QQQ.IB.dat"};
+		CsvFeed lockstep = new CsvFeed(common, "dateTime", "close").setDateFormat("yyyy-MM-dd");
+		merged = new MergedFeed(common, "dateTime", "close", "yyyy-MM-dd").setFillPolicy(MergedFeed.FillPolicy.SKIP);
+		TimeSeriesEntry<double[]> expected;
+		while((expected = lockstep.getNextMultivariateObservation()) != null) {
+			
+			observation = merged.getNextMultivariateObservation();
+			assertEquals(expected.getTime(), observation.getTime());
+			assertArrayEquals(expected.getValue(), observation.getValue(), 0);
+		}
+		assertNull(merged.getNextMultivariateObservation());
+		merged.close();
+		lockstep.close();
+		
+		/* the sources need epoch times */
+		merged = new MergedFeed(new CsvFeed(dataFiles[0], "date", "close"), new CsvFeed(dataFiles[1], "date", "close"));
+		try {
+			merged.getNextMultivariateObservation();
+			fail("The sources have no date format");
+		}
+		catch(IOException e) {
+			assertTrue(e.getMessage().contains("epoch time"));
+		}
+		merged.close();
+	}
+	
+	@Test
+	public void testPrefetchingFeed() throws Exception {
+		
+		String dataFile = "data/EURUSD.30min.csv";
+		String format = "yyyy-MM-dd HH:mm:ss";
+		
+		/* the same bars as the feed read directly */
+		CsvFeed direct = new CsvFeed(dataFile, "dateTime", "mid", "high", "low", "ask").setDateFormat(format);
+		PrefetchingFeed.Bars prefetched = new PrefetchingFeed.Bars(new CsvFeed(dataFile, "dateTime", "mid", "high", "low", "ask")
+				.setDateFormat(format), 8).setBatchSize(3);
+		
+		int rows = 0;
+		TimeSeriesEntry<double[]> expected;
+		while((expected = direct.getNextBar()) != null) {
+			
+			TimeSeriesEntry<double[]> bar = prefetched.getNextBar();
+			assertEquals(expected.getTime(), bar.getTime());
+			assertEquals(expected.getDateTime(), bar.getDateTime());
+			assertArrayEquals(expected.getValue(), bar.getValue(), 0);
+			assertTrue(prefetched.getQueueDepth() <= 8 + 3);
+			rows++;
+		}
+		assertNull(prefetched.getNextBar());
+		assertNull(prefetched.getNextBar());
+		assertTrue(prefetched.isFinished());
+		assertEquals(rows, prefetched.getProduced());
+		assertEquals(rows, prefetched.getConsumed());
+		assertEquals(0, prefetched.getQueueDepth());
+		assertTrue(prefetched.getMaxQueueDepth() <= prefetched.getCapacity());
+		direct.close();
+		prefetched.close();
+		
+		/* a slow consumer makes the producer wait */
+		PrefetchingFeed.Observations observations = new PrefetchingFeed.Observations(new CsvFeed(dataFile, "dateTime", "mid"), 4);
+		while(observations.getProducerWaits() == 0) {
+			Thread.sleep(1);
+		}
+		assertEquals(4, observations.getQueueDepth());
+		assertEquals(4, observations.getProduced());
+		assertNotNull(observations.getNextObservation());
+		assertEquals(4, observations.getMaxQueueDepth());
+		
+		/* the observation the producer waits with when closed is not counted */
+		while(observations.getProducerWaits() == 1) {
+			Thread.sleep(1);
+		}
+		observations.close();
+		assertTrue(observations.isFinished());
+		assertEquals(8, observations.getProduced());
+		assertEquals(7, observations.getQueueDepth());
+		
+		/* an error of the feed comes after the observations read before it */
+		observations = new PrefetchingFeed.Observations(new CsvFeed(newCsvFile("date,close\n2018-01-01,1\n2018-01-02,x\n"), "date", "close"));
+		assertEquals(1.0, observations.getNextObservation().getValue(), 0);
+		try {
+			observations.getNextObservation();
+			fail("x is not a number");
+		}
+		catch(IOException e) {
+			assertTrue(e.getCause() instanceof NumberFormatException);
+		}
+		observations.close();
+		
+		/* the ring keeps the order of the elements across the threads */
+		final SpscRingBuffer<Integer> ring = new SpscRingBuffer<Integer>(6);
+		assertEquals(8, ring.capacity());
+		final int n = 100000;
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for(int i = 0; i < n; i++) {
+					while(!ring.offer(i)) {
+						Thread.yield();
+					}
+				}
+			}
+		});
+		producer.start();
+		
+		Object[] batch = new Object[5];
+		int next = 0;
+		while(next < n) {
+			
+			Integer single = ring.poll();
+			if(single != null) {
+				assertEquals(next++, single.intValue());
+			}
+			int count = ring.drainTo(batch, batch.length);
+			for(int i = 0; i < count; i++) {
+				assertEquals(next++, ((Integer)batch[i]).intValue());
+			}
+			if(single == null && count == 0) {
+				Thread.yield();
+			}
+		}
+		producer.join();
+		assertTrue(ring.isEmpty());
+		assertNull(ring.poll());
+	}
+	
+	private static void assertMerged(double[][] expected, MergedFeed merged) throws Exception {
+		
+		for(int i = 0; i < expected.length; i++) {
+			assertArrayEquals(expected[i], merged.getNextMultivariateObservation().getValue(), 0);
+		}
+		assertNull(merged.getNextMultivariateObservation());
+		assertNull(merged.getNextMultivariateObservation());
+		merged.close();
+	}
+	
+	private static String newCsvFile(String content) throws IOException {
+		
+		File file = File.createTempFile("test", ".csv");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write(content);
+		writer.close();
+		return file.getPath();
+	}
+	
+	private static File newBinaryFile() throws IOException {
+		
+		File file = File.createTempFile("test", BinaryColumnarFile.EXTENSION);
+		file.deleteOnExit();
+		return file;
+	}
+	
+	private static MultivariateSeries epochTestSeries() {
+		
+		MDFABase anyMDFA = (new MDFABase()).setSeriesLength(100).setFilterLength(10).setLowpassCutoff(Math.PI/6);
+		MultivariateSeries multi = new MultivariateSeries(new MDFASolver(new MDFAFactory(anyMDFA)));
+		multi.setDateFormat("yyyy-MM-dd");
+		
+		SignalSeries aapl = new SignalSeries(new TargetSeries(0.5, true, "AAPL"), "yyyy-MM-dd");
+		SignalSeries qqq = new SignalSeries(new TargetSeries(0.5, true, "QQQ"), "yyyy-MM-dd");
+		multi.addSeries(aapl);
+		multi.addSeries(qqq);
+		return multi;
+	}
+
 }
@@ -0,0 +1,81 @@
+package ch.imetrica.mdfa.hyperparameter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
+
+public class TestHyperparameterSearch {
+
+	@Test
+	public void testParameterGrid() {
+		
+		ParameterGrid grid = new ParameterGrid().setLambda(0, 5).setAlpha(1, 2, 3).setLag(-1, 0);
+		assertEquals(12, grid.size());
+		
+		MDFABase template = (new MDFABase()).setSmooth(.3);
+		MDFABase last = grid.getCombination(11, template);
+		assertEquals(5, last.getLambda(), 0);
+		assertEquals(3, last.getAlpha(), 0);
+		assertEquals(0, last.getLag(), 0);
+		assertEquals(.3, last.getSmooth(), 0);
+		assertEquals(0, template.getLambda(), 0);
+		
+		MDFABase second = grid.getCombination(1, template);
+		assertEquals(0, second.getLambda(), 0);
+		assertEquals(1, second.getAlpha(), 0);
+		assertEquals(0, second.getLag(), 0);
+	}
+	
+	@Test
+	public void testGridAndRandomSearch() throws Exception {
+		
+		TimeSeries<Double> apple = CsvFeed.getChunkOfData(0, 1000, "data/AAPL.IB.dat", "dateTime", "close");
+		TimeSeries<Double> appleInSample = new TimeSeries<Double>(apple.subList(0, 700));
+		
+		ArrayList<TargetSeries> inSample = new ArrayList<TargetSeries>();
+		inSample.add(new TargetSeries(appleInSample, .5, true));
+		
+		ArrayList<TargetSeries> all = new ArrayList<TargetSeries>();
+		all.add(new TargetSeries(apple, .5, true));
+		
+		MDFABase template = (new MDFABase())
+				.setSeriesLength(500)
+				.setFilterLength(20)
+				.setLowpassCutoff(Math.PI/8);
+		
+		ParameterGrid grid = new ParameterGrid().setLambda(0, 2).setAlpha(0, 10).setSmooth(.1, .3);
+		HyperparameterSearch search = new HyperparameterSearch(inSample, new FilterMSECriterion(all, 700, 900).setSymmetricLength(60))
+				.setForkJoinPool(new ForkJoinPool(4));
+		
+		ArrayList<SearchResult> table = search.gridSearch(template, grid);
+		assertEquals(8, table.size());
+		for(int i = 0; i < table.size(); i++) {
+			
+			assertEquals(i + 1, table.get(i).getRank());
+			assertTrue(table.get(i).getScore() >= 0);
+			if(i > 0) {
+				assertTrue(table.get(i - 1).getScore() <= table.get(i).getScore());
+			}
+		}
+		
+		ArrayList<SearchResult> sample = search.randomSearch(template, grid, 5, 7);
+		assertEquals(5, sample.size());
+		HashSet<String> distinct = new HashSet<String>();
+		for(SearchResult result : sample) {
+			MDFABase anyMDFA = result.getMDFABase();
+			distinct.add(anyMDFA.getLambda() + ":" + anyMDFA.getAlpha() + ":" + anyMDFA.getSmooth());
+		}
+		assertEquals(5, distinct.size());
+	}
+	
+}
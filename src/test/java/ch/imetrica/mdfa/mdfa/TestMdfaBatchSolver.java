@@ -0,0 +1,64 @@
+package ch.imetrica.mdfa.mdfa;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.matrix.MdfaMatrix;
+import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
+import ch.imetrica.mdfa.spectraldensity.SpectralBase;
+
+public class TestMdfaBatchSolver {
+
+	@Test
+	public void testBatchEqualsSerial() throws Exception {
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 500, "data/AAPL.IB.dat", "dateTime", "close");
+		TimeSeries<Double> spySeries = CsvFeed.getChunkOfData(0, 500, "data/SPY.IB.dat", "dateTime", "close");
+		
+		ArrayList<TargetSeries> series = new ArrayList<TargetSeries>();
+		series.add(new TargetSeries(appleSeries, .5, true));
+		series.add(new TargetSeries(spySeries, .5, true));
+		
+		ArrayList<MDFABase> bands = new ArrayList<MDFABase>();
+		for(int k = 0; k < 6; k++) {
+			
+			bands.add((new MDFABase())
+					.setSeriesLength(k < 3 ? 300 : 400)
+					.setNumberOfSeries(2)
+					.setFilterLength(20)
+					.setLowpassCutoff(Math.PI/(4 + k))
+					.setSmooth(.2)
+					.setCrossCorr(.1));
+		}
+		
+		MDFABatchSolver batch = new MDFABatchSolver(bands).setForkJoinPool(new ForkJoinPool(3));
+		ArrayList<MdfaMatrix> coeffs = batch.solve(series);
+		
+		assertEquals(6, coeffs.size());
+		assertEquals(2, batch.getLastSpectralBaseCount());
+		
+		for(int k = 0; k < bands.size(); k++) {
+			
+			SpectralBase base = new SpectralBase(bands.get(k).getSeriesLength());
+			base.addSeries(series.get(0));
+			base.addSeries(series.get(1));
+			
+			MDFASolver serial = new MDFASolver(new MDFAFactory(bands.get(k)));
+			serial.updateSpectralBase(base);
+			
+			double[] e = serial.solver().getMatrix().getData();
+			double[] a = coeffs.get(k).getMatrix().getData();
+			assertEquals(e.length, a.length);
+			for(int i = 0; i < e.length; i++) {
+				assertEquals(e[i], a[i], 1E-10);
+			}
+		}
+	}
+	
+}
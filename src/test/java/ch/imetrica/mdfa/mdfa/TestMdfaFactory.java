@@ -7,6 +7,7 @@ import java.io.IOException;
 import org.joda.time.format.DateTimeFormat;
 import org.junit.Test;
 
+import ch.imetrica.mdfa.customization.FrequencyBasis;
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
 import ch.imetrica.mdfa.series.MultivariateSeries;
 import ch.imetrica.mdfa.series.SignalSeries;
@@ -189,4 +190,25 @@ public class TestMdfaFactory {
 		
 	}
 	
+	@Test
+	public void testSharedFrequencyBasis() throws Exception {
+		
+		MDFAFactory first = new MDFAFactory((new MDFABase()).setSeriesLength(400).setLowpassCutoff(Math.PI/5));
+		MDFAFactory second = new MDFAFactory((new MDFABase()).setSeriesLength(400).setLowpassCutoff(Math.PI/5));
+		
+		double[] gamma = first.getTargetFilter().getTargetGamma();
+		assertSame(gamma, second.getTargetFilter().getTargetGamma());
+		
+		/* adjusting one filter must not change the shared copy */
+		second.getTargetFilter().adjustTargetFilter((new MDFABase()).setSeriesLength(400).setLowpassCutoff(Math.PI/10));
+		assertNotSame(gamma, second.getTargetFilter().getTargetGamma());
+		
+		int band = (int)((Math.PI/5)*200/Math.PI);
+		assertEquals(1.0, first.getTargetFilter().getValue(band), .00000001);
+		assertEquals(0.0, second.getTargetFilter().getValue(band), .00000001);
+		assertEquals(1.0, first.getSmoothingWeight().getWeight(band), .00000001);
+		
+		assertSame(FrequencyBasis.getBasis(20, -1.0, 200), FrequencyBasis.getBasis(20, -1.0, 200));
+	}
+	
 }
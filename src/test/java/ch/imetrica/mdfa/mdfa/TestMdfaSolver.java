@@ -1,6 +1,9 @@
 package ch.imetrica.mdfa.mdfa;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -72,6 +75,175 @@ public class TestMdfaSolver {
 		
 	}
 	
+	@Test
+	public void testPrimitiveWeightFunction() throws Exception {
+		
+		MDFABase anyMDFA = (new MDFABase())
+				.setSeriesLength(301)
+				.setNumberOfSeries(2)
+				.setFilterLength(24)
+				.setLag(-1.0)
+				.setLambda(3.0)
+				.setAlpha(5.0)
+				.setLowpassCutoff(Math.PI/6)
+				.setSmooth(.2)
+				.setHybridForecast(0.5);
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 400, "data/AAPL.IB.dat", "dateTime", "close");	
+		SpectralBase mySpectral = new SpectralBase(anyMDFA.getSeriesLength());
+		mySpectral.addSeries(new TargetSeries(appleSeries, .4, true));
+		mySpectral.addSeries(new TargetSeries(appleSeries, .6, true));
+		
+		Customization primitive = new Customization(anyMDFA, new SmoothingWeight(anyMDFA), new TargetFilter(anyMDFA), mySpectral);
+		
+		Customization reference = new Customization(anyMDFA, new SmoothingWeight(anyMDFA), new TargetFilter(anyMDFA));
+		reference.setReferenceImplementation(true);
+		reference.setSpectralBase(mySpectral);
+		
+		MdfaMatrix[] expected = {reference.getREX(), reference.getIMX(), reference.getGamma(), 
+				                 reference.getHybridREX(), reference.getHybridIMX(), reference.getHybridGamma()};
+		MdfaMatrix[] actual = {primitive.getREX(), primitive.getIMX(), primitive.getGamma(), 
+	                           primitive.getHybridREX(), primitive.getHybridIMX(), primitive.getHybridGamma()};
+		
+		for(int m = 0; m < expected.length; m++) {
+			
+			double[] e = expected[m].getMatrix().getData();
+			double[] a = actual[m].getMatrix().getData();
+			assertEquals(e.length, a.length);
+			for(int i = 0; i < e.length; i++) {
+				assertEquals(e[i], a[i], 1E-12);
+			}
+		}
+	}
+	
+	@Test
+	public void testCholeskySolverMode() throws Exception {
+		
+		MDFABase anyMDFA = (new MDFABase())
+				.setSeriesLength(400)
+				.setNumberOfSeries(2)
+				.setFilterLength(30)
+				.setLag(-1.0)
+				.setLambda(2.0)
+				.setAlpha(5.0)
+				.setLowpassCutoff(Math.PI/8)
+				.setSmooth(.2)
+				.setDecayStart(.1)
+				.setDecayStrength(.1)
+				.setCrossCorr(.1)
+				.setHybridForecast(0.1);
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 500, "data/AAPL.IB.dat", "dateTime", "close");	
+		SpectralBase mySpectral = new SpectralBase(anyMDFA.getSeriesLength());
+		mySpectral.addSeries(new TargetSeries(appleSeries, .4, true));
+		mySpectral.addSeries(new TargetSeries(appleSeries, .6, true));
+		
+		MDFASolver luSolver = new MDFASolver(new MDFAFactory(anyMDFA));
+		luSolver.updateSpectralBase(mySpectral);
+		MdfaMatrix expected = luSolver.solver();
+		
+		MDFASolver cholSolver = new MDFASolver(new MDFAFactory(anyMDFA)).setSolverMode(SolverMode.CHOLESKY);
+		cholSolver.updateSpectralBase(mySpectral);
+		MdfaMatrix actual = cholSolver.solver();
+		
+		assertEquals(SolverMode.CHOLESKY, cholSolver.getLastFactorization());
+		
+		double[] e = expected.getMatrix().getData();
+		double[] a = actual.getMatrix().getData();
+		assertEquals(e.length, a.length);
+		for(int i = 0; i < e.length; i++) {
+			assertEquals(e[i], a[i], 1E-8);
+		}
+	}
+	
+	
+	@Test
+	public void testMemoizedRegularization() throws Exception {
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 500, "data/AAPL.IB.dat", "dateTime", "close");	
+		SpectralBase mySpectral = new SpectralBase(400);
+		mySpectral.addSeries(new TargetSeries(appleSeries, .4, true));
+		mySpectral.addSeries(new TargetSeries(appleSeries, .6, true));
+		
+		MDFASolver mySolver = new MDFASolver(new MDFAFactory(regularizedBase(.2)));
+		mySolver.updateSpectralBase(mySpectral);
+		
+		Regularization anyReg = mySolver.getMDFAFactory().getRegularization();
+		MdfaMatrix reg_mat = anyReg.getRegularizationMatrix();
+		MdfaMatrix first = mySolver.solver();
+		
+		/* the memoized products are not modified by the solve */
+		mySolver.updateSpectralBase(mySpectral);
+		assertSame(reg_mat, anyReg.getRegularizationMatrix());
+		assertMatrixEquals(first, mySolver.solver());
+		
+		mySolver.getMDFAFactory().setSmoothRegularization(.5);
+		assertNotSame(reg_mat, mySolver.getMDFAFactory().getRegularization().getRegularizationMatrix());
+		
+		MDFASolver freshSolver = new MDFASolver(new MDFAFactory(regularizedBase(.5)));
+		freshSolver.updateSpectralBase(mySpectral);
+		assertMatrixEquals(freshSolver.solver(), mySolver.solver());
+	}
+	
+	@Test
+	public void testIterativeSolverMode() throws Exception {
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 500, "data/AAPL.IB.dat", "dateTime", "close");	
+		SpectralBase mySpectral = new SpectralBase(400);
+		mySpectral.addSeries(new TargetSeries(appleSeries, .4, true));
+		mySpectral.addSeries(new TargetSeries(appleSeries, .6, true));
+		
+		MDFASolver iterative = new MDFASolver(new MDFAFactory(regularizedBase(.2).setLambda(2.0).setAlpha(5.0)))
+				.setSolverMode(SolverMode.ITERATIVE)
+				.setIterativeTolerance(1E-12);
+		iterative.updateSpectralBase(mySpectral);
+		
+		/* the first solve factors the system */
+		MdfaMatrix first = iterative.solver();
+		assertEquals(SolverMode.CHOLESKY, iterative.getLastFactorization());
+		assertEquals(0, iterative.getLastIterations());
+		
+		MDFASolver luSolver = new MDFASolver(new MDFAFactory(regularizedBase(.2).setLambda(2.0).setAlpha(5.0)));
+		luSolver.updateSpectralBase(mySpectral);
+		assertMatrixEquals(luSolver.solver(), first, 1E-8);
+		
+		/* a small change of lambda is solved with warm-started conjugate gradients */
+		iterative.getMDFAFactory().setLambda(2.1);
+		MdfaMatrix second = iterative.solver();
+		assertEquals(SolverMode.ITERATIVE, iterative.getLastFactorization());
+		assertTrue(iterative.getLastIterations() > 0);
+		assertTrue(iterative.getLastIterations() <= iterative.getMaxIterations());
+		
+		luSolver.getMDFAFactory().setLambda(2.1);
+		assertMatrixEquals(luSolver.solver(), second, 1E-8);
+	}
 	
+	/* decay start 0, since the constructor and adjustRegularizationMatrices scale it differently */
+	private static MDFABase regularizedBase(double smooth) {
+		
+		return (new MDFABase())
+				.setSeriesLength(400)
+				.setNumberOfSeries(2)
+				.setFilterLength(20)
+				.setLag(-1.0)
+				.setLowpassCutoff(Math.PI/8)
+				.setSmooth(smooth)
+				.setDecayStart(0)
+				.setDecayStrength(.1)
+				.setCrossCorr(.1);
+	}
+	
+	private static void assertMatrixEquals(MdfaMatrix expected, MdfaMatrix actual) {
+		assertMatrixEquals(expected, actual, 1E-10);
+	}
 	
+	private static void assertMatrixEquals(MdfaMatrix expected, MdfaMatrix actual, double tol) {
+		
+		double[] e = expected.getMatrix().getData();
+		double[] a = actual.getMatrix().getData();
+		assertEquals(e.length, a.length);
+		for(int i = 0; i < e.length; i++) {
+			assertEquals(e[i], a[i], tol);
+		}
+	}
 }
@@ -301,4 +301,300 @@ public class TestMDFASeries {
 	}
 	
 
+	
+	@Test
+	public void testColumnarTimeSeries() {
+		
+		TimeSeries<Double> price = CsvFeed.getChunkOfData(0, 300, "data/AAPL.IB.dat", "dateTime", "close");
+		TargetSeries target = new TargetSeries(price, .5, true);
+		
+		TimeSeries<double[]> entries = new TimeSeries<double[]>();
+		for(int i = 0; i < target.size(); i++) {
+			entries.add(target.getTargetDate(i), new double[]{target.getTargetValue(i), target.getOriginalValue(i)});
+		}
+		
+		ColumnarTimeSeries columnar = ColumnarTimeSeries.fromEntries(entries, 2, "yyyy-MM-dd");
+		assertEquals(target.size(), columnar.size());
+		for(int i = 0; i < target.size(); i++) {
+			
+			assertEquals(target.getTargetDate(i), columnar.getDateTime(i));
+			assertEquals(target.getTargetValue(i), columnar.getValue(i), 0);
+			assertEquals(target.getOriginalValue(i), columnar.getValue(i, 1), 0);
+		}
+		assertEquals(target.getLatest().getDateTime(), columnar.last().getDateTime());
+		assertEquals(target.getLatest().getValue(), columnar.last().getValue()[0], 0);
+		
+		long time = columnar.getTime(100);
+		assertEquals(100, columnar.indexOf(time));
+		assertEquals(-1, columnar.indexOf(time + 1));
+		
+		columnar.removeFirst(100);
+		target.chopFirstObservations(100);
+		assertEquals(target.size(), columnar.size());
+		assertEquals(0, columnar.indexOf(time));
+		assertEquals(target.getTargetValue(0), columnar.getValue(0), 0);
+		
+		TimeSeries<Double> values = columnar.toTimeSeries(0);
+		assertEquals(target.getTimeSeries().last().getDateTime(), values.last().getDateTime());
+		assertEquals(target.getTimeSeries().last().getValue(), values.last().getValue(), 0);
+		
+		/* without a date format the time stamps are kept as they are, in a window of the latest 5 */
+		ColumnarTimeSeries window = new ColumnarTimeSeries(2).setMaxHistory(5);
+		for(int i = 0; i < 100; i++) {
+			window.add(i, "t" + i, i, -i);
+		}
+		assertEquals(5, window.size());
+		assertEquals("t95", window.getDateTime(0));
+		assertEquals(95, window.getTime(0));
+		assertEquals(-99, window.getValue(4, 1), 0);
+		assertEquals(2, window.indexOf(97));
+		assertArrayEquals(new double[] {96, 97, 98}, window.copyColumn(0, 1, 4), 0);
+		
+		window.removeFirst(2);
+		window.add("t100", 100, -100);
+		assertEquals(4, window.size());
+		assertEquals("t97", window.getDateTime(0));
+		assertEquals(TimeSeriesEntry.NO_TIME, window.last().getTime());
+		assertEquals("t100", window.last().getDateTime());
+		assertEquals(-100, window.last().getValue()[1], 0);
+		
+		try {
+			window.parseTime("t100");
+			fail("Parsed a time stamp without a date format");
+		}
+		catch(IllegalStateException e) {
+		}
+	}
+	
+	@Test
+	public void testBoundedHistory() throws Exception {
+		
+		TimeSeries<Double> ring = new TimeSeries<Double>(2).setMaxHistory(4);
+		for(int i = 0; i < 10; i++) {
+			ring.add("" + i, (double)i);
+		}
+		assertEquals(4, ring.size());
+		assertEquals(6.0, ring.get(0).getValue(), 0);
+		assertEquals(9.0, ring.last().getValue(), 0);
+		
+		double expected = 6.0;
+		for(TimeSeriesEntry<Double> entry : ring) {
+			assertEquals(expected++, entry.getValue(), 0);
+		}
+		
+		ring.removeFirst(3);
+		assertEquals(1, ring.size());
+		assertEquals("9", ring.get(0).getDateTime());
+		ring.add("10", 10.0);
+		ring.remove(0);
+		assertEquals(10.0, ring.get(0).getValue(), 0);
+		
+		/* a full bounded series refuses an observation older than all of it */
+		ring.add("11", 11.0);
+		ring.add("12", 12.0);
+		ring.add("13", 13.0);
+		try {
+			ring.add(0, new TimeSeriesEntry<Double>("9", 9.0));
+			fail("Inserted before the oldest observation of a full history");
+		}
+		catch(IllegalStateException e) {
+			assertEquals(4, ring.size());
+		}
+		ring.add(1, new TimeSeriesEntry<Double>("10.5", 10.5));
+		assertEquals(10.5, ring.get(0).getValue(), 0);
+		assertEquals(13.0, ring.last().getValue(), 0);
+		
+		/* a bounded signal series keeps the last 100 values of the unbounded one */
+		TimeSeries<Double> price = CsvFeed.getChunkOfData(0, 300, "data/AAPL.IB.dat", "dateTime", "close");
+		double[] coeffs = new double[20];
+		for(int l = 0; l < coeffs.length; l++) {
+			coeffs[l] = 1.0/(l + 1.0);
+		}
+		
+		SignalSeries full = new SignalSeries(coeffs, new TargetSeries(1.0, true, "AAPL"), "yyyy-MM-dd");
+		SignalSeries bounded = new SignalSeries(coeffs, new TargetSeries(1.0, true, "AAPL"), "yyyy-MM-dd");
+		bounded.setMaxHistory(100);
+		
+		for(TimeSeriesEntry<Double> entry : price) {
+			full.addValue(entry.getDateTime(), entry.getValue());
+			bounded.addValue(entry.getDateTime(), entry.getValue());
+		}
+		
+		assertEquals(100, bounded.size());
+		assertEquals(100, bounded.signalSize());
+		int offset = full.size() - bounded.size();
+		for(int i = 0; i < bounded.size(); i++) {
+			
+			assertEquals(full.getTargetDate(offset + i), bounded.getTargetDate(i));
+			assertEquals(full.getTargetValue(offset + i), bounded.getTargetValue(i), 1E-12);
+			assertEquals(full.getSignalValue(offset + i), bounded.getSignalValue(i), 1E-12);
+		}
+		
+		full.chopFirstObservations(offset);
+		assertEquals(bounded.getSignalDate(0), full.getSignalDate(0));
+	}
+	
+	@Test
+	public void testLazySignal() throws Exception {
+		
+		TimeSeries<Double> price = CsvFeed.getChunkOfData(0, 400, "data/AAPL.IB.dat", "dateTime", "close");
+		double[] coeffs = new double[100];
+		double[] next = new double[30];
+		for(int l = 0; l < coeffs.length; l++) {
+			coeffs[l] = Math.cos(.1*l)/(l + 1.0);
+		}
+		for(int l = 0; l < next.length; l++) {
+			next[l] = 1.0/(l + 1.0);
+		}
+		
+		SignalSeries eager = new SignalSeries(new TargetSeries(price, .4, true)).setEagerSignal(true);
+		SignalSeries lazy = new SignalSeries(new TargetSeries(price, .4, true));
+		eager.setMDFAFilterCoefficients(coeffs);
+		lazy.setMDFAFilterCoefficients(coeffs);
+		
+		/* new coefficients compute nothing, reading the tail only computes a window of the history */
+		LazySignal signal = lazy.getLazySignal();
+		assertEquals(0, signal.getComputedCount());
+		assertEquals(eager.getLatestSignalValue(), lazy.getLatestSignalValue(), 1E-12);
+		assertTrue(signal.getComputedCount() < 100);
+		
+		for(int i = 399; i >= 300; i--) {
+			assertEquals(eager.getSignalValue(i), lazy.getSignalValue(i), 1E-12);
+		}
+		assertTrue(signal.getComputedCount() < 400);
+		
+		/* a new version discards the memoized values */
+		int version = signal.getVersion();
+		eager.setMDFAFilterCoefficients(next);
+		lazy.setMDFAFilterCoefficients(next);
+		assertEquals(version + 1, signal.getVersion());
+		assertEquals(0, signal.getComputedCount());
+		assertEquals(eager.getSignalValue(350), lazy.getSignalValue(350), 1E-12);
+		
+		/* new values, chopping and a bounded history keep the memo aligned with the target */
+		lazy.addValue("2014-08-05", 95.12);
+		eager.addValue("2014-08-05", 95.12);
+		lazy.chopFirstObservations(50);
+		eager.chopFirstObservations(50);
+		lazy.setMaxHistory(200);
+		eager.setMaxHistory(200);
+		lazy.addValue("2014-08-06", 94.96);
+		eager.addValue("2014-08-06", 94.96);
+		
+		assertEquals(eager.signalSize(), lazy.signalSize());
+		assertEquals(200, lazy.signalSize());
+		assertEquals(eager.getLatestSignalObservation().getDateTime(), lazy.getLatestSignalObservation().getDateTime());
+		
+		TimeSeries<Double> eagerSeries = eager.getTimeSeries();
+		TimeSeries<Double> lazySeries = lazy.getTimeSeries();
+		assertEquals(200, signal.getComputedCount());
+		for(int i = 0; i < eagerSeries.size(); i++) {
+			
+			/* the first values are computed with the truncated filter once the history is chopped */
+			assertEquals(eagerSeries.get(i).getDateTime(), lazySeries.get(i).getDateTime());
+			if(i >= next.length - 1) {
+				assertEquals(eagerSeries.get(i).getValue(), lazySeries.get(i).getValue(), 1E-12);
+			}
+		}
+		
+		/* a new transform of the target discards the memoized values */
+		TargetSeries target = lazy.getTargetSeries();
+		target.adjustFractionalDifferenceData(.6);
+		eager.getTargetSeries().adjustFractionalDifferenceData(.6);
+		assertEquals(0, signal.getComputedCount());
+		lazy.addValue("2014-08-07", 95.30);
+		eager.addValue("2014-08-07", 95.30);
+		target.setMaxWeightLength(40);
+		eager.getTargetSeries().setMaxWeightLength(40);
+		lazy.addValue("2014-08-08", 95.55);
+		eager.addValue("2014-08-08", 95.55);
+		eager.computeSignalFromTarget();
+		int N = lazy.signalSize();
+		for(int i = N - 1; i >= N - 50; i--) {
+			
+			double sum = 0;
+			for(int l = 0; l < next.length; l++) {
+				sum = sum + next[l]*target.getTargetValue(i - l);
+			}
+			assertEquals(sum, lazy.getSignalValue(i), 1E-12);
+		}
+		
+		/* the full eager recomputation is still available */
+		lazy.setEagerSignal(true);
+		assertNull(lazy.getLazySignal());
+		assertEquals(eager.getSignalValue(199), lazy.getSignalValue(199), 1E-12);
+	}
+	@Test
+	public void testTieredSignalHistory() throws Exception {
+		
+		int window = 10;
+		long budget = window*TieredSignalHistory.getObservationBytes(2) + 8*TieredSignalHistory.getBucketBytes(2);
+		TieredSignalHistory history = new TieredSignalHistory(2, window, budget);
+		assertEquals(8, history.getBucketCapacity());
+		assertTrue(history.getMemoryBytes() <= budget);
+		
+		int n = 1000;
+		double[] row = new double[2];
+		for(int t = 0; t < n; t++) {
+			
+			row[0] = Math.sin(.1*t);
+			row[1] = t;
+			history.add(1000L*t, "t" + t, row);
+		}
+		
+		/* the latest window observations at full resolution, the rest in at most 8 buckets */
+		assertEquals(n, history.getTotalObservations());
+		assertEquals(window, history.getFullResolutionCount());
+		assertTrue(history.getBucketCount() <= 8);
+		assertTrue(history.getMemoryBytes() <= budget);
+		
+		int covered = 0;
+		for(int i = 0; i < history.size(); i++) {
+			
+			int first = covered;
+			int last = covered + history.getObservationCount(i) - 1;
+			assertEquals("t" + first, history.getStartDate(i));
+			assertEquals("t" + last, history.getSignalDate(i));
+			assertEquals(1000L*last, history.getTime(i));
+			
+			/* open, high, low and close of the observations of each point */
+			double high = -Double.MAX_VALUE;
+			double low = Double.MAX_VALUE;
+			for(int t = first; t <= last; t++) {
+				high = Math.max(high, Math.sin(.1*t));
+				low = Math.min(low, Math.sin(.1*t));
+			}
+			assertEquals(Math.sin(.1*first), history.getOpen(i, 0), 0);
+			assertEquals(high, history.getHigh(i, 0), 0);
+			assertEquals(low, history.getLow(i, 0), 0);
+			assertEquals(Math.sin(.1*last), history.getValue(i, 0), 0);
+			assertEquals(first, history.getOpen(i, 1), 0);
+			assertEquals(last, history.getSignalValue(i)[1], 0);
+			
+			covered = last + 1;
+		}
+		assertEquals(n, covered);
+		
+		/* the emitted signal values of a signal series */
+		TimeSeries<Double> price = CsvFeed.getChunkOfData(0, 400, "data/AAPL.IB.dat", "dateTime", "close");
+		double[] coeffs = new double[30];
+		for(int l = 0; l < coeffs.length; l++) {
+			coeffs[l] = 1.0/(l + 1.0);
+		}
+		SignalSeries signal = new SignalSeries(new TargetSeries(.4, true, "AAPL"));
+		signal.setMDFAFilterCoefficients(coeffs);
+		signal.setTieredHistory(50, 50*TieredSignalHistory.getObservationBytes(1) + 20*TieredSignalHistory.getBucketBytes(1));
+		for(int t = 0; t < price.size(); t++) {
+			signal.addValue(price.get(t).getDateTime(), price.get(t).getValue());
+		}
+		
+		TieredSignalHistory signals = signal.getTieredHistory();
+		assertEquals(price.size(), signals.getTotalObservations());
+		assertEquals(50, signals.getFullResolutionCount());
+		for(int i = 1; i <= 50; i++) {
+			assertEquals(signal.getSignalValue(signal.size() - i), signals.getValue(signals.size() - i, 0), 0);
+		}
+		assertEquals(price.get(0).getDateTime(), signals.getStartDate(0));
+	}
+	
 }
@@ -2,8 +2,14 @@ package ch.imetrica.mdfa.series;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
 import org.junit.Test;
 
+import ch.imetrica.mdfa.benchmark.AllocationProbe;
+import ch.imetrica.mdfa.benchmark.BenchmarkData;
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
 import ch.imetrica.mdfa.mdfa.MDFAFactory;
@@ -127,6 +133,195 @@ public class TestMultivariateFXSeries {
         
 	}
 
+	@Test
+	public void testParallelUpdate() throws Exception {
+		
+		String[] dataFiles = new String[] {"data/AAPL.daily.csv", "data/QQQ.daily.csv", "data/SPY.daily.csv"};
+		CsvFeed marketFeed = new CsvFeed(dataFiles, "Index", "Open");
+		
+		MultivariateFXSeries[] fxSeries = new MultivariateFXSeries[2];
+		for(int k = 0; k < 2; k++) {
+			
+			MDFABase[] anyMDFAs = new MDFABase[2];
+			anyMDFAs[0] = (new MDFABase()).setLowpassCutoff(Math.PI/20.0)
+					.setSeriesLength(300);
+			anyMDFAs[1] = (new MDFABase()).setLowpassCutoff(Math.PI/10.0)
+					.setBandPassCutoff(Math.PI/15.0)
+					.setSeriesLength(300);
+			
+			fxSeries[k] = new MultivariateFXSeries(anyMDFAs, "yyyy-MM-dd");	
+			fxSeries[k].addSeries(new TargetSeries(0.6, true, "AAPL"));
+			fxSeries[k].addSeries(new TargetSeries(0.6, true, "QQQ"));
+			fxSeries[k].addSeries(new TargetSeries(0.6, true, "SPY"));
+		}
+		fxSeries[1].setParallelUpdate(3);
+		assertEquals(3, fxSeries[1].getParallelUpdate());
+		
+		for(int i = 0; i < 350; i++) {
+			
+			TimeSeriesEntry<double[]> observation = marketFeed.getNextMultivariateObservation();
+			fxSeries[0].addValue(observation);
+			fxSeries[1].addValue(observation);
+		}
+		fxSeries[0].computeAllFilterCoefficients();
+		fxSeries[1].computeAllFilterCoefficients();
+		
+		/* the parallel update gives the same signals as the serial one */
+		for(int i = 0; i < 50; i++) {
+			
+			TimeSeriesEntry<double[]> observation = marketFeed.getNextMultivariateObservation();
+			fxSeries[0].addValue(observation);
+			fxSeries[1].addValue(observation);
+			
+			assertEquals(fxSeries[0].size(), fxSeries[1].size());
+			assertArrayEquals(fxSeries[0].getLatestSignalEntry().getValue(), fxSeries[1].getLatestSignalEntry().getValue(), 0);
+			for(int m = 0; m < 3; m++) {
+				assertArrayEquals(fxSeries[0].getSeries(m).getLatestSignalValue(), fxSeries[1].getSeries(m).getLatestSignalValue(), 0);
+			}
+		}
+		
+		fxSeries[1].setParallelUpdate(1);
+		assertEquals(1, fxSeries[1].getParallelUpdate());
+		
+		TimeSeriesEntry<double[]> observation = marketFeed.getNextMultivariateObservation();
+		fxSeries[0].addValue(observation);
+		fxSeries[1].addValue(observation);
+		assertArrayEquals(fxSeries[0].getLatestSignalEntry().getValue(), fxSeries[1].getLatestSignalEntry().getValue(), 0);
+		
+		/* close stops the worker threads, the series is then updated serially */
+		int running = countWorkers();
+		fxSeries[1].setParallelUpdate(3);
+		assertEquals(running + 2, countWorkers());
+		fxSeries[1].close();
+		assertEquals(running, countWorkers());
+		assertEquals(1, fxSeries[1].getParallelUpdate());
+		
+		observation = marketFeed.getNextMultivariateObservation();
+		fxSeries[0].addValue(observation);
+		fxSeries[1].addValue(observation);
+		assertArrayEquals(fxSeries[0].getLatestSignalEntry().getValue(), fxSeries[1].getLatestSignalEntry().getValue(), 0);
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAllocationFreeTick() throws Exception {
+		
+		MDFABase[] anyMDFAs = new MDFABase[2];
+		anyMDFAs[0] = (new MDFABase()).setLowpassCutoff(Math.PI/20.0)
+				.setSeriesLength(300)
+				.setFilterLength(20);
+		anyMDFAs[1] = (new MDFABase()).setLowpassCutoff(Math.PI/10.0)
+				.setBandPassCutoff(Math.PI/15.0)
+				.setSeriesLength(300)
+				.setFilterLength(20);
+		
+		int M = 3;
+		int N = 16000;
+		Random rng = new Random(1);
+		TimeSeries<Double>[] prices = new TimeSeries[M];
+		MultivariateFXSeries fxSeries = new MultivariateFXSeries(anyMDFAs, "yyyy-MM-dd");
+		for(int m = 0; m < M; m++) {
+			
+			prices[m] = BenchmarkData.randomPrices(N, rng);
+			fxSeries.addSeries(new TargetSeries(0.6, true, "S" + m));
+		}
+		
+		double[] observation = new double[M];
+		for(int t = 0; t < 350; t++) {
+			fxSeries.addValue(t, prices[0].get(t).getDateTime(), column(prices, t, observation));
+		}
+		fxSeries.computeAllFilterCoefficients();
+		fxSeries.setMaxHistory(350);
+		
+		/* once warmed up, a tick of a bounded series allocates nothing, 
+		 * the probe itself allocates about a kilobyte */
+		int t = 350;
+		for(; t < 8000; t++) {
+			fxSeries.addValue(t, prices[0].get(t).getDateTime(), column(prices, t, observation));
+		}
+		AllocationProbe probe = new AllocationProbe("addValue").start();
+		for(; t < N; t++) {
+			fxSeries.addValue(t, prices[0].get(t).getDateTime(), column(prices, t, observation));
+		}
+		probe.stop();
+		
+		assertEquals(350, fxSeries.getSeries(0).size());
+		if(probe.getAllocatedBytes() >= 0) {
+			assertEquals(0, probe.getAllocatedBytes()/(N - 8000));
+		}
+	}
+	
+	private static double[] column(TimeSeries<Double>[] prices, int t, double[] observation) {
+		
+		for(int m = 0; m < prices.length; m++) {
+			observation[m] = prices[m].get(t).getValue();
+		}
+		return observation;
+	}
+	
+	private static int countWorkers() {
+		
+		int count = 0;
+		for(Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.isAlive() && thread.getName().startsWith("phased-worker-")) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	@Test
+	public void testSingleFeedPerTick() throws Exception {
+		
+		CsvFeed marketFeed = new CsvFeed(new String[] {"data/AAPL.daily.csv", "data/QQQ.daily.csv"}, "Index", "Open");
+		
+		MDFABase[] anyMDFAs = new MDFABase[2];
+		anyMDFAs[0] = (new MDFABase()).setLowpassCutoff(Math.PI/20.0)
+				.setSeriesLength(300);
+		anyMDFAs[1] = (new MDFABase()).setLowpassCutoff(Math.PI/10.0)
+				.setBandPassCutoff(Math.PI/15.0)
+				.setSeriesLength(300);
+		
+		MultivariateFXSeries fxSeries = new MultivariateFXSeries(anyMDFAs, "yyyy-MM-dd");	
+		fxSeries.addSeries(new TargetSeries(0.6, true, "AAPL"));
+		fxSeries.addSeries(new TargetSeries(0.6, true, "QQQ"));
+		
+		for(int i = 0; i < 350; i++) {
+			fxSeries.addValue(marketFeed.getNextMultivariateObservation());
+		}
+		fxSeries.computeAllFilterCoefficients();
+		
+		/* each observation is added once to each series, the aggregate is the sum of their signals */
+		for(int i = 0; i < 20; i++) {
+			
+			TimeSeriesEntry<double[]> observation = marketFeed.getNextMultivariateObservation();
+			fxSeries.addValue(observation);
+			
+			assertEquals(351 + i, fxSeries.size());
+			double[] aggregate = new double[2];
+			for(int m = 0; m < 2; m++) {
+				
+				VectorSignalSeries series = fxSeries.getSeries(m);
+				assertEquals(351 + i, series.size());
+				assertEquals(observation.getValue()[m], series.getOriginalValue(series.size() - 1), 0);
+				assertEquals(observation.getDateTime(), series.getTargetDate(series.size() - 1));
+				
+				double[] latest = series.getLatestSignalValue();
+				aggregate[0] += latest[0];
+				aggregate[1] += latest[1];
+			}
+			
+			TimeSeriesEntry<double[]> signal = fxSeries.getLatestSignalEntry();
+			assertEquals(observation.getDateTime(), signal.getDateTime());
+			assertArrayEquals(aggregate, signal.getValue(), 1E-12);
+			assertEquals(aggregate[0], fxSeries.getLatest(), 1E-12);
+		}
+		
+		double[] latest = fxSeries.getLatestSignalEntry().getValue();
+		fxSeries.computeAggregateSignal();
+		assertArrayEquals(latest, fxSeries.getLatestSignalEntry().getValue(), 1E-12);
+	}
+
 	@Test
 	public void testSignalVerificationMultipleSignal() throws Exception {
 		
@@ -347,4 +542,100 @@ public class TestMultivariateFXSeries {
 	
 	
 	
+	@Test
+	public void testSnapshot() throws Exception {
+		
+		String[] dataFiles = new String[]{"data/AAPL.daily.csv", "data/QQQ.daily.csv", "data/SPY.daily.csv"};
+		CsvFeed marketFeed = new CsvFeed(dataFiles, "Index", "Open");
+		
+		MDFABase[] anyMDFAs = new MDFABase[2];
+		anyMDFAs[0] = (new MDFABase()).setLowpassCutoff(Math.PI/20.0)
+				.setI1(1)
+				.setSmooth(.3)
+				.setLag(-2.0)
+				.setLambda(2.0)
+				.setAlpha(2.0)
+				.setSeriesLength(300);
+		
+		anyMDFAs[1] = (new MDFABase()).setLowpassCutoff(Math.PI/10.0)
+				.setBandPassCutoff(Math.PI/15.0)
+				.setSmooth(.1)
+				.setSeriesLength(300);
+		
+		MultivariateFXSeries fxSeries = new MultivariateFXSeries(anyMDFAs, "yyyy-MM-dd");	
+		fxSeries.addSeries(new TargetSeries(0.6, true, "AAPL"));
+		fxSeries.addSeries(new TargetSeries(0.6, true, "QQQ"));
+		fxSeries.addSeries(new TargetSeries(0.6, true, "SPY"));
+		fxSeries.getSeries(1).setEagerSignal(true);
+		fxSeries.setMaxHistory(500);
+		
+		for(int i = 0; i < 600; i++) {
+			fxSeries.addValue(marketFeed.getNextMultivariateObservation());
+		}
+		fxSeries.setWhiteNoisePrefilters(50);
+		fxSeries.computeAllFilterCoefficients();
+		for(int i = 0; i < 20; i++) {
+			fxSeries.addValue(marketFeed.getNextMultivariateObservation());
+		}
+		
+		File snapshot = File.createTempFile("fxseries", SeriesSnapshot.EXTENSION);
+		snapshot.deleteOnExit();
+		fxSeries.saveSnapshot(snapshot.getPath());
+		assertTrue(SeriesSnapshot.isSnapshot(snapshot.getPath()));
+		
+		MultivariateFXSeries restored = MultivariateFXSeries.loadSnapshot(snapshot.getPath());
+		
+		/* the default window is the in-sample length */
+		assertEquals(300, restored.size());
+		assertEquals(500, restored.getMaxHistory());
+		assertEquals(2, restored.getNumberSignals());
+		assertEquals(3, restored.getNumberSeries());
+		assertEquals("QQQ", restored.getSeries(1).getName());
+		assertTrue(restored.getSeries(1).isEagerSignal());
+		assertTrue(restored.isPrefiltered());
+		assertEquals(fxSeries.getMDFAFactory(0).getLag(), restored.getMDFAFactory(0).getLag(), 0);
+		assertEquals(fxSeries.getMDFAFactory(1).getBandPassCutoff(), restored.getMDFAFactory(1).getBandPassCutoff(), 0);
+		
+		int offset = fxSeries.size() - restored.size();
+		for(int i = 0; i < restored.size(); i++) {
+			
+			assertEquals(fxSeries.getSignal(offset + i).getDateTime(), restored.getSignal(i).getDateTime());
+			assertArrayEquals(fxSeries.getSignalValue(offset + i), restored.getSignalValue(i), 0);
+		}
+		for(int m = 0; m < 3; m++) {
+			for(int n = 0; n < 2; n++) {
+				assertArrayEquals(fxSeries.getSeries(m).getCoefficientSet(n), restored.getSeries(m).getCoefficientSet(n), 0);
+			}
+		}
+		
+		/* the restored series continues with the same signals */
+		for(int i = 0; i < 100; i++) {
+			
+			TimeSeriesEntry<double[]> observation = marketFeed.getNextMultivariateObservation();
+			fxSeries.addValue(observation);
+			restored.addValue(observation);
+			
+			assertEquals(fxSeries.getLatestSignalEntry().getDateTime(), restored.getLatestSignalEntry().getDateTime());
+			assertArrayEquals(fxSeries.getLatestSignalEntry().getValue(), restored.getLatestSignalEntry().getValue(), 0);
+			assertArrayEquals(fxSeries.getSeries(1).getLatestSignalValue(), restored.getSeries(1).getLatestSignalValue(), 0);
+		}
+		
+		/* and the window is long enough to estimate the filters again */
+		fxSeries.computeAllFilterCoefficients();
+		restored.computeAllFilterCoefficients();
+		for(int m = 0; m < 3; m++) {
+			for(int n = 0; n < 2; n++) {
+				assertArrayEquals(fxSeries.getSeries(m).getCoefficientSet(n), restored.getSeries(m).getCoefficientSet(n), 1E-8);
+			}
+		}
+		
+		try {
+			MultivariateSeries.loadSnapshot(snapshot.getPath());
+			fail("A MultivariateFXSeries snapshot was loaded as a MultivariateSeries");
+		}
+		catch(IOException e) {
+			assertTrue(e.getMessage().contains("MultivariateFXSeries"));
+		}
+	}
+	
 }
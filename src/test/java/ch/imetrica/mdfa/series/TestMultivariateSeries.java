@@ -2,6 +2,7 @@ package ch.imetrica.mdfa.series;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.util.ArrayList;
 
 import org.junit.Test;
@@ -178,4 +179,115 @@ public class TestMultivariateSeries {
 	
 	
 	
+	
+	@Test
+	public void testBoundedHistory() throws Exception {
+		
+		String[] dataFiles = new String[]{"data/AAPL.IB.dat", "data/QQQ.IB.dat", "data/SPY.IB.dat"};
+		CsvFeed marketFeed = new CsvFeed(dataFiles, "dateTime", "close");
+		
+		ArrayList<TimeSeriesEntry<double[]>> observations = new ArrayList<TimeSeriesEntry<double[]>>();
+		for(int i = 0; i < 300; i++) {
+			observations.add(marketFeed.getNextMultivariateObservation());
+		}
+		
+		MultivariateSeries full = boundedTestSeries(0);
+		MultivariateSeries bounded = boundedTestSeries(150);
+		bounded.setRollingSpectralBase(true);
+		
+		for(int i = 0; i < observations.size(); i++) {
+			
+			full.addValue(observations.get(i).getValue(), observations.get(i).getDateTime());
+			bounded.addValue(observations.get(i).getValue(), observations.get(i).getDateTime());
+			
+			if(i == 199) {
+				full.computeFilterCoefficients();
+				bounded.computeFilterCoefficients();
+			}
+		}
+		
+		assertEquals(150, bounded.getSeries(0).size());
+		assertEquals(150, bounded.getSignalSize());
+		
+		full.computeFilterCoefficients();
+		bounded.computeFilterCoefficients();
+		
+		int offset = full.getSeries(0).size() - bounded.getSeries(0).size();
+		assertEquals(full.getSeries(0).getTargetValue(offset), bounded.getSeries(0).getTargetValue(0), 1E-12);
+		
+		for(int m = 0; m < full.getMDFACoeffs().size(); m++) {
+			assertArrayEquals(full.getMDFACoeffs().get(m), bounded.getMDFACoeffs().get(m), 1E-8);
+		}
+		/* the first L-1 signal values of the retained window are computed with a truncated filter */
+		int L = bounded.getMDFAFactory().getFilterLength();
+		for(int i = L - 1; i < bounded.getSignalSize(); i++) {
+			
+			assertEquals(full.getAggregateSignal(offset + i).getDateTime(), bounded.getAggregateSignal(i).getDateTime());
+			assertEquals(full.getAggregateSignal(offset + i).getValue(), bounded.getAggregateSignal(i).getValue(), 1E-8);
+		}
+	}
+	
+	@Test
+	public void testSnapshot() throws Exception {
+		
+		String[] dataFiles = new String[]{"data/AAPL.IB.dat", "data/QQQ.IB.dat", "data/SPY.IB.dat"};
+		CsvFeed marketFeed = new CsvFeed(dataFiles, "dateTime", "close").setDateFormat("yyyy-MM-dd");
+		
+		MultivariateSeries multi = boundedTestSeries(0);
+		((SignalSeries) multi.getSeries(2)).setEagerSignal(true);
+		for(int i = 0; i < 200; i++) {
+			multi.addValue(marketFeed.getNextMultivariateObservation());
+		}
+		multi.computeFilterCoefficients();
+		for(int i = 0; i < 10; i++) {
+			multi.addValue(marketFeed.getNextMultivariateObservation());
+		}
+		
+		File snapshot = File.createTempFile("multiseries", SeriesSnapshot.EXTENSION);
+		snapshot.deleteOnExit();
+		multi.saveSnapshot(snapshot.getPath(), 120);
+		MultivariateSeries restored = MultivariateSeries.loadSnapshot(snapshot.getPath());
+		
+		assertEquals(3, restored.getNumberOfSignals());
+		assertEquals(120, restored.getSeries(0).size());
+		assertEquals(120, restored.getSignalSize());
+		assertNotNull(restored.getSeries(1).getDateFormat());
+		assertEquals(restored.getAggregateSignal(0).getDateTime(), restored.getFormatter().print(restored.getAggregateSignal(0).getTime()));
+		for(int m = 0; m < 3; m++) {
+			assertArrayEquals(multi.getMDFACoeffs().get(m), restored.getMDFACoeffs().get(m), 0);
+		}
+		
+		int offset = multi.getSignalSize() - restored.getSignalSize();
+		for(int i = 0; i < restored.getSignalSize(); i++) {
+			
+			assertEquals(multi.getAggregateSignal(offset + i).getTime(), restored.getAggregateSignal(i).getTime());
+			assertEquals(multi.getAggregateSignal(offset + i).getValue(), restored.getAggregateSignal(i).getValue(), 0);
+			assertEquals(((SignalSeries) multi.getSeries(0)).getSignalValue(offset + i), 
+					((SignalSeries) restored.getSeries(0)).getSignalValue(i), 0);
+		}
+		
+		for(int i = 0; i < 50; i++) {
+			
+			TimeSeriesEntry<double[]> observation = marketFeed.getNextMultivariateObservation();
+			multi.addValue(observation);
+			restored.addValue(observation);
+			
+			assertEquals(multi.getSignalValue(), restored.getSignalValue(), 0);
+			assertEquals(((SignalSeries) multi.getSeries(2)).getLatestSignalValue(), 
+					((SignalSeries) restored.getSeries(2)).getLatestSignalValue(), 0);
+			assertEquals(multi.getSeries(1).getLatest().getValue(), restored.getSeries(1).getLatest().getValue(), 0);
+		}
+	}
+	
+	private static MultivariateSeries boundedTestSeries(int maxHistory) {
+		
+		MDFABase anyMDFA = (new MDFABase()).setSeriesLength(100).setFilterLength(20).setLowpassCutoff(Math.PI/6);
+		MultivariateSeries multi = new MultivariateSeries(new MDFASolver(new MDFAFactory(anyMDFA)));
+		multi.setDateFormat("yyyy-MM-dd");
+		
+		multi.addSeries(new SignalSeries(new TargetSeries(1.0, true, "AAPL"), "yyyy-MM-dd"));
+		multi.addSeries(new SignalSeries(new TargetSeries(1.0, true, "QQQ"), "yyyy-MM-dd"));
+		multi.addSeries(new SignalSeries(new TargetSeries(1.0, true, "SPY"), "yyyy-MM-dd"));
+		return multi.setMaxHistory(maxHistory);
+	}
 }
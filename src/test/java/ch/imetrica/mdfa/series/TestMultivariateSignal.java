@@ -2,10 +2,14 @@ package ch.imetrica.mdfa.series;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Test;
 
 import ch.imetrica.mdfa.datafeeds.CsvFeed;
 import ch.imetrica.mdfa.mdfa.MDFABase;
+import ch.imetrica.mdfa.util.FIRFilterEngine;
 
 public class TestMultivariateSignal {
 
@@ -176,5 +180,161 @@ public class TestMultivariateSignal {
 	}
 	
 	
+	@Test
+	public void testSnapshot() throws Exception {
+		
+		MDFABase[] anyMDFAs = new MDFABase[2];
+		anyMDFAs[0] = (new MDFABase()).setLowpassCutoff(Math.PI/15.0)
+				.setI1(1)
+				.setI2(1)
+				.setShift_constraint(-2.0);
+		
+		anyMDFAs[1] = (new MDFABase()).setLowpassCutoff(Math.PI/10.0)
+				.setBandPassCutoff(Math.PI/15.0);
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 450, "data/AAPL.IB.dat", "dateTime", "close");
+		TargetSeries target = new TargetSeries(.4, true, "AAPL");
+		for(int i = 0; i < 400; i++) {
+			target.addValue(appleSeries.get(i).getDateTime(), appleSeries.get(i).getValue());
+		}
+		
+		MultivariateSignalSeries signal = new MultivariateSignalSeries(target, anyMDFAs, "yyyy-MM-dd")
+				.computeFilterCoefficients()
+				.computeSignalsFromTarget();
+		signal.setName("apple");
+		
+		File snapshot = File.createTempFile("multisignal", SeriesSnapshot.EXTENSION);
+		snapshot.deleteOnExit();
+		signal.saveSnapshot(snapshot.getPath());
+		MultivariateSignalSeries restored = MultivariateSignalSeries.loadSnapshot(snapshot.getPath());
+		
+		assertEquals("apple", restored.getName());
+		assertEquals(2, restored.getNumberSignals());
+		assertEquals(300, restored.size());
+		assertEquals(-2.0, restored.getMDFAFactory(0).getShift_constraint(), 0);
+		assertArrayEquals(signal.getCoefficients(1), restored.getCoefficients(1), 0);
+		assertArrayEquals(signal.getLatestSignalValue(), restored.getLatestSignalValue(), 0);
+		
+		for(int i = 400; i < 450; i++) {
+			
+			signal.addValue(appleSeries.get(i).getDateTime(), appleSeries.get(i).getValue());
+			restored.addValue(appleSeries.get(i).getDateTime(), appleSeries.get(i).getValue());
+			
+			assertEquals(signal.getLatestSignalEntry().getDateTime(), restored.getLatestSignalEntry().getDateTime());
+			assertArrayEquals(signal.getLatestSignalValue(), restored.getLatestSignalValue(), 0);
+			assertEquals(signal.getLatestTargetValue(), restored.getLatestTargetValue(), 0);
+		}
+	}
+	
+	@Test
+	public void testFIRFilterEngine() throws Exception {
+		
+		MDFABase[] anyMDFAs = new MDFABase[3];
+		
+		anyMDFAs[0] = (new MDFABase()).setLowpassCutoff(Math.PI/15.0);
+		anyMDFAs[1] = (new MDFABase()).setLowpassCutoff(Math.PI/10.0)
+				.setBandPassCutoff(Math.PI/15.0);
+		anyMDFAs[2] = (new MDFABase()).setLowpassCutoff(Math.PI/5.0)
+                .setBandPassCutoff(Math.PI/10.0);
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 400, "data/AAPL.IB.dat", "dateTime", "close");	
+		MultivariateSignalSeries signal = new MultivariateSignalSeries(new TargetSeries(appleSeries, .4, true), 
+				anyMDFAs, "yyyy-MM-dd")
+				.computeFilterCoefficients()
+				.computeSignalsFromTarget();
+		
+		/* the recomputed history matches the signals added one value at a time */
+		signal.addValue("2014-08-05", 95.12);
+		signal.addValue("2014-08-06", 94.96);
+		int N = signal.size();
+		double[] latest = signal.getLatestSignalValue();
+		double[] previous = signal.getSignalValue(N-2);
+		signal.computeSignalsFromTarget();
+		assertArrayEquals(latest, signal.getLatestSignalValue(), eps);
+		assertArrayEquals(previous, signal.getSignalValue(N-2), eps);
+		
+		/* all paths of the engine give the truncated causal filter */
+		double[] x = new double[N];
+		for(int i = 0; i < N; i++) {
+			x[i] = signal.getTargetValue(i);
+		}
+		double[][] filters = new double[3][];
+		for(int m = 0; m < 3; m++) {
+			filters[m] = signal.getCoefficients(m);
+		}
+		
+		FIRFilterEngine[] engines = new FIRFilterEngine[] {
+			new FIRFilterEngine().setFFTThreshold(Integer.MAX_VALUE).setParallelThreshold(Long.MAX_VALUE),
+			new FIRFilterEngine().setFFTThreshold(Integer.MAX_VALUE).setParallelThreshold(0),
+			new FIRFilterEngine().setFFTThreshold(1).setFFTCost(0)
+		};
+		for(FIRFilterEngine engine : engines) {
+			
+			double[][] y = engine.filter(x, N, filters);
+			for(int i = 0; i < N; i++) {
+				for(int m = 0; m < 3; m++) {
+					
+					double sum = 0;
+					for(int l = 0; l < Math.min(i+1, filters[m].length); l++) {
+						sum = sum + filters[m][l]*x[i-l];
+					}
+					assertEquals(sum, y[m][i], eps);
+					assertEquals(signal.getSignalValue(i)[m], y[m][i], eps);
+				}
+			}
+		}
+		
+		/* the shared default engine can not be changed */
+		try {
+			FIRFilterEngine.getDefault().setFFTThreshold(1);
+			fail("The default engine is shared by all the signal series");
+		}
+		catch(IllegalStateException e) {
+		}
+		assertEquals(FIRFilterEngine.DEFAULT_FFT_THRESHOLD, FIRFilterEngine.getDefault().getFFTThreshold());
+	}
+	
+	@Test
+	public void testSeriesFilterEngine() throws Exception {
+		
+		TimeSeries<Double> price = CsvFeed.getChunkOfData(0, 800, "data/AAPL.IB.dat", "dateTime", "close");
+		double[] coeffs = new double[40];
+		for(int l = 0; l < coeffs.length; l++) {
+			coeffs[l] = 1.0/(l + 1.0);
+		}
+		
+		/* the series filter on the pool of their own engine */
+		ForkJoinPool lazyPool = new ForkJoinPool(2);
+		ForkJoinPool eagerPool = new ForkJoinPool(2);
+		try {
+			SignalSeries reference = new SignalSeries(coeffs, new TargetSeries(price, .4, true), "yyyy-MM-dd");
+			SignalSeries lazy = new SignalSeries(coeffs, new TargetSeries(price, .4, true), "yyyy-MM-dd");
+			SignalSeries eager = new SignalSeries(coeffs, new TargetSeries(price, .4, true), "yyyy-MM-dd");
+			
+			lazy.setFilterEngine(new FIRFilterEngine().setForkJoinPool(lazyPool).setParallelThreshold(0));
+			eager.setEagerSignal(true)
+				.setFilterEngine(new FIRFilterEngine().setForkJoinPool(eagerPool).setParallelThreshold(0));
+			assertSame(lazy.getFilterEngine(), lazy.getLazySignal().getFilterEngine());
+			
+			lazy.computeSignalFromTarget();
+			eager.computeSignalFromTarget();
+			assertTrue(lazyPool.getPoolSize() > 0);
+			assertTrue(eagerPool.getPoolSize() > 0);
+			for(int i = 0; i < reference.size(); i++) {
+				
+				assertEquals(reference.getSignalValue(i), lazy.getSignalValue(i), eps);
+				assertEquals(reference.getSignalValue(i), eager.getSignalValue(i), eps);
+			}
+			
+			lazy.setFilterEngine(null);
+			assertSame(FIRFilterEngine.getDefault(), lazy.getLazySignal().getFilterEngine());
+		}
+		finally {
+			lazyPool.shutdown();
+			eagerPool.shutdown();
+		}
+	}
+	
+	
 
 }
@@ -0,0 +1,82 @@
+package ch.imetrica.mdfa.spectraldensity;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import ch.imetrica.mdfa.datafeeds.CsvFeed;
+import ch.imetrica.mdfa.series.TargetSeries;
+import ch.imetrica.mdfa.series.TimeSeries;
+
+public class TestSpectralBase {
+
+	@Test
+	public void testFFTAgreesWithDirect() throws Exception {
+		
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 600, "data/AAPL.IB.dat", "dateTime", "close");	
+		TargetSeries target = new TargetSeries(appleSeries, .4, true);
+		
+		/* even, odd, and power of two in-sample sizes */
+		int[] sizes = {300, 301, 256, 1, 2, 3};
+		
+		for(int n : sizes) {
+			
+			SpectralBase direct = new SpectralBase(n).setSpectralEstimator(new DirectSpectralEstimator());
+			SpectralBase fft = new SpectralBase(n).setSpectralEstimator(new FFTSpectralEstimator());
+			
+			direct.addSeries(target);
+			fft.addSeries(target);
+			
+			Complex[] expected = direct.getSpectralDensity(0);
+			Complex[] actual = fft.getSpectralDensity(0);
+			
+			assertEquals(n/2 + 1, actual.length);
+			for(int j = 0; j < expected.length; j++) {
+				
+				assertEquals(expected[j].getReal(), actual[j].getReal(), 1E-10);
+				assertEquals(expected[j].getImaginary(), actual[j].getImaginary(), 1E-10);
+				assertEquals(expected[j].getReal(), fft.getTargetSpectralDensity(j).getReal(), 1E-10);
+			}
+		}
+	}
+	
+	@Test
+	public void testRollingAgreesWithFullRecomputation() throws Exception {
+		
+		int n = 301;
+		TimeSeries<Double> appleSeries = CsvFeed.getChunkOfData(0, 800, "data/AAPL.IB.dat", "dateTime", "close");
+		TimeSeries<Double> initial = new TimeSeries<Double>();
+		for(int i = 0; i < 400; i++) {
+			initial.add(appleSeries.get(i));
+		}
+		
+		TargetSeries target = new TargetSeries(initial, .4, true);
+		RollingSpectralBase rolling = new RollingSpectralBase(n).setResyncInterval(1000);
+		rolling.addSeries(target);
+		
+		for(int i = 400; i < appleSeries.size(); i++) {
+			
+			target.addValue(appleSeries.get(i).getDateTime(), appleSeries.get(i).getValue());
+			rolling.update();
+			
+			if(i % 100 == 0) {
+				target.chopFirstObservations(50);
+				rolling.chopFirstObservations(50);
+			}
+		}
+		
+		SpectralBase full = new SpectralBase(n).setSpectralEstimator(new DirectSpectralEstimator());
+		full.addSeries(target);
+		
+		Complex[] expected = full.getSpectralDensity(0);
+		Complex[] actual = rolling.getSpectralDensity(0);
+		for(int j = 0; j < expected.length; j++) {
+			
+			assertEquals(expected[j].getReal(), actual[j].getReal(), 1E-8);
+			assertEquals(expected[j].getImaginary(), actual[j].getImaginary(), 1E-8);
+			assertEquals(expected[j].getReal(), rolling.getTargetSpectralDensity(j).getReal(), 1E-8);
+		}
+	}
+	
+}
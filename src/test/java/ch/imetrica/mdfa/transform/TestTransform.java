@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import ch.imetrica.mdfa.datafeeds.CsvFeed;
 import ch.imetrica.mdfa.series.TargetSeries;
 import ch.imetrica.mdfa.series.TimeSeries;
 import ch.imetrica.mdfa.series.TimeSeriesEntry;
@@ -70,4 +71,88 @@ public class TestTransform {
 		
 	}
 
+	@Test
+	public void testStreamingFractionalDifference() {
+		
+		TimeSeries<Double> price = CsvFeed.getChunkOfData(0, 600, "data/AAPL.IB.dat", "dateTime", "close");
+		
+		for(double d : new double[]{0.4, 1.0, 0.0}) {
+			
+			TimeSeries<Double> history = new TimeSeries<Double>(price.subList(0, 300));
+			TargetSeries streamed = new TargetSeries(history, d, true);
+			for(int i = 300; i < price.size(); i++) {
+				streamed.addValue(price.get(i).getDateTime(), price.get(i).getValue());
+			}
+			
+			TargetSeries batch = new TargetSeries(price, d, true);
+			assertEquals(batch.size(), streamed.size());
+			for(int i = 0; i < batch.size(); i++) {
+				assertEquals(batch.getTargetValue(i), streamed.getTargetValue(i), 1E-12);
+			}
+		}
+		
+		/* chopping and changing d keep the streamed values consistent with a full recomputation */
+		TargetSeries streamed = new TargetSeries(0.4, true, "AAPL");
+		for(int i = 0; i < 400; i++) {
+			streamed.addValue(price.get(i).getDateTime(), price.get(i).getValue());
+		}
+		streamed.chopFirstObservations(100);
+		streamed.adjustFractionalDifferenceData(0.3);
+		for(int i = 400; i < price.size(); i++) {
+			streamed.addValue(price.get(i).getDateTime(), price.get(i).getValue());
+		}
+		TargetSeries batch = new TargetSeries(new TimeSeries<Double>(price.subList(100, price.size())), 0.3, true);
+		for(int i = 0; i < batch.size(); i++) {
+			assertEquals(batch.getTargetValue(i), streamed.getTargetValue(i), 1E-12);
+		}
+		
+		/* truncated weights stay within the error bound */
+		TargetSeries truncated = new TargetSeries(new TimeSeries<Double>(price.subList(0, 300)), 0.3, true);
+		truncated.setMaxWeightLength(50);
+		for(int i = 300; i < price.size(); i++) {
+			truncated.addValue(price.get(i).getDateTime(), price.get(i).getValue());
+		}
+		
+		Transform transform = truncated.getTransform();
+		assertEquals(50, transform.getWeightLength());
+		
+		double maxLog = 0;
+		for(TimeSeriesEntry<Double> entry : price) {
+			maxLog = Math.max(maxLog, Math.abs(Math.log(entry.getValue())));
+		}
+		TargetSeries full = new TargetSeries(price, 0.3, true);
+		double bound = transform.getTruncationErrorBound()*maxLog;
+		assertTrue(bound > 0);
+		for(int i = 0; i < full.size(); i++) {
+			assertEquals(full.getTargetValue(i), truncated.getTargetValue(i), bound + 1E-12);
+		}
+	}
+
+	@Test
+	public void testFFTFractionalDifference() {
+		
+		TimeSeries<Double> price = CsvFeed.getChunkOfData(0, 1000, "data/AAPL.IB.dat", "dateTime", "close");
+		
+		TargetSeries direct = new TargetSeries(price, 0.4, true);
+		direct.getTransform().setFFTThreshold(Integer.MAX_VALUE);
+		direct.adjustFractionalDifferenceData(0.35);
+		
+		TargetSeries fft = new TargetSeries(price, 0.4, true);
+		fft.getTransform().setFFTThreshold(0);
+		fft.adjustFractionalDifferenceData(0.35);
+		
+		assertTrue(fft.getTransform().getWeightLength() > 64);
+		for(int i = 0; i < direct.size(); i++) {
+			
+			assertEquals(direct.getTargetValue(i), fft.getTargetValue(i), 1E-12);
+			assertEquals(direct.getOriginalValue(i), fft.getOriginalValue(i), 0);
+		}
+		
+		/* the default threshold picks the FFT for these weights, with the same result */
+		TargetSeries batch = new TargetSeries(price, 0.35, true);
+		for(int i = 0; i < batch.size(); i++) {
+			assertEquals(direct.getTargetValue(i), batch.getTargetValue(i), 1E-12);
+		}
+	}
+
 }